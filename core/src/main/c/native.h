@@ -11,6 +11,10 @@ extern "C" {
 
 JNIEXPORT jlong JNICALL Java_net_techcable_accelerated_1java_jni_Native_getNativeAddress0(JNIEnv *, jclass, jobject);
 
+JNIEXPORT jlong JNICALL Java_net_techcable_accelerated_1java_jni_Native_xxHash64(JNIEnv *, jclass, jlong, jint, jlong);
+
+JNIEXPORT void JNICALL Java_net_techcable_accelerated_1java_jni_Native_filter0(JNIEnv *, jclass, jint, jint, jlong, jlong, jint, jboolean);
+
 // "Constants" (initialized during JNI_OnLoad)
 
 // Classes
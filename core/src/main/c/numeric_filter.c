@@ -0,0 +1,159 @@
+#include <stdint.h>
+#include <string.h>
+#include "native.h"
+
+/*
+ * Numeric filters, matching NumericFilter in Java
+ */
+
+#define TRANSFORM_NONE 0
+#define TRANSFORM_DELTA 1
+#define TRANSFORM_DELTA_OF_DELTA 2
+#define TRANSFORM_XOR 3
+#define SHUFFLE_NONE 0
+#define SHUFFLE_BYTE 1
+#define SHUFFLE_BIT 2
+#define FLAG_LITTLE_ENDIAN 16
+
+// Each width gets its own copy of the filter, so the loops over the bytes of an element are unrolled
+#if defined(__GNUC__)
+#define ALWAYS_INLINE inline __attribute__((always_inline))
+#else
+#define ALWAYS_INLINE inline
+#endif
+
+typedef struct {
+    int transform;
+    int invert;
+    // The last original element, and the difference between the last two
+    uint64_t previous, previousDelta;
+} TransformState;
+
+static ALWAYS_INLINE uint64_t nextElement(TransformState* state, uint64_t value) {
+    uint64_t result, delta;
+    switch (state->transform) {
+        case TRANSFORM_DELTA:
+            result = state->invert ? state->previous + value : value - state->previous;
+            state->previous = state->invert ? result : value;
+            return result;
+        case TRANSFORM_DELTA_OF_DELTA:
+            delta = state->invert ? state->previousDelta + value : value - state->previous;
+            result = state->invert ? state->previous + delta : delta - state->previousDelta;
+            state->previous = state->invert ? result : value;
+            state->previousDelta = delta;
+            return result;
+        case TRANSFORM_XOR:
+            result = state->previous ^ value;
+            state->previous = state->invert ? result : value;
+            return result;
+        default:
+            return value;
+    }
+}
+
+// Read an element whose bytes are a given distance apart
+static ALWAYS_INLINE uint64_t readElement(const unsigned char* p, size_t stride, int width, int bigEndian) {
+    uint64_t value = 0;
+    for (int b = 0; b < width; b++) {
+        value |= (uint64_t) p[b * stride] << 8 * (bigEndian ? width - 1 - b : b);
+    }
+    return value;
+}
+
+// Write the low bytes of an element a given distance apart
+static ALWAYS_INLINE void writeElement(unsigned char* p, size_t stride, uint64_t value, int width, int bigEndian) {
+    for (int b = 0; b < width; b++) {
+        p[b * stride] = (unsigned char) (value >> 8 * (bigEndian ? width - 1 - b : b));
+    }
+}
+
+// Transpose a matrix of eight rows of eight bits, with byte i as row i
+static inline uint64_t transposeBits(uint64_t word) {
+    uint64_t t = (word ^ (word >> 7)) & 0x00AA00AA00AA00AAULL;
+    word ^= t ^ (t << 7);
+    t = (word ^ (word >> 14)) & 0x0000CCCC0000CCCCULL;
+    word ^= t ^ (t << 14);
+    t = (word ^ (word >> 28)) & 0x00000000F0F0F0F0ULL;
+    return word ^ t ^ (t << 28);
+}
+
+static ALWAYS_INLINE void filter(const unsigned char* src, unsigned char* dst, size_t length, const int width, int flags, int invert) {
+    const int shuffle = (flags >> 2) & 3, bigEndian = !(flags & FLAG_LITTLE_ENDIAN);
+    const size_t count = length / width;
+    const size_t shuffled = shuffle == SHUFFLE_BYTE ? count : shuffle == SHUFFLE_BIT ? count & ~(size_t) 7 : 0;
+    const unsigned char* in = src;
+    unsigned char* out = dst;
+    TransformState state = {flags & 3, invert, 0, 0};
+    size_t index = 0;
+    if (shuffle == SHUFFLE_BIT) {
+        const size_t rowLength = shuffled / 8;
+        uint64_t group[8];
+        for (; index < shuffled; index += 8) {
+            const size_t column = index / 8;
+            if (invert) {
+                memset(group, 0, sizeof(group));
+                for (int b = 0; b < width; b++) {
+                    uint64_t word = 0;
+                    for (int k = 0; k < 8; k++) word |= (uint64_t) in[column + (b * 8 + k) * rowLength] << 8 * k;
+                    word = transposeBits(word);
+                    const int shift = 8 * (bigEndian ? width - 1 - b : b);
+                    for (int t = 0; t < 8; t++) group[t] |= ((word >> 8 * t) & 0xFF) << shift;
+                }
+                for (int t = 0; t < 8; t++) {
+                    writeElement(out + (index + t) * width, 1, nextElement(&state, group[t]), width, bigEndian);
+                }
+            } else {
+                for (int t = 0; t < 8; t++) {
+                    group[t] = nextElement(&state, readElement(in + (index + t) * width, 1, width, bigEndian));
+                }
+                for (int b = 0; b < width; b++) {
+                    const int shift = 8 * (bigEndian ? width - 1 - b : b);
+                    uint64_t word = 0;
+                    for (int t = 0; t < 8; t++) word |= ((group[t] >> shift) & 0xFF) << 8 * t;
+                    word = transposeBits(word);
+                    for (int k = 0; k < 8; k++) out[column + (b * 8 + k) * rowLength] = (unsigned char) (word >> 8 * k);
+                }
+            }
+        }
+    } else if (shuffle == SHUFFLE_BYTE) {
+        if (invert) {
+            for (; index < shuffled; index++) {
+                writeElement(out + index * width, 1, nextElement(&state, readElement(in + index, shuffled, width, bigEndian)), width, bigEndian);
+            }
+        } else {
+            for (; index < shuffled; index++) {
+                writeElement(out + index, shuffled, nextElement(&state, readElement(in + index * width, 1, width, bigEndian)), width, bigEndian);
+            }
+        }
+    }
+    for (; index < count; index++) {
+        writeElement(out + index * width, 1, nextElement(&state, readElement(in + index * width, 1, width, bigEndian)), width, bigEndian);
+    }
+    const size_t tail = count * width;
+    memcpy(dst + tail, src + tail, length - tail);
+}
+
+JNIEXPORT void JNICALL Java_net_techcable_accelerated_1java_jni_Native_filter0(JNIEnv* env, jclass class, jint flags, jint width, jlong srcAddress, jlong dstAddress, jint length, jboolean invert) {
+    if (((flags >> 2) & 3) > SHUFFLE_BIT || (flags & ~(FLAG_LITTLE_ENDIAN | 0xF)) != 0) {
+        throwf(env, ILLEGAL_ARGUMENT_EXCEPTION, "Invalid filter flags %d", flags);
+        return;
+    }
+    const unsigned char* src = (const unsigned char*) (uintptr_t) srcAddress;
+    unsigned char* dst = (unsigned char*) (uintptr_t) dstAddress;
+    switch (width) {
+        case 1:
+            filter(src, dst, (size_t) length, 1, flags, invert);
+            break;
+        case 2:
+            filter(src, dst, (size_t) length, 2, flags, invert);
+            break;
+        case 4:
+            filter(src, dst, (size_t) length, 4, flags, invert);
+            break;
+        case 8:
+            filter(src, dst, (size_t) length, 8, flags, invert);
+            break;
+        default:
+            throwf(env, ILLEGAL_ARGUMENT_EXCEPTION, "Invalid width %d", width);
+    }
+}
@@ -0,0 +1,474 @@
+#include <stdlib.h>
+#include <stdint.h>
+#include <string.h>
+#include <zlib.h>
+#include "native.h"
+#include "zlib_native.h"
+
+jlong JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_createStream0(JNIEnv* env, jclass type, jint typeId, jint level, jint windowBits, jint memLevel, jint strategy) {
+    z_stream* stream = malloc(sizeof(z_stream));
+    if (stream == NULL) {
+        throw(env, OUT_OF_MEMORY_ERROR, "Unable to allocate stream");
+        return -1;
+    }
+    stream->zalloc = Z_NULL;
+    stream->zfree = Z_NULL;
+    stream->opaque = Z_NULL;
+    int ret;
+    switch (typeId) {
+        case DEFLATE_TYPE_ID: // Deflate
+            ret = deflateInit2(stream, level, Z_DEFLATED, windowBits, memLevel, strategy);
+            break;
+        case INFLATE_TYPE_ID: // Inflate
+            if (level != -1) {
+                free(stream);
+                throw(env, ILLEGAL_ARGUMENT_EXCEPTION, "Level must be always be -1 for inflating");
+                return -1;
+            }
+            stream->next_in = Z_NULL;
+            stream->avail_in = 0;
+            ret = inflateInit2(stream, windowBits);
+            break;
+        default:
+            free(stream);
+            throwf(env, ILLEGAL_ARGUMENT_EXCEPTION, "Invalid stream type with id %d", typeId);
+            return -1;
+    }
+    if (ret != Z_OK) {
+        free(stream);
+        switch (ret) {
+            case Z_MEM_ERROR:
+                throw(env, OUT_OF_MEMORY_ERROR, "Not enough memory to initalize stream");
+                break;
+            case Z_STREAM_ERROR:
+                throwf(env, ILLEGAL_ARGUMENT_EXCEPTION, "Invalid stream parameters: level %d, windowBits %d, memLevel %d, strategy %d", level, windowBits, memLevel, strategy);
+                break;
+            default:
+                throwf(env, RUNTIME_EXCEPTION, "Unknown error code %d", ret);
+                break;
+        }
+        return -1;
+    }
+    return (jlong) (uintptr_t) stream;
+}
+
+void prepareStream(z_stream* stream, jlong inAddress, jint inLength, jlong outAddress, jint outLength) {
+    unsigned char* in = (unsigned char*) (uintptr_t) inAddress;
+    unsigned char* out = (unsigned char*) (uintptr_t) outAddress;
+
+    stream->next_in =  in;
+    stream->avail_in = (uInt) inLength;
+
+    stream->next_out = out;
+    stream->avail_out = (uInt) outLength;
+}
+
+/*
+ * The statuses returned to Java, in the order of ZLibNative.Status.
+ * Routine conditions never throw, and errors are returned as zlib's own negative codes,
+ * so Java only fetches the stream's message when there's actually an error.
+ */
+#define STATUS_OK 0
+#define STATUS_FINISHED 1
+#define STATUS_NEEDS_DICTIONARY 2
+#define STATUS_NO_PROGRESS 3
+
+jint streamStatus(z_stream* stream, jint inLength, jint outLength, jint* communicationArray, int code) {
+    communicationArray[0] = inLength - stream->avail_in;
+    communicationArray[1] = outLength - stream->avail_out;
+
+    switch (code) {
+        case Z_OK:
+            return STATUS_OK;
+        case Z_STREAM_END:
+            return STATUS_FINISHED;
+        case Z_NEED_DICT:
+            // The caller sets the dictionary and tries again
+            return STATUS_NEEDS_DICTIONARY;
+        case Z_BUF_ERROR:
+            // Zlib needs more input or more output before it can continue
+            return STATUS_NO_PROGRESS;
+        default:
+            return code;
+    }
+}
+
+jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_inflate0(JNIEnv* env, jclass class, jlong streamAddress, jlong communicationAddress, jlong inAddress, jint inLength, jlong outAddress, jint outLength) {
+    z_stream* stream = (z_stream*) (uintptr_t) streamAddress;
+    jint* communicationArray = (jint*) (uintptr_t) communicationAddress;
+    prepareStream(stream, inAddress, inLength, outAddress, outLength);
+
+    int code = inflate(stream, Z_SYNC_FLUSH);
+
+    return streamStatus(stream, inLength, outLength, communicationArray, code);
+}
+
+jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_deflate0(JNIEnv* env, jclass class, jlong streamAddress, jlong communicationAddress, jlong inAddress, jint inLength, jlong outAddress, jint outLength, jint flush) {
+    z_stream* stream = (z_stream*) (uintptr_t) streamAddress;
+    jint* communicationArray = (jint*) (uintptr_t) communicationAddress;
+    prepareStream(stream, inAddress, inLength, outAddress, outLength);
+
+    int code = deflate(stream, flush);
+
+    return streamStatus(stream, inLength, outLength, communicationArray, code);
+}
+
+jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_params0(JNIEnv* env, jclass class, jlong streamAddress, jlong communicationAddress, jint level, jint strategy, jlong outAddress, jint outLength) {
+    z_stream* stream = (z_stream*) (uintptr_t) streamAddress;
+    jint* communicationArray = (jint*) (uintptr_t) communicationAddress;
+    prepareStream(stream, 0, 0, outAddress, outLength);
+
+    // NOTE: No progress means there wasn't enough room to flush the data compressed with the old parameters, so they haven't changed
+    int code = deflateParams(stream, level, strategy);
+
+    return streamStatus(stream, 0, outLength, communicationArray, code);
+}
+
+jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_setDictionary0(JNIEnv* env, jclass class, jlong streamAddress, jint typeId, jlong dictionaryAddress, jint dictionaryLength) {
+    z_stream* stream = (z_stream*) (uintptr_t) streamAddress;
+    const Bytef* dictionary = (const Bytef*) (uintptr_t) dictionaryAddress;
+    switch (typeId) {
+        case DEFLATE_TYPE_ID: // Deflate
+            return deflateSetDictionary(stream, dictionary, (uInt) dictionaryLength);
+        case INFLATE_TYPE_ID: // Inflate
+            return inflateSetDictionary(stream, dictionary, (uInt) dictionaryLength);
+        default:
+            throwf(env, ILLEGAL_ARGUMENT_EXCEPTION, "Invalid stream type with id %d", typeId);
+            return Z_STREAM_ERROR;
+    }
+}
+
+jstring JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_getMessage0(JNIEnv* env, jclass class, jlong streamAddress) {
+    z_stream* stream = (z_stream*) (uintptr_t) streamAddress;
+    // NOTE: Zlib's messages are static strings, so this doesn't need to format anything
+    return stream->msg == NULL ? NULL : (*env)->NewStringUTF(env, stream->msg);
+}
+
+void JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_reset0(JNIEnv* env, jclass class, jlong streamAddress, jint typeId) {
+    z_stream* stream = (z_stream*) (uintptr_t) streamAddress;
+    int code;
+    switch (typeId) {
+        case DEFLATE_TYPE_ID: // Deflate
+            code = deflateReset(stream);
+            break;
+        case INFLATE_TYPE_ID: // Inflate
+            code = inflateReset(stream);
+            break;
+        default:
+            throwf(env, ILLEGAL_ARGUMENT_EXCEPTION, "Invalid stream type with id %d", typeId);
+            return;
+    }
+    if (code != Z_OK) {
+        throwf(env, ILLEGAL_STATE_EXCEPTION, "Zlib stream in bad state: error code %d", code);
+    }
+}
+
+jlong JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_copyStream0(JNIEnv* env, jclass class, jlong streamAddress, jint typeId) {
+    z_stream* source = (z_stream*) (uintptr_t) streamAddress;
+    z_stream* stream = malloc(sizeof(z_stream));
+    if (stream == NULL) {
+        throw(env, OUT_OF_MEMORY_ERROR, "Unable to allocate stream");
+        return -1;
+    }
+    int code;
+    switch (typeId) {
+        case DEFLATE_TYPE_ID: // Deflate
+            code = deflateCopy(stream, source);
+            break;
+        case INFLATE_TYPE_ID: // Inflate
+            code = inflateCopy(stream, source);
+            break;
+        default:
+            free(stream);
+            throwf(env, ILLEGAL_ARGUMENT_EXCEPTION, "Invalid stream type with id %d", typeId);
+            return -1;
+    }
+    if (code != Z_OK) {
+        free(stream);
+        if (code == Z_MEM_ERROR) {
+            throw(env, OUT_OF_MEMORY_ERROR, "Not enough memory to copy stream");
+        } else {
+            throwf(env, ILLEGAL_STATE_EXCEPTION, "Zlib stream in bad state: error code %d", code);
+        }
+        return -1;
+    }
+    return (jlong) (uintptr_t) stream;
+}
+
+void JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_free0(JNIEnv* env, jclass class, jlong streamAddress, jint typeId) {
+    z_stream* stream = (z_stream*) (uintptr_t) streamAddress;
+    int code;
+    switch (typeId) {
+        case DEFLATE_TYPE_ID: // Deflate
+            code = deflateEnd(stream);
+            break;
+        case INFLATE_TYPE_ID: // Inflate
+            code = inflateEnd(stream);
+            break;
+        default:
+            throwf(env, ILLEGAL_ARGUMENT_EXCEPTION, "Invalid stream type with id %d", typeId);
+            return;
+    }
+    char* msg = stream->msg == NULL ? "unknown" : stream->msg;
+    free(stream);
+    switch (code) {
+        case Z_OK:
+        case Z_DATA_ERROR: // Freed before the stream was finished, which is fine
+            break; // Happy day :D
+        case Z_STREAM_ERROR:
+            throwf(env, ILLEGAL_STATE_EXCEPTION, "Zlib stream in bad state: %s", msg);
+            break;
+        default:
+            throwf(env, RUNTIME_EXCEPTION, "Unknown error code %d: (%s)", code, msg);
+            break;
+    }
+}
+
+// Whole-input decompression with inflateBack
+
+#ifndef z_const
+#define z_const
+#endif
+
+#define INFLATE_BACK_WINDOW_BITS 15
+
+// The wrappers, matching ZLibNative's constants
+#define WRAPPER_NONE 0
+#define WRAPPER_ZLIB 1
+#define WRAPPER_GZIP 2
+
+typedef struct {
+    z_stream stream;
+    unsigned char window[1 << INFLATE_BACK_WINDOW_BITS];
+} InflateBackState;
+
+typedef struct {
+    JNIEnv* env;
+    jobject chain;
+    jmethodID nextRegion;
+    jint chunkLength;
+    unsigned char* out;
+    unsigned int outLeft;
+    jlong written;
+    int wrapper;
+    uLong check;
+    int outputFull;
+} OutputContext;
+
+jlong JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_createInflateBack0(JNIEnv* env, jclass class) {
+    InflateBackState* state = malloc(sizeof(InflateBackState));
+    if (state == NULL) {
+        throw(env, OUT_OF_MEMORY_ERROR, "Unable to allocate stream");
+        return -1;
+    }
+    state->stream.zalloc = Z_NULL;
+    state->stream.zfree = Z_NULL;
+    state->stream.opaque = Z_NULL;
+    int ret = inflateBackInit(&state->stream, INFLATE_BACK_WINDOW_BITS, state->window);
+    if (ret != Z_OK) {
+        free(state);
+        if (ret == Z_MEM_ERROR) {
+            throw(env, OUT_OF_MEMORY_ERROR, "Not enough memory to initalize stream");
+        } else {
+            throwf(env, RUNTIME_EXCEPTION, "Unknown error code %d", ret);
+        }
+        return -1;
+    }
+    return (jlong) (uintptr_t) state;
+}
+
+// All the input is given upfront, so running out means it's truncated
+static unsigned noMoreInput(void* desc, z_const unsigned char** buf) {
+    return 0;
+}
+
+// Copy output out of the window, moving on to the next region from the chain when the current one is full
+static int writeOutput(void* desc, unsigned char* buf, unsigned len) {
+    OutputContext* context = (OutputContext*) desc;
+    JNIEnv* env = context->env;
+    if (context->wrapper == WRAPPER_ZLIB) {
+        context->check = adler32(context->check, buf, len);
+    } else if (context->wrapper == WRAPPER_GZIP) {
+        context->check = crc32(context->check, buf, len);
+    }
+    while (len > 0) {
+        if (context->outLeft == 0) {
+            if (context->chain == NULL) {
+                context->outputFull = 1;
+                return 1;
+            }
+            jlong next = (*env)->CallLongMethod(env, context->chain, context->nextRegion, context->chunkLength);
+            if ((*env)->ExceptionCheck(env)) return 1;
+            context->out = (unsigned char*) (uintptr_t) next;
+            context->outLeft = (unsigned int) context->chunkLength;
+        }
+        unsigned int length = len < context->outLeft ? len : context->outLeft;
+        memcpy(context->out, buf, length);
+        context->out += length;
+        context->outLeft -= length;
+        context->written += length;
+        buf += length;
+        len -= length;
+    }
+    return 0;
+}
+
+// Check the gzip header (RFC 1952), returning its length, or -1 after throwing
+static jint parseGzipHeader(JNIEnv* env, const unsigned char* in, jint inLength) {
+    if (inLength < 10) {
+        throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: truncated");
+        return -1;
+    }
+    if (in[0] != 0x1f || in[1] != 0x8b || in[2] != Z_DEFLATED) {
+        throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: incorrect header check");
+        return -1;
+    }
+    int flags = in[3];
+    if (flags & 0xe0) {
+        throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: unknown header flags set");
+        return -1;
+    }
+    // Skip the modification time, extra flags and operating system
+    jint position = 10;
+    if (flags & 0x04) {
+        // Extra field, prefixed by its little endian length
+        if (inLength - position < 2) goto truncated;
+        jint extraLength = in[position] | (in[position + 1] << 8);
+        position += 2;
+        if (inLength - position < extraLength) goto truncated;
+        position += extraLength;
+    }
+    // The file name and comment are zero terminated
+    for (int field = 0x08; field <= 0x10; field <<= 1) {
+        if (flags & field) {
+            while (position < inLength && in[position] != 0) position++;
+            if (position == inLength) goto truncated;
+            position++;
+        }
+    }
+    if (flags & 0x02) {
+        // The low bytes of the header's crc32
+        if (inLength - position < 2) goto truncated;
+        uLong expected = in[position] | (in[position + 1] << 8);
+        if (expected != (crc32(0L, in, (uInt) position) & 0xffff)) {
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: header crc mismatch");
+            return -1;
+        }
+        position += 2;
+    }
+    return position;
+truncated:
+    throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: truncated");
+    return -1;
+}
+
+static uLong readLittleEndian(const unsigned char* in) {
+    return (uLong) in[0] | ((uLong) in[1] << 8) | ((uLong) in[2] << 16) | ((uLong) in[3] << 24);
+}
+
+jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_inflateBack0(JNIEnv* env, jclass class, jlong stateAddress, jlong communicationAddress, jlong inAddress, jint inLength, jlong outAddress, jint outLength, jint wrapper, jint chunkLength, jobject chain) {
+    InflateBackState* state = (InflateBackState*) (uintptr_t) stateAddress;
+    z_stream* stream = &state->stream;
+    unsigned char* in = (unsigned char*) (uintptr_t) inAddress;
+    jint headerLength = 0;
+    if (wrapper == WRAPPER_GZIP) {
+        // inflateBack doesn't understand gzip headers either
+        headerLength = parseGzipHeader(env, in, inLength);
+        if (headerLength < 0) return -1;
+    } else if (wrapper == WRAPPER_ZLIB) {
+        // inflateBack only understands raw deflate data, so check the zlib header here (RFC 1950)
+        if (inLength < 2) {
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: truncated");
+            return -1;
+        }
+        int cmf = in[0], flg = in[1];
+        if ((cmf & 0x0f) != Z_DEFLATED || (cmf >> 4) + 8 > INFLATE_BACK_WINDOW_BITS || ((cmf << 8) | flg) % 31 != 0) {
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: incorrect header check");
+            return -1;
+        } else if (flg & 0x20) {
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: needs a preset dictionary");
+            return -1;
+        }
+        headerLength = 2;
+    }
+    OutputContext context;
+    context.env = env;
+    context.chain = chain;
+    context.nextRegion = NULL;
+    context.chunkLength = chunkLength;
+    context.out = (unsigned char*) (uintptr_t) outAddress;
+    context.outLeft = (unsigned int) outLength;
+    context.written = 0;
+    context.wrapper = wrapper;
+    context.check = wrapper == WRAPPER_GZIP ? crc32(0L, Z_NULL, 0) : adler32(0L, Z_NULL, 0);
+    context.outputFull = 0;
+    if (chain != NULL) {
+        jclass chainClass = (*env)->GetObjectClass(env, chain);
+        context.nextRegion = (*env)->GetMethodID(env, chainClass, "nextRegion", "(I)J");
+        if (context.nextRegion == NULL) return -1; // The JVM has thrown NoSuchMethodError
+    }
+    stream->next_in = in + headerLength;
+    stream->avail_in = (uInt) (inLength - headerLength);
+    int code = inflateBack(stream, noMoreInput, NULL, writeOutput, &context);
+    if ((*env)->ExceptionCheck(env)) return -1; // The chain threw
+    jint consumed = inLength - (jint) stream->avail_in;
+    switch (code) {
+        case Z_STREAM_END:
+            break;
+        case Z_BUF_ERROR:
+            if (context.outputFull) {
+                *((jint*) (uintptr_t) communicationAddress) = consumed;
+                *((jlong*) (uintptr_t) (communicationAddress + 8)) = context.written;
+                return 0;
+            }
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: truncated");
+            return -1;
+        case Z_DATA_ERROR:
+            throwf(env, INVALID_DATA_EXCEPTION, "Invalid input data: %s", stream->msg == NULL ? "unknown" : stream->msg);
+            return -1;
+        case Z_MEM_ERROR:
+            throw(env, OUT_OF_MEMORY_ERROR, "Zlib ran out of memory");
+            return -1;
+        default:
+            throwf(env, RUNTIME_EXCEPTION, "Unknown error code %d", code);
+            return -1;
+    }
+    if (wrapper == WRAPPER_ZLIB) {
+        // Check the adler32 trailer, which is big endian
+        if (stream->avail_in < 4) {
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: truncated");
+            return -1;
+        }
+        const unsigned char* trailer = stream->next_in;
+        uLong expected = ((uLong) trailer[0] << 24) | ((uLong) trailer[1] << 16) | ((uLong) trailer[2] << 8) | (uLong) trailer[3];
+        if (expected != context.check) {
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: incorrect data check");
+            return -1;
+        }
+        consumed += 4;
+    } else if (wrapper == WRAPPER_GZIP) {
+        // Check the crc32 and the length modulo 2^32, which are little endian
+        if (stream->avail_in < 8) {
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: truncated");
+            return -1;
+        }
+        const unsigned char* trailer = stream->next_in;
+        if (readLittleEndian(trailer) != context.check) {
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: incorrect data check");
+            return -1;
+        } else if (readLittleEndian(trailer + 4) != ((uLong) context.written & 0xffffffffUL)) {
+            throw(env, INVALID_DATA_EXCEPTION, "Invalid input data: incorrect length check");
+            return -1;
+        }
+        consumed += 8;
+    }
+    *((jint*) (uintptr_t) communicationAddress) = consumed;
+    *((jlong*) (uintptr_t) (communicationAddress + 8)) = context.written;
+    return 1;
+}
+
+void JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_freeInflateBack0(JNIEnv* env, jclass class, jlong stateAddress) {
+    InflateBackState* state = (InflateBackState*) (uintptr_t) stateAddress;
+    inflateBackEnd(&state->stream);
+    free(state);
+}
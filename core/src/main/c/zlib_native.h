@@ -0,0 +1,41 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class net_techcable_accelerated_java_jni_ZLibNative */
+
+#ifndef _Included_net_techcable_accelerated_java_jni_ZLibNative
+#define _Included_net_techcable_accelerated_java_jni_ZLibNative
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+#define DEFLATE_TYPE_ID 0
+#define INFLATE_TYPE_ID 1
+
+JNIEXPORT jlong JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_createStream0(JNIEnv *, jclass, jint, jint, jint, jint, jint);
+
+JNIEXPORT jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_inflate0(JNIEnv *, jclass, jlong, jlong, jlong, jint, jlong, jint);
+
+JNIEXPORT jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_deflate0(JNIEnv *, jclass, jlong, jlong, jlong, jint, jlong, jint, jint);
+
+JNIEXPORT jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_params0(JNIEnv *, jclass, jlong, jlong, jint, jint, jlong, jint);
+
+JNIEXPORT jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_setDictionary0(JNIEnv *, jclass, jlong, jint, jlong, jint);
+
+JNIEXPORT jstring JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_getMessage0(JNIEnv *, jclass, jlong);
+
+JNIEXPORT void JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_reset0(JNIEnv *, jclass, jlong, jint typeId);
+
+JNIEXPORT jlong JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_copyStream0(JNIEnv *, jclass, jlong, jint typeId);
+
+JNIEXPORT void JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_free0(JNIEnv *, jclass, jlong, jint typeId);
+
+JNIEXPORT jlong JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_createInflateBack0(JNIEnv *, jclass);
+
+JNIEXPORT jint JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_inflateBack0(JNIEnv *, jclass, jlong, jlong, jlong, jint, jlong, jint, jint, jint, jobject);
+
+JNIEXPORT void JNICALL Java_net_techcable_accelerated_1java_jni_ZLibNative_freeInflateBack0(JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
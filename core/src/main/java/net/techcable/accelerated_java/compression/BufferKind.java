@@ -0,0 +1,29 @@
+package net.techcable.accelerated_java.compression;
+
+/**
+ * The kind of memory behind a buffer, which determines how cheaply native code can access it.
+ */
+public enum BufferKind {
+    /**
+     * A buffer backed by a single java array
+     */
+    HEAP,
+    /**
+     * A buffer backed by a single region of native memory
+     */
+    DIRECT,
+    /**
+     * A buffer made of multiple components, which always needs to be copied to be used by native code
+     */
+    COMPOSITE;
+
+    /**
+     * Determine the kind of a region of memory, in the form {@link CompressionEngine#compressMemory} takes
+     *
+     * @param array the array holding the region, or null if it's native memory
+     * @return the region's kind
+     */
+    /* default */ static BufferKind of(byte[] array) {
+        return array != null ? HEAP : DIRECT;
+    }
+}
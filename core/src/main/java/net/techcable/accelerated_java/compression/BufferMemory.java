@@ -0,0 +1,64 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.nio.ByteBuffer;
+
+import net.techcable.accelerated_java.jni.Native;
+
+/**
+ * Locates the memory behind byte buffers, in the form {@link CompressionEngine#compressMemory} takes.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+/* default */ final class BufferMemory {
+    /**
+     * Get the array behind a buffer's memory
+     *
+     * @param buffer the buffer
+     * @return the buffer's array, or null if it's native memory
+     */
+    /* default */ static byte[] array(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return buffer.array();
+        } else if (buffer.isDirect()) {
+            return null;
+        } else {
+            // NOTE: Read-only heap buffers hide their array, so they have to be copied
+            byte[] copy = new byte[buffer.remaining()];
+            buffer.duplicate().get(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * Get the location of a buffer's remaining bytes, in the memory returned by {@link #array(ByteBuffer)}
+     *
+     * @param buffer the buffer
+     * @return the offset in the buffer's array, or the address if it's native memory
+     */
+    /* default */ static long offset(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return buffer.arrayOffset() + buffer.position();
+        } else if (buffer.isDirect()) {
+            return Native.getNativeAddress(buffer) + buffer.position();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Check that a region of memory is valid
+     *
+     * @param array  the array holding the region, or null if it's native memory
+     * @param offset the offset in the array, or the address if there's no array
+     * @param length the length of the region
+     * @throws IllegalArgumentException  if the length is negative
+     * @throws IndexOutOfBoundsException if the region is outside its array
+     */
+    /* default */ static void checkRegion(byte[] array, long offset, int length) {
+        if (length < 0) throw new IllegalArgumentException("Negative length " + length);
+        if (array != null && (offset < 0 || offset > array.length - length)) {
+            throw new IndexOutOfBoundsException("Region at " + offset + " of length " + length + " is outside an array of length " + array.length);
+        }
+    }
+}
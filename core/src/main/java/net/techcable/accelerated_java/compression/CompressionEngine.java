@@ -0,0 +1,393 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import com.google.common.base.Preconditions;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+
+/**
+ * A compression stream over byte buffers, byte arrays and native memory, which doesn't depend on Netty.
+ * <p>Each call processes as much input as fits in the output, and never grows the output.
+ * The number of bytes the last call consumed and produced are available from {@link #getBytesRead()} and {@link #getBytesWritten()},
+ * and byte buffers have their positions advanced past them.</p>
+ * <p>Each region of memory is either part of a byte array, or native memory with no array.
+ * Backends use the kind of memory they can pass to zlib in place,
+ * and copy the other kind through staging buffers that are kept for the life of the stream, so calls don't allocate.</p>
+ */
+public interface CompressionEngine {
+
+    /**
+     * Get this stream's compression level
+     *
+     * @return the stream's compression level
+     * @throws IllegalStateException if the stream is only for decompressing
+     */
+    public int getLevel();
+
+    /**
+     * Change this stream's compression level
+     * <p>The new level applies to data compressed after this call, without interrupting the stream.</p>
+     *
+     * @param level the new compression level
+     * @throws IllegalArgumentException if the level is invalid
+     * @throws IllegalStateException    if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     */
+    public void setLevel(int level);
+
+    /**
+     * Get this stream's compression strategy
+     *
+     * @return the stream's compression strategy
+     * @throws IllegalArgumentException if the stream is only for decompressing
+     */
+    public CompressionStrategy getStrategy();
+
+    /**
+     * Change this stream's compression strategy
+     * <p>The new strategy applies to data compressed after this call, without interrupting the stream.</p>
+     *
+     * @param strategy the new strategy
+     * @throws NullPointerException          if the strategy is null
+     * @throws IllegalStateException         if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws UnsupportedOperationException if the backend doesn't support the strategy
+     */
+    public void setStrategy(CompressionStrategy strategy);
+
+    /**
+     * Reset this stream to its initial state, discarding the history of the data it's seen
+     * <p>This is much cheaper than creating a new stream, and keeps the stream's options, level and strategy.
+     * A finished stream can be reset to start another one.</p>
+     *
+     * @throws IllegalStateException if the stream is closed
+     */
+    public void reset();
+
+    /**
+     * Free this compressor
+     * <p>Sets the state to {@link State#CLOSED}</p>
+     */
+    public void close();
+
+    /**
+     * Create an independent stream in the same state as this one, which carries on from everything this one has processed
+     * <p>This is much cheaper than processing the same data again,
+     * so a stream can be primed with a prefix that's common to many messages and copied for each of them.
+     * The copy has its own statistics, and has to be closed separately.</p>
+     *
+     * @return the copy
+     * @throws UnsupportedOperationException if the backend can't copy its streams
+     * @throws IllegalStateException         if the stream is closed
+     */
+    public default CompressionEngine copy() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't copy its streams");
+    }
+
+    /**
+     * Check if this stream uses direct byte buffers in place, but copies native memory that's given by its address
+     * <p>Callers that have a direct buffer should pass it to the byte buffer methods instead of passing its address,
+     * like the JDK backend on Java 11 and later.</p>
+     *
+     * @return if the byte buffer methods are faster for direct buffers
+     */
+    public default boolean prefersBuffers() {
+        return false;
+    }
+
+    /**
+     * Compress from one region of memory into another
+     * <p>Each region is part of an array if its array is given, or native memory if it isn't.</p>
+     *
+     * @param inArray   the array holding the input, or null if the input is native memory
+     * @param inOffset  the offset of the input in its array, or the input's address if there's no array
+     * @param inLength  the number of input bytes
+     * @param outArray  the array to write the output to, or null if the output is native memory
+     * @param outOffset the offset of the output in its array, or the output's address if there's no array
+     * @param outLength the number of bytes available for output
+     * @param flush     how to flush the output once the input has been given to the compressor
+     * @return the status of the compression
+     * @throws IllegalStateException         if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws IndexOutOfBoundsException     if a region is outside its array
+     * @throws NullPointerException          if the flush mode is null
+     * @throws UnsupportedOperationException if the backend can't access native memory
+     */
+    public Status compressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength, FlushMode flush);
+
+    /**
+     * Compress from one region of memory into another, with a {@link FlushMode#SYNC sync flush} unless finishing
+     *
+     * @param inArray   the array holding the input, or null if the input is native memory
+     * @param inOffset  the offset of the input in its array, or the input's address if there's no array
+     * @param inLength  the number of input bytes
+     * @param outArray  the array to write the output to, or null if the output is native memory
+     * @param outOffset the offset of the output in its array, or the output's address if there's no array
+     * @param outLength the number of bytes available for output
+     * @param finish    if this is the last of the input
+     * @return the status of the compression
+     * @throws IllegalStateException         if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws IndexOutOfBoundsException     if a region is outside its array
+     * @throws UnsupportedOperationException if the backend can't access native memory
+     * @see #compressMemory(byte[], long, int, byte[], long, int, FlushMode)
+     */
+    public default Status compressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength, boolean finish) {
+        return compressMemory(inArray, inOffset, inLength, outArray, outOffset, outLength, FlushMode.of(finish));
+    }
+
+    /**
+     * Decompress from one region of memory into another
+     * <p>Each region is part of an array if its array is given, or native memory if it isn't.</p>
+     *
+     * @param inArray   the array holding the input, or null if the input is native memory
+     * @param inOffset  the offset of the input in its array, or the input's address if there's no array
+     * @param inLength  the number of input bytes
+     * @param outArray  the array to write the output to, or null if the output is native memory
+     * @param outOffset the offset of the output in its array, or the output's address if there's no array
+     * @param outLength the number of bytes available for output
+     * @return the status of the decompression
+     * @throws IllegalStateException         if the stream is only for compressing, or if the stream is closed
+     * @throws IndexOutOfBoundsException     if a region is outside its array
+     * @throws UnsupportedOperationException if the backend can't access native memory
+     * @throws InvalidDataException          if the compressed data is invalid
+     * @throws DecompressionLimitException   if the stream exceeded its {@link DecompressionLimits}
+     */
+    public Status decompressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength) throws InvalidDataException;
+
+    /**
+     * Get the number of input bytes consumed by the last call
+     *
+     * @return the number of bytes read
+     */
+    public int getBytesRead();
+
+    /**
+     * Get the number of output bytes produced by the last call
+     *
+     * @return the number of bytes written
+     */
+    public int getBytesWritten();
+
+    /**
+     * Compress as much data as possible from one array into another
+     *
+     * @param in        the array to compress
+     * @param inOffset  the offset of the input
+     * @param inLength  the number of input bytes
+     * @param out       the array to write the output to
+     * @param outOffset the offset of the output
+     * @param outLength the number of bytes available for output
+     * @param finish    if this is the last of the input
+     * @return the status of the compression
+     * @throws IllegalStateException     if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws NullPointerException      if any arrays are null
+     * @throws IndexOutOfBoundsException if a region is outside its array
+     */
+    public default Status compress(byte[] in, int inOffset, int inLength, byte[] out, int outOffset, int outLength, boolean finish) {
+        Preconditions.checkNotNull(in, "Null input array");
+        Preconditions.checkNotNull(out, "Null output array");
+        return compressMemory(in, inOffset, inLength, out, outOffset, outLength, finish);
+    }
+
+    /**
+     * Decompress as much data as possible from one array into another
+     *
+     * @param in        the array to decompress
+     * @param inOffset  the offset of the input
+     * @param inLength  the number of input bytes
+     * @param out       the array to write the output to
+     * @param outOffset the offset of the output
+     * @param outLength the number of bytes available for output
+     * @return the status of the decompression
+     * @throws IllegalStateException       if the stream is only for compressing, or if the stream is closed
+     * @throws NullPointerException        if any arrays are null
+     * @throws IndexOutOfBoundsException   if a region is outside its array
+     * @throws InvalidDataException        if the compressed data is invalid
+     * @throws DecompressionLimitException if the stream exceeded its {@link DecompressionLimits}
+     */
+    public default Status decompress(byte[] in, int inOffset, int inLength, byte[] out, int outOffset, int outLength) throws InvalidDataException {
+        Preconditions.checkNotNull(in, "Null input array");
+        Preconditions.checkNotNull(out, "Null output array");
+        return decompressMemory(in, inOffset, inLength, out, outOffset, outLength);
+    }
+
+    /**
+     * Compress as much data as possible from one region of native memory into another
+     *
+     * @param inAddress  the address of the input
+     * @param inLength   the number of input bytes
+     * @param outAddress the address of the output
+     * @param outLength  the number of bytes available for output
+     * @param finish     if this is the last of the input
+     * @return the status of the compression
+     * @throws IllegalStateException         if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws UnsupportedOperationException if the backend can't access native memory
+     */
+    public default Status compress(long inAddress, int inLength, long outAddress, int outLength, boolean finish) {
+        return compressMemory(null, inAddress, inLength, null, outAddress, outLength, finish);
+    }
+
+    /**
+     * Decompress as much data as possible from one region of native memory into another
+     *
+     * @param inAddress  the address of the input
+     * @param inLength   the number of input bytes
+     * @param outAddress the address of the output
+     * @param outLength  the number of bytes available for output
+     * @return the status of the decompression
+     * @throws IllegalStateException         if the stream is only for compressing, or if the stream is closed
+     * @throws UnsupportedOperationException if the backend can't access native memory
+     * @throws InvalidDataException          if the compressed data is invalid
+     * @throws DecompressionLimitException   if the stream exceeded its {@link DecompressionLimits}
+     */
+    public default Status decompress(long inAddress, int inLength, long outAddress, int outLength) throws InvalidDataException {
+        return decompressMemory(null, inAddress, inLength, null, outAddress, outLength);
+    }
+
+    /**
+     * Compress as much data as possible from the remaining bytes of one buffer into another
+     *
+     * @param in  the data to compress
+     * @param out the output buffer
+     * @return the status of the compression
+     * @throws IllegalStateException if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws NullPointerException  if any arguments are null
+     */
+    public default Status compress(ByteBuffer in, ByteBuffer out) {
+        return compress(in, out, false);
+    }
+
+    /**
+     * Compress as much data as possible from the remaining bytes of one buffer into another
+     * <p>Heap buffers are passed as arrays, and direct buffers as native memory, without wrapping either of them.</p>
+     *
+     * @param in     the data to compress
+     * @param out    the output buffer
+     * @param finish if this is the last of the input
+     * @return the status of the compression
+     * @throws IllegalStateException    if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws NullPointerException     if any arguments are null
+     * @throws IllegalArgumentException if the output is read-only
+     */
+    public default Status compress(ByteBuffer in, ByteBuffer out, boolean finish) {
+        return compress(in, out, FlushMode.of(finish));
+    }
+
+    /**
+     * Compress as much data as possible from the remaining bytes of one buffer into another, flushing in the given mode
+     * <p>Heap buffers are passed as arrays, and direct buffers as native memory, without wrapping either of them.</p>
+     *
+     * @param in    the data to compress
+     * @param out   the output buffer
+     * @param flush how to flush the output once the input has been given to the compressor
+     * @return the status of the compression
+     * @throws IllegalStateException    if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws NullPointerException     if any arguments are null
+     * @throws IllegalArgumentException if the output is read-only
+     */
+    public default Status compress(ByteBuffer in, ByteBuffer out, FlushMode flush) {
+        Preconditions.checkNotNull(in, "Null input buffer");
+        Preconditions.checkNotNull(out, "Null output buffer");
+        Preconditions.checkNotNull(flush, "Null flush mode");
+        Preconditions.checkArgument(!out.isReadOnly(), "Read-only output buffer");
+        Status status = compressMemory(
+                BufferMemory.array(in), BufferMemory.offset(in), in.remaining(),
+                BufferMemory.array(out), BufferMemory.offset(out), out.remaining(),
+                flush
+        );
+        in.position(in.position() + getBytesRead());
+        out.position(out.position() + getBytesWritten());
+        return status;
+    }
+
+    /**
+     * Decompress as much data as possible from the remaining bytes of one buffer into another
+     * <p>Heap buffers are passed as arrays, and direct buffers as native memory, without wrapping either of them.</p>
+     *
+     * @param in  the data to decompress
+     * @param out the output buffer
+     * @return the status of the decompression
+     * @throws IllegalStateException       if the stream is only for compressing, or if the stream is closed
+     * @throws NullPointerException        if any arguments are null
+     * @throws IllegalArgumentException    if the output is read-only
+     * @throws InvalidDataException        if the compressed data is invalid
+     * @throws DecompressionLimitException if the stream exceeded its {@link DecompressionLimits}
+     */
+    public default Status decompress(ByteBuffer in, ByteBuffer out) throws InvalidDataException {
+        Preconditions.checkNotNull(in, "Null input buffer");
+        Preconditions.checkNotNull(out, "Null output buffer");
+        Preconditions.checkArgument(!out.isReadOnly(), "Read-only output buffer");
+        Status status = decompressMemory(
+                BufferMemory.array(in), BufferMemory.offset(in), in.remaining(),
+                BufferMemory.array(out), BufferMemory.offset(out), out.remaining()
+        );
+        in.position(in.position() + getBytesRead());
+        out.position(out.position() + getBytesWritten());
+        return status;
+    }
+
+    public State getState();
+
+    public CompressionType getType();
+
+    /**
+     * Get the statistics for this compressor
+     *
+     * @return the statistics, or empty if the factory that created this compressor doesn't have metrics
+     * @see CompressionEngineFactory#withMetrics(net.techcable.accelerated_java.compression.metrics.CompressionMetrics)
+     */
+    public Optional<CompressorStatistics> getStatistics();
+
+    @RequiredArgsConstructor
+    @Getter
+    public enum State {
+        COMPRESSING("Stream is only for compressing!"),
+        DECOMPRESSING("Stream is only for decompressing!"),
+        FINISHED("Stream is finished!"),
+        CLOSED("Stream is closed!");
+
+        public void requireState(State expectedState) {
+            requireState(expectedState, getErrorMsg());
+        }
+
+        public void requireState(State expectedState, String msg) {
+            Preconditions.checkNotNull(expectedState, "Null state");
+            Preconditions.checkNotNull(msg, "Null message");
+            if (this != expectedState) {
+                throw new IllegalStateException(msg);
+            }
+        }
+
+
+        public void requireStateNot(State unexpectedState, String msg) {
+            Preconditions.checkNotNull(unexpectedState, "Null state");
+            Preconditions.checkNotNull(msg, "Null message");
+            if (this == unexpectedState) {
+                throw new IllegalArgumentException(msg);
+            }
+        }
+
+        private final String errorMsg;
+    }
+
+    public enum Status {
+        /**
+         * The compressor consumed all of its input
+         */
+        OK,
+        INSUFFICIENT_OUTPUT,
+        FINISHED,
+        /**
+         * The decompressor consumed all of its input without reaching the end of the stream,
+         * and can't make progress until it's given more.
+         */
+        NEEDS_INPUT,
+        /**
+         * The call decompressed its {@link DecompressionLimits#getMaxOutputPerCall() maximum output},
+         * and the stream can continue in another call.
+         */
+        OUTPUT_LIMIT_REACHED;
+    }
+}
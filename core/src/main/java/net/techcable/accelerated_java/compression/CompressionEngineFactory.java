@@ -0,0 +1,129 @@
+package net.techcable.accelerated_java.compression;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.common.base.Preconditions;
+
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+
+/**
+ * Creates {@link CompressionEngine compression engines} for a backend.
+ */
+public interface CompressionEngineFactory {
+    /**
+     * Compression level for fastest compression.
+     */
+    public static final int BEST_SPEED = 1;
+
+    /**
+     * Compression level for best compression.
+     */
+    public static final int BEST_COMPRESSION = 9;
+
+    /**
+     * Default compression level.
+     */
+    public static final int DEFAULT_COMPRESSION = -1;
+
+    public default CompressionEngine createDecompressor() {
+        return createDecompressor(CompressorOptions.DEFAULT);
+    }
+
+    /**
+     * Create a decompressor with the specified options
+     * <p>Only the window bits, chunk size and limits are relevant to decompressors.</p>
+     *
+     * @param options the options to use
+     * @return a new decompressor
+     * @throws NullPointerException          if the options are null
+     * @throws UnsupportedOperationException if this factory doesn't support the options
+     */
+    public CompressionEngine createDecompressor(CompressorOptions options);
+
+    public default CompressionEngine createCompressor() {
+        return createCompressor(DEFAULT_COMPRESSION);
+    }
+
+    public default CompressionEngine createCompressor(int level) {
+        return createCompressor(CompressorOptions.builder().level(level).build());
+    }
+
+    /**
+     * Create a compressor with the specified options
+     *
+     * @param options the options to use
+     * @return a new compressor
+     * @throws NullPointerException          if the options are null
+     * @throws UnsupportedOperationException if this factory doesn't support the options
+     */
+    public CompressionEngine createCompressor(CompressorOptions options);
+
+    /**
+     * Create a decompressor for inputs that are entirely in memory, if this backend has a faster way to decompress them
+     * <p>Only the wrapper and limits are relevant, and preset dictionaries aren't supported.</p>
+     *
+     * @param options the options to use
+     * @return the decompressor, or empty if the backend only decompresses streams or doesn't support the options
+     * @throws NullPointerException if the options are null
+     */
+    public default Optional<WholeInputDecompressor> createWholeInputDecompressor(CompressorOptions options) {
+        Preconditions.checkNotNull(options, "Null options");
+        return Optional.empty();
+    }
+
+    public CompressionType getType();
+
+    /**
+     * Get a factory that creates the same compressors as this one, but records their activity in the given metrics
+     * <p>Factories don't record anything by default, so metrics cost nothing unless they're requested.</p>
+     *
+     * @param metrics the metrics to record to
+     * @return a factory with metrics
+     * @throws NullPointerException if the metrics are null
+     */
+    public CompressionEngineFactory withMetrics(CompressionMetrics metrics);
+
+    /**
+     * Get the metrics this factory's compressors record to
+     *
+     * @return the metrics, or empty if metrics are disabled
+     */
+    public Optional<CompressionMetrics> getMetrics();
+
+    public static final CompressionEngineFactory JDK = ZLibJDKEngine.FACTORY;
+
+    /**
+     * Get the fastest available factory
+     * <p>This is the JNI library, falling back to the JDK's own zlib.
+     * On Java 22 and later, the system's zlib is bound through the foreign function API instead if the {@code accelerated_java.foreign} property is true.
+     * The JNI library is loaded from the classpath the first time it's needed, unless it's already been loaded.</p>
+     *
+     * @return the best factory
+     * @see #getFallbackReasons()
+     */
+    public static CompressionEngineFactory getInstance() {
+        if (ForeignBackend.FACTORY != null) {
+            return ForeignBackend.FACTORY;
+        } else if (NativeBackend.isAvailable()) {
+            return ZLibNativeEngine.FACTORY;
+        } else {
+            return JDK;
+        }
+    }
+
+    /**
+     * Explain why {@link #getInstance()} couldn't use the backends that are faster than the one it chose
+     *
+     * @return the reasons for each unusable backend, keyed by the name of the backend in order of preference
+     */
+    public static Map<String, String> getFallbackReasons() {
+        Map<String, String> reasons = new LinkedHashMap<>();
+        if (ForeignBackend.FACTORY != null) return reasons;
+        reasons.put("foreign", ForeignBackend.getFailure());
+        if (NativeBackend.isAvailable()) return reasons;
+        reasons.put("native", NativeBackend.getFailure() != null ? NativeBackend.getFailure() : "Not loaded");
+        return reasons;
+    }
+}
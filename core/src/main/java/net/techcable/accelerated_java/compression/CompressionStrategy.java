@@ -0,0 +1,40 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+/**
+ * Tunes the deflate algorithm for different kinds of data.
+ * <p>The strategy only affects the compression ratio and speed, never the correctness of the output,
+ * so decompressors don't need to know which strategy was used.</p>
+ */
+@RequiredArgsConstructor
+@Getter
+public enum CompressionStrategy {
+    /**
+     * The normal deflate algorithm
+     */
+    DEFAULT(0),
+    /**
+     * For data produced by a filter or predictor, consisting of small values with a somewhat random distribution.
+     * Uses fewer string matches and more huffman coding.
+     */
+    FILTERED(1),
+    /**
+     * Only use huffman coding, without any string matching
+     */
+    HUFFMAN_ONLY(2),
+    /**
+     * Limit string matches to a distance of one (run-length encoding).
+     * Almost as fast as {@link #HUFFMAN_ONLY}, but gives better compression for data with long runs, like bitmaps.
+     */
+    RLE(3),
+    /**
+     * Never use dynamic huffman codes, which allows a simpler decoder for special applications
+     */
+    FIXED(4);
+
+    /**
+     * The value of the corresponding zlib constant
+     */
+    private final int id;
+}
@@ -0,0 +1,227 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Parameters for creating a compressor or decompressor.
+ * <p>The defaults match the parameters used by {@link CompressionEngineFactory#createCompressor(int)},
+ * so options only need to specify what they want to change.
+ * Lowering the window bits and memory level can drastically reduce the memory used by each stream,
+ * at the cost of compression ratio.</p>
+ * <p>The JDK backend can't change the window size, use the {@link CompressionStrategy#RLE} and {@link CompressionStrategy#FIXED} strategies,
+ * or use the {@link ZLibWrapper#GZIP gzip wrapper}, and throws {@link UnsupportedOperationException} if it's asked to.
+ * It ignores the memory level, since that doesn't affect the output format.</p>
+ * <p>A preset dictionary primes the window with data that's likely to appear, which helps compress small inputs.
+ * The compressor and decompressor must use the same dictionary.</p>
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public final class CompressorOptions {
+    public static final int MIN_WINDOW_BITS = 8;
+    public static final int MAX_WINDOW_BITS = 15;
+    public static final int DEFAULT_MEM_LEVEL = 8;
+    public static final int MAX_MEM_LEVEL = 9;
+    public static final int MIN_CHUNK_SIZE = 64;
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+    public static final CompressorOptions DEFAULT = builder().build();
+
+    /**
+     * The compression level, which is ignored when decompressing
+     */
+    private final int level;
+    /**
+     * The compression strategy, which is ignored when decompressing
+     */
+    private final CompressionStrategy strategy;
+    /**
+     * The base two logarithm of the window size.
+     * <p>Decompressors need a window at least as large as the one used to compress the data.</p>
+     */
+    private final int windowBits;
+    /**
+     * The header and trailer around the deflate data, which the compressor and decompressor must agree on
+     * <p>Zlib can't compress raw deflate or gzip data with a window of 8 bits, although it can decompress it.
+     * Gzip streams can't have a preset dictionary.</p>
+     */
+    private final ZLibWrapper wrapper;
+    /**
+     * How much memory to use for the internal compression state, from 1 (minimum memory) to 9 (maximum memory).
+     * <p>This is ignored when decompressing.</p>
+     */
+    private final int memLevel;
+    /**
+     * The size of the temporary buffers used to copy data when the caller's buffers can't be used directly
+     */
+    private final int chunkSize;
+    /**
+     * The limits on the output of a decompressor, which are ignored when compressing
+     */
+    private final DecompressionLimits limits;
+    /**
+     * The preset dictionary, or null if there isn't one
+     */
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final byte[] dictionary;
+
+    private CompressorOptions(Builder builder) {
+        this.level = builder.level;
+        this.strategy = builder.strategy;
+        this.windowBits = builder.windowBits;
+        this.wrapper = builder.wrapper;
+        this.memLevel = builder.memLevel;
+        this.chunkSize = builder.chunkSize;
+        this.limits = builder.limits;
+        this.dictionary = builder.dictionary;
+    }
+
+    /**
+     * Get the preset dictionary
+     *
+     * @return a copy of the dictionary, or empty if there isn't one
+     */
+    public Optional<byte[]> getDictionary() {
+        return dictionary != null ? Optional.of(dictionary.clone()) : Optional.empty();
+    }
+
+    /**
+     * Get the preset dictionary without copying it, for the backends
+     *
+     * @return the dictionary, or null if there isn't one
+     */
+    /* default */ byte[] getRawDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Check if a stream with these options sets its dictionary as soon as it starts
+     * <p>Raw deflate streams and compressors set it upfront,
+     * but zlib streams only set it when the header asks for it.</p>
+     *
+     * @param compressing if the stream is compressing
+     * @return if the dictionary is set upfront
+     */
+    /* default */ boolean isDictionaryUpfront(boolean compressing) {
+        return dictionary != null && (compressing || wrapper == ZLibWrapper.NONE);
+    }
+
+    /**
+     * Get the window bits to pass to zlib, which also encode the wrapper
+     *
+     * @return zlib's window bits
+     */
+    /* default */ int getZLibWindowBits() {
+        return wrapper.toZLibWindowBits(windowBits);
+    }
+
+    /**
+     * Estimate the native memory used by a stream with these options
+     * <p>This uses the formulas from zlib's documentation, and includes the temporary buffers.</p>
+     *
+     * @param compressing if the stream is compressing
+     * @return the estimated memory usage in bytes
+     */
+    public long estimateMemoryUsage(boolean compressing) {
+        final long streamSize;
+        if (compressing) {
+            // NOTE: zlib always uses a window of at least 512 bytes when compressing
+            int effectiveWindowBits = Math.max(windowBits, 9);
+            streamSize = (1L << (effectiveWindowBits + 2)) + (1L << (memLevel + 9)) + 6 * 1024;
+        } else {
+            streamSize = (1L << windowBits) + 7 * 1024;
+        }
+        return streamSize + 2L * chunkSize;
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .level(level)
+                .strategy(strategy)
+                .windowBits(windowBits)
+                .wrapper(wrapper)
+                .memLevel(memLevel)
+                .chunkSize(chunkSize)
+                .limits(limits)
+                .dictionary(dictionary);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private int level = CompressionEngineFactory.DEFAULT_COMPRESSION;
+        private CompressionStrategy strategy = CompressionStrategy.DEFAULT;
+        private int windowBits = MAX_WINDOW_BITS;
+        private ZLibWrapper wrapper = ZLibWrapper.ZLIB;
+        private int memLevel = DEFAULT_MEM_LEVEL;
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private DecompressionLimits limits = DecompressionLimits.NONE;
+        private byte[] dictionary;
+
+        private Builder() {}
+
+        public Builder level(int level) {
+            checkArgument(level == CompressionEngineFactory.DEFAULT_COMPRESSION || level >= 0 && level <= CompressionEngineFactory.BEST_COMPRESSION, "Invalid level %s", level);
+            this.level = level;
+            return this;
+        }
+
+        public Builder strategy(CompressionStrategy strategy) {
+            this.strategy = checkNotNull(strategy, "Null strategy");
+            return this;
+        }
+
+        public Builder windowBits(int windowBits) {
+            checkArgument(windowBits >= MIN_WINDOW_BITS && windowBits <= MAX_WINDOW_BITS, "Invalid window bits %s", windowBits);
+            this.windowBits = windowBits;
+            return this;
+        }
+
+        public Builder wrapper(ZLibWrapper wrapper) {
+            this.wrapper = checkNotNull(wrapper, "Null wrapper");
+            return this;
+        }
+
+        public Builder memLevel(int memLevel) {
+            checkArgument(memLevel >= 1 && memLevel <= MAX_MEM_LEVEL, "Invalid memory level %s", memLevel);
+            this.memLevel = memLevel;
+            return this;
+        }
+
+        public Builder chunkSize(int chunkSize) {
+            checkArgument(chunkSize >= MIN_CHUNK_SIZE, "Chunk size %s is less than the minimum %s", chunkSize, MIN_CHUNK_SIZE);
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder limits(DecompressionLimits limits) {
+            this.limits = checkNotNull(limits, "Null limits");
+            return this;
+        }
+
+        /**
+         * Set the preset dictionary
+         * <p>Only the last window's worth of the dictionary is used.</p>
+         *
+         * @param dictionary the dictionary, which is copied, or null for no dictionary
+         * @return this builder
+         * @throws IllegalArgumentException if the dictionary is empty
+         */
+        public Builder dictionary(byte[] dictionary) {
+            checkArgument(dictionary == null || dictionary.length > 0, "Empty dictionary");
+            this.dictionary = dictionary != null ? dictionary.clone() : null;
+            return this;
+        }
+
+        public CompressorOptions build() {
+            checkState(dictionary == null || wrapper != ZLibWrapper.GZIP, "Gzip streams can't have a preset dictionary");
+            return new CompressorOptions(this);
+        }
+    }
+}
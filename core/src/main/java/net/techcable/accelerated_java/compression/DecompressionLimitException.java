@@ -0,0 +1,28 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import net.techcable.accelerated_java.InvalidDataException;
+
+/**
+ * Thrown when a decompressor exceeds one of its {@link DecompressionLimits}.
+ * <p>The stream can't continue after this, and should be closed.</p>
+ */
+@Getter
+public class DecompressionLimitException extends InvalidDataException {
+    private final Limit limit;
+
+    public DecompressionLimitException(String message, Limit limit) {
+        super(message);
+        this.limit = limit;
+    }
+
+    public enum Limit {
+        TOTAL_OUTPUT,
+        EXPANSION_RATIO,
+        /**
+         * A single message was larger than its maximum size, for protocols that decompress one message at a time
+         */
+        MESSAGE_SIZE;
+    }
+}
@@ -0,0 +1,141 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Limits on the output of a decompressor, so untrusted data can be decompressed without pre-sizing the output.
+ * <p>The total output and expansion ratio limits protect against decompression bombs,
+ * and make the decompressor throw a {@link DecompressionLimitException} once they're exceeded.
+ * They're enforced before the output buffer grows, so the decompressor never writes more than one byte past them.
+ * Since the start of a stream can legitimately expand much more than the whole stream,
+ * the ratio is only enforced once the output is larger than the grace size.</p>
+ * <p>The per-call limit only bounds how much a single call can write,
+ * and makes it return {@link CompressionEngine.Status#OUTPUT_LIMIT_REACHED} so the caller can consume the output before continuing.</p>
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public final class DecompressionLimits {
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    public static final long DEFAULT_RATIO_GRACE_SIZE = 64 * 1024;
+    public static final DecompressionLimits NONE = builder().build();
+
+    /**
+     * The maximum number of bytes the stream can decompress to
+     */
+    private final long maxOutput;
+    /**
+     * The maximum ratio of decompressed bytes to compressed bytes
+     */
+    private final double maxExpansionRatio;
+    /**
+     * The amount of output before the expansion ratio is enforced
+     */
+    private final long ratioGraceSize;
+    /**
+     * The maximum number of bytes a single call can decompress
+     */
+    private final long maxOutputPerCall;
+
+    private DecompressionLimits(Builder builder) {
+        this.maxOutput = builder.maxOutput;
+        this.maxExpansionRatio = builder.maxExpansionRatio;
+        this.ratioGraceSize = builder.ratioGraceSize;
+        this.maxOutputPerCall = builder.maxOutputPerCall;
+    }
+
+    /**
+     * Get how many bytes the decompressor may write before it has to check the limits again
+     * <p>This assumes all the available input is consumed, and allows one extra byte past the stream limits
+     * so that {@link #check(long, long)} can tell when they're exceeded.</p>
+     *
+     * @param totalIn     the number of compressed bytes the stream has consumed
+     * @param availableIn the number of compressed bytes available to the next call
+     * @param totalOut    the number of bytes the stream has decompressed
+     * @param callOut     the number of bytes decompressed by the current call
+     * @return the number of bytes the decompressor may write, which is zero only if the per-call limit was reached
+     */
+    /* default */ long allowedOutput(long totalIn, long availableIn, long totalOut, long callOut) {
+        long allowed = maxOutputPerCall - callOut;
+        if (maxOutput != UNLIMITED) {
+            allowed = Math.min(allowed, maxOutput - totalOut + 1);
+        }
+        if (maxExpansionRatio != Double.POSITIVE_INFINITY) {
+            double ratioLimit = Math.max(ratioGraceSize, maxExpansionRatio * (totalIn + availableIn));
+            allowed = Math.min(allowed, (long) Math.min(ratioLimit, UNLIMITED - 1) - totalOut + 1);
+        }
+        return Math.max(allowed, 0);
+    }
+
+    /**
+     * Check that the stream hasn't exceeded its limits
+     *
+     * @param totalIn  the number of compressed bytes the stream has consumed
+     * @param totalOut the number of bytes the stream has decompressed
+     * @throws DecompressionLimitException if a limit was exceeded
+     */
+    /* default */ void check(long totalIn, long totalOut) throws DecompressionLimitException {
+        if (totalOut > maxOutput) {
+            throw new DecompressionLimitException("Decompressed more than the maximum of " + maxOutput + " bytes", DecompressionLimitException.Limit.TOTAL_OUTPUT);
+        } else if (totalOut > ratioGraceSize && totalOut > maxExpansionRatio * totalIn) {
+            throw new DecompressionLimitException("Decompressed " + totalIn + " bytes into " + totalOut + " bytes, more than the maximum ratio of " + maxExpansionRatio, DecompressionLimitException.Limit.EXPANSION_RATIO);
+        }
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .maxOutput(maxOutput)
+                .maxExpansionRatio(maxExpansionRatio, ratioGraceSize)
+                .maxOutputPerCall(maxOutputPerCall);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private long maxOutput = UNLIMITED;
+        private double maxExpansionRatio = Double.POSITIVE_INFINITY;
+        private long ratioGraceSize = DEFAULT_RATIO_GRACE_SIZE;
+        private long maxOutputPerCall = UNLIMITED;
+
+        private Builder() {}
+
+        public Builder maxOutput(long maxOutput) {
+            checkArgument(maxOutput >= 0, "Negative maximum output %s", maxOutput);
+            this.maxOutput = maxOutput;
+            return this;
+        }
+
+        public Builder maxExpansionRatio(double ratio) {
+            return maxExpansionRatio(ratio, DEFAULT_RATIO_GRACE_SIZE);
+        }
+
+        /**
+         * Limit the ratio of decompressed bytes to compressed bytes
+         *
+         * @param ratio     the maximum ratio
+         * @param graceSize the amount of output before the ratio is enforced
+         * @return this builder
+         */
+        public Builder maxExpansionRatio(double ratio, long graceSize) {
+            checkArgument(ratio >= 1, "Invalid expansion ratio %s", ratio);
+            checkArgument(graceSize >= 0, "Negative grace size %s", graceSize);
+            this.maxExpansionRatio = ratio;
+            this.ratioGraceSize = graceSize;
+            return this;
+        }
+
+        public Builder maxOutputPerCall(long maxOutputPerCall) {
+            checkArgument(maxOutputPerCall > 0, "Non-positive maximum output per call %s", maxOutputPerCall);
+            this.maxOutputPerCall = maxOutputPerCall;
+            return this;
+        }
+
+        public DecompressionLimits build() {
+            return new DecompressionLimits(this);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+/**
+ * How much of the compressed data a call makes available once it's given the last of its input.
+ * <p>Flushing lets the other side decompress everything written so far, but ends the current block,
+ * so flushing after many small writes costs both the bytes of each flush and the matches the next block could have found.
+ * Input before the last of a call is never flushed.</p>
+ * <p>The JDK backend only supports {@link #NONE}, {@link #SYNC}, {@link #FULL} and {@link #FINISH},
+ * and does a sync flush for the other modes, which also makes all the output available.</p>
+ */
+@RequiredArgsConstructor
+@Getter
+public enum FlushMode {
+    /**
+     * Don't flush, letting the compressor decide how much data to buffer, which gives the best compression
+     */
+    NONE(0),
+    /**
+     * Flush all the output, ending the block with an empty fixed block instead of aligning it to a byte.
+     * Deprecated by zlib in favor of {@link #SYNC}.
+     */
+    PARTIAL(1),
+    /**
+     * Flush all the output and align it to a byte, so everything written so far can be decompressed
+     */
+    SYNC(2),
+    /**
+     * Flush like {@link #SYNC}, and also forget the history, so decompression can restart from this point.
+     * This hurts compression if used often.
+     */
+    FULL(3),
+    /**
+     * Flush all the output and finish the stream
+     */
+    FINISH(4),
+    /**
+     * End the current block without flushing its last bits, which doesn't add an empty block
+     */
+    BLOCK(5);
+
+    /**
+     * The value of the corresponding zlib constant
+     */
+    private final int id;
+
+    /**
+     * Get the flush mode the methods that take a finish flag use
+     *
+     * @param finish if this is the last of the input
+     * @return {@link #FINISH} if finishing, otherwise {@link #SYNC}
+     */
+    public static FlushMode of(boolean finish) {
+        return finish ? FINISH : SYNC;
+    }
+}
@@ -0,0 +1,47 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Loads the zlib backend that binds zlib through the foreign function API, if it's usable.
+ * <p>The backend is only included in the multi-release jar for Java 22 and later, so it has to be loaded reflectively.
+ * It's only used once it's enabled by setting the {@code accelerated_java.foreign} system property to true,
+ * since it isn't built or tested by default.</p>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+/* default */ final class ForeignBackend {
+    /**
+     * Why the foreign backend is unavailable, or null if it's available
+     */
+    private static String failure;
+    /**
+     * The factory for the foreign backend, or null if it's unavailable
+     */
+    /* default */ static final CompressionEngineFactory FACTORY = loadFactory();
+
+    private static CompressionEngineFactory loadFactory() {
+        if (!Boolean.getBoolean("accelerated_java.foreign")) {
+            failure = "Not enabled by the accelerated_java.foreign property";
+            return null;
+        }
+        try {
+            Class<?> type = Class.forName("net.techcable.accelerated_java.compression.ZLibForeignEngine");
+            Method loadFactory = type.getDeclaredMethod("loadFactory");
+            return (CompressionEngineFactory) loadFactory.invoke(null);
+        } catch (ClassNotFoundException | UnsupportedClassVersionError e) {
+            failure = "Requires Java 22 or later";
+        } catch (InvocationTargetException e) {
+            failure = "Unable to bind zlib: " + e.getCause();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            failure = "Unable to load: " + e;
+        }
+        return null;
+    }
+
+    /* default */ static String getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,66 @@
+package net.techcable.accelerated_java.compression;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The byte buffer methods of {@link Deflater} and {@link Inflater}, which were added in Java 11.
+ * <p>They pass direct buffers to zlib in place, so the JDK backend doesn't have to copy native memory through arrays.
+ * The implementation is only included in the multi-release jar for Java 11 and later, so it has to be loaded reflectively.</p>
+ */
+/* default */ abstract class JDKBufferAccess {
+    /**
+     * The byte buffer methods, or null if they're unavailable
+     */
+    /* default */ static final JDKBufferAccess INSTANCE = load();
+
+    private static JDKBufferAccess load() {
+        try {
+            Class<?> type = Class.forName("net.techcable.accelerated_java.compression.JDKBufferAccessImpl");
+            return (JDKBufferAccess) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Requires Java 11 or later
+            return null;
+        }
+    }
+
+    /**
+     * Give the remaining bytes of a buffer to the deflater
+     * <p>The deflater advances the buffer's position as it consumes the input.</p>
+     *
+     * @param deflater the deflater
+     * @param input    the input
+     */
+    /* default */ abstract void setInput(Deflater deflater, ByteBuffer input);
+
+    /**
+     * Compress into the remaining space of a buffer, advancing its position past the output
+     *
+     * @param deflater the deflater
+     * @param output   the output
+     * @param flush    the deflater's flush mode
+     * @return the number of bytes written
+     */
+    /* default */ abstract int deflate(Deflater deflater, ByteBuffer output, int flush);
+
+    /**
+     * Give the remaining bytes of a buffer to the inflater
+     * <p>The inflater advances the buffer's position as it consumes the input.</p>
+     *
+     * @param inflater the inflater
+     * @param input    the input
+     */
+    /* default */ abstract void setInput(Inflater inflater, ByteBuffer input);
+
+    /**
+     * Decompress into the remaining space of a buffer, advancing its position past the output
+     *
+     * @param inflater the inflater
+     * @param output   the output
+     * @return the number of bytes written
+     * @throws DataFormatException if the input is invalid
+     */
+    /* default */ abstract int inflate(Inflater inflater, ByteBuffer output) throws DataFormatException;
+}
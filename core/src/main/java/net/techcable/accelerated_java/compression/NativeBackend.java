@@ -0,0 +1,47 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import net.techcable.accelerated_java.jni.Native;
+
+/**
+ * Loads the JNI library from the classpath the first time it's needed, unless it's already been loaded.
+ * <p>This can be disabled by setting the {@code accelerated_java.native} system property to false.</p>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+/* default */ final class NativeBackend {
+    private static boolean attempted;
+    /**
+     * Why the JNI library couldn't be loaded, or null if it hasn't failed
+     */
+    private static String failure;
+
+    /**
+     * Check if the JNI library is loaded, trying to load it from the classpath if it hasn't been tried before
+     *
+     * @return if the library is loaded
+     */
+    /* default */ static boolean isAvailable() {
+        return Native.LIBRARY.isLoaded() || tryLoad();
+    }
+
+    private static synchronized boolean tryLoad() {
+        if (!attempted) {
+            attempted = true;
+            if (!Boolean.parseBoolean(System.getProperty("accelerated_java.native", "true"))) {
+                failure = "Disabled by the accelerated_java.native property";
+                return false;
+            }
+            try {
+                Native.LIBRARY.loadFromClasspath(NativeBackend.class.getClassLoader());
+            } catch (UnsatisfiedLinkError | RuntimeException e) {
+                failure = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+        }
+        return Native.LIBRARY.isLoaded();
+    }
+
+    /* default */ static synchronized String getFailure() {
+        return Native.LIBRARY.isLoaded() ? null : failure;
+    }
+}
@@ -0,0 +1,346 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.nio.ByteOrder;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.jni.Native;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A reversible transform of an array of fixed-width numbers, which makes it much more compressible.
+ * <p>Each element is first transformed against the elements before it, which turns slowly changing values into small ones,
+ * then the bytes or bits of the elements are shuffled so the same byte or bit of every element is stored together, like Blosc.
+ * Deflate finds long runs in the high bytes that hardly change, instead of a short repeat every element.</p>
+ * <p>Integers compress best with a delta, or a delta of deltas for evenly spaced values like timestamps,
+ * and floating point numbers with the exclusive or of consecutive values, since their bits are shared instead of their differences.
+ * Bytes after the last whole element are copied unchanged.
+ * A filter is described by a two byte {@link #getHeader() header}, so the data can be restored without knowing the filter up front.</p>
+ */
+@EqualsAndHashCode
+@ToString
+public final class NumericFilter {
+    /**
+     * The size of a filter's header in bytes
+     */
+    public static final int HEADER_SIZE = 2;
+    private static final int FLAG_LITTLE_ENDIAN = 1 << 4;
+
+    /**
+     * Integers, delta encoded and byte shuffled
+     */
+    public static final NumericFilter LONGS = of(Transform.DELTA, Shuffle.BYTE, 8, ByteOrder.BIG_ENDIAN);
+    /**
+     * Evenly spaced integers like timestamps, delta of delta encoded and byte shuffled
+     */
+    public static final NumericFilter TIMESTAMPS = of(Transform.DELTA_OF_DELTA, Shuffle.BYTE, 8, ByteOrder.BIG_ENDIAN);
+    /**
+     * Double precision floating point numbers, exclusive or encoded and byte shuffled
+     */
+    public static final NumericFilter DOUBLES = of(Transform.XOR, Shuffle.BYTE, 8, ByteOrder.BIG_ENDIAN);
+
+    @Getter
+    private final Transform transform;
+    @Getter
+    private final Shuffle shuffle;
+    /**
+     * The size of each element in bytes
+     */
+    @Getter
+    private final int width;
+    /**
+     * The byte order of the elements, which only matters to the delta transforms, since shuffles and exclusive ors work on bytes
+     */
+    @Getter
+    private final ByteOrder order;
+
+    private NumericFilter(Transform transform, Shuffle shuffle, int width, ByteOrder order) {
+        this.transform = checkNotNull(transform, "Null transform");
+        this.shuffle = checkNotNull(shuffle, "Null shuffle");
+        checkArgument(width == 1 || width == 2 || width == 4 || width == 8, "Invalid width %s", width);
+        this.width = width;
+        this.order = checkNotNull(order, "Null byte order");
+    }
+
+    /**
+     * Get a filter
+     *
+     * @param transform how each element is transformed against the ones before it
+     * @param shuffle   how the transformed elements are rearranged
+     * @param width     the size of each element in bytes, which is 1, 2, 4 or 8
+     * @param order     the byte order of the elements
+     * @return the filter
+     * @throws NullPointerException     if any arguments are null
+     * @throws IllegalArgumentException if the width is invalid
+     */
+    public static NumericFilter of(Transform transform, Shuffle shuffle, int width, ByteOrder order) {
+        return new NumericFilter(transform, shuffle, width, order);
+    }
+
+    /**
+     * Get the two byte header describing this filter, in big endian order
+     *
+     * @return the header
+     */
+    public int getHeader() {
+        return getFlags() << 8 | width;
+    }
+
+    private int getFlags() {
+        return transform.ordinal() | shuffle.ordinal() << 2 | (order == ByteOrder.LITTLE_ENDIAN ? FLAG_LITTLE_ENDIAN : 0);
+    }
+
+    /**
+     * Get the filter a header describes
+     *
+     * @param header the header, in big endian order
+     * @return the filter
+     * @throws InvalidDataException if the header is invalid
+     */
+    public static NumericFilter fromHeader(int header) throws InvalidDataException {
+        int flags = header >>> 8, width = header & 0xFF;
+        int transform = flags & 3, shuffle = flags >>> 2 & 3;
+        if ((flags & ~(FLAG_LITTLE_ENDIAN | 0xF)) != 0 || shuffle >= Shuffle.VALUES.length || Integer.bitCount(width) != 1 || width > 8) {
+            throw new InvalidDataException("Invalid filter header 0x" + Integer.toHexString(header));
+        }
+        ByteOrder order = (flags & FLAG_LITTLE_ENDIAN) != 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        return of(Transform.VALUES[transform], Shuffle.VALUES[shuffle], width, order);
+    }
+
+    /**
+     * Filter part of an array into another array
+     *
+     * @param src       the array to filter
+     * @param srcOffset the offset of the data to filter
+     * @param dst       the array to write the filtered data to, which can't overlap the data
+     * @param dstOffset the offset to write the filtered data to
+     * @param length    the number of bytes to filter
+     * @throws IndexOutOfBoundsException if a region is outside its array
+     */
+    public void apply(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        checkPositionIndexes(srcOffset, srcOffset + length, src.length);
+        checkPositionIndexes(dstOffset, dstOffset + length, dst.length);
+        filter(src, srcOffset, dst, dstOffset, length, false);
+    }
+
+    /**
+     * Restore filtered data from part of an array into another array
+     *
+     * @param src       the filtered data
+     * @param srcOffset the offset of the filtered data
+     * @param dst       the array to write the original data to, which can't overlap the filtered data
+     * @param dstOffset the offset to write the original data to
+     * @param length    the number of bytes to restore
+     * @throws IndexOutOfBoundsException if a region is outside its array
+     */
+    public void invert(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        checkPositionIndexes(srcOffset, srcOffset + length, src.length);
+        checkPositionIndexes(dstOffset, dstOffset + length, dst.length);
+        filter(src, srcOffset, dst, dstOffset, length, true);
+    }
+
+    /**
+     * Filter a region of native memory into another, with the JNI library
+     *
+     * @param src    the address of the data to filter
+     * @param dst    the address to write the filtered data to, which can't overlap the data
+     * @param length the number of bytes to filter
+     * @throws IllegalArgumentException      if the length is negative
+     * @throws UnsupportedOperationException if the JNI library isn't loaded
+     */
+    public void applyMemory(long src, long dst, int length) {
+        Native.filterMemory(getFlags(), width, src, dst, length, false);
+    }
+
+    /**
+     * Restore filtered data from a region of native memory into another, with the JNI library
+     *
+     * @param src    the address of the filtered data
+     * @param dst    the address to write the original data to, which can't overlap the filtered data
+     * @param length the number of bytes to restore
+     * @throws IllegalArgumentException      if the length is negative
+     * @throws UnsupportedOperationException if the JNI library isn't loaded
+     */
+    public void invertMemory(long src, long dst, int length) {
+        Native.filterMemory(getFlags(), width, src, dst, length, true);
+    }
+
+    /*
+     * The layout of filtered data, which the JNI library's version matches:
+     * - The first elements are shuffled. Byte shuffles move byte b of element i to b * shuffled + i.
+     *   Bit shuffles work on groups of eight elements, and move bit k of byte b of element i to bit i % 8 of byte (b * 8 + k) * (shuffled / 8) + i / 8.
+     * - Elements after the shuffled ones, since bit shuffles only shuffle whole groups, are transformed in place.
+     * - Bytes after the last whole element are copied.
+     */
+
+    private void filter(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length, boolean invert) {
+        final int count = length / width;
+        final int shuffled = shuffle == Shuffle.BYTE ? count : shuffle == Shuffle.BIT ? count & ~7 : 0;
+        final byte[] filtered = invert ? src : dst, plain = invert ? dst : src;
+        final int filteredOffset = invert ? srcOffset : dstOffset, plainOffset = invert ? dstOffset : srcOffset;
+        final boolean bigEndian = order == ByteOrder.BIG_ENDIAN;
+        final TransformState state = new TransformState(transform, invert);
+        int index = 0;
+        if (shuffle == Shuffle.BIT) {
+            final long[] group = new long[8];
+            final int rowLength = shuffled / 8;
+            for (; index < shuffled; index += 8) {
+                final int column = filteredOffset + index / 8;
+                if (invert) {
+                    for (int t = 0; t < 8; t++) group[t] = 0;
+                    for (int b = 0; b < width; b++) {
+                        long word = 0;
+                        for (int k = 0; k < 8; k++) word |= (filtered[column + (b * 8 + k) * rowLength] & 0xFFL) << 8 * k;
+                        word = transposeBits(word);
+                        final int shift = 8 * (bigEndian ? width - 1 - b : b);
+                        for (int t = 0; t < 8; t++) group[t] |= (word >>> 8 * t & 0xFF) << shift;
+                    }
+                    for (int t = 0; t < 8; t++) {
+                        writeElement(plain, plainOffset + (index + t) * width, 1, state.next(group[t]), width, bigEndian);
+                    }
+                } else {
+                    for (int t = 0; t < 8; t++) {
+                        group[t] = state.next(readElement(plain, plainOffset + (index + t) * width, 1, width, bigEndian));
+                    }
+                    for (int b = 0; b < width; b++) {
+                        final int shift = 8 * (bigEndian ? width - 1 - b : b);
+                        long word = 0;
+                        for (int t = 0; t < 8; t++) word |= (group[t] >>> shift & 0xFF) << 8 * t;
+                        word = transposeBits(word);
+                        for (int k = 0; k < 8; k++) filtered[column + (b * 8 + k) * rowLength] = (byte) (word >>> 8 * k);
+                    }
+                }
+            }
+        } else if (shuffle == Shuffle.BYTE) {
+            for (; index < shuffled; index++) {
+                final int plainIndex = plainOffset + index * width, filteredIndex = filteredOffset + index;
+                if (invert) {
+                    writeElement(plain, plainIndex, 1, state.next(readElement(filtered, filteredIndex, shuffled, width, bigEndian)), width, bigEndian);
+                } else {
+                    writeElement(filtered, filteredIndex, shuffled, state.next(readElement(plain, plainIndex, 1, width, bigEndian)), width, bigEndian);
+                }
+            }
+        }
+        for (; index < count; index++) {
+            final int offset = index * width;
+            writeElement(dst, dstOffset + offset, 1, state.next(readElement(src, srcOffset + offset, 1, width, bigEndian)), width, bigEndian);
+        }
+        final int tail = count * width;
+        System.arraycopy(src, srcOffset + tail, dst, dstOffset + tail, length - tail);
+    }
+
+    /**
+     * Read an element whose bytes are a given distance apart
+     */
+    private static long readElement(byte[] array, int offset, int stride, int width, boolean bigEndian) {
+        long value = 0;
+        for (int b = 0; b < width; b++) {
+            final long next = array[offset + b * stride] & 0xFFL;
+            value |= next << 8 * (bigEndian ? width - 1 - b : b);
+        }
+        return value;
+    }
+
+    /**
+     * Write the low bytes of an element a given distance apart
+     */
+    private static void writeElement(byte[] array, int offset, int stride, long value, int width, boolean bigEndian) {
+        for (int b = 0; b < width; b++) {
+            array[offset + b * stride] = (byte) (value >>> 8 * (bigEndian ? width - 1 - b : b));
+        }
+    }
+
+    /**
+     * Transpose a matrix of eight rows of eight bits, with byte i as row i
+     *
+     * @param word the matrix
+     * @return the transposed matrix, with bit j of byte i moved to bit i of byte j
+     */
+    /* default */ static long transposeBits(long word) {
+        long t = (word ^ word >>> 7) & 0x00AA00AA00AA00AAL;
+        word ^= t ^ t << 7;
+        t = (word ^ word >>> 14) & 0x0000CCCC0000CCCCL;
+        word ^= t ^ t << 14;
+        t = (word ^ word >>> 28) & 0x00000000F0F0F0F0L;
+        return word ^ t ^ t << 28;
+    }
+
+    /**
+     * The elements a transform has seen so far
+     */
+    @RequiredArgsConstructor
+    private static final class TransformState {
+        private final Transform transform;
+        private final boolean invert;
+        /**
+         * The last original element, and the difference between the last two
+         */
+        private long previous, previousDelta;
+
+        /**
+         * Transform the next element, or restore it if inverting
+         */
+        private long next(long value) {
+            final long result;
+            switch (transform) {
+                case DELTA:
+                    result = invert ? previous + value : value - previous;
+                    previous = invert ? result : value;
+                    return result;
+                case DELTA_OF_DELTA: {
+                    final long delta = invert ? previousDelta + value : value - previous;
+                    result = invert ? previous + delta : delta - previousDelta;
+                    previous = invert ? result : value;
+                    previousDelta = delta;
+                    return result;
+                }
+                case XOR:
+                    result = previous ^ value;
+                    previous = invert ? result : value;
+                    return result;
+                default:
+                    return value;
+            }
+        }
+    }
+
+    /**
+     * How each element is transformed against the elements before it
+     */
+    public enum Transform {
+        NONE,
+        /**
+         * The difference from the previous element, for integers
+         */
+        DELTA,
+        /**
+         * The difference from the previous element's difference, for evenly spaced integers
+         */
+        DELTA_OF_DELTA,
+        /**
+         * The exclusive or with the previous element, for floating point numbers
+         */
+        XOR;
+
+        private static final Transform[] VALUES = values();
+    }
+
+    /**
+     * How the transformed elements are rearranged
+     */
+    public enum Shuffle {
+        NONE,
+        /**
+         * Group the same byte of every element together
+         */
+        BYTE,
+        /**
+         * Group the same bit of every element together, which helps when only a few bits of each element change
+         */
+        BIT;
+
+        private static final Shuffle[] VALUES = values();
+    }
+}
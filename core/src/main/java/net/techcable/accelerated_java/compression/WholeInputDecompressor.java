@@ -0,0 +1,74 @@
+package net.techcable.accelerated_java.compression;
+
+import java.util.Optional;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+
+/**
+ * Decompresses inputs that are entirely in native memory, each in a single call.
+ * <p>Since a call never stops part way through its input, the backend doesn't have to save the state of the stream between calls,
+ * which is faster than a {@link CompressionEngine} for large inputs.
+ * Unknown amounts of output are written to a chain of regions that the caller supplies as they fill up.</p>
+ * <p>Each call decompresses an independent input, so a decompressor can be reused without resetting it.</p>
+ *
+ * @see CompressionEngineFactory#createWholeInputDecompressor(CompressorOptions)
+ */
+public interface WholeInputDecompressor extends AutoCloseable {
+    /**
+     * Decompress a whole input
+     * <p>The output is written to the first region until it's full, and then to the regions the chain supplies,
+     * which are the same length as the first.
+     * The {@link DecompressionLimits} are checked each time a region fills up, and once the input is finished,
+     * since there's only one call the limit on the output of each call doesn't apply.</p>
+     *
+     * @param inAddress  the address of the input
+     * @param inLength   the length of the input
+     * @param outAddress the address of the first output region
+     * @param outLength  the length of the first output region
+     * @param chain      the chain of further output regions, or null to stop once the first region is full
+     * @return {@link Status#FINISHED}, or {@link Status#INSUFFICIENT_OUTPUT} if the first region filled up without a chain,
+     * in which case the output is incomplete and the input has to be decompressed again with more room
+     * @throws IllegalArgumentException    if the input length is negative, or the output length isn't positive
+     * @throws IllegalStateException       if the decompressor is closed
+     * @throws InvalidDataException        if the input is invalid or truncated
+     * @throws DecompressionLimitException if the output exceeded the {@link DecompressionLimits}
+     */
+    public Status decompress(long inAddress, int inLength, long outAddress, int outLength, OutputChain chain) throws InvalidDataException;
+
+    /**
+     * Get the number of bytes read by the last call, including any header and trailer
+     *
+     * @return the number of bytes read
+     */
+    public int getBytesRead();
+
+    /**
+     * Get the number of bytes written by the last call, across every region
+     *
+     * @return the number of bytes written
+     */
+    public long getBytesWritten();
+
+    public Optional<CompressorStatistics> getStatistics();
+
+    @Override
+    public void close();
+
+    /**
+     * Supplies regions of native memory for the output of a {@link WholeInputDecompressor}.
+     */
+    @FunctionalInterface
+    public interface OutputChain {
+        /**
+         * Get the next region to write output to, once the last one is full
+         * <p>The region must stay valid until the decompressor returns.</p>
+         *
+         * @param length the length of the region
+         * @return the address of the region
+         * @throws InvalidDataException if the output should stop, which is rethrown by the decompressor
+         */
+        public long nextRegion(int length) throws InvalidDataException;
+    }
+}
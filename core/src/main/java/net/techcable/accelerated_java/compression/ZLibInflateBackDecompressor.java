@@ -0,0 +1,111 @@
+package net.techcable.accelerated_java.compression;
+
+import java.util.Optional;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+import net.techcable.accelerated_java.jfr.CompressionEvents;
+import net.techcable.accelerated_java.jni.ZLibNative;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Decompresses whole inputs with the JNI library's {@code inflateBack} binding.
+ * <p>{@code inflateBack} runs to the end of the input, decoding into its own window and copying each full window to the output,
+ * so it never saves and restores its state part way through, and the fast decoding loop runs over the whole window.
+ * Output regions from the chain are requested one at a time, so the limits are checked between regions.</p>
+ */
+/* default */ final class ZLibInflateBackDecompressor implements WholeInputDecompressor {
+    private static final String BACKEND = "native";
+
+    private final ZLibNative.InflateBackStream stream;
+    private final int wrapper;
+    private final DecompressionLimits limits;
+    /**
+     * The statistics for this decompressor, or null if metrics are disabled
+     */
+    private final CompressorStatistics statistics;
+    private int bytesRead;
+    private long bytesWritten;
+
+    /* default */ ZLibInflateBackDecompressor(CompressorOptions options, ZLibNative.InflateBackStream stream, CompressorStatistics statistics) {
+        checkArgument(options.getRawDictionary() == null, "Preset dictionaries aren't supported");
+        this.stream = checkNotNull(stream, "Null stream");
+        switch (options.getWrapper()) {
+            case ZLIB:
+                this.wrapper = ZLibNative.WRAPPER_ZLIB;
+                break;
+            case GZIP:
+                this.wrapper = ZLibNative.WRAPPER_GZIP;
+                break;
+            case NONE:
+                this.wrapper = ZLibNative.WRAPPER_NONE;
+                break;
+            default:
+                throw new AssertionError(options.getWrapper());
+        }
+        this.limits = options.getLimits();
+        this.statistics = statistics;
+    }
+
+    @Override
+    public synchronized Status decompress(long inAddress, int inLength, long outAddress, int outLength, OutputChain chain) throws InvalidDataException {
+        checkArgument(inLength >= 0, "Negative input length %s", inLength);
+        checkArgument(outLength > 0, "Non-positive output length %s", outLength);
+        final long startNanos = statistics != null ? System.nanoTime() : 0;
+        final Object event = CompressionEvents.beginOperation(Operation.DECOMPRESS);
+        int read = 0;
+        long written = 0;
+        try {
+            OutputChain checkedChain = null;
+            if (chain != null) {
+                // Every region before the one being requested is full
+                long[] filled = {outLength};
+                checkedChain = length -> {
+                    limits.check(inLength, filled[0]);
+                    long address = chain.nextRegion(length);
+                    filled[0] += length;
+                    return address;
+                };
+            }
+            boolean finished = stream.inflate(inAddress, inLength, outAddress, outLength, wrapper, outLength, checkedChain);
+            read = stream.getConsumed();
+            written = stream.getWritten();
+            limits.check(read, written);
+            return finished ? Status.FINISHED : Status.INSUFFICIENT_OUTPUT;
+        } finally {
+            this.bytesRead = read;
+            this.bytesWritten = written;
+            if (statistics != null) {
+                statistics.record(read, written, 1, 0, startNanos);
+            }
+            if (event != null) {
+                CompressionEvents.commitOperation(event, BACKEND, -1, read, written, BufferKind.DIRECT, BufferKind.DIRECT);
+            }
+        }
+    }
+
+    @Override
+    public int getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public Optional<CompressorStatistics> getStatistics() {
+        return Optional.ofNullable(statistics);
+    }
+
+    @Override
+    public synchronized void close() {
+        stream.close();
+        if (statistics != null) statistics.recordClosed();
+        CompressionEvents.streamClosed(Operation.DECOMPRESS, BACKEND);
+    }
+}
@@ -0,0 +1,537 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+import net.techcable.accelerated_java.jfr.CompressionEvents;
+import net.techcable.accelerated_java.jni.Native;
+
+import static com.google.common.base.Preconditions.*;
+
+/* default */ class ZLibJDKEngine implements CompressionEngine {
+    private final Deflater deflater;
+    private final Inflater inflater;
+    private int level;
+    private CompressionStrategy strategy;
+    private final int chunkSize;
+    private final DecompressionLimits limits;
+    /**
+     * If the deflater has new parameters it hasn't applied yet
+     */
+    private boolean paramsChanged;
+    /**
+     * The statistics for this compressor, or null if metrics are disabled
+     */
+    private final CompressorStatistics statistics;
+    /**
+     * Arrays that native memory is copied through, allocated the first time they're needed
+     */
+    private byte[] inStaging, outStaging;
+    /**
+     * The direct buffers the current call was given, or null if it wasn't given any
+     * <p>These are passed to zlib in place, through the byte buffer methods of Java 11 and later.
+     * Their regions are given by positions instead of addresses.</p>
+     */
+    private ByteBuffer inBuffer, outBuffer;
+    private int bytesRead, bytesWritten;
+    /**
+     * The preset dictionary, or null if there isn't one
+     */
+    private final byte[] dictionary;
+    private final boolean dictionaryUpfront;
+    @Getter
+    private State state;
+
+    private static final String BACKEND = "jdk";
+    /**
+     * The byte buffer methods of the deflater and inflater, or null if they're unavailable
+     */
+    private static final JDKBufferAccess BUFFERS = JDKBufferAccess.INSTANCE;
+
+    @NonNull
+    private synchronized Deflater getDeflater() {
+        state.requireState(State.COMPRESSING);
+        return deflater;
+    }
+
+    private ZLibJDKEngine(Deflater deflater, CompressorOptions options, CompressorStatistics statistics) {
+        this.deflater = checkNotNull(deflater, "Null deflater");
+        this.inflater = null;
+        this.level = options.getLevel();
+        this.strategy = options.getStrategy();
+        this.chunkSize = options.getChunkSize();
+        this.limits = DecompressionLimits.NONE;
+        this.paramsChanged = strategy != CompressionStrategy.DEFAULT;
+        this.statistics = statistics;
+        this.state = State.COMPRESSING;
+        this.dictionary = options.getRawDictionary();
+        this.dictionaryUpfront = options.isDictionaryUpfront(true);
+        if (dictionaryUpfront) deflater.setDictionary(dictionary);
+    }
+
+    private ZLibJDKEngine(Inflater inflater, CompressorOptions options, CompressorStatistics statistics) {
+        this.deflater = null;
+        this.inflater = checkNotNull(inflater, "Null inflater");
+        this.level = -1;
+        this.chunkSize = options.getChunkSize();
+        this.limits = options.getLimits();
+        this.statistics = statistics;
+        this.state = State.DECOMPRESSING;
+        this.dictionary = options.getRawDictionary();
+        this.dictionaryUpfront = options.isDictionaryUpfront(false);
+        if (dictionaryUpfront) inflater.setDictionary(dictionary);
+    }
+
+    @Override
+    public synchronized int getLevel() {
+        getState().requireStateNot(State.DECOMPRESSING, "Decompressing doesn't have a level!");
+        return level;
+    }
+
+    @Override
+    public synchronized void setLevel(int level) {
+        checkArgument(level == CompressionEngineFactory.DEFAULT_COMPRESSION || level >= 0 && level <= CompressionEngineFactory.BEST_COMPRESSION, "Invalid level %s", level);
+        getDeflater().setLevel(level);
+        this.level = level;
+        this.paramsChanged = true;
+    }
+
+    @Override
+    public synchronized CompressionStrategy getStrategy() {
+        getState().requireStateNot(State.DECOMPRESSING, "Decompressing doesn't have a strategy!");
+        return strategy;
+    }
+
+    @Override
+    public synchronized void setStrategy(CompressionStrategy strategy) {
+        checkNotNull(strategy, "Null strategy");
+        int jdkStrategy = toJdkStrategy(strategy);
+        getDeflater().setStrategy(jdkStrategy);
+        this.strategy = strategy;
+        this.paramsChanged = true;
+    }
+
+    @Override
+    public synchronized void reset() {
+        getState().requireStateNot(State.CLOSED, "Stream is closed");
+        if (deflater != null) {
+            deflater.reset();
+            if (dictionaryUpfront) deflater.setDictionary(dictionary);
+            state = State.COMPRESSING;
+        } else {
+            inflater.reset();
+            if (dictionaryUpfront) inflater.setDictionary(dictionary);
+            state = State.DECOMPRESSING;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The JDK's {@link Deflater} and {@link Inflater} don't expose zlib's copy functions, so this always throws.</p>
+     */
+    @Override
+    public CompressionEngine copy() {
+        throw new UnsupportedOperationException("JDK backend can't copy its streams");
+    }
+
+    @Override
+    public synchronized void close() {
+        switch (getState()) {
+            case DECOMPRESSING:
+            case COMPRESSING:
+            case FINISHED:
+                if (inflater != null) inflater.end();
+                if (deflater != null) deflater.end();
+                state = State.CLOSED;
+                inStaging = null;
+                outStaging = null;
+                if (statistics != null) statistics.recordClosed();
+                CompressionEvents.streamClosed(deflater != null ? Operation.COMPRESS : Operation.DECOMPRESS, BACKEND);
+                break;
+            case CLOSED:
+                throw new IllegalStateException("Already closed");
+        }
+    }
+
+    @Override
+    public Optional<CompressorStatistics> getStatistics() {
+        return Optional.ofNullable(statistics);
+    }
+
+    @Override
+    public int getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>On Java 11 and later, direct buffers are used in place instead of being copied through staging arrays.</p>
+     */
+    @Override
+    public boolean prefersBuffers() {
+        return BUFFERS != null;
+    }
+
+    @Override
+    public synchronized Status compress(ByteBuffer in, ByteBuffer out, FlushMode flush) {
+        if (BUFFERS == null) return CompressionEngine.super.compress(in, out, flush);
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output buffer");
+        checkNotNull(flush, "Null flush mode");
+        checkArgument(!out.isReadOnly(), "Read-only output buffer");
+        final int inPosition = in.position(), outPosition = out.position(), outLimit = out.limit();
+        Status status;
+        try {
+            useBuffers(in, out);
+            status = compressMemory(
+                    inBuffer != null ? null : BufferMemory.array(in), inBuffer != null ? inPosition : BufferMemory.offset(in), in.remaining(),
+                    outBuffer != null ? null : BufferMemory.array(out), outBuffer != null ? outPosition : BufferMemory.offset(out), out.remaining(),
+                    flush
+            );
+        } finally {
+            releaseBuffers();
+            // NOTE: Zlib moves the positions of the buffers it uses in place
+            in.position(inPosition);
+            out.limit(outLimit);
+            out.position(outPosition);
+        }
+        in.position(inPosition + bytesRead);
+        out.position(outPosition + bytesWritten);
+        return status;
+    }
+
+    @Override
+    public synchronized Status decompress(ByteBuffer in, ByteBuffer out) throws InvalidDataException {
+        if (BUFFERS == null) return CompressionEngine.super.decompress(in, out);
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output buffer");
+        checkArgument(!out.isReadOnly(), "Read-only output buffer");
+        final int inPosition = in.position(), outPosition = out.position(), outLimit = out.limit();
+        Status status;
+        try {
+            useBuffers(in, out);
+            status = decompressMemory(
+                    inBuffer != null ? null : BufferMemory.array(in), inBuffer != null ? inPosition : BufferMemory.offset(in), in.remaining(),
+                    outBuffer != null ? null : BufferMemory.array(out), outBuffer != null ? outPosition : BufferMemory.offset(out), out.remaining()
+            );
+        } finally {
+            releaseBuffers();
+            // NOTE: Zlib moves the positions of the buffers it uses in place
+            in.position(inPosition);
+            out.limit(outLimit);
+            out.position(outPosition);
+        }
+        in.position(inPosition + bytesRead);
+        out.position(outPosition + bytesWritten);
+        return status;
+    }
+
+    /**
+     * Pass the direct buffers among the call's buffers to zlib in place
+     */
+    private void useBuffers(ByteBuffer in, ByteBuffer out) {
+        if (in.isDirect()) inBuffer = in;
+        if (out.isDirect()) outBuffer = out;
+    }
+
+    /**
+     * Forget the call's buffers, so the stream doesn't keep them alive
+     */
+    private void releaseBuffers() {
+        if (inBuffer != null && state != State.CLOSED) {
+            // NOTE: The deflater or inflater still refers to the input buffer
+            if (deflater != null) {
+                deflater.setInput(EMPTY_INPUT);
+            } else {
+                inflater.setInput(EMPTY_INPUT);
+            }
+        }
+        inBuffer = null;
+        outBuffer = null;
+    }
+
+    private void allocateStaging() {
+        if (inStaging == null) {
+            inStaging = new byte[chunkSize];
+            outStaging = new byte[chunkSize];
+        }
+    }
+
+    @Override
+    public synchronized Status decompressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength) throws InvalidDataException {
+        BufferMemory.checkRegion(inArray, inOffset, inLength);
+        BufferMemory.checkRegion(outArray, outOffset, outLength);
+        getState().requireState(State.DECOMPRESSING);
+        if (inArray == null && inBuffer == null || outArray == null && outBuffer == null) allocateStaging();
+        boolean needsMoreOutput = false, limitReached = false, progress;
+        final long startNanos = statistics != null ? System.nanoTime() : 0;
+        int read = 0, written = 0, jniCalls = 0;
+        long bounceCopyBytes = 0;
+        final Object event = CompressionEvents.beginOperation(Operation.DECOMPRESS);
+        try {
+            do {
+                final int inChunk = inArray != null || inBuffer != null ? inLength - read : Math.min(inLength - read, chunkSize);
+                long allowedOutput = limits.allowedOutput(inflater.getBytesRead(), inChunk, inflater.getBytesWritten(), written);
+                if (allowedOutput == 0) {
+                    limitReached = true;
+                    break;
+                }
+                if (inArray != null) {
+                    inflater.setInput(inArray, (int) inOffset + read, inChunk);
+                } else if (inBuffer != null) {
+                    inBuffer.position((int) inOffset + read);
+                    BUFFERS.setInput(inflater, inBuffer);
+                } else {
+                    Native.copyMemory(inOffset + read, inStaging, 0, inChunk);
+                    bounceCopyBytes += inChunk;
+                    inflater.setInput(inStaging, 0, inChunk);
+                }
+                int outChunk = outArray != null || outBuffer != null ? outLength - written : Math.min(outLength - written, chunkSize);
+                outChunk = (int) Math.min(outChunk, allowedOutput);
+                long oldBytesRead = inflater.getBytesRead();
+                final int chunkWritten;
+                if (outArray != null) {
+                    chunkWritten = inflater.inflate(outArray, (int) outOffset + written, outChunk);
+                } else if (outBuffer != null) {
+                    final int outPosition = (int) outOffset + written;
+                    outBuffer.limit(outPosition + outChunk);
+                    outBuffer.position(outPosition);
+                    chunkWritten = BUFFERS.inflate(inflater, outBuffer);
+                } else {
+                    chunkWritten = inflater.inflate(outStaging, 0, outChunk);
+                    Native.copyMemory(outStaging, 0, outOffset + written, chunkWritten);
+                    bounceCopyBytes += chunkWritten;
+                }
+                jniCalls++;
+                int chunkRead = (int) (inflater.getBytesRead() - oldBytesRead);
+                read += chunkRead;
+                written += chunkWritten;
+                limits.check(inflater.getBytesRead(), inflater.getBytesWritten());
+                boolean setDictionary = inflater.needsDictionary();
+                if (setDictionary) {
+                    if (dictionary == null) throw new InvalidDataException("Invalid input data: needs a preset dictionary");
+                    try {
+                        inflater.setDictionary(dictionary);
+                    } catch (IllegalArgumentException e) {
+                        throw new InvalidDataException("Invalid input data: wrong preset dictionary", e);
+                    }
+                }
+                needsMoreOutput = chunkWritten == outChunk && !inflater.finished();
+                progress = chunkRead > 0 || chunkWritten > 0 || setDictionary;
+            } while (!inflater.finished() && progress && (read < inLength || needsMoreOutput) && written < outLength);
+            if (inflater.finished()) {
+                state = State.FINISHED;
+                return Status.FINISHED;
+            } else if (limitReached) {
+                return Status.OUTPUT_LIMIT_REACHED;
+            } else if (needsMoreOutput) {
+                return Status.INSUFFICIENT_OUTPUT;
+            } else {
+                return Status.NEEDS_INPUT;
+            }
+        } catch (DataFormatException e) {
+            throw new InvalidDataException("Invalid input data: " + e.getMessage(), e);
+        } finally {
+            this.bytesRead = read;
+            this.bytesWritten = written;
+            if (statistics != null) {
+                statistics.record(read, written, jniCalls, bounceCopyBytes, startNanos);
+            }
+            if (event != null) {
+                CompressionEvents.commitOperation(event, BACKEND, -1, read, written, BufferKind.of(inArray), BufferKind.of(outArray));
+            }
+        }
+    }
+
+    @Override
+    public synchronized Status compressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength, FlushMode flush) {
+        BufferMemory.checkRegion(inArray, inOffset, inLength);
+        BufferMemory.checkRegion(outArray, outOffset, outLength);
+        checkNotNull(flush, "Null flush mode");
+        getState().requireState(State.COMPRESSING);
+        final boolean finish = flush == FlushMode.FINISH;
+        if (inArray == null && inBuffer == null || outArray == null && outBuffer == null) allocateStaging();
+        boolean needsMoreOutput, haveFinished = false;
+        final long startNanos = statistics != null ? System.nanoTime() : 0;
+        int read = 0, written = 0, jniCalls = 0;
+        long bounceCopyBytes = 0;
+        final Object event = CompressionEvents.beginOperation(Operation.COMPRESS);
+        /*
+         * The deflate call that applies new parameters doesn't flush the input it consumes,
+         * so we give it nothing and only start feeding input once it's done.
+         */
+        boolean applyingParams = paramsChanged;
+        paramsChanged = false;
+        try {
+            do {
+                final int inChunk;
+                if (applyingParams) {
+                    inChunk = 0;
+                    deflater.setInput(EMPTY_INPUT);
+                } else if (inArray != null) {
+                    inChunk = inLength - read;
+                    deflater.setInput(inArray, (int) inOffset + read, inChunk);
+                } else if (inBuffer != null) {
+                    inChunk = inLength - read;
+                    inBuffer.position((int) inOffset + read);
+                    BUFFERS.setInput(deflater, inBuffer);
+                } else {
+                    inChunk = Math.min(inLength - read, chunkSize);
+                    Native.copyMemory(inOffset + read, inStaging, 0, inChunk);
+                    bounceCopyBytes += inChunk;
+                    deflater.setInput(inStaging, 0, inChunk);
+                }
+                // Only flush or finish once the last of the input has been given to the deflater
+                final boolean lastChunk = !applyingParams && inChunk == inLength - read;
+                if (finish && lastChunk && !haveFinished) {
+                    deflater.finish();
+                    haveFinished = true;
+                }
+                applyingParams = false;
+                final int outChunk = outArray != null || outBuffer != null ? outLength - written : Math.min(outLength - written, chunkSize);
+                final int deflaterFlush = lastChunk ? toDeflaterFlush(flush) : Deflater.NO_FLUSH;
+                long oldBytesRead = deflater.getBytesRead();
+                final int chunkWritten;
+                if (outArray != null) {
+                    chunkWritten = deflater.deflate(outArray, (int) outOffset + written, outChunk, deflaterFlush);
+                } else if (outBuffer != null) {
+                    outBuffer.position((int) outOffset + written);
+                    chunkWritten = BUFFERS.deflate(deflater, outBuffer, deflaterFlush);
+                } else {
+                    chunkWritten = deflater.deflate(outStaging, 0, outChunk, deflaterFlush);
+                    Native.copyMemory(outStaging, 0, outOffset + written, chunkWritten);
+                    bounceCopyBytes += chunkWritten;
+                }
+                jniCalls++;
+                int chunkRead = (int) (deflater.getBytesRead() - oldBytesRead);
+                read += chunkRead;
+                written += chunkWritten;
+                needsMoreOutput = chunkWritten == outChunk && !deflater.finished();
+            } while (!deflater.finished() && (read < inLength || needsMoreOutput || finish && !haveFinished) && written < outLength);
+            if (deflater.finished()) {
+                assert haveFinished;
+                state = State.FINISHED;
+                return Status.FINISHED;
+            } else if (needsMoreOutput) {
+                return Status.INSUFFICIENT_OUTPUT;
+            } else {
+                return Status.OK;
+            }
+        } finally {
+            this.bytesRead = read;
+            this.bytesWritten = written;
+            if (statistics != null) {
+                statistics.record(read, written, jniCalls, bounceCopyBytes, startNanos);
+            }
+            if (event != null) {
+                CompressionEvents.commitOperation(event, BACKEND, level, read, written, BufferKind.of(inArray), BufferKind.of(outArray));
+            }
+        }
+    }
+
+    /**
+     * Get the closest flush mode the {@link Deflater} supports
+     * <p>It doesn't have partial or block flushes, so they become sync flushes, which also make all the output available.</p>
+     */
+    private static int toDeflaterFlush(FlushMode flush) {
+        switch (flush) {
+            case NONE:
+            case FINISH: // Finishing is requested separately
+                return Deflater.NO_FLUSH;
+            case FULL:
+                return Deflater.FULL_FLUSH;
+            default:
+                return Deflater.SYNC_FLUSH;
+        }
+    }
+
+    private static final byte[] EMPTY_INPUT = new byte[0];
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.ZLIB;
+    }
+
+    /* default */ static int toJdkStrategy(CompressionStrategy strategy) {
+        switch (strategy) {
+            case DEFAULT:
+                return Deflater.DEFAULT_STRATEGY;
+            case FILTERED:
+                return Deflater.FILTERED;
+            case HUFFMAN_ONLY:
+                return Deflater.HUFFMAN_ONLY;
+            default:
+                throw new UnsupportedOperationException("JDK compressor doesn't support the " + strategy + " strategy");
+        }
+    }
+
+    public static final CompressionEngineFactory FACTORY = new Factory(null);
+
+    @RequiredArgsConstructor
+    private static class Factory implements CompressionEngineFactory {
+        private final CompressionMetrics metrics;
+
+        @Override
+        public CompressionEngine createDecompressor(CompressorOptions options) {
+            checkNotNull(options, "Null options");
+            checkGzip(options);
+            // NOTE: The window size is ignored, since a full-size window can decompress anything
+            Inflater inflater = new Inflater(options.getWrapper() == ZLibWrapper.NONE);
+            CompressionEvents.streamCreated(Operation.DECOMPRESS, BACKEND, -1);
+            return new ZLibJDKEngine(inflater, options, createStatistics(Operation.DECOMPRESS));
+        }
+
+        @Override
+        public CompressionEngine createCompressor(CompressorOptions options) {
+            checkNotNull(options, "Null options");
+            if (options.getWindowBits() != CompressorOptions.MAX_WINDOW_BITS) {
+                throw new UnsupportedOperationException("JDK compressor doesn't support " + options.getWindowBits() + " window bits");
+            }
+            checkGzip(options);
+            int strategy = toJdkStrategy(options.getStrategy());
+            Deflater deflater = new Deflater(options.getLevel(), options.getWrapper() == ZLibWrapper.NONE);
+            deflater.setStrategy(strategy);
+            CompressionEvents.streamCreated(Operation.COMPRESS, BACKEND, options.getLevel());
+            return new ZLibJDKEngine(deflater, options, createStatistics(Operation.COMPRESS));
+        }
+
+        private static void checkGzip(CompressorOptions options) {
+            if (options.getWrapper() == ZLibWrapper.GZIP) {
+                throw new UnsupportedOperationException("JDK backend doesn't support the gzip wrapper");
+            }
+        }
+
+        private CompressorStatistics createStatistics(Operation operation) {
+            return metrics != null ? CompressorStatistics.createStream(metrics, operation) : null;
+        }
+
+        @Override
+        public CompressionEngineFactory withMetrics(CompressionMetrics metrics) {
+            return new Factory(checkNotNull(metrics, "Null metrics"));
+        }
+
+        @Override
+        public Optional<CompressionMetrics> getMetrics() {
+            return Optional.ofNullable(metrics);
+        }
+
+        @Override
+        public CompressionType getType() {
+            return CompressionType.ZLIB;
+        }
+    }
+}
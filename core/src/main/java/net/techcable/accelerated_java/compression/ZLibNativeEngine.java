@@ -0,0 +1,404 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+import net.techcable.accelerated_java.jfr.CompressionEvents;
+import net.techcable.accelerated_java.jni.Native;
+import net.techcable.accelerated_java.jni.ZLibNative;
+
+import static com.google.common.base.Preconditions.*;
+
+/* default */ class ZLibNativeEngine implements CompressionEngine {
+    private volatile int level;
+    private volatile CompressionStrategy strategy;
+    /**
+     * If the level or strategy have changed, but haven't been applied to the native stream yet
+     */
+    private volatile boolean paramsChanged;
+    private final int chunkSize;
+    private final DecompressionLimits limits;
+    /**
+     * The number of bytes consumed and produced by decompressing, for enforcing the limits
+     */
+    private long totalIn, totalOut;
+    private final Operation operation;
+    /**
+     * The zlib stream, which every method that uses it locks this engine to use, so closing it can't free it during a call
+     */
+    private final ZLibNative.NativeZlibStream nativeStream;
+    /**
+     * The statistics for this compressor, or null if metrics are disabled
+     */
+    private final CompressorStatistics statistics;
+    /**
+     * Direct buffers that arrays are copied through, allocated the first time they're needed
+     */
+    private ByteBuffer inStaging, outStaging;
+    private long inStagingAddress, outStagingAddress;
+    private int bytesRead, bytesWritten;
+    /**
+     * The preset dictionary, or null if there isn't one
+     */
+    private final byte[] dictionary;
+    private final boolean dictionaryUpfront;
+    /**
+     * A direct copy of the dictionary, made the first time it's set
+     */
+    private ByteBuffer dictionaryBuffer;
+
+    private static final String BACKEND = "native";
+
+    private ZLibNativeEngine(CompressorOptions options, Operation operation, ZLibNative.NativeZlibStream nativeStream, CompressorStatistics statistics) {
+        this.level = operation == Operation.COMPRESS ? options.getLevel() : -1;
+        this.strategy = options.getStrategy();
+        this.chunkSize = options.getChunkSize();
+        this.limits = operation == Operation.DECOMPRESS ? options.getLimits() : DecompressionLimits.NONE;
+        this.operation = checkNotNull(operation, "Null operation");
+        this.nativeStream = checkNotNull(nativeStream, "Null native stream");
+        this.statistics = statistics;
+        this.dictionary = options.getRawDictionary();
+        this.dictionaryUpfront = options.isDictionaryUpfront(operation == Operation.COMPRESS);
+        if (dictionaryUpfront) setUpfrontDictionary();
+    }
+
+    private ZLibNativeEngine(ZLibNativeEngine original, ZLibNative.NativeZlibStream nativeStream) {
+        this.level = original.level;
+        this.strategy = original.strategy;
+        this.paramsChanged = original.paramsChanged;
+        this.chunkSize = original.chunkSize;
+        this.limits = original.limits;
+        this.totalIn = original.totalIn;
+        this.totalOut = original.totalOut;
+        this.operation = original.operation;
+        this.nativeStream = nativeStream;
+        this.statistics = original.statistics != null ? original.statistics.createCopy() : null;
+        this.dictionary = original.dictionary;
+        this.dictionaryUpfront = original.dictionaryUpfront;
+        this.dictionaryBuffer = original.dictionaryBuffer;
+    }
+
+    private void setDictionary() throws InvalidDataException {
+        if (dictionaryBuffer == null) {
+            dictionaryBuffer = ByteBuffer.allocateDirect(dictionary.length);
+            dictionaryBuffer.put(dictionary);
+        }
+        nativeStream.setDictionary(Native.getNativeAddress(dictionaryBuffer), dictionary.length);
+    }
+
+    private void setUpfrontDictionary() {
+        try {
+            setDictionary();
+        } catch (InvalidDataException e) {
+            throw new AssertionError("Setting the dictionary upfront can't have invalid data", e);
+        }
+    }
+
+    @Override
+    public synchronized int getLevel() {
+        getState().requireStateNot(State.DECOMPRESSING, "Compressing doesn't have a level!");
+        return level;
+    }
+
+    @Override
+    public synchronized void setLevel(int level) {
+        checkArgument(level == CompressionEngineFactory.DEFAULT_COMPRESSION || level >= 0 && level <= CompressionEngineFactory.BEST_COMPRESSION, "Invalid level %s", level);
+        getState().requireState(State.COMPRESSING);
+        if (this.level != level) {
+            this.level = level;
+            this.paramsChanged = true;
+        }
+    }
+
+    @Override
+    public synchronized CompressionStrategy getStrategy() {
+        getState().requireStateNot(State.DECOMPRESSING, "Decompressing doesn't have a strategy!");
+        return strategy;
+    }
+
+    @Override
+    public synchronized void setStrategy(CompressionStrategy strategy) {
+        checkNotNull(strategy, "Null strategy");
+        getState().requireState(State.COMPRESSING);
+        if (this.strategy != strategy) {
+            this.strategy = strategy;
+            this.paramsChanged = true;
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        getState().requireStateNot(State.CLOSED, "Stream is closed");
+        nativeStream.reset();
+        if (dictionaryUpfront) setUpfrontDictionary();
+        totalIn = 0;
+        totalOut = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The native stream is copied with zlib's {@code deflateCopy} or {@code inflateCopy}.</p>
+     */
+    @Override
+    public synchronized CompressionEngine copy() {
+        getState().requireStateNot(State.CLOSED, "Stream is closed");
+        ZLibNativeEngine copy = new ZLibNativeEngine(this, nativeStream.copy());
+        CompressionEvents.streamCreated(operation, BACKEND, level);
+        return copy;
+    }
+
+    @Override
+    public synchronized State getState() {
+        return nativeStream.getState().getCompressorState();
+    }
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.ZLIB;
+    }
+
+    @Override
+    public synchronized void close() {
+        getState().requireStateNot(State.CLOSED, "Stream is already closed");
+        nativeStream.close();
+        inStaging = null;
+        outStaging = null;
+        if (statistics != null) statistics.recordClosed();
+        CompressionEvents.streamClosed(operation, BACKEND);
+    }
+
+    @Override
+    public Optional<CompressorStatistics> getStatistics() {
+        return Optional.ofNullable(statistics);
+    }
+
+    @Override
+    public int getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void allocateStaging() {
+        if (inStaging == null) {
+            inStaging = ByteBuffer.allocateDirect(chunkSize);
+            inStagingAddress = Native.getNativeAddress(inStaging);
+            outStaging = ByteBuffer.allocateDirect(chunkSize);
+            outStagingAddress = Native.getNativeAddress(outStaging);
+        }
+    }
+
+    @Override
+    public synchronized Status decompressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength) throws InvalidDataException {
+        BufferMemory.checkRegion(inArray, inOffset, inLength);
+        BufferMemory.checkRegion(outArray, outOffset, outLength);
+        getState().requireState(State.DECOMPRESSING);
+        if (inArray != null || outArray != null) allocateStaging();
+        boolean needsMoreOutput = false, limitReached = false, progress;
+        ZLibNative.Status nativeStatus = ZLibNative.Status.OK;
+        final long startNanos = statistics != null ? System.nanoTime() : 0;
+        int read = 0, written = 0, jniCalls = 0;
+        long bounceCopyBytes = 0;
+        final Object event = CompressionEvents.beginOperation(Operation.DECOMPRESS);
+        try {
+            do {
+                final long nativeIn;
+                final int inChunk;
+                if (inArray == null) {
+                    nativeIn = inOffset + read;
+                    inChunk = inLength - read;
+                } else {
+                    nativeIn = inStagingAddress;
+                    inChunk = Math.min(inLength - read, chunkSize);
+                    inStaging.clear();
+                    inStaging.put(inArray, (int) inOffset + read, inChunk);
+                    bounceCopyBytes += inChunk;
+                }
+                long allowedOutput = limits.allowedOutput(totalIn, inChunk, totalOut, written);
+                if (allowedOutput == 0) {
+                    limitReached = true;
+                    break;
+                }
+                final long nativeOut = outArray == null ? outOffset + written : outStagingAddress;
+                int outChunk = outArray == null ? outLength - written : Math.min(outLength - written, chunkSize);
+                outChunk = (int) Math.min(outChunk, allowedOutput);
+                nativeStatus = nativeStream.decompress(nativeIn, inChunk, nativeOut, outChunk);
+                jniCalls++;
+                int chunkRead = nativeStream.getConsumed(), chunkWritten = nativeStream.getWritten();
+                if (outArray != null) {
+                    outStaging.clear();
+                    outStaging.get(outArray, (int) outOffset + written, chunkWritten);
+                    bounceCopyBytes += chunkWritten;
+                }
+                read += chunkRead;
+                written += chunkWritten;
+                totalIn += chunkRead;
+                totalOut += chunkWritten;
+                limits.check(totalIn, totalOut);
+                if (nativeStatus == ZLibNative.Status.NEEDS_DICTIONARY) {
+                    if (dictionary == null) throw new InvalidDataException("Invalid input data: needs a preset dictionary");
+                    setDictionary();
+                    jniCalls++;
+                }
+                needsMoreOutput = chunkWritten == outChunk && nativeStatus != ZLibNative.Status.FINISHED;
+                progress = nativeStatus != ZLibNative.Status.NO_PROGRESS;
+            } while (nativeStatus != ZLibNative.Status.FINISHED && progress && (read < inLength || needsMoreOutput) && written < outLength);
+            if (nativeStatus == ZLibNative.Status.FINISHED) {
+                assert getState() == State.FINISHED;
+                return Status.FINISHED;
+            } else if (limitReached) {
+                return Status.OUTPUT_LIMIT_REACHED;
+            } else if (needsMoreOutput) {
+                return Status.INSUFFICIENT_OUTPUT;
+            } else {
+                return Status.NEEDS_INPUT;
+            }
+        } finally {
+            this.bytesRead = read;
+            this.bytesWritten = written;
+            if (statistics != null) {
+                statistics.record(read, written, jniCalls, bounceCopyBytes, startNanos);
+            }
+            if (event != null) {
+                CompressionEvents.commitOperation(event, BACKEND, -1, read, written, BufferKind.of(inArray), BufferKind.of(outArray));
+            }
+        }
+    }
+
+    @Override
+    public synchronized Status compressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength, FlushMode flush) {
+        BufferMemory.checkRegion(inArray, inOffset, inLength);
+        BufferMemory.checkRegion(outArray, outOffset, outLength);
+        checkNotNull(flush, "Null flush mode");
+        getState().requireState(State.COMPRESSING);
+        if (inArray != null || outArray != null) allocateStaging();
+        boolean needsMoreOutput, progress;
+        ZLibNative.Status nativeStatus;
+        final long startNanos = statistics != null ? System.nanoTime() : 0;
+        int read = 0, written = 0, jniCalls = 0;
+        long bounceCopyBytes = 0;
+        final Object event = CompressionEvents.beginOperation(Operation.COMPRESS);
+        try {
+            do {
+                final long nativeIn;
+                final int inChunk;
+                if (inArray == null) {
+                    nativeIn = inOffset + read;
+                    inChunk = inLength - read;
+                } else {
+                    nativeIn = inStagingAddress;
+                    inChunk = Math.min(inLength - read, chunkSize);
+                    inStaging.clear();
+                    inStaging.put(inArray, (int) inOffset + read, inChunk);
+                    bounceCopyBytes += inChunk;
+                }
+                // Only flush or finish once the last of the input has been given to zlib
+                final FlushMode chunkFlush = inChunk == inLength - read ? flush : FlushMode.NONE;
+                final long nativeOut = outArray == null ? outOffset + written : outStagingAddress;
+                final int outChunk = outArray == null ? outLength - written : Math.min(outLength - written, chunkSize);
+                int chunkWritten = 0;
+                if (paramsChanged) {
+                    // Apply the new parameters before compressing anything else, flushing to the same output
+                    paramsChanged = !nativeStream.setParams(level, strategy.getId(), nativeOut, outChunk);
+                    jniCalls++;
+                    chunkWritten = nativeStream.getWritten();
+                }
+                nativeStatus = nativeStream.compress(nativeIn, inChunk, nativeOut + chunkWritten, outChunk - chunkWritten, chunkFlush.getId());
+                jniCalls++;
+                int chunkRead = nativeStream.getConsumed();
+                chunkWritten += nativeStream.getWritten();
+                if (outArray != null) {
+                    outStaging.clear();
+                    outStaging.get(outArray, (int) outOffset + written, chunkWritten);
+                    bounceCopyBytes += chunkWritten;
+                }
+                read += chunkRead;
+                written += chunkWritten;
+                needsMoreOutput = chunkWritten == outChunk && nativeStatus != ZLibNative.Status.FINISHED;
+                progress = chunkRead > 0 || chunkWritten > 0;
+            } while (nativeStatus != ZLibNative.Status.FINISHED && progress && (read < inLength || needsMoreOutput) && written < outLength);
+            if (nativeStatus == ZLibNative.Status.FINISHED) {
+                assert getState() == State.FINISHED;
+                return Status.FINISHED;
+            } else if (needsMoreOutput) {
+                return Status.INSUFFICIENT_OUTPUT;
+            } else {
+                return Status.OK;
+            }
+        } finally {
+            this.bytesRead = read;
+            this.bytesWritten = written;
+            if (statistics != null) {
+                statistics.record(read, written, jniCalls, bounceCopyBytes, startNanos);
+            }
+            if (event != null) {
+                CompressionEvents.commitOperation(event, BACKEND, level, read, written, BufferKind.of(inArray), BufferKind.of(outArray));
+            }
+        }
+    }
+
+    public static final CompressionEngineFactory FACTORY = new Factory(null);
+
+    @RequiredArgsConstructor
+    private static class Factory implements CompressionEngineFactory {
+        private final CompressionMetrics metrics;
+
+        @Override
+        public CompressionEngine createDecompressor(CompressorOptions options) {
+            checkNotNull(options, "Null options");
+            ZLibNative.NativeZlibStream stream = ZLibNative.createDecompressingStream(options.getZLibWindowBits());
+            CompressionEvents.streamCreated(Operation.DECOMPRESS, BACKEND, -1);
+            return new ZLibNativeEngine(options, Operation.DECOMPRESS, stream, createStatistics(Operation.DECOMPRESS));
+        }
+
+        @Override
+        public CompressionEngine createCompressor(CompressorOptions options) {
+            checkNotNull(options, "Null options");
+            ZLibNative.NativeZlibStream stream = ZLibNative.createCompressingStream(
+                    options.getLevel(),
+                    options.getZLibWindowBits(),
+                    options.getMemLevel(),
+                    options.getStrategy().getId()
+            );
+            CompressionEvents.streamCreated(Operation.COMPRESS, BACKEND, options.getLevel());
+            return new ZLibNativeEngine(options, Operation.COMPRESS, stream, createStatistics(Operation.COMPRESS));
+        }
+
+        @Override
+        public Optional<WholeInputDecompressor> createWholeInputDecompressor(CompressorOptions options) {
+            checkNotNull(options, "Null options");
+            if (options.getRawDictionary() != null) return Optional.empty();
+            ZLibNative.InflateBackStream stream = ZLibNative.createInflateBackStream();
+            CompressionEvents.streamCreated(Operation.DECOMPRESS, BACKEND, -1);
+            return Optional.of(new ZLibInflateBackDecompressor(options, stream, createStatistics(Operation.DECOMPRESS)));
+        }
+
+        private CompressorStatistics createStatistics(Operation operation) {
+            return metrics != null ? CompressorStatistics.createStream(metrics, operation) : null;
+        }
+
+        @Override
+        public CompressionEngineFactory withMetrics(CompressionMetrics metrics) {
+            return new Factory(checkNotNull(metrics, "Null metrics"));
+        }
+
+        @Override
+        public Optional<CompressionMetrics> getMetrics() {
+            return Optional.ofNullable(metrics);
+        }
+
+        @Override
+        public CompressionType getType() {
+            return CompressionType.ZLIB;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package net.techcable.accelerated_java.compression;
+
+/**
+ * The header and trailer around deflate data.
+ */
+public enum ZLibWrapper {
+    /**
+     * A zlib header and adler32 trailer, as specified by RFC 1950
+     */
+    ZLIB,
+    /**
+     * Raw deflate data without any header or trailer, as used by zip files and WebSocket compression
+     */
+    NONE,
+    /**
+     * A gzip header and crc32 trailer, as specified by RFC 1952
+     * <p>Compressors write a minimal header without a file name or modification time,
+     * and decompressors stop at the end of the first member.
+     * The JDK backend doesn't support gzip, since its {@link java.util.zip.Deflater} can only write zlib and raw deflate data.</p>
+     */
+    GZIP;
+
+    /**
+     * Get the window bits to pass to zlib, which encodes the wrapper in the sign and range of the value
+     *
+     * @param windowBits the base two logarithm of the window size
+     * @return the window bits for zlib
+     */
+    public int toZLibWindowBits(int windowBits) {
+        switch (this) {
+            case ZLIB:
+                return windowBits;
+            case NONE:
+                return -windowBits;
+            case GZIP:
+                return windowBits + 16;
+            default:
+                throw new AssertionError(this);
+        }
+    }
+}
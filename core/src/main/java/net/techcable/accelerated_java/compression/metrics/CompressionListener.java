@@ -0,0 +1,47 @@
+package net.techcable.accelerated_java.compression.metrics;
+
+/**
+ * Receives events from {@link CompressionMetrics}.
+ * <p>Listeners are invoked synchronously on the thread doing the compression, while it holds the compressor's lock,
+ * so they should be quick and must not allocate if they want to keep the recording path allocation-free.</p>
+ * <p>Implementations can be registered explicitly with {@link CompressionMetrics#addListener(CompressionListener)},
+ * or installed as a {@link java.util.ServiceLoader} service and picked up by {@link CompressionMetrics#installListeners()}.</p>
+ */
+public interface CompressionListener {
+
+    /**
+     * Called after a compressor finishes an operation
+     *
+     * @param metrics   the metrics the operation was recorded in
+     * @param operation the kind of operation
+     * @param bytesIn   the number of bytes consumed
+     * @param bytesOut  the number of bytes produced
+     * @param nanos     how long the operation took
+     */
+    public default void onOperation(CompressionMetrics metrics, Operation operation, long bytesIn, long bytesOut, long nanos) {}
+
+    /**
+     * Called when a new stream is created
+     *
+     * @param metrics   the metrics the stream reports to
+     * @param operation the kind of stream
+     */
+    public default void onStreamCreated(CompressionMetrics metrics, Operation operation) {}
+
+    /**
+     * Called when a stream is closed
+     *
+     * @param metrics   the metrics the stream reports to
+     * @param operation the kind of stream
+     */
+    public default void onStreamClosed(CompressionMetrics metrics, Operation operation) {}
+
+    /**
+     * Called when an {@link net.techcable.accelerated_java.compression.AdaptiveLevelGovernor} changes the compression level
+     *
+     * @param metrics  the metrics the governor reports to
+     * @param oldLevel the previous level
+     * @param newLevel the new level
+     */
+    public default void onLevelChanged(CompressionMetrics metrics, int oldLevel, int newLevel) {}
+}
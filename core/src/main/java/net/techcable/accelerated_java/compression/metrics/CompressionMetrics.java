@@ -0,0 +1,416 @@
+package net.techcable.accelerated_java.compression.metrics;
+
+import lombok.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.google.common.collect.ImmutableMap;
+
+import net.techcable.accelerated_java.compression.BufferKind;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Aggregate counters and latency histograms for all the compressors created by a factory.
+ * <p>Metrics are disabled unless a factory is created with {@link net.techcable.accelerated_java.compression.CompressionEngineFactory#withMetrics(CompressionMetrics)},
+ * in which case compressors skip all bookkeeping (including calls to {@link System#nanoTime()}).
+ * When enabled, recording is lock-free and doesn't allocate.</p>
+ */
+public final class CompressionMetrics implements CompressionMetricsMXBean {
+    private static final BufferKind[] BUFFER_KINDS = BufferKind.values();
+    @Getter
+    private final String name;
+    private final LongAdder[] calls = newAdders(Operation.COUNT);
+    private final LongAdder[] bytesIn = newAdders(Operation.COUNT);
+    private final LongAdder[] bytesOut = newAdders(Operation.COUNT);
+    private final LongAdder jniCalls = new LongAdder();
+    private final LongAdder bounceCopyBytes = new LongAdder();
+    private final LongAdder streamsCreated = new LongAdder();
+    private final LongAdder streamsClosed = new LongAdder();
+    private final LongAdder levelIncreases = new LongAdder();
+    private final LongAdder levelDecreases = new LongAdder();
+    private final LatencyHistogram[] histograms;
+    /**
+     * The streams routed to each backend by a dispatching factory, indexed by operation, buffer kind, then if it was accelerated
+     */
+    private final LongAdder[] routes = newAdders(Operation.COUNT * BUFFER_KINDS.length * 2);
+    private volatile ImmutableMap<String, Long> routingThresholds = ImmutableMap.of();
+    private volatile CompressionListener[] listeners = new CompressionListener[0];
+
+    private CompressionMetrics(String name) {
+        this.name = checkNotNull(name, "Null name");
+        this.histograms = new LatencyHistogram[Operation.COUNT * SizeBucket.COUNT];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public static CompressionMetrics create(String name) {
+        return new CompressionMetrics(name);
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] result = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+
+    // Recording
+
+    /**
+     * Record a completed operation
+     *
+     * @param operation the kind of operation
+     * @param bytesIn   the number of bytes consumed
+     * @param bytesOut  the number of bytes produced
+     * @param nanos     how long the operation took
+     */
+    public void recordOperation(Operation operation, long bytesIn, long bytesOut, long nanos) {
+        int ordinal = operation.ordinal();
+        calls[ordinal].increment();
+        this.bytesIn[ordinal].add(bytesIn);
+        this.bytesOut[ordinal].add(bytesOut);
+        long uncompressedBytes = operation == Operation.COMPRESS ? bytesIn : bytesOut;
+        getLatency(operation, SizeBucket.of(uncompressedBytes)).record(nanos);
+        CompressionListener[] listeners = this.listeners;
+        for (CompressionListener listener : listeners) {
+            listener.onOperation(this, operation, bytesIn, bytesOut, nanos);
+        }
+    }
+
+    /**
+     * Record calls into native code
+     *
+     * @param count the number of calls
+     */
+    public void recordJniCalls(int count) {
+        jniCalls.add(count);
+    }
+
+    /**
+     * Record data that had to be copied through a temporary buffer, because the caller's buffer wasn't suitable
+     *
+     * @param bytes the number of bytes copied
+     */
+    public void recordBounceCopy(long bytes) {
+        bounceCopyBytes.add(bytes);
+    }
+
+    public void recordStreamCreated(Operation operation) {
+        streamsCreated.increment();
+        CompressionListener[] listeners = this.listeners;
+        for (CompressionListener listener : listeners) {
+            listener.onStreamCreated(this, operation);
+        }
+    }
+
+    public void recordStreamClosed(Operation operation) {
+        streamsClosed.increment();
+        CompressionListener[] listeners = this.listeners;
+        for (CompressionListener listener : listeners) {
+            listener.onStreamClosed(this, operation);
+        }
+    }
+
+    /**
+     * Record an automatic change in compression level
+     *
+     * @param oldLevel the previous level
+     * @param newLevel the new level
+     */
+    public void recordLevelChange(int oldLevel, int newLevel) {
+        if (newLevel > oldLevel) {
+            levelIncreases.increment();
+        } else if (newLevel < oldLevel) {
+            levelDecreases.increment();
+        }
+        CompressionListener[] listeners = this.listeners;
+        for (CompressionListener listener : listeners) {
+            listener.onLevelChanged(this, oldLevel, newLevel);
+        }
+    }
+
+    /**
+     * Record which backend a dispatching factory chose for a stream
+     *
+     * @param operation   the stream's operation
+     * @param kind        the kind of buffer the stream was first given
+     * @param accelerated if the stream used the accelerated backend instead of the JDK's
+     */
+    public void recordRoute(Operation operation, BufferKind kind, boolean accelerated) {
+        routes[routeIndex(operation, kind, accelerated)].increment();
+    }
+
+    /**
+     * Record the thresholds a dispatching factory uses to choose backends
+     *
+     * @param thresholds the minimum size that uses the accelerated backend, keyed by {@code operation.kind}
+     */
+    public void recordRoutingThresholds(Map<String, Long> thresholds) {
+        this.routingThresholds = ImmutableMap.copyOf(thresholds);
+    }
+
+    private static int routeIndex(Operation operation, BufferKind kind, boolean accelerated) {
+        return (operation.ordinal() * BUFFER_KINDS.length + kind.ordinal()) * 2 + (accelerated ? 1 : 0);
+    }
+
+    // Listeners
+
+    public synchronized void addListener(CompressionListener listener) {
+        checkNotNull(listener, "Null listener");
+        CompressionListener[] oldListeners = this.listeners;
+        CompressionListener[] newListeners = Arrays.copyOf(oldListeners, oldListeners.length + 1);
+        newListeners[oldListeners.length] = listener;
+        this.listeners = newListeners;
+    }
+
+    public synchronized boolean removeListener(CompressionListener listener) {
+        checkNotNull(listener, "Null listener");
+        CompressionListener[] oldListeners = this.listeners;
+        for (int i = 0; i < oldListeners.length; i++) {
+            if (oldListeners[i] == listener) {
+                CompressionListener[] newListeners = new CompressionListener[oldListeners.length - 1];
+                System.arraycopy(oldListeners, 0, newListeners, 0, i);
+                System.arraycopy(oldListeners, i + 1, newListeners, i, oldListeners.length - i - 1);
+                this.listeners = newListeners;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add every {@link CompressionListener} service visible to the context class loader
+     *
+     * @return the number of listeners added
+     */
+    public int installListeners() {
+        int count = 0;
+        for (CompressionListener listener : ServiceLoader.load(CompressionListener.class)) {
+            addListener(listener);
+            count++;
+        }
+        return count;
+    }
+
+    // Reading
+
+    public long getCalls(Operation operation) {
+        return calls[operation.ordinal()].sum();
+    }
+
+    public long getBytesIn(Operation operation) {
+        return bytesIn[operation.ordinal()].sum();
+    }
+
+    public long getBytesOut(Operation operation) {
+        return bytesOut[operation.ordinal()].sum();
+    }
+
+    public long getRoutes(Operation operation, BufferKind kind, boolean accelerated) {
+        return routes[routeIndex(operation, kind, accelerated)].sum();
+    }
+
+    public LatencyHistogram getLatency(Operation operation, SizeBucket bucket) {
+        return histograms[operation.ordinal() * SizeBucket.COUNT + bucket.ordinal()];
+    }
+
+    @Override
+    public long getCompressCalls() {
+        return getCalls(Operation.COMPRESS);
+    }
+
+    @Override
+    public long getDecompressCalls() {
+        return getCalls(Operation.DECOMPRESS);
+    }
+
+    @Override
+    public long getCompressBytesIn() {
+        return getBytesIn(Operation.COMPRESS);
+    }
+
+    @Override
+    public long getCompressBytesOut() {
+        return getBytesOut(Operation.COMPRESS);
+    }
+
+    @Override
+    public long getDecompressBytesIn() {
+        return getBytesIn(Operation.DECOMPRESS);
+    }
+
+    @Override
+    public long getDecompressBytesOut() {
+        return getBytesOut(Operation.DECOMPRESS);
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long uncompressed = getCompressBytesIn();
+        return uncompressed == 0 ? Double.NaN : (double) getCompressBytesOut() / uncompressed;
+    }
+
+    @Override
+    public long getJniCalls() {
+        return jniCalls.sum();
+    }
+
+    @Override
+    public long getBounceCopyBytes() {
+        return bounceCopyBytes.sum();
+    }
+
+    @Override
+    public long getStreamsCreated() {
+        return streamsCreated.sum();
+    }
+
+    @Override
+    public long getStreamsClosed() {
+        return streamsClosed.sum();
+    }
+
+    @Override
+    public long getLevelIncreases() {
+        return levelIncreases.sum();
+    }
+
+    @Override
+    public long getLevelDecreases() {
+        return levelDecreases.sum();
+    }
+
+    @Override
+    public Map<String, Long> getLatencyCounts() {
+        return latencyMap(LatencyHistogram::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMedianNanos() {
+        return latencyMap((histogram) -> histogram.getPercentile(50));
+    }
+
+    @Override
+    public Map<String, Long> getLatency99thPercentileNanos() {
+        return latencyMap((histogram) -> histogram.getPercentile(99));
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMaxNanos() {
+        return latencyMap(LatencyHistogram::getMax);
+    }
+
+    @Override
+    public Map<String, Long> getRoutes() {
+        ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        for (Operation operation : Operation.values()) {
+            for (BufferKind kind : BUFFER_KINDS) {
+                String key = operation.name().toLowerCase(Locale.ROOT) + "." + kind.name().toLowerCase(Locale.ROOT);
+                builder.put(key + ".jdk", getRoutes(operation, kind, false));
+                builder.put(key + ".accelerated", getRoutes(operation, kind, true));
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Map<String, Long> getRoutingThresholds() {
+        return routingThresholds;
+    }
+
+    private Map<String, Long> latencyMap(ToLongFunction<LatencyHistogram> func) {
+        ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        for (int i = 0; i < histograms.length; i++) {
+            Operation operation = Operation.byOrdinal(i / SizeBucket.COUNT);
+            SizeBucket bucket = SizeBucket.byOrdinal(i % SizeBucket.COUNT);
+            String key = operation.name().toLowerCase(Locale.ROOT) + "." + bucket.name().toLowerCase(Locale.ROOT);
+            builder.put(key, func.applyAsLong(histograms[i]));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < Operation.COUNT; i++) {
+            calls[i].reset();
+            bytesIn[i].reset();
+            bytesOut[i].reset();
+        }
+        jniCalls.reset();
+        bounceCopyBytes.reset();
+        streamsCreated.reset();
+        streamsClosed.reset();
+        levelIncreases.reset();
+        levelDecreases.reset();
+        for (LongAdder route : routes) {
+            route.reset();
+        }
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    // JMX
+
+    public ObjectName getObjectName() {
+        try {
+            return new ObjectName("net.techcable.accelerated_java:type=CompressionMetrics,name=" + ObjectName.quote(name));
+        } catch (MalformedObjectNameException e) {
+            throw new AssertionError("Quoted name should always be valid: " + name, e);
+        }
+    }
+
+    /**
+     * Register these metrics with the platform MBean server
+     *
+     * @throws IllegalStateException if metrics with the same name are already registered
+     */
+    public void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, getObjectName());
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("Metrics named " + name + " are already registered", e);
+        } catch (JMException e) {
+            throw new RuntimeException("Unable to register metrics " + name, e);
+        }
+    }
+
+    /**
+     * Unregister these metrics from the platform MBean server
+     *
+     * @return if the metrics were registered
+     */
+    public boolean unregisterMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(getObjectName());
+            return true;
+        } catch (InstanceNotFoundException e) {
+            return false;
+        } catch (JMException e) {
+            throw new RuntimeException("Unable to unregister metrics " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionMetrics(" + name + ")";
+    }
+}
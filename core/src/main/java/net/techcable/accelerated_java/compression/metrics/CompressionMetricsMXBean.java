@@ -0,0 +1,69 @@
+package net.techcable.accelerated_java.compression.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of a {@link CompressionMetrics}.
+ * <p>Latency maps are keyed by {@code operation.bucket}, for example {@code compress.small}.
+ * Routing maps are keyed by {@code operation.kind}, with the chosen backend appended for the route counts,
+ * for example {@code compress.heap.accelerated}.</p>
+ */
+public interface CompressionMetricsMXBean {
+
+    public String getName();
+
+    public long getCompressCalls();
+
+    public long getDecompressCalls();
+
+    public long getCompressBytesIn();
+
+    public long getCompressBytesOut();
+
+    public long getDecompressBytesIn();
+
+    public long getDecompressBytesOut();
+
+    /**
+     * Get the ratio of compressed to uncompressed bytes, over everything compressed so far
+     *
+     * @return the compression ratio, or {@code NaN} if nothing has been compressed
+     */
+    public double getCompressionRatio();
+
+    public long getJniCalls();
+
+    public long getBounceCopyBytes();
+
+    public long getStreamsCreated();
+
+    public long getStreamsClosed();
+
+    public long getLevelIncreases();
+
+    public long getLevelDecreases();
+
+    public Map<String, Long> getLatencyCounts();
+
+    public Map<String, Long> getLatencyMedianNanos();
+
+    public Map<String, Long> getLatency99thPercentileNanos();
+
+    public Map<String, Long> getLatencyMaxNanos();
+
+    /**
+     * Get the number of streams a dispatching factory routed to each backend
+     *
+     * @return the route counts
+     */
+    public Map<String, Long> getRoutes();
+
+    /**
+     * Get the minimum input size a dispatching factory routes to the accelerated backend
+     *
+     * @return the thresholds, or an empty map if the factory doesn't dispatch
+     */
+    public Map<String, Long> getRoutingThresholds();
+
+    public void reset();
+}
@@ -0,0 +1,87 @@
+package net.techcable.accelerated_java.compression.metrics;
+
+import lombok.*;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Counters for a single compressor, which also feed the {@link CompressionMetrics} of the factory that created it.
+ * <p>Compressors only update their statistics while holding their lock,
+ * so the counters are plain fields and reads from other threads may be slightly stale.</p>
+ */
+@Getter
+public final class CompressorStatistics {
+    @Getter(AccessLevel.NONE)
+    private final CompressionMetrics metrics;
+    private final Operation operation;
+    private volatile long calls;
+    private volatile long bytesIn;
+    private volatile long bytesOut;
+    private volatile long jniCalls;
+    private volatile long bounceCopyBytes;
+    private volatile long totalNanos;
+
+    private CompressorStatistics(CompressionMetrics metrics, Operation operation) {
+        this.metrics = checkNotNull(metrics, "Null metrics");
+        this.operation = checkNotNull(operation, "Null operation");
+    }
+
+    /**
+     * Create statistics for a newly created stream, recording its creation in the metrics
+     *
+     * @param metrics   the factory's metrics
+     * @param operation the kind of stream
+     * @return the statistics
+     */
+    public static CompressorStatistics createStream(CompressionMetrics metrics, Operation operation) {
+        CompressorStatistics statistics = new CompressorStatistics(metrics, operation);
+        metrics.recordStreamCreated(operation);
+        return statistics;
+    }
+
+    /**
+     * Create statistics for a copy of this stream, recording its creation in the same metrics
+     *
+     * @return the copy's statistics
+     */
+    public CompressorStatistics createCopy() {
+        return createStream(metrics, operation);
+    }
+
+    /**
+     * Record a completed call to the compressor
+     *
+     * @param bytesIn         the number of bytes consumed
+     * @param bytesOut        the number of bytes produced
+     * @param jniCalls        the number of calls into native code
+     * @param bounceCopyBytes the number of bytes copied through temporary buffers
+     * @param startNanos      the value of {@link System#nanoTime()} when the call started
+     */
+    @SuppressWarnings("NonAtomicOperationOnVolatileField") // Guarded by the compressor's lock
+    public void record(long bytesIn, long bytesOut, int jniCalls, long bounceCopyBytes, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        this.calls++;
+        this.bytesIn += bytesIn;
+        this.bytesOut += bytesOut;
+        this.jniCalls += jniCalls;
+        this.bounceCopyBytes += bounceCopyBytes;
+        this.totalNanos += nanos;
+        metrics.recordJniCalls(jniCalls);
+        if (bounceCopyBytes != 0) metrics.recordBounceCopy(bounceCopyBytes);
+        metrics.recordOperation(operation, bytesIn, bytesOut, nanos);
+    }
+
+    public void recordClosed() {
+        metrics.recordStreamClosed(operation);
+    }
+
+    /**
+     * Get the ratio of output bytes to input bytes
+     *
+     * @return the ratio, or {@code NaN} if nothing has been consumed
+     */
+    public double getRatio() {
+        long bytesIn = this.bytesIn;
+        return bytesIn == 0 ? Double.NaN : (double) bytesOut / bytesIn;
+    }
+}
@@ -0,0 +1,105 @@
+package net.techcable.accelerated_java.compression.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A lock-free histogram of latencies, with power-of-two buckets.
+ * <p>Recording never allocates, so it's safe to use on hot paths.
+ * The tradeoff is precision: percentiles are only reported as the upper bound of the bucket they fall in.</p>
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record a single operation
+     *
+     * @param nanos the duration of the operation in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos <= 0) return 0;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * Get the number of recorded operations
+     *
+     * @return the number of operations
+     */
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Get an upper bound on the specified percentile
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket containing the percentile in nanoseconds, or zero if nothing was recorded
+     * @throws IllegalArgumentException if the percentile is out of range
+     */
+    public long getPercentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "Invalid percentile %s", percentile);
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(total * (percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= target && snapshot[bucket] != 0) return upperBound(bucket);
+        }
+        throw new AssertionError("Couldn't find percentile " + percentile);
+    }
+
+    /**
+     * Get an upper bound on the longest recorded operation
+     *
+     * @return the upper bound of the highest non-empty bucket in nanoseconds, or zero if nothing was recorded
+     */
+    public long getMax() {
+        for (int bucket = BUCKETS - 1; bucket >= 0; bucket--) {
+            if (counts.get(bucket) != 0) return upperBound(bucket);
+        }
+        return 0;
+    }
+
+    /**
+     * Take a snapshot of the bucket counts
+     * <p>Bucket {@code i} contains operations which took less than {@code 2^i} nanoseconds, but at least {@code 2^(i - 1)}.</p>
+     *
+     * @return the counts for each bucket
+     */
+    public long[] snapshot() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Clear all recorded operations
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package net.techcable.accelerated_java.compression.metrics;
+
+/**
+ * The kind of operation a compressor performs.
+ */
+public enum Operation {
+    COMPRESS,
+    DECOMPRESS;
+
+    private static final Operation[] VALUES = values();
+
+    /* default */ static final int COUNT = VALUES.length;
+
+    /* default */ static Operation byOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,53 @@
+package net.techcable.accelerated_java.compression.metrics;
+
+import lombok.*;
+
+/**
+ * Buckets operations by the amount of uncompressed data they handled.
+ */
+@RequiredArgsConstructor
+@Getter
+public enum SizeBucket {
+    /**
+     * Less than 1 KiB of uncompressed data
+     */
+    TINY(1024),
+    /**
+     * Less than 16 KiB of uncompressed data
+     */
+    SMALL(16 * 1024),
+    /**
+     * Less than 256 KiB of uncompressed data
+     */
+    MEDIUM(256 * 1024),
+    /**
+     * Everything else
+     */
+    LARGE(Long.MAX_VALUE);
+
+    /**
+     * The exclusive upper bound of this bucket, in bytes.
+     */
+    private final long limit;
+
+    private static final SizeBucket[] VALUES = values();
+
+    /* default */ static final int COUNT = VALUES.length;
+
+    /* default */ static SizeBucket byOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * Get the bucket for an operation that handled the specified amount of uncompressed data
+     *
+     * @param bytes the amount of uncompressed data
+     * @return the bucket
+     */
+    public static SizeBucket of(long bytes) {
+        for (SizeBucket bucket : VALUES) {
+            if (bytes < bucket.limit) return bucket;
+        }
+        return LARGE;
+    }
+}
@@ -0,0 +1,11 @@
+package net.techcable.accelerated_java.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.techcable.accelerated_java.Compress")
+@Label("Compress")
+@Description("A single call to CompressionEngine.compressMemory")
+/* default */ final class CompressEvent extends OperationEvent {
+}
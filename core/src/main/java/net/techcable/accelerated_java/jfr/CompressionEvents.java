@@ -0,0 +1,87 @@
+package net.techcable.accelerated_java.jfr;
+
+import lombok.*;
+
+import net.techcable.accelerated_java.compression.BufferKind;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+
+/**
+ * Emits Java Flight Recorder events for compression, if JFR is present.
+ * <p>The JFR event classes are only loaded (reflectively) when the {@code jdk.jfr} API exists,
+ * so this is safe to call on JVMs without flight recorder, where every method does nothing.
+ * When JFR is present but not recording, the begin methods return null so callers can skip committing.</p>
+ * <p>Compress and decompress events have a default threshold of 10 ms, so only slow operations are recorded
+ * unless the recording's settings lower it.</p>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class CompressionEvents {
+    private static final EventSink SINK = loadSink();
+
+    private static EventSink loadSink() {
+        try {
+            Class.forName("jdk.jfr.Event", false, CompressionEvents.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return EventSink.NOOP;
+        }
+        try {
+            return (EventSink) Class.forName("net.techcable.accelerated_java.jfr.JfrEventSink").newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return EventSink.NOOP;
+        }
+    }
+
+    /**
+     * Check if events are backed by flight recorder
+     *
+     * @return if JFR is available
+     */
+    public static boolean isAvailable() {
+        return SINK != EventSink.NOOP;
+    }
+
+    /**
+     * Start timing a compress or decompress operation
+     *
+     * @param operation the kind of operation
+     * @return the event to commit, or null if the event is disabled
+     */
+    public static Object beginOperation(Operation operation) {
+        return SINK.beginOperation(operation);
+    }
+
+    /**
+     * Finish a compress or decompress operation, committing the event if it exceeded the threshold
+     *
+     * @param event    the event returned by {@link #beginOperation(Operation)}
+     * @param backend  the name of the backend
+     * @param level    the compression level, or -1 if decompressing
+     * @param bytesIn  the number of bytes consumed
+     * @param bytesOut the number of bytes produced
+     * @param inKind   the kind of the input buffer
+     * @param outKind  the kind of the output buffer
+     */
+    public static void commitOperation(Object event, String backend, int level, long bytesIn, long bytesOut, BufferKind inKind, BufferKind outKind) {
+        if (event != null) SINK.commitOperation(event, backend, level, bytesIn, bytesOut, inKind, outKind);
+    }
+
+    public static void streamCreated(Operation operation, String backend, int level) {
+        SINK.streamCreated(operation, backend, level);
+    }
+
+    public static void streamClosed(Operation operation, String backend) {
+        SINK.streamClosed(operation, backend);
+    }
+
+    /**
+     * Start timing a native library load
+     *
+     * @return the event to commit, or null if the event is disabled
+     */
+    public static Object beginLibraryLoad() {
+        return SINK.beginLibraryLoad();
+    }
+
+    public static void commitLibraryLoad(Object event, String name, String path, boolean success) {
+        if (event != null) SINK.commitLibraryLoad(event, name, path, success);
+    }
+}
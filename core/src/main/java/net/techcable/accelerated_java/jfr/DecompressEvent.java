@@ -0,0 +1,11 @@
+package net.techcable.accelerated_java.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.techcable.accelerated_java.Decompress")
+@Label("Decompress")
+@Description("A single call to CompressionEngine.decompressMemory")
+/* default */ final class DecompressEvent extends OperationEvent {
+}
@@ -0,0 +1,46 @@
+package net.techcable.accelerated_java.jfr;
+
+import net.techcable.accelerated_java.compression.BufferKind;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+
+/**
+ * The implementation behind {@link CompressionEvents}, which is either backed by JFR or does nothing.
+ */
+/* default */ interface EventSink {
+
+    public Object beginOperation(Operation operation);
+
+    public void commitOperation(Object event, String backend, int level, long bytesIn, long bytesOut, BufferKind inKind, BufferKind outKind);
+
+    public void streamCreated(Operation operation, String backend, int level);
+
+    public void streamClosed(Operation operation, String backend);
+
+    public Object beginLibraryLoad();
+
+    public void commitLibraryLoad(Object event, String name, String path, boolean success);
+
+    /* default */ static final EventSink NOOP = new EventSink() {
+        @Override
+        public Object beginOperation(Operation operation) {
+            return null;
+        }
+
+        @Override
+        public void commitOperation(Object event, String backend, int level, long bytesIn, long bytesOut, BufferKind inKind, BufferKind outKind) {}
+
+        @Override
+        public void streamCreated(Operation operation, String backend, int level) {}
+
+        @Override
+        public void streamClosed(Operation operation, String backend) {}
+
+        @Override
+        public Object beginLibraryLoad() {
+            return null;
+        }
+
+        @Override
+        public void commitLibraryLoad(Object event, String name, String path, boolean success) {}
+    };
+}
@@ -0,0 +1,84 @@
+package net.techcable.accelerated_java.jfr;
+
+import jdk.jfr.EventType;
+
+import net.techcable.accelerated_java.compression.BufferKind;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+
+/**
+ * Emits events using flight recorder.
+ * <p>This class references {@code jdk.jfr}, so it must only be loaded reflectively by {@link CompressionEvents}.</p>
+ */
+/* default */ final class JfrEventSink implements EventSink {
+    /**
+     * The types of the operation events, which know if a running recording enables them without allocating an event
+     * <p>Operations are the hot path, and the events escape to the engines, so they'd be allocated on every call otherwise.</p>
+     */
+    private static final EventType COMPRESS_TYPE = EventType.getEventType(CompressEvent.class);
+    private static final EventType DECOMPRESS_TYPE = EventType.getEventType(DecompressEvent.class);
+
+    @Override
+    public Object beginOperation(Operation operation) {
+        boolean compress = operation == Operation.COMPRESS;
+        if (!(compress ? COMPRESS_TYPE : DECOMPRESS_TYPE).isEnabled()) return null;
+        OperationEvent event = compress ? new CompressEvent() : new DecompressEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitOperation(Object obj, String backend, int level, long bytesIn, long bytesOut, BufferKind inKind, BufferKind outKind) {
+        OperationEvent event = (OperationEvent) obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.backend = backend;
+            event.level = level;
+            event.bytesIn = bytesIn;
+            event.bytesOut = bytesOut;
+            event.inputKind = inKind.name();
+            event.outputKind = outKind.name();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void streamCreated(Operation operation, String backend, int level) {
+        StreamCreatedEvent event = new StreamCreatedEvent();
+        if (event.shouldCommit()) {
+            event.operation = operation.name();
+            event.backend = backend;
+            event.level = level;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void streamClosed(Operation operation, String backend) {
+        StreamClosedEvent event = new StreamClosedEvent();
+        if (event.shouldCommit()) {
+            event.operation = operation.name();
+            event.backend = backend;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginLibraryLoad() {
+        LibraryLoadEvent event = new LibraryLoadEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitLibraryLoad(Object obj, String name, String path, boolean success) {
+        LibraryLoadEvent event = (LibraryLoadEvent) obj;
+        event.end();
+        if (event.shouldCommit()) {
+            event.name = name;
+            event.path = path;
+            event.success = success;
+            event.commit();
+        }
+    }
+}
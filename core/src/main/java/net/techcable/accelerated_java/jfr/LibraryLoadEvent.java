@@ -0,0 +1,20 @@
+package net.techcable.accelerated_java.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.techcable.accelerated_java.NativeLibraryLoad")
+@Label("Native Library Load")
+@Category("Accelerated Java")
+/* default */ final class LibraryLoadEvent extends Event {
+    @Label("Library")
+    /* default */ String name;
+
+    @Label("Path")
+    /* default */ String path;
+
+    @Label("Success")
+    /* default */ boolean success;
+}
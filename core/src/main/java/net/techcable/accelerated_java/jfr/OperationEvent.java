@@ -0,0 +1,36 @@
+package net.techcable.accelerated_java.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The fields shared by {@link CompressEvent} and {@link DecompressEvent}.
+ */
+@Category({"Accelerated Java", "Compression"})
+@Threshold("10 ms")
+@StackTrace(true)
+/* default */ abstract class OperationEvent extends Event {
+    @Label("Backend")
+    /* default */ String backend;
+
+    @Label("Level")
+    /* default */ int level;
+
+    @Label("Bytes In")
+    @DataAmount
+    /* default */ long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    /* default */ long bytesOut;
+
+    @Label("Input Buffer Kind")
+    /* default */ String inputKind;
+
+    @Label("Output Buffer Kind")
+    /* default */ String outputKind;
+}
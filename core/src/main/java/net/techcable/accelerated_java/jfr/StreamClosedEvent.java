@@ -0,0 +1,9 @@
+package net.techcable.accelerated_java.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.techcable.accelerated_java.StreamClosed")
+@Label("Stream Closed")
+/* default */ final class StreamClosedEvent extends StreamEvent {
+}
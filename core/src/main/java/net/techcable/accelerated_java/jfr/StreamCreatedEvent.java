@@ -0,0 +1,11 @@
+package net.techcable.accelerated_java.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.techcable.accelerated_java.StreamCreated")
+@Label("Stream Created")
+/* default */ final class StreamCreatedEvent extends StreamEvent {
+    @Label("Level")
+    /* default */ int level;
+}
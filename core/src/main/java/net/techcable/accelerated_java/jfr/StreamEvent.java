@@ -0,0 +1,22 @@
+package net.techcable.accelerated_java.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields shared by {@link StreamCreatedEvent} and {@link StreamClosedEvent}.
+ * <p>Stream events are disabled by default, since servers can create streams very frequently.</p>
+ */
+@Category({"Accelerated Java", "Compression"})
+@Enabled(false)
+@StackTrace(false)
+/* default */ abstract class StreamEvent extends Event {
+    @Label("Backend")
+    /* default */ String backend;
+
+    @Label("Operation")
+    /* default */ String operation;
+}
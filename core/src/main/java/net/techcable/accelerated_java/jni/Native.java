@@ -0,0 +1,146 @@
+package net.techcable.accelerated_java.jni;
+
+import lombok.*;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import com.google.common.collect.ImmutableSet;
+
+import net.techcable.accelerated_java.utils.NativeLibrary;
+
+import sun.misc.Unsafe;
+
+import static com.google.common.base.Preconditions.*;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class Native {
+
+    public static final NativeLibrary LIBRARY = NativeLibrary.createLibrary("acceleratedJava", ImmutableSet.of("z"));
+
+    /**
+     * The unsafe instance, or null if it isn't accessible
+     */
+    private static final Unsafe UNSAFE;
+    /**
+     * The offset of a buffer's address field, or -1 if it isn't accessible
+     */
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        Unsafe unsafe;
+        long addressOffset;
+        try {
+            Field field = Unsafe.class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = (Unsafe) field.get(null);
+            addressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            addressOffset = -1;
+        }
+        UNSAFE = unsafe;
+        ADDRESS_OFFSET = addressOffset;
+    }
+
+    private static native long getNativeAddress0(ByteBuffer nioBuffer);
+
+    /**
+     * Get the address of the start of a direct buffer, ignoring its position
+     *
+     * @param buffer the direct buffer
+     * @return the buffer's address
+     * @throws IllegalArgumentException      if the buffer isn't direct
+     * @throws UnsupportedOperationException if the address isn't accessible without unsafe or the JNI library
+     */
+    public static long getNativeAddress(ByteBuffer buffer) {
+        checkNotNull(buffer, "Null buffer");
+        if (!buffer.isDirect())
+            throw new IllegalArgumentException(buffer.getClass().getName() + " isn't a direct buffer");
+        if (UNSAFE != null) {
+            return UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+        } else if (LIBRARY.isLoaded()) {
+            return getNativeAddress0(buffer);
+        } else {
+            throw new UnsupportedOperationException("Can't access the address of direct buffers without unsafe or the native library");
+        }
+    }
+
+    private static native long xxHash64(long address, int length, long seed);
+
+    /**
+     * Hash a region of native memory with the 64-bit xxHash, which matches {@link net.techcable.accelerated_java.utils.XXHash64}
+     *
+     * @param address the address of the region
+     * @param length  the number of bytes to hash
+     * @param seed    the seed
+     * @return the hash
+     * @throws IllegalArgumentException      if the length is negative
+     * @throws UnsupportedOperationException if the JNI library isn't loaded
+     */
+    public static long hashMemory(long address, int length, long seed) {
+        checkArgument(length >= 0, "Negative length %s", length);
+        if (!LIBRARY.isLoaded()) throw new UnsupportedOperationException("Can't hash native memory without the native library");
+        return xxHash64(address, length, seed);
+    }
+
+    private static native void filter0(int flags, int width, long src, long dst, int length, boolean invert);
+
+    /**
+     * Filter a region of native memory into another, or restore it, with a {@link net.techcable.accelerated_java.compression.NumericFilter}
+     *
+     * @param flags  the flags byte of the filter's header
+     * @param width  the size of each element in bytes
+     * @param src    the address to read from
+     * @param dst    the address to write to, which can't overlap the source
+     * @param length the number of bytes
+     * @param invert if the source is filtered data to restore
+     * @throws IllegalArgumentException      if the length is negative
+     * @throws UnsupportedOperationException if the JNI library isn't loaded
+     */
+    public static void filterMemory(int flags, int width, long src, long dst, int length, boolean invert) {
+        checkArgument(length >= 0, "Negative length %s", length);
+        if (!LIBRARY.isLoaded()) throw new UnsupportedOperationException("Can't filter native memory without the native library");
+        filter0(flags, width, src, dst, length, invert);
+    }
+
+    /**
+     * Check if arrays can be copied to and from native memory with {@link #copyMemory(long, byte[], int, int)}
+     *
+     * @return if copies are supported
+     */
+    public static boolean canCopyMemory() {
+        return UNSAFE != null;
+    }
+
+    /**
+     * Copy bytes from native memory into an array
+     *
+     * @param address the address to copy from
+     * @param array   the array to copy to
+     * @param offset  the offset in the array to copy to
+     * @param length  the number of bytes to copy
+     * @throws UnsupportedOperationException if {@link #canCopyMemory() copies are unsupported}
+     */
+    public static void copyMemory(long address, byte[] array, int offset, int length) {
+        checkPositionIndexes(offset, offset + length, array.length);
+        if (UNSAFE == null) throw new UnsupportedOperationException("Can't copy native memory without unsafe");
+        UNSAFE.copyMemory(null, address, array, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, length);
+    }
+
+    /**
+     * Copy bytes from an array into native memory
+     *
+     * @param array   the array to copy from
+     * @param offset  the offset in the array to copy from
+     * @param address the address to copy to
+     * @param length  the number of bytes to copy
+     * @throws UnsupportedOperationException if {@link #canCopyMemory() copies are unsupported}
+     */
+    public static void copyMemory(byte[] array, int offset, long address, int length) {
+        checkPositionIndexes(offset, offset + length, array.length);
+        if (UNSAFE == null) throw new UnsupportedOperationException("Can't copy native memory without unsafe");
+        UNSAFE.copyMemory(array, Unsafe.ARRAY_BYTE_BASE_OFFSET + offset, null, address, length);
+    }
+}
@@ -0,0 +1,392 @@
+package net.techcable.accelerated_java.jni;
+
+import lombok.*;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine;
+import net.techcable.accelerated_java.compression.WholeInputDecompressor;
+
+import static com.google.common.base.Preconditions.*;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class ZLibNative {
+
+    // Internal Magic
+
+    private static native long createStream0(int typeId, int level, int windowBits, int memLevel, int strategy);
+
+    private static native int inflate0(long ctx, long communicationPtr, long srcPtr, int srcLength, long destPtr, int destLength);
+
+    private static native int deflate0(long ctx, long communicationPtr, long srcPtr, int srcLength, long destPtr, int destLength, int flush);
+
+    private static native int params0(long ctx, long communicationPtr, int level, int strategy, long destPtr, int destLength);
+
+    private static native int setDictionary0(long ctx, int typeId, long dictionaryPtr, int dictionaryLength);
+
+    private static native String getMessage0(long ctx);
+
+    private static native void reset0(long ctx, int typeId);
+
+    private static native long copyStream0(long ctx, int typeId);
+
+    private static native void free0(long ctx, int typeId);
+
+    private static native long createInflateBack0();
+
+    private static native int inflateBack0(long ctx, long communicationPtr, long srcPtr, int srcLength, long destPtr, int destLength, int wrapper, int chunkLength, WholeInputDecompressor.OutputChain chain) throws InvalidDataException;
+
+    private static native void freeInflateBack0(long ctx);
+
+    // Public methods
+
+    private static final int DEFLATE_TYPE_ID = 0;
+    private static final int INFLATE_TYPE_ID = 1;
+
+    /*
+     * The wrappers {@link InflateBackStream} understands
+     */
+    public static final int WRAPPER_NONE = 0;
+    public static final int WRAPPER_ZLIB = 1;
+    public static final int WRAPPER_GZIP = 2;
+
+    /*
+     * The zlib error codes, which are returned as they are instead of being thrown by the native code
+     */
+    private static final int Z_STREAM_ERROR = -2;
+    private static final int Z_DATA_ERROR = -3;
+    private static final int Z_MEM_ERROR = -4;
+    /**
+     * The statuses by code, since {@link Status#values()} copies the array on every call
+     */
+    private static final Status[] STATUSES = Status.values();
+
+    private static final int MAX_WINDOW_BITS = 15;
+    private static final int DEFAULT_MEM_LEVEL = 8;
+    private static final int DEFAULT_STRATEGY = 0;
+
+    public static NativeZlibStream createDecompressingStream() {
+        return createDecompressingStream(MAX_WINDOW_BITS);
+    }
+
+    public static NativeZlibStream createDecompressingStream(int windowBits) {
+        ByteBuffer communicationBuf = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder());
+        long nativePointer = createStream0(INFLATE_TYPE_ID, -1, windowBits, -1, -1);
+        return new NativeZlibStream(nativePointer, communicationBuf, NativeZlibStream.State.DECOMPRESSING);
+    }
+
+    public static NativeZlibStream createCompressingStream(int level) {
+        return createCompressingStream(level, MAX_WINDOW_BITS, DEFAULT_MEM_LEVEL, DEFAULT_STRATEGY);
+    }
+
+    public static NativeZlibStream createCompressingStream(int level, int windowBits, int memLevel, int strategy) {
+        ByteBuffer communicationBuf = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder());
+        long nativePointer = createStream0(DEFLATE_TYPE_ID, level, windowBits, memLevel, strategy);
+        return new NativeZlibStream(nativePointer, communicationBuf, NativeZlibStream.State.COMPRESSING);
+    }
+
+    public static InflateBackStream createInflateBackStream() {
+        ByteBuffer communicationBuf = ByteBuffer.allocateDirect(16).order(ByteOrder.nativeOrder());
+        long nativePointer = createInflateBack0();
+        return new InflateBackStream(nativePointer, communicationBuf);
+    }
+
+    /**
+     * Decompresses whole inputs with zlib's {@code inflateBack}, which needs all the input upfront
+     * <p>Since it never stops part way through, it doesn't keep the state of the stream between calls,
+     * and decompresses raw deflate data faster than {@link NativeZlibStream}.
+     * The zlib and gzip headers and trailers are handled separately.</p>
+     */
+    public static final class InflateBackStream implements Closeable {
+        private final long pointer;
+        private final ByteBuffer communicationBuf;
+        private final long communicationBufPointer;
+        private boolean closed;
+
+        private InflateBackStream(long pointer, ByteBuffer communicationBuf) {
+            this.pointer = pointer;
+            this.communicationBuf = checkNotNull(communicationBuf, "Null communication buffer");
+            this.communicationBufPointer = Native.getNativeAddress(communicationBuf);
+        }
+
+        /**
+         * Decompress a whole input
+         * <p>The output is written to the given region until it's full, and then to regions from the chain.
+         * The number of bytes consumed and produced are available from {@link #getConsumed()} and {@link #getWritten()}.</p>
+         *
+         * @param inAddress   the address of the input
+         * @param inLength    the number of input bytes
+         * @param outAddress  the address of the first output region
+         * @param outLength   the length of the first output region
+         * @param wrapper     the {@link #WRAPPER_ZLIB header and trailer} around the deflate data
+         * @param chunkLength the length of the regions to request from the chain
+         * @param chain       the chain of further output regions, or null to stop when the first region is full
+         * @return if the input was finished, or false if the first region filled up without a chain
+         * @throws InvalidDataException if the input is invalid or truncated, or the chain threw it
+         */
+        public synchronized boolean inflate(long inAddress, int inLength, long outAddress, int outLength, int wrapper, int chunkLength, WholeInputDecompressor.OutputChain chain) throws InvalidDataException {
+            checkState(!closed, "Stream is closed");
+            checkArgument(wrapper >= WRAPPER_NONE && wrapper <= WRAPPER_GZIP, "Invalid wrapper %s", wrapper);
+            return inflateBack0(pointer, communicationBufPointer, inAddress, inLength, outAddress, outLength, wrapper, chunkLength, chain) == 1;
+        }
+
+        /**
+         * Get the number of bytes consumed by the last call
+         *
+         * @return the number of bytes consumed
+         */
+        public int getConsumed() {
+            return communicationBuf.getInt(0);
+        }
+
+        /**
+         * Get the number of bytes produced by the last call, across every region
+         *
+         * @return the number of bytes produced
+         */
+        public long getWritten() {
+            return communicationBuf.getLong(8);
+        }
+
+        @Override
+        public synchronized void close() {
+            checkState(!closed, "Stream is already closed");
+            closed = true;
+            freeInflateBack0(pointer);
+        }
+    }
+
+    public static final class NativeZlibStream implements Closeable {
+        private final long pointer;
+        private final ByteBuffer communicationBuf;
+        private final long communicationBufPointer;
+        private final int typeId;
+        @Getter
+        private volatile State state;
+
+        private NativeZlibStream(long streamPointer, ByteBuffer communicationBuf, State state) {
+            this.pointer = streamPointer;
+            this.communicationBuf = checkNotNull(communicationBuf, "Null communication buffer");
+            this.communicationBufPointer = Native.getNativeAddress(communicationBuf);
+            this.state = checkNotNull(state, "Null state");
+            switch (state) {
+                case DECOMPRESSING:
+                    typeId = INFLATE_TYPE_ID;
+                    break;
+                case COMPRESSING:
+                    typeId = DEFLATE_TYPE_ID;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid starting state: " + state);
+            }
+        }
+
+        private NativeZlibStream(long streamPointer, ByteBuffer communicationBuf, int typeId, State state) {
+            this.pointer = streamPointer;
+            this.communicationBuf = checkNotNull(communicationBuf, "Null communication buffer");
+            this.communicationBufPointer = Native.getNativeAddress(communicationBuf);
+            this.typeId = typeId;
+            this.state = checkNotNull(state, "Null state");
+        }
+
+        /**
+         * Decompress from one region of native memory into another
+         * <p>The number of bytes consumed and produced are available from {@link #getConsumed()} and {@link #getWritten()}.</p>
+         *
+         * @param inAddress  the address of the input
+         * @param inLength   the number of input bytes
+         * @param outAddress the address of the output
+         * @param outLength  the number of bytes available for output
+         * @return the status
+         * @throws InvalidDataException if the input is invalid
+         */
+        public synchronized Status decompress(long inAddress, int inLength, long outAddress, int outLength) throws InvalidDataException {
+            State state = getState();
+            state.assertEquals(State.DECOMPRESSING);
+            int statusCode = inflate0(this.pointer, communicationBufPointer, inAddress, inLength, outAddress, outLength);
+            if (statusCode == Z_DATA_ERROR) throw new InvalidDataException("Invalid input data: " + getMessage());
+            Status status = toStatus(statusCode);
+            if (status == Status.FINISHED) {
+                this.state = State.FINISHED;
+            }
+            return status;
+        }
+
+        /**
+         * Compress from one region of native memory into another
+         * <p>The number of bytes consumed and produced are available from {@link #getConsumed()} and {@link #getWritten()}.</p>
+         *
+         * @param inAddress  the address of the input
+         * @param inLength   the number of input bytes
+         * @param outAddress the address of the output
+         * @param outLength  the number of bytes available for output
+         * @param flush      the zlib flush mode, such as {@code Z_SYNC_FLUSH} or {@code Z_FINISH}
+         * @return the status
+         */
+        public synchronized Status compress(long inAddress, int inLength, long outAddress, int outLength, int flush) {
+            state.assertEquals(State.COMPRESSING);
+            int statusCode = deflate0(this.pointer, communicationBufPointer, inAddress, inLength, outAddress, outLength, flush);
+            Status status = toStatus(statusCode);
+            if (status == Status.FINISHED) {
+                this.state = State.FINISHED;
+            }
+            return status;
+        }
+
+        /**
+         * Change the level and strategy of a compressing stream
+         * <p>Zlib may need to flush data compressed with the old parameters, which is written to the output
+         * and counted by {@link #getWritten()}.
+         * If there isn't enough room for the flushed data, the parameters are left unchanged.</p>
+         *
+         * @param level      the new compression level
+         * @param strategy   the id of the new strategy
+         * @param outAddress the address to write flushed data to
+         * @param outLength  the number of bytes available for flushed data
+         * @return if the parameters were changed
+         */
+        public synchronized boolean setParams(int level, int strategy, long outAddress, int outLength) {
+            state.assertEquals(State.COMPRESSING);
+            // No progress means there wasn't room to flush the old data
+            return toStatus(params0(this.pointer, communicationBufPointer, level, strategy, outAddress, outLength)) == Status.OK;
+        }
+
+        /**
+         * Set the preset dictionary
+         * <p>Compressing streams and raw decompressing streams set it before any data,
+         * and zlib decompressing streams set it once decompressing returns {@link Status#NEEDS_DICTIONARY}.</p>
+         *
+         * @param address the address of the dictionary
+         * @param length  the length of the dictionary
+         * @throws InvalidDataException if the data needs a different dictionary
+         */
+        public synchronized void setDictionary(long address, int length) throws InvalidDataException {
+            state.assertNotEquals(State.CLOSED);
+            int code = setDictionary0(pointer, typeId, address, length);
+            if (code == Z_DATA_ERROR) {
+                throw new InvalidDataException("Invalid input data: wrong preset dictionary");
+            } else if (code != 0) {
+                throw new IllegalStateException("Unable to set the dictionary: error code " + code + ": " + getMessage());
+            }
+        }
+
+        /**
+         * Convert a status code from the native code, throwing the errors other than invalid data
+         *
+         * @param code the status code
+         * @return the status
+         */
+        private Status toStatus(int code) {
+            switch (code) {
+                case Z_STREAM_ERROR:
+                    throw new IllegalStateException("Internal error! Stream in invalid state: " + getMessage());
+                case Z_MEM_ERROR:
+                    throw new OutOfMemoryError("Zlib ran out of memory");
+                default:
+                    if (code < 0 || code >= STATUSES.length) {
+                        throw new IllegalStateException("Unknown error code " + code + ": " + getMessage());
+                    }
+                    return STATUSES[code];
+            }
+        }
+
+        /**
+         * Get zlib's message for the last error, which is only looked up once there's an error
+         */
+        private String getMessage() {
+            String message = getMessage0(pointer);
+            return message != null ? message : "unknown";
+        }
+
+        /**
+         * Reset the stream to its initial state, keeping its parameters
+         */
+        public synchronized void reset() {
+            state.assertNotEquals(State.CLOSED);
+            reset0(pointer, typeId);
+            this.state = typeId == DEFLATE_TYPE_ID ? State.COMPRESSING : State.DECOMPRESSING;
+        }
+
+        /**
+         * Copy the stream, including its window and any pending output, into a new independent stream
+         *
+         * @return the copy
+         */
+        public synchronized NativeZlibStream copy() {
+            state.assertNotEquals(State.CLOSED);
+            ByteBuffer communicationBuf = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder());
+            return new NativeZlibStream(copyStream0(pointer, typeId), communicationBuf, typeId, state);
+        }
+
+        /**
+         * Get the number of bytes consumed by the last call
+         *
+         * @return the number of bytes consumed
+         */
+        public int getConsumed() {
+            return communicationBuf.getInt(0);
+        }
+
+        /**
+         * Get the number of bytes produced by the last call
+         *
+         * @return the number of bytes produced
+         */
+        public int getWritten() {
+            return communicationBuf.getInt(4);
+        }
+
+        public synchronized void close() {
+            state.assertNotEquals(State.CLOSED);
+            this.state = State.CLOSED;
+            free0(pointer, typeId);
+        }
+
+        @RequiredArgsConstructor
+        public enum State {
+            COMPRESSING(CompressionEngine.State.COMPRESSING),
+            DECOMPRESSING(CompressionEngine.State.DECOMPRESSING),
+            CLOSED(CompressionEngine.State.CLOSED),
+            FINISHED(CompressionEngine.State.FINISHED);
+
+            private void assertEquals(State expected) {
+                checkNotNull(expected, "Null state");
+                checkState(this == expected, "Caller is expected to check state is %s", expected);
+            }
+
+            private void assertNotEquals(State unexpected) {
+                checkNotNull(unexpected, "Null state");
+                checkState(this != unexpected, "Caller is expected to check state is not %s", unexpected);
+            }
+
+            @Getter
+            private final CompressionEngine.State compressorState;
+        }
+    }
+
+    @RequiredArgsConstructor
+    @Getter
+    public enum Status {
+        OK(CompressionEngine.Status.OK),
+        FINISHED(CompressionEngine.Status.FINISHED),
+        /**
+         * The data was compressed with a preset dictionary, which must be set before decompressing can continue
+         */
+        NEEDS_DICTIONARY(null),
+        /**
+         * Zlib couldn't make any progress until it's given more input or more room for output
+         */
+        NO_PROGRESS(null);
+
+        /**
+         * The matching status of the engine, or null if the engine handles the status itself
+         */
+        private final CompressionEngine.Status compressorStatus;
+    }
+}
@@ -0,0 +1,269 @@
+package net.techcable.accelerated_java.utils;
+
+import lombok.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import net.techcable.accelerated_java.jfr.CompressionEvents;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A JNI library and the system libraries it depends on.
+ * <p>Libraries can be loaded from a directory, or {@link #loadFromClasspath(ClassLoader) from the classpath},
+ * where they're found in a directory for the current {@link #getPlatform() platform} like {@code natives/linux-x86_64/}.
+ * Libraries on the classpath are extracted to a cache directory named after the hash of their contents,
+ * so they're only extracted once per version, and restarts can load them straight from the cache.
+ * The cache directory is {@code accelerated_java-natives-<user>} in the temporary directory by default,
+ * and can be changed with the {@code accelerated_java.natives.cache} system property.</p>
+ */
+@Getter
+public final class NativeLibrary {
+    private final String name;
+    private final ImmutableSet<String> dependencies;
+    private volatile boolean loaded;
+
+    private static final ConcurrentMap<String, NativeLibrary> libraries = new MapMaker().weakValues().makeMap();
+
+    private NativeLibrary(String name, ImmutableSet<String> dependencies) {
+        this.name = checkNotNull(name, "Null library name");
+        this.dependencies = checkNotNull(dependencies, "Null dependencies");
+        checkArgument(isValidLibraryName(name), "Invalid library name '%s'", name);
+        dependencies.forEach((dependencyName) -> {
+            checkArgument(isValidLibraryName(dependencyName), "Invalid dependency name '%s'", dependencyName);
+        });
+    }
+
+    @Synchronized
+    public void load(File nativesDirectory) {
+        checkNotNull(nativesDirectory, "Null natives directory.");
+        checkArgument(nativesDirectory.exists(), "Natives directory '%s' doesn't exist", nativesDirectory);
+        checkArgument(nativesDirectory.isDirectory(), "Natives directory '%s' isn't a directory", nativesDirectory);
+        checkState(!loaded, "Library is already loaded");
+        Object event = CompressionEvents.beginLibraryLoad();
+        File f = new File(nativesDirectory, System.mapLibraryName(getName()));
+        try {
+            for (String dependency : dependencies) {
+                try {
+                    System.loadLibrary(dependency);
+                } catch (UnsatisfiedLinkError e) {
+                    File dependencyFile = new File(nativesDirectory, System.mapLibraryName(dependency));
+                    if (!dependencyFile.exists()) throw new UnsatisfiedLinkError("Can't find dependency " + dependency + " for library " + getName() + " at " + dependencyFile);
+                    System.load(dependencyFile.getAbsolutePath());
+                }
+            }
+            if (!f.exists()) throw new UnsatisfiedLinkError("Can't find library " + getName() + " at " + f);
+            System.load(f.getAbsolutePath());
+            loaded = true;
+        } finally {
+            CompressionEvents.commitLibraryLoad(event, getName(), f.getAbsolutePath(), loaded);
+        }
+    }
+
+    /**
+     * Load the library from the classpath, extracting it to the cache directory if it isn't already there
+     * <p>Dependencies that can't be loaded from the system are loaded from the same classpath directory if they're there,
+     * and otherwise left for the system's dynamic linker to find.</p>
+     * <p>Each file is extracted to a temporary file and atomically moved into place,
+     * and existing files are only used if they have the expected contents,
+     * so it's safe for multiple JVMs to extract the library at once.</p>
+     *
+     * @param classLoader the class loader to find the library with
+     * @throws UnsatisfiedLinkError  if the library isn't on the classpath for this platform, or couldn't be extracted or loaded
+     * @throws IllegalStateException if the library is already loaded
+     */
+    @Synchronized
+    public void loadFromClasspath(ClassLoader classLoader) {
+        checkNotNull(classLoader, "Null class loader");
+        checkState(!loaded, "Library is already loaded");
+        Object event = CompressionEvents.beginLibraryLoad();
+        String directory = "natives/" + getPlatform() + "/";
+        String path = directory + System.mapLibraryName(getName());
+        try {
+            byte[] library = readResource(classLoader, path);
+            if (library == null) throw new UnsatisfiedLinkError("No library " + getName() + " for " + getPlatform() + " on the classpath at " + path);
+            // NOTE: Dependencies come first, since they have to be loaded before the library
+            Map<String, byte[]> files = new LinkedHashMap<>();
+            for (String dependency : dependencies) {
+                try {
+                    System.loadLibrary(dependency);
+                } catch (UnsatisfiedLinkError e) {
+                    String fileName = System.mapLibraryName(dependency);
+                    byte[] contents = readResource(classLoader, directory + fileName);
+                    if (contents != null) files.put(fileName, contents);
+                }
+            }
+            files.put(System.mapLibraryName(getName()), library);
+            Hasher hasher = Hashing.sha256().newHasher();
+            files.forEach((fileName, contents) -> hasher.putString(fileName, StandardCharsets.UTF_8).putInt(contents.length).putBytes(contents));
+            Path cacheDirectory = getCacheDirectory().resolve(getName() + "-" + hasher.hash().toString().substring(0, 32));
+            for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+                Path file = extract(cacheDirectory, entry.getKey(), entry.getValue());
+                path = file.toString();
+                System.load(path);
+            }
+            loaded = true;
+        } catch (IOException e) {
+            UnsatisfiedLinkError error = new UnsatisfiedLinkError("Unable to extract library " + getName() + ": " + e);
+            error.initCause(e);
+            throw error;
+        } finally {
+            CompressionEvents.commitLibraryLoad(event, getName(), path, loaded);
+        }
+    }
+
+    /**
+     * Get the name of the current platform, which is the name of the directory its libraries are in on the classpath
+     * <p>The name is the operating system and architecture, like {@code linux-x86_64}, {@code windows-x86_64} or {@code osx-aarch64}.</p>
+     *
+     * @return the platform's name
+     */
+    public static String getPlatform() {
+        String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        if (os.startsWith("windows")) {
+            os = "windows";
+        } else if (os.startsWith("mac") || os.startsWith("darwin")) {
+            os = "osx";
+        } else {
+            os = os.replaceAll("[^a-z0-9]", "");
+        }
+        String arch = System.getProperty("os.arch").toLowerCase(Locale.ROOT);
+        switch (arch) {
+            case "amd64":
+            case "x86_64":
+                arch = "x86_64";
+                break;
+            case "x86":
+            case "i386":
+            case "i486":
+            case "i586":
+            case "i686":
+                arch = "x86";
+                break;
+            case "arm64":
+            case "aarch64":
+                arch = "aarch64";
+                break;
+            default:
+                arch = arch.replaceAll("[^a-z0-9_]", "");
+        }
+        return os + "-" + arch;
+    }
+
+    private static Path getCacheDirectory() {
+        String path = System.getProperty("accelerated_java.natives.cache");
+        if (path != null) return new File(path).toPath();
+        String user = System.getProperty("user.name", "unknown").replaceAll("[^A-Za-z0-9_.-]", "_");
+        return new File(System.getProperty("java.io.tmpdir"), "accelerated_java-natives-" + user).toPath();
+    }
+
+    private static byte[] readResource(ClassLoader classLoader, String path) throws IOException {
+        try (InputStream in = classLoader.getResourceAsStream(path)) {
+            return in != null ? ByteStreams.toByteArray(in) : null;
+        }
+    }
+
+    /**
+     * Extract the file to the directory, unless it's already there with the same contents
+     *
+     * @return the extracted file
+     */
+    private static Path extract(Path directory, String fileName, byte[] contents) throws IOException {
+        Path file = directory.resolve(fileName);
+        if (hasContents(file, contents)) return file;
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+            try {
+                // NOTE: Other users shouldn't be able to replace our libraries, but this only works on POSIX systems
+                Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+            } catch (UnsupportedOperationException ignored) {}
+        }
+        Path temporary = Files.createTempFile(directory, fileName, ".tmp");
+        try {
+            Files.write(temporary, contents);
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (FileAlreadyExistsException | AccessDeniedException e) {
+                // NOTE: Windows can't replace a library that another JVM has loaded, which is fine if it extracted the same one
+                if (!hasContents(file, contents)) throw e;
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return file;
+    }
+
+    private static boolean hasContents(Path file, byte[] contents) throws IOException {
+        try {
+            return Files.isRegularFile(file) && Files.size(file) == contents.length && Arrays.equals(Files.readAllBytes(file), contents);
+        } catch (FileSystemException e) {
+            return false; // The file was removed or locked while we were reading it
+        }
+    }
+
+    public static Optional<NativeLibrary> getLibrary(String name) {
+        return Optional.ofNullable(libraries.get(name));
+    }
+
+    public static NativeLibrary createLibrary(String name, ImmutableSet<String> dependencies) {
+        NativeLibrary library = new NativeLibrary(name, dependencies);
+        NativeLibrary oldLibrary = libraries.putIfAbsent(name, library);
+        if (oldLibrary != null) {
+            checkState(oldLibrary.equals(library), "A library %s already exists but with dependencies %s instead of %s", name, oldLibrary.getDependencies(), dependencies);
+            return oldLibrary; // Return the existing one
+        } else {
+            return library;
+        }
+    }
+
+    private static boolean isValidLibraryName(String name) {
+        checkNotNull(name, "Null name");
+        int length = name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9')) {
+                return false;
+            }
+        }
+        return length > 0;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        NativeLibrary library;
+        return obj == this || obj != null && obj instanceof NativeLibrary && (library = (NativeLibrary) obj).name.equals(this.name) && library.dependencies.equals(this.dependencies);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+package net.techcable.accelerated_java.utils;
+
+import lombok.*;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * The 64-bit xxHash, a fast non-cryptographic hash.
+ * <p>This matches the JNI library's {@link net.techcable.accelerated_java.jni.Native#hashMemory(long, int, long) native version},
+ * which hashes native memory without copying it into an array.</p>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class XXHash64 {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * Hash part of an array
+     *
+     * @param array  the array
+     * @param offset the offset of the bytes to hash
+     * @param length the number of bytes to hash
+     * @param seed   the seed
+     * @return the hash
+     * @throws IndexOutOfBoundsException if the region is outside the array
+     */
+    public static long hash(byte[] array, int offset, int length, long seed) {
+        checkPositionIndexes(offset, offset + length, array.length);
+        final int end = offset + length;
+        int index = offset;
+        long hash;
+        if (length >= 32) {
+            long v1 = seed + PRIME1 + PRIME2, v2 = seed + PRIME2, v3 = seed, v4 = seed - PRIME1;
+            do {
+                v1 = round(v1, getLong(array, index));
+                v2 = round(v2, getLong(array, index + 8));
+                v3 = round(v3, getLong(array, index + 16));
+                v4 = round(v4, getLong(array, index + 24));
+                index += 32;
+            } while (index <= end - 32);
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+        hash += length;
+        for (; index <= end - 8; index += 8) {
+            hash ^= round(0, getLong(array, index));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (index <= end - 4) {
+            hash ^= (getInt(array, index) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            index += 4;
+        }
+        for (; index < end; index++) {
+            hash ^= (array[index] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0, value);
+        return accumulator * PRIME1 + PRIME4;
+    }
+
+    private static long getLong(byte[] array, int index) {
+        return (getInt(array, index) & 0xFFFFFFFFL) | (long) getInt(array, index + 4) << 32;
+    }
+
+    private static int getInt(byte[] array, int index) {
+        return array[index] & 0xFF | (array[index + 1] & 0xFF) << 8 | (array[index + 2] & 0xFF) << 16 | array[index + 3] << 24;
+    }
+}
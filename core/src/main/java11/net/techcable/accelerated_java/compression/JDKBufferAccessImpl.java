@@ -0,0 +1,31 @@
+package net.techcable.accelerated_java.compression;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Calls the byte buffer methods Java 11 added to {@link Deflater} and {@link Inflater}.
+ */
+/* default */ final class JDKBufferAccessImpl extends JDKBufferAccess {
+    @Override
+    /* default */ void setInput(Deflater deflater, ByteBuffer input) {
+        deflater.setInput(input);
+    }
+
+    @Override
+    /* default */ int deflate(Deflater deflater, ByteBuffer output, int flush) {
+        return deflater.deflate(output, flush);
+    }
+
+    @Override
+    /* default */ void setInput(Inflater inflater, ByteBuffer input) {
+        inflater.setInput(input);
+    }
+
+    @Override
+    /* default */ int inflate(Inflater inflater, ByteBuffer output) throws DataFormatException {
+        return inflater.inflate(output);
+    }
+}
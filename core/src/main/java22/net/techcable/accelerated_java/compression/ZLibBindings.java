@@ -0,0 +1,288 @@
+package net.techcable.accelerated_java.compression;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static java.lang.foreign.MemoryLayout.PathElement.*;
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * Downcall handles for the zlib functions the foreign backend uses, bound directly to the system's zlib.
+ * <p>The library is located with the {@code accelerated_java.zlib} system property if it's set,
+ * and otherwise with the platform's usual names for zlib.</p>
+ */
+/* default */ final class ZLibBindings {
+    /* default */ static final int Z_OK = 0;
+    /* default */ static final int Z_STREAM_END = 1;
+    /* default */ static final int Z_NEED_DICT = 2;
+    /* default */ static final int Z_STREAM_ERROR = -2;
+    /* default */ static final int Z_DATA_ERROR = -3;
+    /* default */ static final int Z_MEM_ERROR = -4;
+    /* default */ static final int Z_BUF_ERROR = -5;
+
+    /* default */ static final int Z_NO_FLUSH = 0;
+    /* default */ static final int Z_SYNC_FLUSH = 2;
+    /* default */ static final int Z_FINISH = 4;
+    /* default */ static final int Z_DEFLATED = 8;
+
+    private static final Linker LINKER = Linker.nativeLinker();
+    /**
+     * C's {@code unsigned long}, which is 32 bits on Windows and 64 bits elsewhere
+     */
+    private static final ValueLayout C_LONG = (ValueLayout) LINKER.canonicalLayouts().get("long");
+
+    /* default */ static final StructLayout Z_STREAM = struct(
+            ADDRESS.withName("next_in"),
+            JAVA_INT.withName("avail_in"),
+            C_LONG.withName("total_in"),
+            ADDRESS.withName("next_out"),
+            JAVA_INT.withName("avail_out"),
+            C_LONG.withName("total_out"),
+            ADDRESS.withName("msg"),
+            ADDRESS.withName("state"),
+            ADDRESS.withName("zalloc"),
+            ADDRESS.withName("zfree"),
+            ADDRESS.withName("opaque"),
+            JAVA_INT.withName("data_type"),
+            C_LONG.withName("adler"),
+            C_LONG.withName("reserved")
+    );
+    /* default */ static final long NEXT_IN = Z_STREAM.byteOffset(groupElement("next_in"));
+    /* default */ static final long AVAIL_IN = Z_STREAM.byteOffset(groupElement("avail_in"));
+    /* default */ static final long NEXT_OUT = Z_STREAM.byteOffset(groupElement("next_out"));
+    /* default */ static final long AVAIL_OUT = Z_STREAM.byteOffset(groupElement("avail_out"));
+    /* default */ static final long MSG = Z_STREAM.byteOffset(groupElement("msg"));
+
+    private final MethodHandle deflateInit, inflateInit, deflate, inflate, deflateParams, deflateReset, inflateReset, deflateEnd, inflateEnd, deflateSetDictionary, inflateSetDictionary, deflateCopy, inflateCopy;
+    /**
+     * The version of zlib, which the init functions check against the struct size
+     */
+    private final MemorySegment version;
+
+    private ZLibBindings(SymbolLookup lookup) {
+        /*
+         * Critical functions skip the thread state transition, which is most of the cost of a short native call.
+         * They can't run for long, since they block the GC, so callers bound the amount of data each call processes.
+         */
+        Linker.Option critical = Linker.Option.critical(false);
+        this.deflateInit = bind(lookup, "deflateInit2_", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT));
+        this.inflateInit = bind(lookup, "inflateInit2_", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, ADDRESS, JAVA_INT));
+        this.deflate = bind(lookup, "deflate", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT), critical);
+        this.inflate = bind(lookup, "inflate", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT), critical);
+        this.deflateParams = bind(lookup, "deflateParams", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT), critical);
+        this.deflateReset = bind(lookup, "deflateReset", FunctionDescriptor.of(JAVA_INT, ADDRESS), critical);
+        this.inflateReset = bind(lookup, "inflateReset", FunctionDescriptor.of(JAVA_INT, ADDRESS), critical);
+        this.deflateSetDictionary = bind(lookup, "deflateSetDictionary", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT));
+        this.inflateSetDictionary = bind(lookup, "inflateSetDictionary", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT));
+        this.deflateCopy = bind(lookup, "deflateCopy", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        this.inflateCopy = bind(lookup, "inflateCopy", FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+        this.deflateEnd = bind(lookup, "deflateEnd", FunctionDescriptor.of(JAVA_INT, ADDRESS));
+        this.inflateEnd = bind(lookup, "inflateEnd", FunctionDescriptor.of(JAVA_INT, ADDRESS));
+        MethodHandle zlibVersion = bind(lookup, "zlibVersion", FunctionDescriptor.of(ADDRESS));
+        try {
+            this.version = ((MemorySegment) zlibVersion.invokeExact()).reinterpret(Long.MAX_VALUE);
+        } catch (Throwable t) {
+            throw new AssertionError("Unable to get the zlib version", t);
+        }
+    }
+
+    /**
+     * Bind the system's zlib
+     *
+     * @return the bindings
+     * @throws IllegalArgumentException if zlib couldn't be found
+     */
+    /* default */ static ZLibBindings load() {
+        String path = System.getProperty("accelerated_java.zlib");
+        if (path != null) {
+            return new ZLibBindings(SymbolLookup.libraryLookup(path, Arena.global()));
+        }
+        String os = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        List<String> names = new ArrayList<>();
+        if (os.contains("windows")) {
+            names.add("zlib1.dll");
+        } else if (os.contains("mac")) {
+            names.add("libz.dylib");
+        } else {
+            names.add("libz.so.1");
+            names.add("libz.so");
+        }
+        IllegalArgumentException failure = new IllegalArgumentException("Unable to find zlib as any of " + names);
+        for (String name : names) {
+            try {
+                return new ZLibBindings(SymbolLookup.libraryLookup(name, Arena.global()));
+            } catch (IllegalArgumentException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        throw failure;
+    }
+
+    /* default */ String getVersion() {
+        return version.getString(0);
+    }
+
+    /* default */ int deflateInit(MemorySegment stream, int level, int windowBits, int memLevel, int strategy) {
+        try {
+            return (int) deflateInit.invokeExact(stream, level, Z_DEFLATED, windowBits, memLevel, strategy, version, (int) Z_STREAM.byteSize());
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int inflateInit(MemorySegment stream, int windowBits) {
+        try {
+            return (int) inflateInit.invokeExact(stream, windowBits, version, (int) Z_STREAM.byteSize());
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int deflate(MemorySegment stream, int flush) {
+        try {
+            return (int) deflate.invokeExact(stream, flush);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int inflate(MemorySegment stream, int flush) {
+        try {
+            return (int) inflate.invokeExact(stream, flush);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int deflateParams(MemorySegment stream, int level, int strategy) {
+        try {
+            return (int) deflateParams.invokeExact(stream, level, strategy);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int deflateReset(MemorySegment stream) {
+        try {
+            return (int) deflateReset.invokeExact(stream);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int inflateReset(MemorySegment stream) {
+        try {
+            return (int) inflateReset.invokeExact(stream);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int deflateSetDictionary(MemorySegment stream, MemorySegment dictionary) {
+        try {
+            return (int) deflateSetDictionary.invokeExact(stream, dictionary, (int) dictionary.byteSize());
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int inflateSetDictionary(MemorySegment stream, MemorySegment dictionary) {
+        try {
+            return (int) inflateSetDictionary.invokeExact(stream, dictionary, (int) dictionary.byteSize());
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int deflateCopy(MemorySegment dest, MemorySegment source) {
+        try {
+            return (int) deflateCopy.invokeExact(dest, source);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int inflateCopy(MemorySegment dest, MemorySegment source) {
+        try {
+            return (int) inflateCopy.invokeExact(dest, source);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int deflateEnd(MemorySegment stream) {
+        try {
+            return (int) deflateEnd.invokeExact(stream);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /* default */ int inflateEnd(MemorySegment stream) {
+        try {
+            return (int) inflateEnd.invokeExact(stream);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Get zlib's message for the last error on the stream
+     *
+     * @param stream the stream
+     * @return the message, or "unknown" if there isn't one
+     */
+    /* default */ static String getMessage(MemorySegment stream) {
+        MemorySegment msg = stream.get(ADDRESS, MSG);
+        return msg.equals(MemorySegment.NULL) ? "unknown" : msg.reinterpret(Long.MAX_VALUE).getString(0);
+    }
+
+    private static MethodHandle bind(SymbolLookup lookup, String name, FunctionDescriptor descriptor, Linker.Option... options) {
+        MemorySegment symbol = lookup.find(name).orElseThrow(() -> new IllegalArgumentException("Missing zlib function " + name));
+        return LINKER.downcallHandle(symbol, descriptor, options);
+    }
+
+    /**
+     * Create a struct layout, padding each member to its natural alignment like a C compiler
+     */
+    private static StructLayout struct(MemoryLayout... members) {
+        List<MemoryLayout> layouts = new ArrayList<>();
+        long offset = 0;
+        long maxAlignment = 1;
+        for (MemoryLayout member : members) {
+            long alignment = member.byteAlignment();
+            if (offset % alignment != 0) {
+                long padding = alignment - offset % alignment;
+                layouts.add(MemoryLayout.paddingLayout(padding));
+                offset += padding;
+            }
+            layouts.add(member);
+            offset += member.byteSize();
+            maxAlignment = Math.max(maxAlignment, alignment);
+        }
+        if (offset % maxAlignment != 0) {
+            layouts.add(MemoryLayout.paddingLayout(maxAlignment - offset % maxAlignment));
+        }
+        return MemoryLayout.structLayout(layouts.toArray(new MemoryLayout[0]));
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else {
+            throw new AssertionError("Unexpected exception from zlib", t);
+        }
+    }
+}
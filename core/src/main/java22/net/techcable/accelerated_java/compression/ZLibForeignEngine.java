@@ -0,0 +1,446 @@
+package net.techcable.accelerated_java.compression;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Optional;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+import net.techcable.accelerated_java.jfr.CompressionEvents;
+
+import static com.google.common.base.Preconditions.*;
+import static java.lang.foreign.ValueLayout.*;
+import static net.techcable.accelerated_java.compression.ZLibBindings.*;
+
+/**
+ * A zlib backend that calls the system's zlib directly through the foreign function API, without any glue library.
+ * <p>Native memory is passed to zlib in place, and arrays are copied through native staging buffers kept for the life of the stream,
+ * since zlib keeps pointers to its input and output in the stream between calls.
+ * Each call to zlib processes a bounded amount of data, so the calls can be critical.</p>
+ */
+/* default */ final class ZLibForeignEngine implements CompressionEngine {
+    /**
+     * The most data a single call to zlib can consume or produce, which bounds how long each critical call blocks the GC
+     */
+    private static final int MAX_CALL_LENGTH = 64 * 1024;
+    private static final String BACKEND = "foreign";
+
+    private final ZLibBindings zlib;
+    /**
+     * The z_stream struct, which is freed by the GC since closing an arena explicitly is expensive
+     */
+    private final MemorySegment stream;
+    private final Operation operation;
+    private final int chunkSize;
+    private final DecompressionLimits limits;
+    /**
+     * The number of bytes consumed and produced by decompressing, for enforcing the limits
+     */
+    private long totalIn, totalOut;
+    private volatile int level;
+    private volatile CompressionStrategy strategy;
+    /**
+     * If the level or strategy have changed, but haven't been applied to the stream yet
+     */
+    private volatile boolean paramsChanged;
+    /**
+     * The statistics for this compressor, or null if metrics are disabled
+     */
+    private final CompressorStatistics statistics;
+    private volatile State state;
+    /**
+     * Native memory that arrays are copied through, allocated the first time it's needed
+     */
+    private MemorySegment inStaging, outStaging;
+    private int bytesRead, bytesWritten;
+    /**
+     * The preset dictionary, or null if there isn't one
+     */
+    private final byte[] dictionary;
+    private final boolean dictionaryUpfront;
+    /**
+     * A native copy of the dictionary, made the first time it's set
+     */
+    private MemorySegment dictionarySegment;
+
+    private ZLibForeignEngine(ZLibBindings zlib, MemorySegment stream, CompressorOptions options, Operation operation, CompressorStatistics statistics) {
+        this.zlib = checkNotNull(zlib, "Null bindings");
+        this.stream = checkNotNull(stream, "Null stream");
+        this.chunkSize = options.getChunkSize();
+        this.operation = checkNotNull(operation, "Null operation");
+        this.limits = operation == Operation.DECOMPRESS ? options.getLimits() : DecompressionLimits.NONE;
+        this.level = operation == Operation.COMPRESS ? options.getLevel() : -1;
+        this.strategy = options.getStrategy();
+        this.statistics = statistics;
+        this.state = operation == Operation.COMPRESS ? State.COMPRESSING : State.DECOMPRESSING;
+        this.dictionary = options.getRawDictionary();
+        this.dictionaryUpfront = options.isDictionaryUpfront(operation == Operation.COMPRESS);
+        if (dictionaryUpfront) setUpfrontDictionary();
+    }
+
+    private ZLibForeignEngine(ZLibForeignEngine original, MemorySegment stream) {
+        this.zlib = original.zlib;
+        this.stream = stream;
+        this.chunkSize = original.chunkSize;
+        this.operation = original.operation;
+        this.limits = original.limits;
+        this.totalIn = original.totalIn;
+        this.totalOut = original.totalOut;
+        this.level = original.level;
+        this.strategy = original.strategy;
+        this.paramsChanged = original.paramsChanged;
+        this.statistics = original.statistics != null ? original.statistics.createCopy() : null;
+        this.state = original.state;
+        this.dictionary = original.dictionary;
+        this.dictionaryUpfront = original.dictionaryUpfront;
+        this.dictionarySegment = original.dictionarySegment;
+    }
+
+    private void setDictionary() throws InvalidDataException {
+        if (dictionarySegment == null) {
+            dictionarySegment = Arena.ofAuto().allocate(dictionary.length);
+            MemorySegment.copy(dictionary, 0, dictionarySegment, JAVA_BYTE, 0, dictionary.length);
+        }
+        int code = operation == Operation.COMPRESS ? zlib.deflateSetDictionary(stream, dictionarySegment) : zlib.inflateSetDictionary(stream, dictionarySegment);
+        if (code == Z_DATA_ERROR) {
+            throw new InvalidDataException("Invalid input data: wrong preset dictionary");
+        } else if (code != Z_OK) {
+            throw new IllegalStateException("Unable to set the dictionary: error code " + code);
+        }
+    }
+
+    private void setUpfrontDictionary() {
+        try {
+            setDictionary();
+        } catch (InvalidDataException e) {
+            throw new AssertionError("Setting the dictionary upfront can't have invalid data", e);
+        }
+    }
+
+    @Override
+    public int getLevel() {
+        getState().requireStateNot(State.DECOMPRESSING, "Decompressing doesn't have a level!");
+        return level;
+    }
+
+    @Override
+    public synchronized void setLevel(int level) {
+        checkArgument(level == CompressionEngineFactory.DEFAULT_COMPRESSION || level >= 0 && level <= CompressionEngineFactory.BEST_COMPRESSION, "Invalid level %s", level);
+        getState().requireState(State.COMPRESSING);
+        if (this.level != level) {
+            this.level = level;
+            this.paramsChanged = true;
+        }
+    }
+
+    @Override
+    public CompressionStrategy getStrategy() {
+        getState().requireStateNot(State.DECOMPRESSING, "Decompressing doesn't have a strategy!");
+        return strategy;
+    }
+
+    @Override
+    public synchronized void setStrategy(CompressionStrategy strategy) {
+        checkNotNull(strategy, "Null strategy");
+        getState().requireState(State.COMPRESSING);
+        if (this.strategy != strategy) {
+            this.strategy = strategy;
+            this.paramsChanged = true;
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        getState().requireStateNot(State.CLOSED, "Stream is closed");
+        int code = operation == Operation.COMPRESS ? zlib.deflateReset(stream) : zlib.inflateReset(stream);
+        if (code != Z_OK) throw new IllegalStateException("Zlib stream in bad state: error code " + code);
+        if (dictionaryUpfront) setUpfrontDictionary();
+        totalIn = 0;
+        totalOut = 0;
+        state = operation == Operation.COMPRESS ? State.COMPRESSING : State.DECOMPRESSING;
+    }
+
+    @Override
+    public synchronized void close() {
+        getState().requireStateNot(State.CLOSED, "Stream is already closed");
+        // NOTE: A data error from ending the stream just means it wasn't finished, which is fine
+        if (operation == Operation.COMPRESS) {
+            zlib.deflateEnd(stream);
+        } else {
+            zlib.inflateEnd(stream);
+        }
+        state = State.CLOSED;
+        if (statistics != null) statistics.recordClosed();
+        CompressionEvents.streamClosed(operation, BACKEND);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The stream is copied with zlib's {@code deflateCopy} or {@code inflateCopy}.</p>
+     */
+    @Override
+    public synchronized CompressionEngine copy() {
+        getState().requireStateNot(State.CLOSED, "Stream is closed");
+        MemorySegment copy = Arena.ofAuto().allocate(Z_STREAM);
+        int code = operation == Operation.COMPRESS ? zlib.deflateCopy(copy, stream) : zlib.inflateCopy(copy, stream);
+        if (code == Z_MEM_ERROR) {
+            throw new OutOfMemoryError("Not enough memory to copy stream");
+        } else if (code != Z_OK) {
+            throw new IllegalStateException("Zlib stream in bad state: error code " + code);
+        }
+        CompressionEvents.streamCreated(operation, BACKEND, level);
+        return new ZLibForeignEngine(this, copy);
+    }
+
+    @Override
+    public State getState() {
+        return state;
+    }
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.ZLIB;
+    }
+
+    @Override
+    public Optional<CompressorStatistics> getStatistics() {
+        return Optional.ofNullable(statistics);
+    }
+
+    @Override
+    public int getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public synchronized Status decompressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength) throws InvalidDataException {
+        BufferMemory.checkRegion(inArray, inOffset, inLength);
+        BufferMemory.checkRegion(outArray, outOffset, outLength);
+        getState().requireState(State.DECOMPRESSING);
+        return process(inArray, inOffset, inLength, outArray, outOffset, outLength, null);
+    }
+
+    @Override
+    public synchronized Status compressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength, FlushMode flush) {
+        BufferMemory.checkRegion(inArray, inOffset, inLength);
+        BufferMemory.checkRegion(outArray, outOffset, outLength);
+        checkNotNull(flush, "Null flush mode");
+        getState().requireState(State.COMPRESSING);
+        try {
+            return process(inArray, inOffset, inLength, outArray, outOffset, outLength, flush);
+        } catch (InvalidDataException e) {
+            throw new AssertionError("Compressing can't have invalid data", e);
+        }
+    }
+
+    /**
+     * Run the stream over the input
+     *
+     * @param flush the flush mode if compressing, or null if decompressing
+     */
+    private Status process(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength, FlushMode flush) throws InvalidDataException {
+        final boolean compressing = operation == Operation.COMPRESS;
+        final boolean finish = flush == FlushMode.FINISH;
+        final long startNanos = statistics != null ? System.nanoTime() : 0;
+        int read = 0, written = 0, nativeCalls = 0;
+        long bounceCopyBytes = 0;
+        boolean finished = false, needsMoreOutput = false, limitReached = false, progress;
+        if ((inArray != null || outArray != null) && inStaging == null) {
+            Arena arena = Arena.ofAuto();
+            inStaging = arena.allocate(chunkSize);
+            outStaging = arena.allocate(chunkSize);
+        }
+        final Object event = CompressionEvents.beginOperation(operation);
+        try {
+            do {
+                // Stage the input, passing native memory in place
+                final int inChunk;
+                final MemorySegment inSegment;
+                if (inArray == null) {
+                    inChunk = Math.min(inLength - read, MAX_CALL_LENGTH);
+                    inSegment = MemorySegment.ofAddress(inOffset + read).reinterpret(inChunk);
+                } else {
+                    inChunk = Math.min(inLength - read, chunkSize);
+                    MemorySegment.copy(inArray, (int) inOffset + read, inStaging, JAVA_BYTE, 0, inChunk);
+                    inSegment = inStaging;
+                    bounceCopyBytes += inChunk;
+                }
+                long allowedOutput = limits.allowedOutput(totalIn, inChunk, totalOut, written);
+                if (allowedOutput == 0) {
+                    limitReached = true;
+                    break;
+                }
+                final int outChunk;
+                final MemorySegment outSegment;
+                if (outArray == null) {
+                    outChunk = (int) Math.min(Math.min(outLength - written, MAX_CALL_LENGTH), allowedOutput);
+                    outSegment = MemorySegment.ofAddress(outOffset + written).reinterpret(outChunk);
+                } else {
+                    outChunk = (int) Math.min(Math.min(outLength - written, chunkSize), allowedOutput);
+                    outSegment = outStaging;
+                }
+                stream.set(ADDRESS, NEXT_OUT, outSegment);
+                stream.set(JAVA_INT, AVAIL_OUT, outChunk);
+                stream.set(ADDRESS, NEXT_IN, inSegment);
+                if (compressing && paramsChanged) {
+                    // Apply the new parameters with no input, since deflateParams doesn't flush what it consumes
+                    stream.set(JAVA_INT, AVAIL_IN, 0);
+                    int code = zlib.deflateParams(stream, level, strategy.getId());
+                    nativeCalls++;
+                    if (code == Z_OK) {
+                        paramsChanged = false;
+                    } else if (code != Z_BUF_ERROR) {
+                        throw new IllegalStateException("Unable to change parameters: " + getMessage(stream));
+                    }
+                }
+                stream.set(JAVA_INT, AVAIL_IN, inChunk);
+                final int code;
+                if (compressing) {
+                    // Only flush or finish once the last of the input has been given to zlib, with the new parameters
+                    boolean lastChunk = inChunk == inLength - read && !paramsChanged;
+                    code = zlib.deflate(stream, lastChunk ? flush.getId() : Z_NO_FLUSH);
+                } else {
+                    code = zlib.inflate(stream, Z_SYNC_FLUSH);
+                }
+                nativeCalls++;
+                int chunkRead = inChunk - stream.get(JAVA_INT, AVAIL_IN);
+                int chunkWritten = outChunk - stream.get(JAVA_INT, AVAIL_OUT);
+                if (outArray != null) {
+                    MemorySegment.copy(outStaging, JAVA_BYTE, 0, outArray, (int) outOffset + written, chunkWritten);
+                    bounceCopyBytes += chunkWritten;
+                }
+                read += chunkRead;
+                written += chunkWritten;
+                switch (code) {
+                    case Z_OK:
+                    case Z_BUF_ERROR: // No progress was possible, which we detect below
+                        break;
+                    case Z_STREAM_END:
+                        finished = true;
+                        break;
+                    case Z_NEED_DICT:
+                        if (dictionary == null) throw new InvalidDataException("Invalid input data: needs a preset dictionary");
+                        setDictionary();
+                        nativeCalls++;
+                        break;
+                    case Z_DATA_ERROR:
+                        throw new InvalidDataException("Invalid input data: " + getMessage(stream));
+                    case Z_MEM_ERROR:
+                        throw new OutOfMemoryError("Zlib ran out of memory");
+                    case Z_STREAM_ERROR:
+                        throw new IllegalStateException("Internal error! Stream in invalid state: " + getMessage(stream));
+                    default:
+                        throw new IllegalStateException("Unknown error code " + code + ": " + getMessage(stream));
+                }
+                if (!compressing) {
+                    totalIn += chunkRead;
+                    totalOut += chunkWritten;
+                    limits.check(totalIn, totalOut);
+                }
+                needsMoreOutput = chunkWritten == outChunk && !finished;
+                progress = chunkRead > 0 || chunkWritten > 0 || code == Z_NEED_DICT;
+            } while (!finished && progress && (read < inLength || needsMoreOutput || finish && compressing) && written < outLength);
+        } finally {
+            this.bytesRead = read;
+            this.bytesWritten = written;
+            if (statistics != null) {
+                statistics.record(read, written, nativeCalls, bounceCopyBytes, startNanos);
+            }
+            if (event != null) {
+                CompressionEvents.commitOperation(event, BACKEND, compressing ? level : -1, read, written, BufferKind.of(inArray), BufferKind.of(outArray));
+            }
+        }
+        if (finished) {
+            state = State.FINISHED;
+            return Status.FINISHED;
+        } else if (limitReached) {
+            return Status.OUTPUT_LIMIT_REACHED;
+        } else if (needsMoreOutput) {
+            return Status.INSUFFICIENT_OUTPUT;
+        } else {
+            return compressing ? Status.OK : Status.NEEDS_INPUT;
+        }
+    }
+
+    /**
+     * Bind the system's zlib and create a factory for it
+     * <p>Called reflectively by {@link ForeignBackend}.</p>
+     *
+     * @return the factory, or null if zlib couldn't be bound
+     */
+    /* default */ static CompressionEngineFactory loadFactory() {
+        try {
+            return new Factory(ZLibBindings.load(), null);
+        } catch (IllegalArgumentException | IllegalCallerException e) {
+            return null;
+        }
+    }
+
+    private static final class Factory implements CompressionEngineFactory {
+        private final ZLibBindings zlib;
+        private final CompressionMetrics metrics;
+
+        private Factory(ZLibBindings zlib, CompressionMetrics metrics) {
+            this.zlib = zlib;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public CompressionEngine createDecompressor(CompressorOptions options) {
+            checkNotNull(options, "Null options");
+            MemorySegment stream = Arena.ofAuto().allocate(Z_STREAM);
+            int code = zlib.inflateInit(stream, options.getZLibWindowBits());
+            checkInit(code, options);
+            CompressionEvents.streamCreated(Operation.DECOMPRESS, BACKEND, -1);
+            return new ZLibForeignEngine(zlib, stream, options, Operation.DECOMPRESS, createStatistics(Operation.DECOMPRESS));
+        }
+
+        @Override
+        public CompressionEngine createCompressor(CompressorOptions options) {
+            checkNotNull(options, "Null options");
+            MemorySegment stream = Arena.ofAuto().allocate(Z_STREAM);
+            int code = zlib.deflateInit(stream, options.getLevel(), options.getZLibWindowBits(), options.getMemLevel(), options.getStrategy().getId());
+            checkInit(code, options);
+            CompressionEvents.streamCreated(Operation.COMPRESS, BACKEND, options.getLevel());
+            return new ZLibForeignEngine(zlib, stream, options, Operation.COMPRESS, createStatistics(Operation.COMPRESS));
+        }
+
+        private static void checkInit(int code, CompressorOptions options) {
+            if (code == Z_OK) return;
+            switch (code) {
+                case Z_MEM_ERROR:
+                    throw new OutOfMemoryError("Not enough memory to initalize stream");
+                case Z_STREAM_ERROR:
+                    throw new IllegalArgumentException("Invalid stream parameters: " + options);
+                default:
+                    throw new IllegalStateException("Unknown error code " + code);
+            }
+        }
+
+        private CompressorStatistics createStatistics(Operation operation) {
+            return metrics != null ? CompressorStatistics.createStream(metrics, operation) : null;
+        }
+
+        @Override
+        public CompressionEngineFactory withMetrics(CompressionMetrics metrics) {
+            return new Factory(zlib, checkNotNull(metrics, "Null metrics"));
+        }
+
+        @Override
+        public Optional<CompressionMetrics> getMetrics() {
+            return Optional.ofNullable(metrics);
+        }
+
+        @Override
+        public CompressionType getType() {
+            return CompressionType.ZLIB;
+        }
+    }
+}
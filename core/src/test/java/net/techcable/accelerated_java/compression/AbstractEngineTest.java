@@ -0,0 +1,265 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.io.ByteStreams;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.junit.Assert;
+
+public abstract class AbstractEngineTest {
+    private static final Random RANDOM = new Random();
+    private static final int SIZE = 64 * 1024;
+
+    protected void testArrayRoundTrip(CompressionEngineFactory factory) throws InvalidDataException {
+        byte[] data = createData();
+        byte[] compressed = new byte[SIZE * 2];
+        byte[] decompressed = new byte[SIZE + 16];
+        CompressionEngine compressor = factory.createCompressor();
+        CompressionEngine decompressor = factory.createDecompressor();
+        try {
+            // NOTE: Offset the regions, to check the engines respect them
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, compressor.compress(data, 0, SIZE, compressed, 8, compressed.length - 8, true));
+            Assert.assertEquals(SIZE, compressor.getBytesRead());
+            int compressedLength = compressor.getBytesWritten();
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, decompressor.decompress(compressed, 8, compressedLength, decompressed, 16, SIZE));
+            Assert.assertEquals(compressedLength, decompressor.getBytesRead());
+            Assert.assertEquals(SIZE, decompressor.getBytesWritten());
+            Assert.assertArrayEquals(data, Arrays.copyOfRange(decompressed, 16, SIZE + 16));
+        } finally {
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testBufferRoundTrip(CompressionEngineFactory factory) throws InvalidDataException {
+        for (boolean inDirect : new boolean[] {false, true}) {
+            for (boolean outDirect : new boolean[] {false, true}) {
+                testBufferRoundTrip(factory, inDirect, outDirect);
+            }
+        }
+    }
+
+    private void testBufferRoundTrip(CompressionEngineFactory factory, boolean inDirect, boolean outDirect) throws InvalidDataException {
+        byte[] data = createData();
+        ByteBuffer in = allocate(SIZE, inDirect);
+        in.put(data).flip();
+        ByteBuffer compressed = allocate(SIZE * 2, outDirect);
+        ByteBuffer decompressed = allocate(SIZE, inDirect);
+        CompressionEngine compressor = factory.createCompressor();
+        CompressionEngine decompressor = factory.createDecompressor();
+        try {
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, compressor.compress(in, compressed, true));
+            Assert.assertFalse(in.hasRemaining());
+            Assert.assertEquals(compressor.getBytesWritten(), compressed.position());
+            compressed.flip();
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, decompressor.decompress(compressed, decompressed));
+            Assert.assertFalse(compressed.hasRemaining());
+            Assert.assertEquals(SIZE, decompressed.position());
+            byte[] result = new byte[SIZE];
+            decompressed.flip();
+            decompressed.get(result);
+            Assert.assertArrayEquals(data, result);
+        } finally {
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testAddressRoundTrip(CompressionEngineFactory factory) throws InvalidDataException {
+        byte[] data = createData();
+        ByteBuffer in = ByteBuffer.allocateDirect(SIZE);
+        in.put(data).flip();
+        ByteBuffer compressed = ByteBuffer.allocateDirect(SIZE * 2);
+        ByteBuffer decompressed = ByteBuffer.allocateDirect(SIZE);
+        CompressionEngine compressor = factory.createCompressor();
+        CompressionEngine decompressor = factory.createDecompressor();
+        try {
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, compressor.compress(Native.getNativeAddress(in), SIZE, Native.getNativeAddress(compressed), compressed.capacity(), true));
+            int compressedLength = compressor.getBytesWritten();
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, decompressor.decompress(Native.getNativeAddress(compressed), compressedLength, Native.getNativeAddress(decompressed), SIZE));
+            Assert.assertEquals(SIZE, decompressor.getBytesWritten());
+            byte[] result = new byte[SIZE];
+            decompressed.get(result);
+            Assert.assertArrayEquals(data, result);
+        } finally {
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testSmallOutput(CompressionEngineFactory factory) throws InvalidDataException {
+        byte[] data = new byte[SIZE];
+        RANDOM.nextBytes(data);
+        byte[] out = new byte[1000];
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        CompressionEngine compressor = factory.createCompressor();
+        CompressionEngine decompressor = factory.createDecompressor();
+        try {
+            int offset = 0;
+            CompressionEngine.Status status;
+            do {
+                status = compressor.compress(data, offset, SIZE - offset, out, 0, out.length, true);
+                offset += compressor.getBytesRead();
+                compressed.write(out, 0, compressor.getBytesWritten());
+            } while (status == CompressionEngine.Status.INSUFFICIENT_OUTPUT);
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, status);
+            Assert.assertEquals(SIZE, offset);
+            byte[] input = compressed.toByteArray();
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+            offset = 0;
+            do {
+                status = decompressor.decompress(input, offset, input.length - offset, out, 0, out.length);
+                offset += decompressor.getBytesRead();
+                decompressed.write(out, 0, decompressor.getBytesWritten());
+            } while (status == CompressionEngine.Status.INSUFFICIENT_OUTPUT);
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, status);
+            Assert.assertEquals(input.length, offset);
+            Assert.assertArrayEquals(data, decompressed.toByteArray());
+        } finally {
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testDictionaryRoundTrip(CompressionEngineFactory factory) throws InvalidDataException {
+        for (ZLibWrapper wrapper : ZLibWrapper.values()) {
+            // Gzip doesn't have preset dictionaries
+            if (wrapper != ZLibWrapper.GZIP) testDictionaryRoundTrip(factory, wrapper);
+        }
+    }
+
+    private void testDictionaryRoundTrip(CompressionEngineFactory factory, ZLibWrapper wrapper) throws InvalidDataException {
+        byte[] dictionary = new byte[1024];
+        RANDOM.nextBytes(dictionary);
+        byte[] data = Arrays.copyOf(dictionary, 512);
+        CompressorOptions options = CompressorOptions.builder().wrapper(wrapper).dictionary(dictionary).build();
+        byte[] compressed = new byte[1024];
+        byte[] decompressed = new byte[data.length];
+        CompressionEngine compressor = factory.createCompressor(options);
+        CompressionEngine decompressor = factory.createDecompressor(options);
+        try {
+            // Go around twice, to check resetting keeps the dictionary
+            for (int i = 0; i < 2; i++) {
+                compressor.reset();
+                decompressor.reset();
+                Assert.assertEquals(CompressionEngine.Status.FINISHED, compressor.compress(data, 0, data.length, compressed, 0, compressed.length, true));
+                int compressedLength = compressor.getBytesWritten();
+                // The data is all in the dictionary, so it's just a back reference
+                Assert.assertTrue("Compressed to " + compressedLength + " bytes", compressedLength < 64);
+                Assert.assertEquals(CompressionEngine.Status.FINISHED, decompressor.decompress(compressed, 0, compressedLength, decompressed, 0, decompressed.length));
+                Assert.assertArrayEquals(data, decompressed);
+            }
+        } finally {
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testStarvedAndInvalidInput(CompressionEngineFactory factory) throws InvalidDataException {
+        byte[] data = createData();
+        byte[] compressed = new byte[SIZE * 2];
+        byte[] decompressed = new byte[SIZE];
+        CompressionEngine compressor = factory.createCompressor();
+        CompressionEngine decompressor = factory.createDecompressor();
+        try {
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, compressor.compress(data, 0, SIZE, compressed, 0, compressed.length, true));
+            int compressedLength = compressor.getBytesWritten();
+            // Running out of input, or having none at all, isn't an error
+            Assert.assertEquals(CompressionEngine.Status.NEEDS_INPUT, decompressor.decompress(compressed, 0, 0, decompressed, 0, decompressed.length));
+            Assert.assertEquals(0, decompressor.getBytesWritten());
+            Assert.assertEquals(CompressionEngine.Status.NEEDS_INPUT, decompressor.decompress(compressed, 0, compressedLength / 2, decompressed, 0, decompressed.length));
+            Assert.assertEquals(compressedLength / 2, decompressor.getBytesRead());
+            // A header with the wrong compression method is invalid
+            decompressor.reset();
+            compressed[0] = 0x7F;
+            try {
+                decompressor.decompress(compressed, 0, compressedLength, decompressed, 0, decompressed.length);
+                Assert.fail("Decompressed invalid data");
+            } catch (InvalidDataException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid input data"));
+            }
+        } finally {
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testGzipRoundTrip(CompressionEngineFactory factory) throws InvalidDataException, IOException {
+        byte[] data = createData();
+        CompressorOptions options = CompressorOptions.builder().wrapper(ZLibWrapper.GZIP).build();
+        byte[] compressed = new byte[SIZE * 2];
+        byte[] decompressed = new byte[SIZE];
+        CompressionEngine compressor = factory.createCompressor(options);
+        CompressionEngine decompressor = factory.createDecompressor(options);
+        try {
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, compressor.compress(data, 0, SIZE, compressed, 0, compressed.length, true));
+            int compressedLength = compressor.getBytesWritten();
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed, 0, compressedLength))) {
+                Assert.assertArrayEquals(data, ByteStreams.toByteArray(in));
+            }
+            // A header with a file name and its own checksum, which the JDK doesn't write
+            byte[] named = addGzipName(compressed, compressedLength, "data.bin");
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, decompressor.decompress(named, 0, named.length, decompressed, 0, SIZE));
+            Assert.assertEquals(named.length, decompressor.getBytesRead());
+            Assert.assertArrayEquals(data, decompressed);
+            // The trailer is checked
+            decompressor.reset();
+            named[named.length - 1] ^= 1;
+            try {
+                decompressor.decompress(named, 0, named.length, decompressed, 0, SIZE);
+                Assert.fail("Decompressed the wrong length");
+            } catch (InvalidDataException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid input data"));
+            }
+        } finally {
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    /**
+     * Add a file name and header checksum to a minimal gzip member
+     */
+    /* default */ static byte[] addGzipName(byte[] member, int length, String name) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(member, 0, 3);
+        out.write(member[3] | 0x08 | 0x02);
+        out.write(member, 4, 6);
+        byte[] nameBytes = name.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(nameBytes, 0, nameBytes.length);
+        out.write(0);
+        CRC32 headerChecksum = new CRC32();
+        headerChecksum.update(out.toByteArray());
+        out.write((int) headerChecksum.getValue());
+        out.write((int) headerChecksum.getValue() >>> 8);
+        out.write(member, 10, length - 10);
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer allocate(int size, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    /**
+     * Create data that's half random and half repeating
+     */
+    private static byte[] createData() {
+        byte[] data = new byte[SIZE];
+        RANDOM.nextBytes(data);
+        for (int i = SIZE / 2; i < SIZE; i++) {
+            data[i] = (byte) (i % 7);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,87 @@
+package net.techcable.accelerated_java.compression;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JDKEngineTest extends AbstractEngineTest {
+    @Test
+    public void testArrayRoundTrip() throws InvalidDataException {
+        super.testArrayRoundTrip(CompressionEngineFactory.JDK);
+    }
+
+    @Test
+    public void testBufferRoundTrip() throws InvalidDataException {
+        super.testBufferRoundTrip(CompressionEngineFactory.JDK);
+    }
+
+    @Test
+    public void testAddressRoundTrip() throws InvalidDataException {
+        super.testAddressRoundTrip(CompressionEngineFactory.JDK);
+    }
+
+    @Test
+    public void testSmallOutput() throws InvalidDataException {
+        super.testSmallOutput(CompressionEngineFactory.JDK);
+    }
+
+    @Test
+    public void testDictionaryRoundTrip() throws InvalidDataException {
+        super.testDictionaryRoundTrip(CompressionEngineFactory.JDK);
+    }
+
+    @Test
+    public void testStarvedAndInvalidInput() throws InvalidDataException {
+        super.testStarvedAndInvalidInput(CompressionEngineFactory.JDK);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGzipUnsupported() {
+        CompressionEngineFactory.JDK.createCompressor(CompressorOptions.builder().wrapper(ZLibWrapper.GZIP).build());
+    }
+
+    @Test
+    public void testDirectBuffersInPlace() throws InvalidDataException {
+        CompressionMetrics metrics = CompressionMetrics.create("test");
+        CompressionEngineFactory factory = CompressionEngineFactory.JDK.withMetrics(metrics);
+        byte[] data = new byte[256 * 1024];
+        Random random = new Random(46);
+        for (int i = 0; i < data.length; i++) data[i] = (byte) random.nextInt(16);
+        ByteBuffer in = ByteBuffer.allocateDirect(data.length);
+        in.put(data).flip();
+        ByteBuffer compressed = ByteBuffer.allocateDirect(data.length);
+        ByteBuffer decompressed = ByteBuffer.allocateDirect(data.length);
+        CompressionEngine compressor = factory.createCompressor();
+        CompressionEngine decompressor = factory.createDecompressor(CompressorOptions.builder()
+                .limits(DecompressionLimits.builder().maxOutputPerCall(1000).build())
+                .build());
+        try {
+            Assert.assertEquals(JDKBufferAccess.INSTANCE != null, compressor.prefersBuffers());
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, compressor.compress(in, compressed, true));
+            compressed.flip();
+            // The per-call limit shrinks the output buffer's limit while zlib writes, which has to be restored
+            Assert.assertEquals(CompressionEngine.Status.OUTPUT_LIMIT_REACHED, decompressor.decompress(compressed, decompressed));
+            Assert.assertEquals(1000, decompressed.position());
+            Assert.assertEquals(data.length, decompressed.limit());
+            CompressionEngine.Status status;
+            do {
+                status = decompressor.decompress(compressed, decompressed);
+            } while (status == CompressionEngine.Status.OUTPUT_LIMIT_REACHED);
+            Assert.assertEquals(CompressionEngine.Status.FINISHED, status);
+            Assert.assertFalse(compressed.hasRemaining());
+            byte[] result = new byte[data.length];
+            decompressed.flip();
+            decompressed.get(result);
+            Assert.assertArrayEquals(data, result);
+            if (compressor.prefersBuffers()) Assert.assertEquals(0, metrics.getBounceCopyBytes());
+        } finally {
+            compressor.close();
+            decompressor.close();
+        }
+    }
+}
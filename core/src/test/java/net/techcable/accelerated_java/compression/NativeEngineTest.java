@@ -0,0 +1,66 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.junit.Assume;
+import org.junit.AssumptionViolatedException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class NativeEngineTest extends AbstractEngineTest {
+
+    @BeforeClass
+    public static void loadNative() {
+        File nativesDirectory = new File("natives");
+        if (!nativesDirectory.exists()) {
+            System.err.println("Natives directory doesn't exist");
+            throw new AssumptionViolatedException("Natives directory doesn't exist");
+        }
+        try {
+            Native.LIBRARY.load(nativesDirectory);
+        } catch (Throwable t) {
+            System.err.println("(Non-Fatal) Unable to load native library");
+            t.printStackTrace();
+        }
+        Assume.assumeTrue(Native.LIBRARY.isLoaded());
+    }
+
+    @Test
+    public void testArrayRoundTrip() throws InvalidDataException {
+        super.testArrayRoundTrip(ZLibNativeEngine.FACTORY);
+    }
+
+    @Test
+    public void testBufferRoundTrip() throws InvalidDataException {
+        super.testBufferRoundTrip(ZLibNativeEngine.FACTORY);
+    }
+
+    @Test
+    public void testAddressRoundTrip() throws InvalidDataException {
+        super.testAddressRoundTrip(ZLibNativeEngine.FACTORY);
+    }
+
+    @Test
+    public void testSmallOutput() throws InvalidDataException {
+        super.testSmallOutput(ZLibNativeEngine.FACTORY);
+    }
+
+    @Test
+    public void testDictionaryRoundTrip() throws InvalidDataException {
+        super.testDictionaryRoundTrip(ZLibNativeEngine.FACTORY);
+    }
+
+    @Test
+    public void testStarvedAndInvalidInput() throws InvalidDataException {
+        super.testStarvedAndInvalidInput(ZLibNativeEngine.FACTORY);
+    }
+
+    @Test
+    public void testGzipRoundTrip() throws InvalidDataException, IOException {
+        super.testGzipRoundTrip(ZLibNativeEngine.FACTORY);
+    }
+}
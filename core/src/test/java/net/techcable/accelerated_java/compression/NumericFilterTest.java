@@ -0,0 +1,121 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class NumericFilterTest {
+    private static final ByteOrder[] ORDERS = {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN};
+    private static final int[] WIDTHS = {1, 2, 4, 8};
+
+    @Test
+    public void testRoundTrip() throws InvalidDataException {
+        Random random = new Random(47);
+        for (NumericFilter filter : allFilters()) {
+            Assert.assertEquals(filter, NumericFilter.fromHeader(filter.getHeader()));
+            // Lengths that leave partial groups and partial elements
+            for (int length : new int[] {0, 7, 64 * filter.getWidth(), 77 * filter.getWidth() + 3}) {
+                byte[] data = createData(random, length);
+                byte[] filtered = new byte[length + 5], restored = new byte[length + 9];
+                filter.apply(data, 0, filtered, 5, length);
+                filter.invert(filtered, 5, restored, 9, length);
+                Assert.assertArrayEquals(filter + " of " + length + " bytes", data, Arrays.copyOfRange(restored, 9, length + 9));
+            }
+        }
+    }
+
+    @Test
+    public void testLayout() {
+        // Deltas of big endian shorts, byte shuffled
+        byte[] shorts = {0, 10, 0, 12, 1, 0};
+        byte[] filtered = new byte[shorts.length];
+        NumericFilter.of(NumericFilter.Transform.DELTA, NumericFilter.Shuffle.BYTE, 2, ByteOrder.BIG_ENDIAN).apply(shorts, 0, filtered, 0, shorts.length);
+        Assert.assertArrayEquals(new byte[] {0, 0, 0, 10, 2, (byte) 244}, filtered);
+        // Bit k of byte b of each element is gathered into row b * 8 + k
+        byte[] elements = new byte[16];
+        for (int i = 0; i < 8; i++) elements[i * 2] = (byte) (1 << i);
+        NumericFilter.of(NumericFilter.Transform.NONE, NumericFilter.Shuffle.BIT, 2, ByteOrder.BIG_ENDIAN).apply(elements, 0, filtered = new byte[16], 0, 16);
+        for (int row = 0; row < 16; row++) Assert.assertEquals("Row " + row, row < 8 ? 1 << row : 0, filtered[row] & 0xFF);
+    }
+
+    @Test
+    public void testInvalidHeader() {
+        for (int header : new int[] {0x0000, 0x0003, 0x0010, 0x0C08, 0x2008, 0x10008}) {
+            try {
+                NumericFilter.fromHeader(header);
+                Assert.fail("Accepted header 0x" + Integer.toHexString(header));
+            } catch (InvalidDataException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesNative() {
+        File nativesDirectory = new File("natives");
+        Assume.assumeTrue(nativesDirectory.exists());
+        try {
+            Native.LIBRARY.load(nativesDirectory);
+        } catch (Throwable t) {
+            System.err.println("(Non-Fatal) Unable to load native library");
+            t.printStackTrace();
+        }
+        Assume.assumeTrue(Native.LIBRARY.isLoaded());
+        Random random = new Random(42);
+        final int length = 8 * 100 + 5;
+        ByteBuffer src = ByteBuffer.allocateDirect(length), dst = ByteBuffer.allocateDirect(length);
+        long srcAddress = Native.getNativeAddress(src), dstAddress = Native.getNativeAddress(dst);
+        for (NumericFilter filter : allFilters()) {
+            byte[] data = createData(random, length), expected = new byte[length], actual = new byte[length];
+            filter.apply(data, 0, expected, 0, length);
+            src.clear();
+            src.put(data);
+            filter.applyMemory(srcAddress, dstAddress, length);
+            dst.clear();
+            dst.get(actual);
+            Assert.assertArrayEquals(filter.toString(), expected, actual);
+            filter.invertMemory(dstAddress, srcAddress, length);
+            src.clear();
+            src.get(actual);
+            Assert.assertArrayEquals(filter.toString(), data, actual);
+        }
+    }
+
+    private static NumericFilter[] allFilters() {
+        NumericFilter.Transform[] transforms = NumericFilter.Transform.values();
+        NumericFilter.Shuffle[] shuffles = NumericFilter.Shuffle.values();
+        NumericFilter[] filters = new NumericFilter[transforms.length * shuffles.length * WIDTHS.length * ORDERS.length];
+        int index = 0;
+        for (NumericFilter.Transform transform : transforms) {
+            for (NumericFilter.Shuffle shuffle : shuffles) {
+                for (int width : WIDTHS) {
+                    for (ByteOrder order : ORDERS) {
+                        filters[index++] = NumericFilter.of(transform, shuffle, width, order);
+                    }
+                }
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * Create slowly increasing numbers, with some noise in the low bits
+     */
+    private static byte[] createData(Random random, int length) {
+        byte[] data = new byte[length];
+        long value = random.nextLong();
+        for (int i = 0; i < length; i++) {
+            if (i % 8 == 0) value += 1000 + random.nextInt(16);
+            data[i] = (byte) (value >>> 8 * (7 - i % 8));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,55 @@
+package net.techcable.accelerated_java.utils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import net.techcable.accelerated_java.jni.Native;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class XXHash64Test {
+    @Test
+    public void testKnownHashes() {
+        Assert.assertEquals(0xEF46DB3751D8E999L, hash("", 0));
+        Assert.assertEquals(0xD24EC4F1A98C6E5BL, hash("a", 0));
+        Assert.assertEquals(0x44BC2CF5AD770999L, hash("abc", 0));
+        // Offsets only hash the given region
+        byte[] padded = "xxabcxx".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals(0x44BC2CF5AD770999L, XXHash64.hash(padded, 2, 3, 0));
+        Assert.assertNotEquals(hash("abc", 0), hash("abc", 1));
+    }
+
+    @Test
+    public void testMatchesNative() {
+        File nativesDirectory = new File("natives");
+        Assume.assumeTrue(nativesDirectory.exists());
+        try {
+            Native.LIBRARY.load(nativesDirectory);
+        } catch (Throwable t) {
+            System.err.println("(Non-Fatal) Unable to load native library");
+            t.printStackTrace();
+        }
+        Assume.assumeTrue(Native.LIBRARY.isLoaded());
+        Random random = new Random(42);
+        ByteBuffer direct = ByteBuffer.allocateDirect(1024);
+        long address = Native.getNativeAddress(direct);
+        // Every length up to a few stripes, to cover each tail
+        for (int length = 0; length <= 100; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            direct.clear();
+            direct.put(data);
+            long seed = random.nextLong();
+            Assert.assertEquals("Length " + length, XXHash64.hash(data, 0, length, seed), Native.hashMemory(address, length, seed));
+        }
+    }
+
+    private static long hash(String text, long seed) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return XXHash64.hash(bytes, 0, bytes.length, seed);
+    }
+}
@@ -0,0 +1,276 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Moves the compression level of live compressors between bounds, depending on load.
+ * <p>When any configured signal says the system is overloaded, the level is lowered to spend less CPU on compression.
+ * When every configured signal says there's spare capacity, the level is raised to get better compression.
+ * The level only moves one step at a time, and only after the same decision is made for several evaluations in a row,
+ * so brief spikes don't make it oscillate.</p>
+ * <p>The available signals are:</p>
+ * <ul>
+ * <li>Compression throughput: the number of bytes compressed per second spent compressing,
+ * which is considered overloaded when it drops below a target.</li>
+ * <li>Queue depth: an arbitrary queue length, with high and low watermarks.</li>
+ * <li>CPU pressure: an arbitrary value between zero and one, like system load, with high and low watermarks.</li>
+ * </ul>
+ * <p>Compressors follow the governor by being wrapped with {@link #wrap(Compressor)},
+ * which applies the current level before each compression and reports its throughput.
+ * Evaluations happen on the compressing threads, at most once per evaluation interval.</p>
+ */
+public final class AdaptiveLevelGovernor {
+    @Getter
+    private final int minLevel, maxLevel;
+    private final long evaluationIntervalNanos;
+    private final int hysteresis;
+    private final long targetThroughput;
+    private final double throughputHeadroom;
+    private final IntSupplier queueDepth;
+    private final int queueHighWatermark, queueLowWatermark;
+    private final DoubleSupplier cpuPressure;
+    private final double cpuHighWatermark, cpuLowWatermark;
+    private final CompressionMetrics metrics;
+
+    private volatile int level;
+    private final LongAdder observedBytes = new LongAdder();
+    private final LongAdder observedNanos = new LongAdder();
+    private final AtomicLong nextEvaluation;
+    /**
+     * The number of consecutive evaluations that agreed, positive for increases and negative for decreases.
+     * Only accessed by the thread that won the evaluation.
+     */
+    private int streak;
+    private final LongAdder levelIncreases = new LongAdder();
+    private final LongAdder levelDecreases = new LongAdder();
+
+    private AdaptiveLevelGovernor(Builder builder) {
+        this.minLevel = builder.minLevel;
+        this.maxLevel = builder.maxLevel;
+        this.evaluationIntervalNanos = builder.evaluationIntervalNanos;
+        this.hysteresis = builder.hysteresis;
+        this.targetThroughput = builder.targetThroughput;
+        this.throughputHeadroom = builder.throughputHeadroom;
+        this.queueDepth = builder.queueDepth;
+        this.queueHighWatermark = builder.queueHighWatermark;
+        this.queueLowWatermark = builder.queueLowWatermark;
+        this.cpuPressure = builder.cpuPressure;
+        this.cpuHighWatermark = builder.cpuHighWatermark;
+        this.cpuLowWatermark = builder.cpuLowWatermark;
+        this.metrics = builder.metrics;
+        this.level = builder.initialLevel < 0 ? maxLevel : builder.initialLevel;
+        checkArgument(level >= minLevel && level <= maxLevel, "Initial level %s isn't between %s and %s", level, minLevel, maxLevel);
+        this.nextEvaluation = new AtomicLong(System.nanoTime() + evaluationIntervalNanos);
+    }
+
+    /**
+     * Get the level compressors should currently use
+     *
+     * @return the current level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public long getLevelIncreases() {
+        return levelIncreases.sum();
+    }
+
+    public long getLevelDecreases() {
+        return levelDecreases.sum();
+    }
+
+    /**
+     * Wrap the compressor so that it follows this governor's level
+     * <p>The governor overrides any level set directly on the returned compressor.</p>
+     *
+     * @param compressor the compressor to wrap
+     * @return a compressor that follows this governor
+     * @throws NullPointerException  if the compressor is null
+     * @throws IllegalStateException if the compressor isn't compressing
+     */
+    public Compressor wrap(Compressor compressor) {
+        checkNotNull(compressor, "Null compressor");
+        compressor.getState().requireState(Compressor.State.COMPRESSING);
+        return new GovernedCompressor(this, compressor);
+    }
+
+    /**
+     * Report a completed compression, evaluating the load if the interval has elapsed
+     *
+     * @param bytes the number of bytes compressed
+     * @param nanos the time spent compressing
+     */
+    public void observe(long bytes, long nanos) {
+        observedBytes.add(bytes);
+        observedNanos.add(nanos);
+        long now = System.nanoTime();
+        long next = nextEvaluation.get();
+        if (now - next >= 0 && nextEvaluation.compareAndSet(next, now + evaluationIntervalNanos)) {
+            evaluate();
+        }
+    }
+
+    private void evaluate() {
+        long bytes = observedBytes.sumThenReset();
+        long nanos = observedNanos.sumThenReset();
+        boolean overloaded = false, underloaded = true, anySignal = false;
+        if (targetThroughput > 0 && nanos > 0) {
+            anySignal = true;
+            double throughput = bytes * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+            overloaded = throughput < targetThroughput;
+            underloaded = throughput >= targetThroughput * throughputHeadroom;
+        }
+        if (queueDepth != null) {
+            anySignal = true;
+            int depth = queueDepth.getAsInt();
+            overloaded |= depth >= queueHighWatermark;
+            underloaded &= depth <= queueLowWatermark;
+        }
+        if (cpuPressure != null) {
+            anySignal = true;
+            double pressure = cpuPressure.getAsDouble();
+            overloaded |= pressure >= cpuHighWatermark;
+            underloaded &= pressure <= cpuLowWatermark;
+        }
+        if (!anySignal) return;
+        if (overloaded) {
+            streak = Math.min(streak, 0) - 1;
+        } else if (underloaded) {
+            streak = Math.max(streak, 0) + 1;
+        } else {
+            streak = 0;
+        }
+        int oldLevel = this.level;
+        int newLevel = oldLevel;
+        if (streak <= -hysteresis && oldLevel > minLevel) {
+            newLevel = oldLevel - 1;
+            levelDecreases.increment();
+        } else if (streak >= hysteresis && oldLevel < maxLevel) {
+            newLevel = oldLevel + 1;
+            levelIncreases.increment();
+        }
+        if (newLevel != oldLevel) {
+            streak = 0;
+            this.level = newLevel;
+            if (metrics != null) metrics.recordLevelChange(oldLevel, newLevel);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private int minLevel = CompressorFactory.BEST_SPEED, maxLevel = CompressorFactory.BEST_COMPRESSION;
+        private int initialLevel = -1;
+        private long evaluationIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+        private int hysteresis = 3;
+        private long targetThroughput;
+        private double throughputHeadroom = 1.5;
+        private IntSupplier queueDepth;
+        private int queueHighWatermark, queueLowWatermark;
+        private DoubleSupplier cpuPressure;
+        private double cpuHighWatermark, cpuLowWatermark;
+        private CompressionMetrics metrics;
+
+        private Builder() {}
+
+        public Builder levels(int minLevel, int maxLevel) {
+            checkArgument(minLevel >= 0 && minLevel <= CompressorFactory.BEST_COMPRESSION, "Invalid minimum level %s", minLevel);
+            checkArgument(maxLevel >= minLevel && maxLevel <= CompressorFactory.BEST_COMPRESSION, "Invalid maximum level %s", maxLevel);
+            this.minLevel = minLevel;
+            this.maxLevel = maxLevel;
+            return this;
+        }
+
+        /**
+         * Set the level to start at, which defaults to the maximum level
+         *
+         * @param initialLevel the initial level
+         * @return this builder
+         */
+        public Builder initialLevel(int initialLevel) {
+            checkArgument(initialLevel >= 0 && initialLevel <= CompressorFactory.BEST_COMPRESSION, "Invalid initial level %s", initialLevel);
+            this.initialLevel = initialLevel;
+            return this;
+        }
+
+        public Builder evaluationInterval(long duration, TimeUnit unit) {
+            checkArgument(duration > 0, "Non-positive interval %s", duration);
+            this.evaluationIntervalNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Set the number of consecutive evaluations that must agree before the level changes
+         *
+         * @param evaluations the number of evaluations
+         * @return this builder
+         */
+        public Builder hysteresis(int evaluations) {
+            checkArgument(evaluations >= 1, "Invalid number of evaluations %s", evaluations);
+            this.hysteresis = evaluations;
+            return this;
+        }
+
+        /**
+         * Lower the level when compression is slower than the target throughput,
+         * and raise it when the throughput has at least the specified headroom above the target.
+         *
+         * @param bytesPerSecond the minimum number of bytes to compress for each second spent compressing
+         * @param headroom       the multiple of the target needed to raise the level
+         * @return this builder
+         */
+        public Builder targetThroughput(long bytesPerSecond, double headroom) {
+            checkArgument(bytesPerSecond > 0, "Non-positive throughput %s", bytesPerSecond);
+            checkArgument(headroom > 1, "Headroom %s must be greater than one", headroom);
+            this.targetThroughput = bytesPerSecond;
+            this.throughputHeadroom = headroom;
+            return this;
+        }
+
+        public Builder queueDepth(IntSupplier queueDepth, int highWatermark, int lowWatermark) {
+            checkArgument(lowWatermark < highWatermark, "Low watermark %s isn't less than high watermark %s", lowWatermark, highWatermark);
+            this.queueDepth = checkNotNull(queueDepth, "Null queue depth");
+            this.queueHighWatermark = highWatermark;
+            this.queueLowWatermark = lowWatermark;
+            return this;
+        }
+
+        /**
+         * Follow a CPU pressure signal, which should be between zero (idle) and one (saturated)
+         *
+         * @param cpuPressure   the source of the signal
+         * @param highWatermark the pressure to lower the level at
+         * @param lowWatermark  the pressure to raise the level at
+         * @return this builder
+         */
+        public Builder cpuPressure(DoubleSupplier cpuPressure, double highWatermark, double lowWatermark) {
+            checkArgument(lowWatermark < highWatermark, "Low watermark %s isn't less than high watermark %s", lowWatermark, highWatermark);
+            this.cpuPressure = checkNotNull(cpuPressure, "Null cpu pressure");
+            this.cpuHighWatermark = highWatermark;
+            this.cpuLowWatermark = lowWatermark;
+            return this;
+        }
+
+        public Builder metrics(CompressionMetrics metrics) {
+            this.metrics = checkNotNull(metrics, "Null metrics");
+            return this;
+        }
+
+        public AdaptiveLevelGovernor build() {
+            return new AdaptiveLevelGovernor(this);
+        }
+    }
+}
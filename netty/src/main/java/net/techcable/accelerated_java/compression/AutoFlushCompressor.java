@@ -0,0 +1,292 @@
+package net.techcable.accelerated_java.compression;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Compresses a stream of small writes without flushing each of them, like Nagle's algorithm.
+ * <p>Writes are compressed with {@link FlushMode#NONE no flush}, so they share blocks and matches,
+ * and the stream is flushed once enough input has been written since the last flush,
+ * or once the first write since the last flush has waited for the maximum delay.
+ * The delay is driven by the given scheduler, such as the channel's event loop, so no write waits longer than that for its output.</p>
+ * <p>The output of each flush is passed to the sink as a single buffer, which the sink is responsible for releasing.
+ * An auto-flushing compressor is thread-safe, since the delayed flushes run on the scheduler.</p>
+ */
+public final class AutoFlushCompressor implements AutoCloseable {
+    private final Compressor compressor;
+    private final Consumer<ByteBuf> sink;
+    private final ScheduledExecutorService scheduler;
+    private final ByteBufAllocator allocator;
+    private final int flushThreshold;
+    private final long maxDelayNanos;
+    private final FlushMode flushMode;
+    /**
+     * The output that hasn't been passed to the sink, or null if there isn't any
+     */
+    private ByteBuf output;
+    private long unflushedBytes;
+    /**
+     * The delayed flush, or null if there's nothing to flush
+     */
+    private ScheduledFuture<?> delayedFlush;
+    private long flushes, delayedFlushes, thresholdFlushes;
+    private boolean closed;
+
+    private AutoFlushCompressor(Builder builder) {
+        this.compressor = builder.compressor;
+        this.sink = builder.sink;
+        this.scheduler = builder.scheduler;
+        this.allocator = builder.allocator;
+        this.flushThreshold = builder.flushThreshold;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.flushMode = builder.flushMode;
+    }
+
+    /**
+     * Compress all the readable bytes of the buffer, flushing if that reaches the threshold
+     * <p>Otherwise the write is flushed within the maximum delay.
+     * The input is consumed but not released.</p>
+     *
+     * @param in the data to compress
+     * @throws NullPointerException  if the input is null
+     * @throws IllegalStateException if the compressor is closed
+     */
+    public synchronized void write(ByteBuf in) {
+        checkNotNull(in, "Null input buffer");
+        checkState(!closed, "Compressor is closed");
+        int length = in.readableBytes();
+        if (length == 0) return;
+        compress(in, FlushMode.NONE);
+        unflushedBytes += length;
+        if (unflushedBytes >= flushThreshold) {
+            thresholdFlushes++;
+            flush0();
+        } else if (delayedFlush == null) {
+            // Ignore the delayed flush if something else flushes first
+            final long generation = flushes;
+            delayedFlush = scheduler.schedule(() -> flushDelayed(generation), maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Flush everything that's been written, without waiting for the threshold or the delay
+     *
+     * @throws IllegalStateException if the compressor is closed
+     */
+    public synchronized void flush() {
+        checkState(!closed, "Compressor is closed");
+        if (unflushedBytes > 0) flush0();
+    }
+
+    private synchronized void flushDelayed(long generation) {
+        if (closed || generation != flushes) return;
+        delayedFlushes++;
+        flush0();
+    }
+
+    private void flush0() {
+        compress(Unpooled.EMPTY_BUFFER, flushMode);
+        unflushedBytes = 0;
+        flushes++;
+        if (delayedFlush != null) {
+            delayedFlush.cancel(false);
+            delayedFlush = null;
+        }
+        emit();
+    }
+
+    private void compress(ByteBuf in, FlushMode flush) {
+        if (output == null) output = allocator.buffer();
+        compressor.compress(in, output, flush);
+    }
+
+    private void emit() {
+        ByteBuf output = this.output;
+        this.output = null;
+        if (output == null) return;
+        if (output.isReadable()) {
+            sink.accept(output);
+        } else {
+            output.release();
+        }
+    }
+
+    /**
+     * Get the number of input bytes written since the last flush
+     *
+     * @return the number of unflushed bytes
+     */
+    public synchronized long getUnflushedBytes() {
+        return unflushedBytes;
+    }
+
+    /**
+     * Get the number of times the stream has been flushed, including explicit flushes
+     *
+     * @return the number of flushes
+     */
+    public synchronized long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * Get the number of flushes triggered by the maximum delay
+     *
+     * @return the number of delayed flushes
+     */
+    public synchronized long getDelayedFlushes() {
+        return delayedFlushes;
+    }
+
+    /**
+     * Get the number of flushes triggered by the threshold
+     *
+     * @return the number of threshold flushes
+     */
+    public synchronized long getThresholdFlushes() {
+        return thresholdFlushes;
+    }
+
+    /**
+     * Finish the stream, passing the rest of the output to the sink, and close the compressor
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (delayedFlush != null) {
+            delayedFlush.cancel(false);
+            delayedFlush = null;
+        }
+        try {
+            if (compressor.getState() == CompressionEngine.State.COMPRESSING) {
+                compress(Unpooled.EMPTY_BUFFER, FlushMode.FINISH);
+                emit();
+            }
+        } finally {
+            if (output != null) {
+                output.release();
+                output = null;
+            }
+            compressor.close();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private Compressor compressor;
+        private Consumer<ByteBuf> sink;
+        private ScheduledExecutorService scheduler;
+        private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        private int flushThreshold = 16 * 1024;
+        private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private FlushMode flushMode = FlushMode.SYNC;
+
+        private Builder() {}
+
+        /**
+         * Set the compressor to write to, which is closed along with the auto-flushing compressor
+         *
+         * @param compressor the compressor
+         * @return this builder
+         * @throws IllegalArgumentException if the compressor isn't compressing
+         */
+        public Builder compressor(Compressor compressor) {
+            checkNotNull(compressor, "Null compressor");
+            checkArgument(compressor.getState() == CompressionEngine.State.COMPRESSING, "Compressor isn't compressing");
+            this.compressor = compressor;
+            return this;
+        }
+
+        /**
+         * Set where the output of each flush goes
+         *
+         * @param sink the sink, which takes ownership of the buffers it's given
+         * @return this builder
+         */
+        public Builder sink(Consumer<ByteBuf> sink) {
+            this.sink = checkNotNull(sink, "Null sink");
+            return this;
+        }
+
+        /**
+         * Set the scheduler that runs the delayed flushes
+         *
+         * @param scheduler the scheduler
+         * @return this builder
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = checkNotNull(scheduler, "Null scheduler");
+            return this;
+        }
+
+        /**
+         * Set the allocator for the output buffers, which defaults to {@link ByteBufAllocator#DEFAULT}
+         *
+         * @param allocator the allocator
+         * @return this builder
+         */
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = checkNotNull(allocator, "Null allocator");
+            return this;
+        }
+
+        /**
+         * Set the number of input bytes that are flushed without waiting for the delay, which defaults to 16 KiB
+         *
+         * @param bytes the threshold in bytes
+         * @return this builder
+         */
+        public Builder flushThreshold(int bytes) {
+            checkArgument(bytes > 0, "Non-positive threshold %s", bytes);
+            this.flushThreshold = bytes;
+            return this;
+        }
+
+        /**
+         * Set the longest a write waits to be flushed, which defaults to 10 milliseconds
+         *
+         * @param delay the maximum delay
+         * @param unit  the unit of the delay
+         * @return this builder
+         */
+        public Builder maxDelay(long delay, TimeUnit unit) {
+            checkNotNull(unit, "Null unit");
+            checkArgument(delay >= 0, "Negative delay %s", delay);
+            this.maxDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * Set how to flush, which defaults to {@link FlushMode#SYNC}
+         *
+         * @param flushMode the flush mode
+         * @return this builder
+         * @throws IllegalArgumentException if the mode doesn't flush, or finishes the stream
+         */
+        public Builder flushMode(FlushMode flushMode) {
+            checkNotNull(flushMode, "Null flush mode");
+            checkArgument(flushMode != FlushMode.NONE && flushMode != FlushMode.FINISH, "Invalid flush mode %s", flushMode);
+            this.flushMode = flushMode;
+            return this;
+        }
+
+        public AutoFlushCompressor build() {
+            checkState(compressor != null, "No compressor");
+            checkState(sink != null, "No sink");
+            checkState(scheduler != null, "No scheduler");
+            return new AutoFlushCompressor(this);
+        }
+    }
+}
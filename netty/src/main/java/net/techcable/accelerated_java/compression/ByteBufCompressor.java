@@ -0,0 +1,286 @@
+package net.techcable.accelerated_java.compression;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Adapts a {@link CompressionEngine} to Netty's buffers.
+ * <p>Buffers backed by an array or native memory are given to the engine in place, one region per call,
+ * and other buffers are copied through a direct buffer from their allocator.
+ * Engines that {@link CompressionEngine#prefersBuffers() prefer byte buffers} are given the buffers' internal byte buffers instead of addresses.
+ * The output grows by a chunk at a time, and never past the per-call limit of the decompression limits.</p>
+ */
+/* default */ final class ByteBufCompressor implements Compressor {
+    private final CompressionEngine engine;
+    private final int chunkSize;
+    private final long maxOutputPerCall;
+
+    /* default */ ByteBufCompressor(CompressionEngine engine, CompressorOptions options, boolean decompressing) {
+        this.engine = checkNotNull(engine, "Null engine");
+        this.chunkSize = options.getChunkSize();
+        this.maxOutputPerCall = decompressing ? options.getLimits().getMaxOutputPerCall() : DecompressionLimits.UNLIMITED;
+    }
+
+    private ByteBufCompressor(ByteBufCompressor original, CompressionEngine engine) {
+        this.engine = engine;
+        this.chunkSize = original.chunkSize;
+        this.maxOutputPerCall = original.maxOutputPerCall;
+    }
+
+    @Override
+    public Status decompress(ByteBuf in, ByteBuf out) throws InvalidDataException {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output buffer");
+        in.retain();
+        out.retain();
+        try {
+            synchronized (this) {
+                getState().requireState(State.DECOMPRESSING);
+                return process(in, out, null, true);
+            }
+        } finally {
+            in.release();
+            out.release();
+        }
+    }
+
+    @Override
+    public Status compress(ByteBuf in, ByteBuf out, FlushMode flush) {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output buffer");
+        checkNotNull(flush, "Null flush mode");
+        in.retain();
+        out.retain();
+        try {
+            synchronized (this) {
+                getState().requireState(State.COMPRESSING);
+                return process(in, out, flush, false);
+            }
+        } catch (InvalidDataException e) {
+            throw new AssertionError("Compressing can't have invalid data", e);
+        } finally {
+            in.release();
+            out.release();
+        }
+    }
+
+    /**
+     * Run the engine over the input
+     *
+     * @param flush the flush mode if compressing, or null if decompressing
+     */
+    private Status process(ByteBuf in, ByteBuf out, FlushMode flush, boolean decompressing) throws InvalidDataException {
+        final boolean inContiguous = isContiguous(in), outContiguous = isContiguous(out);
+        final boolean preferBuffers = engine.prefersBuffers();
+        final ByteBuf inStaging = inContiguous ? null : out.alloc().directBuffer(chunkSize, chunkSize);
+        final ByteBuf outStaging = outContiguous ? null : in.alloc().directBuffer(chunkSize, chunkSize);
+        long callOut = 0;
+        Status status;
+        boolean progress;
+        try {
+            do {
+                long budget = maxOutputPerCall - callOut;
+                if (budget == 0) return Status.OUTPUT_LIMIT_REACHED;
+                // NOTE: Limit the output before growing the buffer, so a hostile stream can't make us allocate
+                out.ensureWritable((int) Math.min(Math.min(chunkSize, out.maxWritableBytes()), budget));
+                final ByteBuf inRegion, outRegion;
+                final int inIndex, inLength, outIndex, outLength;
+                if (inContiguous) {
+                    inRegion = in;
+                    inIndex = in.readerIndex();
+                    inLength = in.readableBytes();
+                } else {
+                    inRegion = inStaging;
+                    inIndex = 0;
+                    inLength = Math.min(in.readableBytes(), chunkSize);
+                    in.getBytes(in.readerIndex(), inStaging, 0, inLength);
+                }
+                if (outContiguous) {
+                    outRegion = out;
+                    outIndex = out.writerIndex();
+                    outLength = (int) Math.min(out.writableBytes(), budget);
+                } else {
+                    outRegion = outStaging;
+                    outIndex = 0;
+                    outLength = (int) Math.min(Math.min(out.writableBytes(), chunkSize), budget);
+                }
+                // Only flush or finish once the last of the input has been given to the engine
+                final FlushMode chunkFlush = !decompressing && inLength == in.readableBytes() ? flush : FlushMode.NONE;
+                if (preferBuffers) {
+                    ByteBuffer inBuffer = nioBuffer(inRegion, inIndex, inLength), outBuffer = nioBuffer(outRegion, outIndex, outLength);
+                    status = decompressing ? engine.decompress(inBuffer, outBuffer) : engine.compress(inBuffer, outBuffer, chunkFlush);
+                } else {
+                    final byte[] inArray = inRegion.hasArray() ? inRegion.array() : null, outArray = outRegion.hasArray() ? outRegion.array() : null;
+                    final long inOffset = offset(inRegion, inIndex, inLength), outOffset = offset(outRegion, outIndex, outLength);
+                    if (decompressing) {
+                        status = engine.decompressMemory(inArray, inOffset, inLength, outArray, outOffset, outLength);
+                    } else {
+                        status = engine.compressMemory(inArray, inOffset, inLength, outArray, outOffset, outLength, chunkFlush);
+                    }
+                }
+                int read = engine.getBytesRead(), written = engine.getBytesWritten();
+                in.skipBytes(read);
+                if (!outContiguous) out.setBytes(out.writerIndex(), outStaging, 0, written);
+                out.writerIndex(out.writerIndex() + written);
+                callOut += written;
+                progress = read > 0 || written > 0;
+            } while (status == Status.INSUFFICIENT_OUTPUT && out.maxWritableBytes() > 0 || (status == Status.OK || status == Status.NEEDS_INPUT) && in.isReadable() && progress);
+            return status;
+        } finally {
+            if (inStaging != null) inStaging.release();
+            if (outStaging != null) outStaging.release();
+        }
+    }
+
+    /**
+     * Check if a buffer is a single region of memory, which can be given to the engine in place
+     *
+     * @param buf the buffer
+     * @return if the buffer is contiguous
+     */
+    /* default */ static boolean isContiguous(ByteBuf buf) {
+        return buf.hasArray() || buf.hasMemoryAddress() || buf.isDirect() && buf.nioBufferCount() == 1;
+    }
+
+    /**
+     * Get the location of part of a {@link #isContiguous(ByteBuf) contiguous buffer}, in the form the engine takes
+     *
+     * @param buf    the buffer
+     * @param index  the index to start at
+     * @param length the number of bytes
+     * @return the offset in the buffer's array, or the address if it doesn't have one
+     */
+    /* default */ static long offset(ByteBuf buf, int index, int length) {
+        if (buf.hasArray()) {
+            return buf.arrayOffset() + index;
+        } else if (buf.hasMemoryAddress()) {
+            return buf.memoryAddress() + index;
+        } else {
+            return BufferMemory.offset(buf.nioBuffer(index, length));
+        }
+    }
+
+    /**
+     * Get part of a {@link #isContiguous(ByteBuf) contiguous buffer} as a byte buffer, which is reused by most kinds of buffer
+     *
+     * @param buf    the buffer
+     * @param index  the index to start at
+     * @param length the number of bytes
+     * @return the byte buffer, with its remaining bytes at the index
+     */
+    private static ByteBuffer nioBuffer(ByteBuf buf, int index, int length) {
+        // NOTE: Composite buffers only have an internal buffer if they have a single component
+        return buf instanceof CompositeByteBuf ? buf.nioBuffer(index, length) : buf.internalNioBuffer(index, length);
+    }
+
+    /**
+     * Determine the kind of the specified buffer, for metrics and routing
+     *
+     * @param buf the buffer
+     * @return the kind of buffer
+     */
+    /* default */ static BufferKind kindOf(ByteBuf buf) {
+        if (buf.hasArray()) {
+            return BufferKind.HEAP;
+        } else if (isContiguous(buf)) {
+            return BufferKind.DIRECT;
+        } else {
+            return BufferKind.COMPOSITE;
+        }
+    }
+
+    // Delegates
+
+    @Override
+    public Status compressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength, FlushMode flush) {
+        return engine.compressMemory(inArray, inOffset, inLength, outArray, outOffset, outLength, flush);
+    }
+
+    @Override
+    public Status decompressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength) throws InvalidDataException {
+        return engine.decompressMemory(inArray, inOffset, inLength, outArray, outOffset, outLength);
+    }
+
+    @Override
+    public Status compress(ByteBuffer in, ByteBuffer out, FlushMode flush) {
+        return engine.compress(in, out, flush);
+    }
+
+    @Override
+    public Status decompress(ByteBuffer in, ByteBuffer out) throws InvalidDataException {
+        return engine.decompress(in, out);
+    }
+
+    @Override
+    public boolean prefersBuffers() {
+        return engine.prefersBuffers();
+    }
+
+    @Override
+    public int getBytesRead() {
+        return engine.getBytesRead();
+    }
+
+    @Override
+    public int getBytesWritten() {
+        return engine.getBytesWritten();
+    }
+
+    @Override
+    public int getLevel() {
+        return engine.getLevel();
+    }
+
+    @Override
+    public void setLevel(int level) {
+        engine.setLevel(level);
+    }
+
+    @Override
+    public CompressionStrategy getStrategy() {
+        return engine.getStrategy();
+    }
+
+    @Override
+    public void setStrategy(CompressionStrategy strategy) {
+        engine.setStrategy(strategy);
+    }
+
+    @Override
+    public void reset() {
+        engine.reset();
+    }
+
+    @Override
+    public Compressor copy() {
+        return new ByteBufCompressor(this, engine.copy());
+    }
+
+    @Override
+    public void close() {
+        engine.close();
+    }
+
+    @Override
+    public State getState() {
+        return engine.getState();
+    }
+
+    @Override
+    public CompressionType getType() {
+        return engine.getType();
+    }
+
+    @Override
+    public Optional<CompressorStatistics> getStatistics() {
+        return engine.getStatistics();
+    }
+}
@@ -0,0 +1,54 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.util.Optional;
+
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Adapts the engines of a {@link CompressionEngineFactory} to Netty's buffers.
+ */
+@EqualsAndHashCode
+/* default */ final class ByteBufCompressorFactory implements CompressorFactory {
+    @Getter
+    private final CompressionEngineFactory engines;
+
+    /* default */ ByteBufCompressorFactory(CompressionEngineFactory engines) {
+        this.engines = checkNotNull(engines, "Null factory");
+    }
+
+    @Override
+    public Compressor createDecompressor(CompressorOptions options) {
+        checkNotNull(options, "Null options");
+        return new ByteBufCompressor(engines.createDecompressor(options), options, true);
+    }
+
+    @Override
+    public Compressor createCompressor(CompressorOptions options) {
+        checkNotNull(options, "Null options");
+        return new ByteBufCompressor(engines.createCompressor(options), options, false);
+    }
+
+    @Override
+    public Optional<WholeInputDecompressor> createWholeInputDecompressor(CompressorOptions options) {
+        return engines.createWholeInputDecompressor(options);
+    }
+
+    @Override
+    public CompressionType getType() {
+        return engines.getType();
+    }
+
+    @Override
+    public CompressorFactory withMetrics(CompressionMetrics metrics) {
+        return new ByteBufCompressorFactory(engines.withMetrics(metrics));
+    }
+
+    @Override
+    public Optional<CompressionMetrics> getMetrics() {
+        return engines.getMetrics();
+    }
+}
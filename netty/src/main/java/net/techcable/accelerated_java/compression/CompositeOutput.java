@@ -0,0 +1,97 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.MapMaker;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Implements the {@link Compressor} methods that append their output to a composite buffer as fixed-size chunks.
+ * <p>The last chunk's free space is filled before a new chunk is allocated, so the number of components only depends on the size of the output.
+ * A chunk is only reused if its component is one this class added, and the composite buffer holds the only reference to it,
+ * so nothing else can see the bytes that are written into its free space.</p>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+/* default */ final class CompositeOutput {
+    /**
+     * The chunks behind the components this class added, by the identity of the component the composite buffer made for them
+     * <p>A component is a slice of exactly the chunk's written bytes when it's added,
+     * and nothing else holds the chunk afterwards, so its free space is still unused as long as the component is the last one.</p>
+     */
+    private static final ConcurrentMap<ByteBuf, ByteBuf> CHUNKS = new MapMaker().weakKeys().makeMap();
+
+    /* default */ static Status append(CompositeByteBuf out, int chunkSize, Step step) throws InvalidDataException {
+        checkNotNull(out, "Null output buffer");
+        checkArgument(chunkSize > 0, "Non-positive chunk size %s", chunkSize);
+        Status status;
+        do {
+            ByteBuf tail = writableTail(out);
+            if (tail != null) {
+                int start = tail.writerIndex();
+                status = step.run(tail);
+                int written = tail.writerIndex() - start;
+                if (written > 0) {
+                    // Replace the tail's component with one that covers the new bytes too
+                    tail.retain();
+                    CHUNKS.remove(out.internalComponent(out.numComponents() - 1));
+                    out.removeComponent(out.numComponents() - 1);
+                    addChunk(out, tail, written);
+                }
+                continue;
+            }
+            ByteBuf chunk = out.alloc().directBuffer(chunkSize, chunkSize);
+            try {
+                status = step.run(chunk);
+                if (chunk.isReadable()) {
+                    ByteBuf added = chunk;
+                    chunk = null; // The composite buffer owns it now
+                    addChunk(out, added, added.readableBytes());
+                }
+            } finally {
+                if (chunk != null) chunk.release();
+            }
+        } while (status == Status.INSUFFICIENT_OUTPUT);
+        return status;
+    }
+
+    private static void addChunk(CompositeByteBuf out, ByteBuf chunk, int written) {
+        int count = out.numComponents();
+        out.addComponent(chunk);
+        out.writerIndex(out.writerIndex() + written);
+        // Past the maximum number of components, the composite buffer copies them all into a new one that isn't a slice of the chunk
+        if (out.numComponents() == count + 1 && chunk.readerIndex() == 0) CHUNKS.put(out.internalComponent(count), chunk);
+    }
+
+    /**
+     * Get the chunk behind the last component, if it still has free space that only the composite buffer can reach
+     *
+     * @param out the composite buffer
+     * @return the chunk, or null if a new chunk is needed
+     */
+    private static ByteBuf writableTail(CompositeByteBuf out) {
+        int count = out.numComponents();
+        if (count == 0 || out.writerIndex() != out.capacity()) return null;
+        ByteBuf component = out.internalComponent(count - 1);
+        ByteBuf chunk = CHUNKS.get(component);
+        if (chunk == null || chunk.refCnt() != 1 || !chunk.isWritable()) return null;
+        // The chunk's indexes haven't moved since its component was made, unless something else got hold of it
+        return chunk.readerIndex() == 0 && chunk.writerIndex() == component.capacity() ? chunk : null;
+    }
+
+    /**
+     * A single compress or decompress call into a chunk
+     */
+    @FunctionalInterface
+    /* default */ interface Step {
+        Status run(ByteBuf chunk) throws InvalidDataException;
+    }
+}
@@ -0,0 +1,581 @@
+package net.techcable.accelerated_java.compression;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+import net.techcable.accelerated_java.jni.Native;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * An off-heap cache of compressed values, keyed by longs, that evicts the least recently used values to stay under a memory budget.
+ * <p>Values are deflated straight into fixed-size blocks carved out of direct memory slabs,
+ * with the blocks of each value chained together through a link at the start of each block,
+ * so a value never needs a contiguous region and freed blocks are reused by any value.
+ * Slabs are allocated as they're needed, until the budget is reached.</p>
+ * <p>The index is an open-addressing hash table in direct memory, so neither the keys nor the values are visible to the garbage collector.
+ * When the budget is full, entries are evicted with the CLOCK algorithm, which approximates least recently used eviction
+ * with a single referenced bit per entry that's set by reads and cleared as the hand sweeps past.</p>
+ * <p>Values are compressed as raw deflate data, since the store knows their lengths and doesn't need the zlib header.
+ * Small values that share structure compress much better with a {@link Builder#dictionary(byte[]) preset dictionary}.
+ * A store is thread-safe; its calls are serialized.</p>
+ */
+public final class CompressedStore implements AutoCloseable {
+    /**
+     * The size of the link to the next block, at the start of each block
+     */
+    private static final int BLOCK_HEADER = 4;
+    private static final int NO_BLOCK = -1;
+    /*
+     * The layout of an index slot
+     */
+    private static final int SLOT_SIZE = 24;
+    private static final int KEY_OFFSET = 0;
+    private static final int FIRST_BLOCK_OFFSET = 8;
+    private static final int COMPRESSED_LENGTH_OFFSET = 12;
+    private static final int UNCOMPRESSED_LENGTH_OFFSET = 16;
+    private static final int FLAGS_OFFSET = 20;
+    private static final int FLAG_OCCUPIED = 1;
+    private static final int FLAG_REFERENCED = 2;
+    private static final double MAX_LOAD = 0.7;
+
+    private final int blockSize, slabSize, blocksPerSlab;
+    private final ByteBuffer[] slabs;
+    private final long[] slabAddresses;
+    private int slabCount;
+    /**
+     * The first free block, with the rest linked through the blocks themselves
+     */
+    private int freeBlock = NO_BLOCK;
+    private int usedBlocks;
+    private ByteBuffer index;
+    private int indexMask;
+    private int clockHand;
+    /**
+     * The key whose old value can't be evicted while a new value for it is being stored
+     */
+    private long pinnedKey;
+    private boolean pinned;
+    private int size;
+    private final CompressionEngine compressor, decompressor;
+    private boolean closed;
+
+    private long hits, misses, evictions;
+    /**
+     * The total uncompressed and compressed lengths of the values in the store
+     */
+    private long uncompressedBytes, compressedBytes;
+
+    private CompressedStore(Builder builder) {
+        checkArgument(builder.budget >= builder.slabSize, "Budget %s is smaller than a slab of %s bytes", builder.budget, builder.slabSize);
+        checkArgument(builder.blockSize <= builder.slabSize, "Block size %s is larger than the slab size %s", builder.blockSize, builder.slabSize);
+        this.blockSize = builder.blockSize;
+        this.slabSize = builder.slabSize;
+        this.blocksPerSlab = slabSize / blockSize;
+        long maxSlabs = builder.budget / slabSize;
+        checkArgument(maxSlabs * blocksPerSlab <= Integer.MAX_VALUE, "Budget %s has too many blocks", builder.budget);
+        this.slabs = new ByteBuffer[(int) maxSlabs];
+        this.slabAddresses = new long[(int) maxSlabs];
+        this.index = allocateIndex(Math.max(16, Integer.highestOneBit(Math.max(1, (int) (builder.initialCapacity / MAX_LOAD))) * 2));
+        this.indexMask = index.capacity() / SLOT_SIZE - 1;
+        CompressorOptions options = CompressorOptions.builder()
+                .level(builder.level)
+                .wrapper(ZLibWrapper.NONE)
+                .dictionary(builder.dictionary)
+                .build();
+        this.compressor = builder.factory.createCompressor(options);
+        this.decompressor = builder.factory.createDecompressor(options);
+    }
+
+    /**
+     * Compress and store a value, replacing any existing value for the key
+     * <p>The readable bytes of the value are stored, without changing its reader index.
+     * Other values are evicted to make room if needed.
+     * The old value for the key is only replaced once the new value is stored, so it's kept if the new value doesn't fit,
+     * but both need to fit in the budget until then.</p>
+     *
+     * @param key   the key
+     * @param value the value
+     * @return if the value was stored, or false if it doesn't fit in the budget even after evicting everything else
+     * @throws NullPointerException  if the value is null
+     * @throws IllegalStateException if the store is closed
+     */
+    public synchronized boolean put(long key, ByteBuf value) {
+        checkNotNull(value, "Null value");
+        checkState(!closed, "Store is closed");
+        int length = value.readableBytes();
+        final byte[] inArray;
+        final long inOffset;
+        if (ByteBufCompressor.isContiguous(value)) {
+            inArray = value.hasArray() ? value.array() : null;
+            inOffset = ByteBufCompressor.offset(value, value.readerIndex(), length);
+        } else {
+            inArray = ByteBufUtil.getBytes(value);
+            inOffset = 0;
+        }
+        pinnedKey = key;
+        pinned = findSlot(key) >= 0;
+        int firstBlock = NO_BLOCK;
+        boolean stored = false;
+        try {
+            compressor.reset();
+            firstBlock = allocateBlock();
+            if (firstBlock == NO_BLOCK) return false;
+            int block = firstBlock, read = 0, compressedLength = 0;
+            while (true) {
+                int used = 0;
+                Status status;
+                do {
+                    status = compressor.compressMemory(inArray, inOffset + read, length - read, null, blockAddress(block) + BLOCK_HEADER + used, blockSize - BLOCK_HEADER - used, true);
+                    int blockRead = compressor.getBytesRead(), blockWritten = compressor.getBytesWritten();
+                    checkState(blockRead > 0 || blockWritten > 0 || status == Status.FINISHED, "Compressor made no progress");
+                    read += blockRead;
+                    used += blockWritten;
+                } while (status != Status.FINISHED && used < blockSize - BLOCK_HEADER);
+                compressedLength += used;
+                if (status == Status.FINISHED) break;
+                int nextBlock = allocateBlock();
+                if (nextBlock == NO_BLOCK) return false;
+                setNextBlock(block, nextBlock);
+                block = nextBlock;
+            }
+            // The new value is complete, so the old one can go
+            int oldSlot = findSlot(key);
+            if (oldSlot >= 0) removeSlot(oldSlot);
+            if (size + 1 > (indexMask + 1) * MAX_LOAD) growIndex();
+            int slot = ~findSlot(key);
+            index.putLong(slotOffset(slot) + KEY_OFFSET, key);
+            index.putInt(slotOffset(slot) + FIRST_BLOCK_OFFSET, firstBlock);
+            index.putInt(slotOffset(slot) + COMPRESSED_LENGTH_OFFSET, compressedLength);
+            index.putInt(slotOffset(slot) + UNCOMPRESSED_LENGTH_OFFSET, length);
+            index.putInt(slotOffset(slot) + FLAGS_OFFSET, FLAG_OCCUPIED);
+            size++;
+            uncompressedBytes += length;
+            compressedBytes += compressedLength;
+            stored = true;
+            return true;
+        } finally {
+            pinned = false;
+            if (!stored) freeChain(firstBlock);
+        }
+    }
+
+    /**
+     * Decompress a value straight into a buffer
+     * <p>The buffer grows if it needs to, and the value is written at its writer index.</p>
+     *
+     * @param key the key
+     * @param out the buffer to write the value to
+     * @return if the value was found
+     * @throws NullPointerException  if the buffer is null
+     * @throws IllegalStateException if the store is closed
+     */
+    public synchronized boolean get(long key, ByteBuf out) {
+        checkNotNull(out, "Null output buffer");
+        checkState(!closed, "Store is closed");
+        int slot = findSlot(key);
+        if (slot < 0) {
+            misses++;
+            return false;
+        }
+        hits++;
+        int offset = slotOffset(slot);
+        index.putInt(offset + FLAGS_OFFSET, FLAG_OCCUPIED | FLAG_REFERENCED);
+        int length = index.getInt(offset + UNCOMPRESSED_LENGTH_OFFSET);
+        int remaining = index.getInt(offset + COMPRESSED_LENGTH_OFFSET);
+        out.ensureWritable(length);
+        final boolean outContiguous = ByteBufCompressor.isContiguous(out);
+        final byte[] outArray;
+        final long outOffset;
+        if (outContiguous) {
+            outArray = out.hasArray() ? out.array() : null;
+            outOffset = ByteBufCompressor.offset(out, out.writerIndex(), length);
+        } else {
+            outArray = new byte[length];
+            outOffset = 0;
+        }
+        decompressor.reset();
+        int block = index.getInt(offset + FIRST_BLOCK_OFFSET), written = 0;
+        Status status = Status.NEEDS_INPUT;
+        try {
+            while (remaining > 0 && status != Status.FINISHED) {
+                int blockLength = Math.min(remaining, blockSize - BLOCK_HEADER), consumed = 0;
+                do {
+                    status = decompressor.decompressMemory(null, blockAddress(block) + BLOCK_HEADER + consumed, blockLength - consumed, outArray, outOffset + written, length - written);
+                    int blockRead = decompressor.getBytesRead(), blockWritten = decompressor.getBytesWritten();
+                    consumed += blockRead;
+                    written += blockWritten;
+                    if (blockRead == 0 && blockWritten == 0) break;
+                } while (status != Status.FINISHED && consumed < blockLength);
+                remaining -= blockLength;
+                block = nextBlock(block);
+            }
+        } catch (InvalidDataException e) {
+            throw new IllegalStateException("Corrupt value for key " + key, e);
+        }
+        checkState(status == Status.FINISHED && written == length, "Corrupt value for key %s", key);
+        if (!outContiguous) out.setBytes(out.writerIndex(), outArray);
+        out.writerIndex(out.writerIndex() + length);
+        return true;
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public synchronized boolean contains(long key) {
+        checkState(!closed, "Store is closed");
+        return findSlot(key) >= 0;
+    }
+
+    /**
+     * Remove a value
+     *
+     * @param key the key
+     * @return if there was a value to remove
+     * @throws IllegalStateException if the store is closed
+     */
+    public synchronized boolean remove(long key) {
+        checkState(!closed, "Store is closed");
+        int slot = findSlot(key);
+        if (slot < 0) return false;
+        removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * Get the fraction of lookups that found a value
+     *
+     * @return the hit rate, or zero if there haven't been any lookups
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the uncompressed size of the stored values divided by their compressed size
+     *
+     * @return the compression ratio, or zero if the store is empty
+     */
+    public synchronized double getCompressionRatio() {
+        return compressedBytes > 0 ? (double) uncompressedBytes / compressedBytes : 0;
+    }
+
+    /**
+     * Get the number of bytes in blocks that hold values
+     *
+     * @return the used bytes
+     */
+    public synchronized long getUsedBytes() {
+        return (long) usedBlocks * blockSize;
+    }
+
+    /**
+     * Get the direct memory used by the store, including the index and the unused parts of the slabs
+     * <p>The budget only covers the slabs, so the index adds a little more.</p>
+     *
+     * @return the memory usage in bytes
+     */
+    public synchronized long getMemoryUsage() {
+        return (long) slabCount * slabSize + index.capacity();
+    }
+
+    /**
+     * Close the store, releasing its compressors and dropping its memory
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        compressor.close();
+        decompressor.close();
+        for (int i = 0; i < slabCount; i++) {
+            slabs[i] = null;
+        }
+        index = null;
+    }
+
+    //
+    // Blocks
+    //
+
+    private long blockAddress(int block) {
+        return slabAddresses[block / blocksPerSlab] + (long) (block % blocksPerSlab) * blockSize;
+    }
+
+    private int nextBlock(int block) {
+        return slabs[block / blocksPerSlab].getInt((block % blocksPerSlab) * blockSize);
+    }
+
+    private void setNextBlock(int block, int next) {
+        slabs[block / blocksPerSlab].putInt((block % blocksPerSlab) * blockSize, next);
+    }
+
+    /**
+     * Take a free block, allocating a slab or evicting values if there aren't any
+     * <p>The block is unlinked from the free list, so it ends a chain until another block is linked after it.</p>
+     *
+     * @return the block, or {@link #NO_BLOCK} if the store is at its budget and there's nothing left to evict
+     */
+    private int allocateBlock() {
+        while (freeBlock == NO_BLOCK) {
+            if (slabCount < slabs.length) {
+                allocateSlab();
+            } else if (!evict()) {
+                return NO_BLOCK;
+            }
+        }
+        int block = freeBlock;
+        freeBlock = nextBlock(block);
+        setNextBlock(block, NO_BLOCK);
+        usedBlocks++;
+        return block;
+    }
+
+    private void allocateSlab() {
+        ByteBuffer slab = ByteBuffer.allocateDirect(slabSize).order(ByteOrder.nativeOrder());
+        int slabIndex = slabCount++;
+        slabs[slabIndex] = slab;
+        slabAddresses[slabIndex] = Native.getNativeAddress(slab);
+        // Link the new blocks in order, so values tend to be laid out sequentially
+        int firstBlock = slabIndex * blocksPerSlab;
+        for (int i = blocksPerSlab - 1; i >= 0; i--) {
+            setNextBlock(firstBlock + i, freeBlock);
+            freeBlock = firstBlock + i;
+        }
+    }
+
+    private void freeChain(int block) {
+        while (block != NO_BLOCK) {
+            int next = nextBlock(block);
+            setNextBlock(block, freeBlock);
+            freeBlock = block;
+            usedBlocks--;
+            block = next;
+        }
+    }
+
+    /**
+     * Evict the entry under the clock hand that hasn't been referenced since the hand last passed it, skipping the pinned entry
+     *
+     * @return if an entry was evicted, or false if the only entry left is pinned or the store is empty
+     */
+    private boolean evict() {
+        if (size == (pinned ? 1 : 0)) return false;
+        while (true) {
+            int offset = slotOffset(clockHand);
+            int flags = index.getInt(offset + FLAGS_OFFSET);
+            if ((flags & FLAG_REFERENCED) != 0) {
+                index.putInt(offset + FLAGS_OFFSET, flags & ~FLAG_REFERENCED);
+            } else if ((flags & FLAG_OCCUPIED) != 0 && !(pinned && index.getLong(offset + KEY_OFFSET) == pinnedKey)) {
+                // Removing shifts the next entry into this slot, so the hand stays put
+                removeSlot(clockHand);
+                evictions++;
+                return true;
+            }
+            clockHand = (clockHand + 1) & indexMask;
+        }
+    }
+
+    //
+    // Index
+    //
+
+    private static ByteBuffer allocateIndex(int slots) {
+        // Direct buffers are zeroed, so every slot starts unoccupied
+        return ByteBuffer.allocateDirect(slots * SLOT_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    private static int slotOffset(int slot) {
+        return slot * SLOT_SIZE;
+    }
+
+    private static int hash(long key) {
+        // The finalizer of MurmurHash3, which spreads sequential keys across the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private boolean isOccupied(int slot) {
+        return (index.getInt(slotOffset(slot) + FLAGS_OFFSET) & FLAG_OCCUPIED) != 0;
+    }
+
+    /**
+     * Find the slot holding a key with linear probing
+     *
+     * @param key the key
+     * @return the slot, or the bitwise complement of the empty slot the key belongs in if it isn't present
+     */
+    private int findSlot(long key) {
+        int slot = hash(key) & indexMask;
+        while (isOccupied(slot)) {
+            if (index.getLong(slotOffset(slot) + KEY_OFFSET) == key) return slot;
+            slot = (slot + 1) & indexMask;
+        }
+        return ~slot;
+    }
+
+    /**
+     * Remove an entry and free its blocks, shifting back the entries after it so every probe sequence stays unbroken
+     */
+    private void removeSlot(int slot) {
+        int offset = slotOffset(slot);
+        freeChain(index.getInt(offset + FIRST_BLOCK_OFFSET));
+        uncompressedBytes -= index.getInt(offset + UNCOMPRESSED_LENGTH_OFFSET);
+        compressedBytes -= index.getInt(offset + COMPRESSED_LENGTH_OFFSET);
+        size--;
+        int hole = slot;
+        for (int next = (slot + 1) & indexMask; isOccupied(next); next = (next + 1) & indexMask) {
+            int home = hash(index.getLong(slotOffset(next) + KEY_OFFSET)) & indexMask;
+            // The entry can move into the hole unless its home is cyclically between the hole and where it is now
+            boolean stays = hole <= next ? home > hole && home <= next : home > hole || home <= next;
+            if (!stays) {
+                copySlot(index, next, index, hole);
+                hole = next;
+            }
+        }
+        index.putInt(slotOffset(hole) + FLAGS_OFFSET, 0);
+    }
+
+    private static void copySlot(ByteBuffer fromIndex, int from, ByteBuffer toIndex, int to) {
+        ByteBuffer source = fromIndex.duplicate();
+        source.limit(slotOffset(from) + SLOT_SIZE).position(slotOffset(from));
+        ByteBuffer target = toIndex.duplicate();
+        target.position(slotOffset(to));
+        target.put(source);
+    }
+
+    private void growIndex() {
+        ByteBuffer oldIndex = index;
+        int oldSlots = indexMask + 1;
+        this.index = allocateIndex(oldSlots * 2);
+        this.indexMask = oldSlots * 2 - 1;
+        this.clockHand = 0;
+        for (int slot = 0; slot < oldSlots; slot++) {
+            int oldOffset = slotOffset(slot);
+            if ((oldIndex.getInt(oldOffset + FLAGS_OFFSET) & FLAG_OCCUPIED) == 0) continue;
+            copySlot(oldIndex, slot, index, ~findSlot(oldIndex.getLong(oldOffset + KEY_OFFSET)));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private long budget = 64 * 1024 * 1024;
+        private int blockSize = 512, slabSize = 1024 * 1024;
+        private int level = CompressionEngineFactory.DEFAULT_COMPRESSION;
+        private byte[] dictionary;
+        private CompressionEngineFactory factory;
+        private int initialCapacity = 1024;
+
+        private Builder() {}
+
+        /**
+         * Set the most memory the slabs can use, which defaults to 64 MiB
+         *
+         * @param bytes the budget in bytes
+         * @return this builder
+         */
+        public Builder budget(long bytes) {
+            checkArgument(bytes > 0, "Non-positive budget %s", bytes);
+            this.budget = bytes;
+            return this;
+        }
+
+        /**
+         * Set the size of the blocks values are stored in, which defaults to 512 bytes
+         * <p>Smaller blocks waste less space at the end of each value, but link more blocks together.</p>
+         *
+         * @param blockSize the block size in bytes
+         * @return this builder
+         */
+        public Builder blockSize(int blockSize) {
+            checkArgument(blockSize > BLOCK_HEADER, "Block size %s is too small", blockSize);
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Set the size of the slabs blocks are allocated from, which defaults to 1 MiB
+         *
+         * @param slabSize the slab size in bytes
+         * @return this builder
+         */
+        public Builder slabSize(int slabSize) {
+            checkArgument(slabSize > 0, "Non-positive slab size %s", slabSize);
+            this.slabSize = slabSize;
+            return this;
+        }
+
+        public Builder level(int level) {
+            checkArgument(level == CompressionEngineFactory.DEFAULT_COMPRESSION || level >= 0 && level <= CompressionEngineFactory.BEST_COMPRESSION, "Invalid level %s", level);
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Set a preset dictionary for every value in the store
+         *
+         * @param dictionary the dictionary, which is copied, or null for no dictionary
+         * @return this builder
+         * @throws IllegalArgumentException if the dictionary is empty
+         */
+        public Builder dictionary(byte[] dictionary) {
+            checkArgument(dictionary == null || dictionary.length > 0, "Empty dictionary");
+            this.dictionary = dictionary != null ? dictionary.clone() : null;
+            return this;
+        }
+
+        /**
+         * Set the backend to compress with, which defaults to {@link CompressionEngineFactory#getInstance() the fastest one}
+         *
+         * @param factory the backend's factory
+         * @return this builder
+         */
+        public Builder factory(CompressionEngineFactory factory) {
+            this.factory = checkNotNull(factory, "Null factory");
+            return this;
+        }
+
+        /**
+         * Set the number of entries the index can hold before it grows
+         *
+         * @param initialCapacity the initial capacity
+         * @return this builder
+         */
+        public Builder initialCapacity(int initialCapacity) {
+            checkArgument(initialCapacity >= 0, "Negative capacity %s", initialCapacity);
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        public CompressedStore build() {
+            if (factory == null) factory = CompressionEngineFactory.getInstance();
+            return new CompressedStore(this);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+import net.techcable.accelerated_java.jni.Native;
+import net.techcable.accelerated_java.utils.XXHash64;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A cache of compressed payloads, keyed by their content and the options they're compressed with,
+ * so payloads that are sent over and over again are only compressed once.
+ * <p>Payloads are identified by their 64-bit xxHash and their length, which is hashed natively for direct buffers.
+ * The compressed copies are kept in direct buffers under a byte budget, and the least recently used are evicted first.
+ * Concurrent misses on the same payload wait for a single compression instead of each compressing it.</p>
+ * <p>The payload bytes themselves aren't kept, so two payloads with the same length whose hashes collide share an entry,
+ * and the second gets the first's compressed bytes.
+ * Each cache hashes with its own random seed, so collisions can't be crafted ahead of time,
+ * but the cache shouldn't be shared between payloads that mustn't be able to see each other's content.</p>
+ * <p>Each payload is compressed as a whole stream by a new compressor, which gives the same output every time for the same backend,
+ * so cached and freshly compressed payloads are interchangeable.
+ * The factory shouldn't route streams to different backends, like the {@link CompressorFactory#getCalibratedInstance() calibrated factory},
+ * since different backends can give different, though equally valid, output.</p>
+ */
+public final class CompressionCache {
+    private final CompressorFactory factory;
+    private final ByteBufAllocator allocator;
+    private final int maxEntrySize;
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    private final Cache<Key, Entry> cache;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), bypasses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder(), evictions = new LongAdder(), cachedBytes = new LongAdder();
+
+    private CompressionCache(Builder builder) {
+        checkArgument(builder.maxEntrySize <= builder.budget / 4, "Max entry size %s is too large for a budget of %s bytes", builder.maxEntrySize, builder.budget);
+        this.factory = builder.factory;
+        this.allocator = builder.allocator;
+        this.maxEntrySize = builder.maxEntrySize;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(builder.budget)
+                .<Key, Entry>weigher((key, entry) -> entry.compressed.capacity())
+                .removalListener(notification -> {
+                    Entry entry = notification.getValue();
+                    cachedBytes.add(-entry.compressed.capacity());
+                    if (notification.wasEvicted()) evictions.increment();
+                    entry.release();
+                })
+                .build();
+    }
+
+    /**
+     * Compress the readable bytes of the buffer, or get the cached result of compressing the same bytes with the same options
+     * <p>The input's reader index isn't changed.
+     * Payloads larger than the maximum entry size are compressed without being cached.</p>
+     *
+     * @param in      the payload
+     * @param options the options to compress with
+     * @return the whole compressed stream, which the caller must release
+     * @throws NullPointerException if any arguments are null
+     */
+    public ByteBuf compress(ByteBuf in, CompressorOptions options) {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(options, "Null options");
+        final int length = in.readableBytes();
+        if (length > maxEntrySize) {
+            bypasses.increment();
+            return compressPayload(in, options);
+        }
+        Key key = new Key(hash(in), length, options);
+        while (true) {
+            boolean[] loaded = new boolean[1];
+            Entry entry;
+            try {
+                entry = cache.get(key, () -> {
+                    loaded[0] = true;
+                    ByteBuf result = compressPayload(in, options);
+                    cachedBytes.add(result.capacity());
+                    return new Entry(result);
+                });
+            } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+                throw Throwables.propagate(e.getCause());
+            }
+            ByteBuf compressed = entry.retain();
+            if (compressed == null) {
+                // It was evicted and released before we could retain it
+                if (loaded[0]) {
+                    // Evicted as soon as it was cached, so the cache is too small for it
+                    misses.increment();
+                    return compressPayload(in, options);
+                }
+                continue;
+            }
+            if (loaded[0]) {
+                misses.increment();
+            } else {
+                hits.increment();
+                bytesSaved.add(length);
+            }
+            return compressed;
+        }
+    }
+
+    private ByteBuf compressPayload(ByteBuf in, CompressorOptions options) {
+        Compressor compressor = factory.createCompressor(options);
+        ByteBuf out = allocator.directBuffer(Math.max(64, in.readableBytes() / 2));
+        try {
+            Status status = compressor.compress(in.duplicate(), out, true);
+            checkState(status == Status.FINISHED, "Compression didn't finish: %s", status);
+            // Only keep the memory the payload needs
+            out.capacity(out.writerIndex());
+            ByteBuf result = out;
+            out = null;
+            return result;
+        } finally {
+            if (out != null) out.release();
+            compressor.close();
+        }
+    }
+
+    private long hash(ByteBuf in) {
+        int index = in.readerIndex(), length = in.readableBytes();
+        if (in.hasArray()) {
+            return XXHash64.hash(in.array(), in.arrayOffset() + index, length, seed);
+        } else if (Native.LIBRARY.isLoaded() && ByteBufCompressor.isContiguous(in)) {
+            return Native.hashMemory(ByteBufCompressor.offset(in, index, length), length, seed);
+        } else {
+            byte[] copy = new byte[length];
+            in.getBytes(index, copy);
+            return XXHash64.hash(copy, 0, length, seed);
+        }
+    }
+
+    /**
+     * Get the fraction of cacheable payloads that were already in the cache
+     *
+     * @return the hit rate, or zero if nothing has been compressed
+     */
+    public double getHitRate() {
+        long hits = getHits(), total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of payloads that were too large to cache
+     *
+     * @return the number of uncached payloads
+     */
+    public long getBypasses() {
+        return bypasses.sum();
+    }
+
+    /**
+     * Get the number of payload bytes that didn't need to be compressed, because they were in the cache
+     *
+     * @return the number of bytes saved
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of bytes the cached payloads use
+     *
+     * @return the cached bytes
+     */
+    public long getCachedBytes() {
+        return cachedBytes.sum();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Remove every payload from the cache, releasing their buffers once nothing else is using them
+     */
+    public void clear() {
+        cache.invalidateAll();
+        cache.cleanUp();
+    }
+
+    /**
+     * A cached payload, which is retained under the same lock that the cache's removal listener releases it under
+     * <p>Once the listener releases it, the entry stays dead, even if the buffer's memory is pooled and handed out again.</p>
+     */
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final ByteBuf compressed;
+        private boolean dead;
+
+        /**
+         * Retain the compressed payload for a caller
+         *
+         * @return a duplicate of the payload with its own indexes, sharing the retained reference count, or null if the entry was removed
+         */
+        public synchronized ByteBuf retain() {
+            if (dead) return null;
+            return compressed.retain().duplicate();
+        }
+
+        public synchronized void release() {
+            checkState(!dead, "Entry already released");
+            dead = true;
+            compressed.release();
+        }
+    }
+
+    @RequiredArgsConstructor
+    @EqualsAndHashCode
+    private static final class Key {
+        private final long hash;
+        private final int length;
+        private final CompressorOptions options;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private CompressorFactory factory;
+        private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        private long budget = 64 * 1024 * 1024;
+        /**
+         * The maximum entry size, or -1 to use the default
+         */
+        private int maxEntrySize = -1;
+
+        private Builder() {}
+
+        /**
+         * Set the factory to compress with, which defaults to {@link CompressorFactory#getInstance() the fastest backend}
+         *
+         * @param factory the factory
+         * @return this builder
+         */
+        public Builder factory(CompressorFactory factory) {
+            this.factory = checkNotNull(factory, "Null factory");
+            return this;
+        }
+
+        /**
+         * Set the allocator for the compressed payloads, which defaults to {@link ByteBufAllocator#DEFAULT}
+         *
+         * @param allocator the allocator
+         * @return this builder
+         */
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = checkNotNull(allocator, "Null allocator");
+            return this;
+        }
+
+        /**
+         * Set the most memory the compressed payloads can use, which defaults to 64 MiB
+         *
+         * @param bytes the budget in bytes
+         * @return this builder
+         */
+        public Builder budget(long bytes) {
+            checkArgument(bytes > 0, "Non-positive budget %s", bytes);
+            this.budget = bytes;
+            return this;
+        }
+
+        /**
+         * Set the largest payload that's cached, which can be at most a quarter of the budget
+         * <p>Defaults to 1 MiB, or a quarter of the budget if that's smaller.</p>
+         *
+         * @param bytes the maximum size in bytes
+         * @return this builder
+         */
+        public Builder maxEntrySize(int bytes) {
+            checkArgument(bytes >= 0, "Negative size %s", bytes);
+            this.maxEntrySize = bytes;
+            return this;
+        }
+
+        public CompressionCache build() {
+            if (factory == null) factory = CompressorFactory.getInstance();
+            if (maxEntrySize < 0) maxEntrySize = (int) Math.min(1024 * 1024, budget / 4);
+            return new CompressionCache(this);
+        }
+    }
+}
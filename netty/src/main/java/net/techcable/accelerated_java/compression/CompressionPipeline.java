@@ -0,0 +1,679 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Compresses data and writes it to a channel on other threads, so producing, compressing and writing overlap.
+ * <p>The caller's writes are copied into chunks of pooled direct buffers,
+ * which are handed to the compressor workers and then to the writer through bounded single-producer single-consumer rings.
+ * Chunks are dealt to the workers in turn and collected from them in the same order, so the output is ordered.
+ * Once a ring is full the stage feeding it waits, so a slow writer holds back the workers and the workers hold back the producer,
+ * and at most a few chunks per worker are in flight.</p>
+ * <p>With a single worker the output is one ordinary stream.
+ * With several workers, each chunk is compressed independently and ends with a {@link FlushMode#SYNC sync flush},
+ * so the raw deflate data of the chunks joins into a single stream, and the writer adds the zlib or gzip header and trailer.
+ * The zlib trailer is combined from the workers' checksums of each chunk, and the producer checksums the whole stream for the gzip trailer.
+ * Chunks don't share history, which costs a little compression, less the larger the chunks are.</p>
+ * <p>Each stage records how long it waited for input and for room in the next ring,
+ * so the {@link #getBottleneck() bottleneck} is the stage that waited least.
+ * A pipeline isn't thread-safe, and must be written to and closed by a single producer thread.</p>
+ */
+public final class CompressionPipeline implements AutoCloseable {
+    private static final Chunk STOP = new Chunk(-1, null, true);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final GatheringByteChannel channel;
+    private final CompressorOptions options;
+    private final ByteBufAllocator allocator;
+    private final int chunkSize;
+    private final List<SpscRing<Chunk>> inputs, outputs;
+    private final List<Thread> threads;
+    @Getter
+    private final Stage producer, writer;
+    private final List<Stage> workers;
+    /**
+     * The producer's checksum of the whole stream, or null if the wrapper isn't gzip
+     */
+    private final CRC32 streamChecksum;
+    private final long startNanos;
+    private volatile long endNanos;
+    private volatile Throwable failure;
+    /**
+     * The chunk the producer is filling, or null if there isn't one
+     */
+    private ByteBuf current;
+    private long sequence;
+    private boolean closed;
+
+    private CompressionPipeline(Builder builder) {
+        this.channel = builder.channel;
+        this.options = builder.options;
+        this.allocator = builder.allocator;
+        this.chunkSize = builder.chunkSize;
+        int workerCount = builder.workers;
+        List<SpscRing<Chunk>> inputs = new ArrayList<>(workerCount), outputs = new ArrayList<>(workerCount);
+        List<Stage> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            inputs.add(new SpscRing<>(builder.queueCapacity));
+            outputs.add(new SpscRing<>(builder.queueCapacity));
+            workers.add(new Stage("worker-" + i));
+        }
+        this.inputs = Collections.unmodifiableList(inputs);
+        this.outputs = Collections.unmodifiableList(outputs);
+        this.workers = Collections.unmodifiableList(workers);
+        this.producer = new Stage("producer");
+        this.writer = new Stage("writer");
+        this.streamChecksum = options.getWrapper() == ZLibWrapper.GZIP ? new CRC32() : null;
+        // Raw deflate segments, which the writer wraps
+        CompressorOptions workerOptions = options.toBuilder().wrapper(ZLibWrapper.NONE).build();
+        // Create the streams upfront, so invalid options fail here
+        List<Compressor> compressors = new ArrayList<>(workerCount);
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                compressors.add(builder.factory.createCompressor(workerOptions));
+            }
+        } catch (RuntimeException e) {
+            compressors.forEach(Compressor::close);
+            throw e;
+        }
+        List<Thread> threads = new ArrayList<>(workerCount + 1);
+        for (int i = 0; i < workerCount; i++) {
+            final int index = i;
+            Compressor compressor = compressors.get(i);
+            threads.add(builder.threadFactory.newThread(() -> runWorker(index, compressor)));
+        }
+        threads.add(builder.threadFactory.newThread(this::runWriter));
+        this.threads = Collections.unmodifiableList(threads);
+        this.startNanos = System.nanoTime();
+        threads.forEach(Thread::start);
+    }
+
+    /**
+     * Compress all the readable bytes of the buffer
+     * <p>The bytes are copied, so the buffer can be reused as soon as this returns.
+     * The input is consumed but not released.
+     * This waits if the workers are behind.</p>
+     *
+     * @param in the data to compress
+     * @throws NullPointerException  if the input is null
+     * @throws IllegalStateException if the pipeline is closed
+     * @throws IOException           if a worker or the writer failed
+     */
+    public void write(ByteBuf in) throws IOException {
+        checkNotNull(in, "Null input buffer");
+        checkState(!closed, "Pipeline is closed");
+        checkFailure();
+        while (in.isReadable()) {
+            if (current == null) current = allocator.directBuffer(chunkSize, chunkSize);
+            int length = Math.min(in.readableBytes(), current.writableBytes());
+            if (streamChecksum != null) streamChecksum.update(in.nioBuffer(in.readerIndex(), length));
+            current.writeBytes(in, length);
+            producer.bytes += length;
+            if (!current.isWritable()) dispatch(false);
+        }
+    }
+
+    private void dispatch(boolean last) throws IOException {
+        ByteBuf data = current != null ? current : allocator.directBuffer(0);
+        current = null;
+        Chunk chunk = new Chunk(sequence, data, last);
+        if (last && streamChecksum != null) chunk.streamChecksum = (int) streamChecksum.getValue();
+        chunk.streamLength = producer.bytes;
+        put(inputs.get(workerIndex(sequence)), chunk, producer);
+        producer.chunks++;
+        sequence++;
+    }
+
+    private int workerIndex(long sequence) {
+        return (int) (sequence % workers.size());
+    }
+
+    private void runWorker(int index, Compressor compressor) {
+        Stage stage = workers.get(index);
+        SpscRing<Chunk> input = inputs.get(index), output = outputs.get(index);
+        Adler32 checksum = new Adler32();
+        boolean independent = workers.size() > 1, started = false;
+        try {
+            while (true) {
+                Chunk chunk = take(input, stage);
+                if (chunk == null || chunk == STOP) return;
+                ByteBuf data = chunk.data;
+                chunk.length = data.readableBytes();
+                if (independent && started) compressor.reset();
+                started = true;
+                if (options.getWrapper() == ZLibWrapper.ZLIB) {
+                    checksum.reset();
+                    checksum.update(data.nioBuffer());
+                    chunk.checksum = (int) checksum.getValue();
+                }
+                // Enough for stored blocks, if the chunk doesn't compress
+                ByteBuf out = allocator.directBuffer(chunk.length + (chunk.length >>> 10) + 64);
+                try {
+                    FlushMode flush = chunk.last ? FlushMode.FINISH : independent ? FlushMode.SYNC : FlushMode.NONE;
+                    compressor.compress(data, out, flush);
+                } catch (RuntimeException e) {
+                    out.release();
+                    throw e;
+                } finally {
+                    data.release();
+                }
+                chunk.data = out;
+                stage.chunks++;
+                stage.bytes += out.readableBytes();
+                put(output, chunk, stage);
+                if (chunk.last) return;
+            }
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            compressor.close();
+        }
+    }
+
+    private void runWriter() {
+        long sequence = 0;
+        int checksum = 1;
+        try {
+            if (options.getWrapper() == ZLibWrapper.ZLIB) {
+                writeFully(ByteBuffer.wrap(createZLibHeader(options)));
+            } else if (options.getWrapper() == ZLibWrapper.GZIP) {
+                writeFully(ByteBuffer.wrap(createGzipHeader(options)));
+            }
+            while (true) {
+                Chunk chunk = take(outputs.get(workerIndex(sequence)), writer);
+                if (chunk == null) return;
+                checkState(chunk.sequence == sequence, "Expected chunk %s but got %s", sequence, chunk.sequence);
+                ByteBuf data = chunk.data;
+                int length = data.readableBytes();
+                try {
+                    while (data.isReadable()) {
+                        data.readBytes(channel, data.readableBytes());
+                    }
+                } finally {
+                    data.release();
+                }
+                checksum = combineAdler32(checksum, chunk.checksum, chunk.length);
+                writer.chunks++;
+                writer.bytes += length;
+                sequence++;
+                if (chunk.last) {
+                    writeTrailer(checksum, chunk);
+                    return;
+                }
+            }
+        } catch (Throwable t) {
+            fail(t);
+        } finally {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    private void writeTrailer(int checksum, Chunk last) throws IOException {
+        switch (options.getWrapper()) {
+            case ZLIB:
+                ByteBuffer trailer = ByteBuffer.allocate(4);
+                trailer.putInt(checksum).flip();
+                writeFully(trailer);
+                break;
+            case GZIP:
+                // The checksum and the length modulo 2^32, both little endian
+                trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                trailer.putInt(last.streamChecksum).putInt((int) last.streamLength).flip();
+                writeFully(trailer);
+                break;
+            case NONE:
+                break;
+            default:
+                throw new AssertionError(options.getWrapper());
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Create the zlib header for the options, as zlib itself would
+     *
+     * @param options the options
+     * @return the two byte header
+     */
+    /* default */ static byte[] createZLibHeader(CompressorOptions options) {
+        int level = options.getLevel() == CompressionEngineFactory.DEFAULT_COMPRESSION ? 6 : options.getLevel();
+        final int levelFlags;
+        if (level < 2 || options.getStrategy().ordinal() >= CompressionStrategy.HUFFMAN_ONLY.ordinal()) {
+            levelFlags = 0;
+        } else if (level < 6) {
+            levelFlags = 1;
+        } else if (level == 6) {
+            levelFlags = 2;
+        } else {
+            levelFlags = 3;
+        }
+        int header = (options.getWindowBits() - 8 << 12 | 8 << 8) | levelFlags << 6;
+        header += 31 - header % 31;
+        return new byte[] {(byte) (header >>> 8), (byte) header};
+    }
+
+    /**
+     * Create a minimal gzip header, without a file name or modification time
+     *
+     * @param options the options
+     * @return the ten byte header
+     */
+    /* default */ static byte[] createGzipHeader(CompressorOptions options) {
+        // The extra flags say if the slowest or fastest level was used, like zlib's
+        final byte extraFlags;
+        if (options.getLevel() == CompressionEngineFactory.BEST_COMPRESSION) {
+            extraFlags = 2;
+        } else if (options.getLevel() == 0 || options.getLevel() == 1 || options.getStrategy().ordinal() >= CompressionStrategy.HUFFMAN_ONLY.ordinal()) {
+            extraFlags = 4;
+        } else {
+            extraFlags = 0;
+        }
+        // An unknown operating system
+        final byte os = (byte) 255;
+        return new byte[] {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, extraFlags, os};
+    }
+
+    /**
+     * Combine the adler32 checksums of two pieces of data, like zlib's {@code adler32_combine}
+     *
+     * @param first        the checksum of the first piece
+     * @param second       the checksum of the second piece
+     * @param secondLength the length of the second piece
+     * @return the checksum of both pieces
+     */
+    /* default */ static int combineAdler32(int first, int second, long secondLength) {
+        final long base = 65521;
+        long remainder = secondLength % base;
+        long sum1 = first & 0xFFFF;
+        long sum2 = remainder * sum1 % base;
+        sum1 += (second & 0xFFFF) + base - 1;
+        sum2 += (first >>> 16) + (second >>> 16) + base - remainder;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= base << 1) sum2 -= base << 1;
+        if (sum2 >= base) sum2 -= base;
+        return (int) (sum1 | sum2 << 16);
+    }
+
+    /**
+     * Add the chunk to the ring, waiting for room if it's full
+     * <p>The chunk's buffer is released if the pipeline fails first.</p>
+     */
+    private void put(SpscRing<Chunk> ring, Chunk chunk, Stage stage) throws IOException {
+        if (ring.offer(chunk)) return;
+        long start = System.nanoTime();
+        try {
+            for (int idle = 0; !ring.offer(chunk); idle++) {
+                if (failure != null) {
+                    if (chunk.data != null) chunk.data.release();
+                    checkFailure();
+                }
+                idle(idle);
+            }
+        } finally {
+            stage.blockedNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Take the next chunk from the ring, waiting for one if it's empty
+     *
+     * @return the chunk, or null if the pipeline failed
+     */
+    private Chunk take(SpscRing<Chunk> ring, Stage stage) {
+        Chunk chunk = ring.poll();
+        if (chunk != null) return chunk;
+        long start = System.nanoTime();
+        try {
+            for (int idle = 0; (chunk = ring.poll()) == null; idle++) {
+                if (failure != null) return null;
+                idle(idle);
+            }
+            return chunk;
+        } finally {
+            stage.starvedNanos += System.nanoTime() - start;
+        }
+    }
+
+    private static void idle(int count) {
+        // Spin briefly, since the other side is usually about to catch up, and then back off
+        if (count < 64) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_IDLE_NANOS, 1000L << Math.min(count - 64, 6)));
+        }
+    }
+
+    private synchronized void fail(Throwable t) {
+        // Only the first failure matters, since it makes the other stages give up
+        if (failure == null) failure = t;
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable failure = this.failure;
+        if (failure != null) throw new IOException("Compression pipeline failed", failure);
+    }
+
+    /**
+     * Get the stages that compress the chunks
+     *
+     * @return the workers
+     */
+    public List<Stage> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Get the stage that waited least for the others, which is the one holding the pipeline back
+     *
+     * @return the busiest stage
+     */
+    public Stage getBottleneck() {
+        Stage bottleneck = producer;
+        for (Stage stage : workers) {
+            if (stage.getUtilization() > bottleneck.getUtilization()) bottleneck = stage;
+        }
+        return writer.getUtilization() > bottleneck.getUtilization() ? writer : bottleneck;
+    }
+
+    public long getBytesIn() {
+        return producer.bytes;
+    }
+
+    public long getBytesOut() {
+        return writer.bytes;
+    }
+
+    /**
+     * Finish the stream and wait for all of it to be written
+     * <p>The channel isn't closed, and the pipeline's threads have exited once this returns.</p>
+     *
+     * @throws IOException if a worker or the writer failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        boolean interrupted = false;
+        try {
+            if (failure == null) {
+                dispatch(true);
+                // The other workers have nothing left to do
+                for (int i = 1; i < workers.size(); i++) {
+                    put(inputs.get(workerIndex(sequence - 1 + i)), STOP, producer);
+                }
+            }
+        } catch (IOException ignored) {
+            // The failure is reported below
+        } finally {
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            releaseRemaining();
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    private void releaseRemaining() {
+        // The threads have exited, so this thread can consume from every ring
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+        for (SpscRing<Chunk> ring : inputs) {
+            releaseAll(ring);
+        }
+        for (SpscRing<Chunk> ring : outputs) {
+            releaseAll(ring);
+        }
+    }
+
+    private static void releaseAll(SpscRing<Chunk> ring) {
+        Chunk chunk;
+        while ((chunk = ring.poll()) != null) {
+            if (chunk.data != null) chunk.data.release();
+        }
+    }
+
+    /**
+     * The time a stage of the pipeline spent working and waiting, and what it's processed so far
+     */
+    public final class Stage {
+        @Getter
+        private final String name;
+        private volatile long starvedNanos, blockedNanos, chunks, bytes;
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get how long the stage waited for a chunk from the previous stage
+         *
+         * @return the time in nanoseconds
+         */
+        public long getStarvedNanos() {
+            return starvedNanos;
+        }
+
+        /**
+         * Get how long the stage waited for room in the next stage's ring
+         *
+         * @return the time in nanoseconds
+         */
+        public long getBlockedNanos() {
+            return blockedNanos;
+        }
+
+        /**
+         * Get the number of chunks the stage has passed on
+         *
+         * @return the number of chunks
+         */
+        public long getChunks() {
+            return chunks;
+        }
+
+        /**
+         * Get the number of bytes the stage has passed on, which is compressed after the producer
+         *
+         * @return the number of bytes
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Get the fraction of the pipeline's lifetime the stage spent working instead of waiting on another stage
+         * <p>The producer's time includes producing the data, since it's only measured while it waits.</p>
+         *
+         * @return the utilization, from zero to one
+         */
+        public double getUtilization() {
+            long end = endNanos;
+            long elapsed = (end != 0 ? end : System.nanoTime()) - startNanos;
+            if (elapsed <= 0) return 0;
+            return Math.max(0, 1 - (double) (starvedNanos + blockedNanos) / elapsed);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.1f%% utilized, %d chunks, %d bytes", name, getUtilization() * 100, chunks, bytes);
+        }
+    }
+
+    private static final class Chunk {
+        private final long sequence;
+        /**
+         * The uncompressed data, and then the compressed data once a worker has compressed it
+         */
+        private ByteBuf data;
+        private final boolean last;
+        private int length, checksum;
+        /**
+         * The producer's checksum of the whole stream, only for the last chunk of a gzip stream
+         */
+        private int streamChecksum;
+        /**
+         * The number of bytes written to the pipeline before and including this chunk
+         */
+        private long streamLength;
+
+        private Chunk(long sequence, ByteBuf data, boolean last) {
+            this.sequence = sequence;
+            this.data = data;
+            this.last = last;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private GatheringByteChannel channel;
+        private CompressorFactory factory;
+        private CompressorOptions options = CompressorOptions.DEFAULT;
+        private ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+        private int workers = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 2));
+        private int chunkSize = 128 * 1024;
+        private int queueCapacity = 4;
+        private ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("compression-pipeline-%d").build();
+
+        private Builder() {}
+
+        /**
+         * Set the channel the compressed stream is written to, such as a {@link java.nio.channels.FileChannel}
+         *
+         * @param channel the channel
+         * @return this builder
+         */
+        public Builder channel(GatheringByteChannel channel) {
+            this.channel = checkNotNull(channel, "Null channel");
+            return this;
+        }
+
+        /**
+         * Set the factory to create the workers' streams with, which defaults to {@link CompressorFactory#getInstance() the fastest backend}
+         *
+         * @param factory the factory
+         * @return this builder
+         */
+        public Builder factory(CompressorFactory factory) {
+            this.factory = checkNotNull(factory, "Null factory");
+            return this;
+        }
+
+        /**
+         * Set the options to compress with
+         *
+         * @param options the options
+         * @return this builder
+         * @throws IllegalArgumentException if the options have a preset dictionary, or a window too small for raw deflate data
+         */
+        public Builder options(CompressorOptions options) {
+            checkNotNull(options, "Null options");
+            checkArgument(!options.getDictionary().isPresent(), "Pipelines don't support preset dictionaries");
+            checkArgument(options.getWindowBits() > CompressorOptions.MIN_WINDOW_BITS, "Window bits %s are too small for raw deflate data", options.getWindowBits());
+            this.options = options;
+            return this;
+        }
+
+        /**
+         * Set the allocator for the chunks, which defaults to {@link PooledByteBufAllocator#DEFAULT}
+         *
+         * @param allocator the allocator
+         * @return this builder
+         */
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = checkNotNull(allocator, "Null allocator");
+            return this;
+        }
+
+        /**
+         * Set the number of compressor workers, which defaults to two less than the number of processors, up to four
+         *
+         * @param workers the number of workers
+         * @return this builder
+         */
+        public Builder workers(int workers) {
+            checkArgument(workers > 0, "Non-positive workers %s", workers);
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Set the size of the chunks handed to the workers, which defaults to 128 KiB
+         *
+         * @param bytes the chunk size in bytes
+         * @return this builder
+         */
+        public Builder chunkSize(int bytes) {
+            checkArgument(bytes >= CompressorOptions.MIN_CHUNK_SIZE, "Chunk size %s is less than %s", bytes, CompressorOptions.MIN_CHUNK_SIZE);
+            this.chunkSize = bytes;
+            return this;
+        }
+
+        /**
+         * Set the number of chunks that can wait between each pair of stages, which defaults to four
+         *
+         * @param chunks the number of chunks, which is rounded up to a power of two
+         * @return this builder
+         */
+        public Builder queueCapacity(int chunks) {
+            checkArgument(chunks > 0, "Non-positive capacity %s", chunks);
+            this.queueCapacity = chunks;
+            return this;
+        }
+
+        /**
+         * Set the factory for the workers' and writer's threads, which defaults to daemon threads
+         *
+         * @param threadFactory the thread factory
+         * @return this builder
+         */
+        public Builder threadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = checkNotNull(threadFactory, "Null thread factory");
+            return this;
+        }
+
+        public CompressionPipeline build() {
+            checkState(channel != null, "No channel");
+            if (factory == null) factory = CompressorFactory.getInstance();
+            return new CompressionPipeline(this);
+        }
+    }
+}
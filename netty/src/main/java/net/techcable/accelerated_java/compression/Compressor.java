@@ -0,0 +1,139 @@
+package net.techcable.accelerated_java.compression;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+
+import net.techcable.accelerated_java.InvalidDataException;
+
+/**
+ * A compression stream that also works with Netty's buffers.
+ * <p>Unlike the {@link CompressionEngine} methods, the buffer methods grow the output as needed, up to its maximum capacity.
+ * Buffers backed by an array or native memory are given to the engine in place, without copying or wrapping them.</p>
+ */
+public interface Compressor extends CompressionEngine {
+
+    /**
+     * Decompress as much data as possible into the given output buffer
+     *
+     * @param in  the data to decompress
+     * @param out the output buffer
+     * @return the status of the decompression
+     * @throws IllegalStateException if the stream is only for compressing, or if the stream is closed
+     * @throws NullPointerException  if any arguments are null
+     * @throws InvalidDataException        if the compressed data is invalid
+     * @throws DecompressionLimitException if the stream exceeded its {@link DecompressionLimits}
+     */
+    public Status decompress(ByteBuf in, ByteBuf out) throws InvalidDataException;
+
+    /**
+     * {@inheritDoc}
+     * <p>The copy is a compressor as well, with the same buffer methods.</p>
+     */
+    @Override
+    public default Compressor copy() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't copy its streams");
+    }
+
+    /**
+     * Compress as much data as possible into the given output buffer
+     *
+     * @param in     the data to compress
+     * @param out    the output buffer
+     * @return the status of the compression
+     * @throws IllegalStateException if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws NullPointerException  if any arguments are null
+     */
+    public default Status compress(ByteBuf in, ByteBuf out) {
+        return compress(in, out, false);
+    }
+
+    /**
+     * Compress as much data as possible into the given output buffer
+     *
+     * @param in     the data to compress
+     * @param out    the output buffer
+     * @param finish if we should finish the compression
+     * @return the status of the compression
+     * @throws IllegalStateException if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws NullPointerException  if any arguments are null
+     */
+    public default Status compress(ByteBuf in, ByteBuf out, boolean finish) {
+        return compress(in, out, FlushMode.of(finish));
+    }
+
+    /**
+     * Compress as much data as possible into the given output buffer, flushing in the given mode
+     * <p>Compressing many small writes without flushing, and only flushing once the other side needs the data,
+     * gives better compression and makes fewer calls into the backend.</p>
+     *
+     * @param in    the data to compress
+     * @param out   the output buffer
+     * @param flush how to flush the output once all the input has been given to the compressor
+     * @return the status of the compression
+     * @throws IllegalStateException if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws NullPointerException  if any arguments are null
+     * @see AutoFlushCompressor
+     */
+    public Status compress(ByteBuf in, ByteBuf out, FlushMode flush);
+
+    /**
+     * Decompress as much data as possible, appending it to the buffer as new fixed-size chunks
+     * <p>Chunks are allocated from the composite buffer's allocator, and are never resized or copied once they're written,
+     * unlike a single output buffer that has to be reallocated as it grows.
+     * The free space in the last chunk is filled before a new chunk is allocated, as long as the composite buffer is its only owner.</p>
+     * <p>The composite buffer should allow at least one component per chunk of output,
+     * since Netty copies every component into a single buffer once there are more than its maximum,
+     * which is only 16 for {@link io.netty.buffer.Unpooled#compositeBuffer()}.</p>
+     *
+     * @param in        the data to decompress
+     * @param out       the buffer to append the chunks to
+     * @param chunkSize the size of each chunk
+     * @return the status of the decompression, which is never {@link Status#INSUFFICIENT_OUTPUT}
+     * @throws IllegalArgumentException    if the chunk size isn't positive
+     * @throws IllegalStateException       if the stream is only for compressing, or if the stream is closed
+     * @throws NullPointerException        if any arguments are null
+     * @throws InvalidDataException        if the compressed data is invalid
+     * @throws DecompressionLimitException if the stream exceeded its {@link DecompressionLimits}
+     */
+    public default Status decompress(ByteBuf in, CompositeByteBuf out, int chunkSize) throws InvalidDataException {
+        return CompositeOutput.append(out, chunkSize, chunk -> decompress(in, chunk));
+    }
+
+    /**
+     * Compress as much data as possible, appending it to the buffer as new fixed-size chunks
+     * <p>Chunks are allocated the same way as {@link #decompress(ByteBuf, CompositeByteBuf, int)}.</p>
+     *
+     * @param in        the data to compress
+     * @param out       the buffer to append the chunks to
+     * @param finish    if we should finish the compression
+     * @param chunkSize the size of each chunk
+     * @return the status of the compression, which is never {@link Status#INSUFFICIENT_OUTPUT}
+     * @throws IllegalArgumentException if the chunk size isn't positive
+     * @throws IllegalStateException    if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws NullPointerException     if any arguments are null
+     */
+    public default Status compress(ByteBuf in, CompositeByteBuf out, boolean finish, int chunkSize) {
+        return compress(in, out, FlushMode.of(finish), chunkSize);
+    }
+
+    /**
+     * Compress as much data as possible, appending it to the buffer as new fixed-size chunks and flushing in the given mode
+     * <p>Chunks are allocated the same way as {@link #decompress(ByteBuf, CompositeByteBuf, int)}.</p>
+     *
+     * @param in        the data to compress
+     * @param out       the buffer to append the chunks to
+     * @param flush     how to flush the output once all the input has been given to the compressor
+     * @param chunkSize the size of each chunk
+     * @return the status of the compression, which is never {@link Status#INSUFFICIENT_OUTPUT}
+     * @throws IllegalArgumentException if the chunk size isn't positive
+     * @throws IllegalStateException    if the stream is only for decompressing, if the stream is closed, or if the stream is finished
+     * @throws NullPointerException     if any arguments are null
+     */
+    public default Status compress(ByteBuf in, CompositeByteBuf out, FlushMode flush, int chunkSize) {
+        try {
+            return CompositeOutput.append(out, chunkSize, chunk -> compress(in, chunk, flush));
+        } catch (InvalidDataException e) {
+            throw new AssertionError("Compressing can't have invalid data", e);
+        }
+    }
+}
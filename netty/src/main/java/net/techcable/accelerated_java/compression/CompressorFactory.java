@@ -0,0 +1,158 @@
+package net.techcable.accelerated_java.compression;
+
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Creates {@link Compressor compressors} that work with Netty's buffers, on top of a {@link CompressionEngineFactory}.
+ */
+public interface CompressorFactory extends CompressionEngineFactory {
+    @Override
+    public default Compressor createDecompressor() {
+        return createDecompressor(CompressorOptions.DEFAULT);
+    }
+
+    /**
+     * Create a decompressor with the specified options
+     * <p>Only the window bits, chunk size and limits are relevant to decompressors.</p>
+     *
+     * @param options the options to use
+     * @return a new decompressor
+     * @throws NullPointerException          if the options are null
+     * @throws UnsupportedOperationException if this factory doesn't support the options
+     */
+    @Override
+    public Compressor createDecompressor(CompressorOptions options);
+
+    @Override
+    public default Compressor createCompressor() {
+        return createCompressor(DEFAULT_COMPRESSION);
+    }
+
+    @Override
+    public default Compressor createCompressor(int level) {
+        return createCompressor(CompressorOptions.builder().level(level).build());
+    }
+
+    /**
+     * Create a compressor with the specified options
+     *
+     * @param options the options to use
+     * @return a new compressor
+     * @throws NullPointerException          if the options are null
+     * @throws UnsupportedOperationException if this factory doesn't support the options
+     */
+    @Override
+    public Compressor createCompressor(CompressorOptions options);
+
+    /**
+     * Get a factory that creates the same compressors as this one, but records their activity in the given metrics
+     * <p>Factories don't record anything by default, so metrics cost nothing unless they're requested.</p>
+     *
+     * @param metrics the metrics to record to
+     * @return a factory with metrics
+     * @throws NullPointerException if the metrics are null
+     */
+    @Override
+    public CompressorFactory withMetrics(CompressionMetrics metrics);
+
+    /**
+     * Decompress an input that's entirely in memory, appending the output to the buffer as new fixed-size chunks
+     * <p>If the backend has a {@link #createWholeInputDecompressor(CompressorOptions) whole-input decompressor},
+     * the input is decompressed in a single call straight into the chunks, and otherwise it's streamed through a new decompressor.
+     * Chunks are allocated the same way as {@link Compressor#decompress(ByteBuf, CompositeByteBuf, int)}.</p>
+     *
+     * @param in        the whole input, which is consumed
+     * @param out       the buffer to append the chunks to
+     * @param chunkSize the size of each chunk
+     * @param options   the options to decompress with
+     * @throws IllegalArgumentException    if the chunk size isn't positive
+     * @throws NullPointerException        if any arguments are null
+     * @throws InvalidDataException        if the input is invalid or truncated
+     * @throws DecompressionLimitException if the output exceeded the {@link DecompressionLimits}
+     */
+    public default void decompressWhole(ByteBuf in, CompositeByteBuf out, int chunkSize, CompressorOptions options) throws InvalidDataException {
+        WholeInputDecompression.decompress(this, in, out, chunkSize, options);
+    }
+
+    /**
+     * Decompress an input that's entirely in memory into the writable bytes of a buffer, without growing it
+     * <p>If the backend has a {@link #createWholeInputDecompressor(CompressorOptions) whole-input decompressor} and the buffer is direct,
+     * the input is decompressed in a single call straight into the buffer, and otherwise it's streamed through a new decompressor.
+     * This suits protocols that send the decompressed length, so the buffer can be sized for it.</p>
+     *
+     * @param in      the whole input, which is only consumed if it's finished
+     * @param out     the output buffer
+     * @param options the options to decompress with
+     * @return {@link Status#FINISHED}, or {@link Status#INSUFFICIENT_OUTPUT} if the output doesn't fit,
+     * in which case the buffer's writer index is unchanged
+     * @throws NullPointerException        if any arguments are null
+     * @throws InvalidDataException        if the input is invalid or truncated
+     * @throws DecompressionLimitException if the output exceeded the {@link DecompressionLimits}
+     */
+    public default Status decompressWhole(ByteBuf in, ByteBuf out, CompressorOptions options) throws InvalidDataException {
+        return WholeInputDecompression.decompress(this, in, out, options);
+    }
+
+    public static final CompressorFactory JDK = new ByteBufCompressorFactory(CompressionEngineFactory.JDK);
+
+    /**
+     * Get a factory that adapts the engines of the specified factory to Netty's buffers
+     *
+     * @param engines the factory to adapt
+     * @return the adapted factory
+     * @throws NullPointerException if the factory is null
+     */
+    public static CompressorFactory of(CompressionEngineFactory engines) {
+        checkNotNull(engines, "Null factory");
+        if (engines instanceof CompressorFactory) {
+            return (CompressorFactory) engines;
+        } else if (engines == CompressionEngineFactory.JDK) {
+            return JDK;
+        } else {
+            return new ByteBufCompressorFactory(engines);
+        }
+    }
+
+    /**
+     * Get the fastest available factory
+     * <p>This is the JNI library, falling back to the JDK's own zlib.
+     * On Java 22 and later, the system's zlib is bound through the foreign function API instead if the {@code accelerated_java.foreign} property is true.
+     * The JNI library is loaded from the classpath the first time it's needed, unless it's already been loaded.</p>
+     *
+     * @return the best factory
+     * @see #getFallbackReasons()
+     */
+    public static CompressorFactory getInstance() {
+        return of(CompressionEngineFactory.getInstance());
+    }
+
+    /**
+     * Get a factory that routes each stream to the JDK or the {@link #getInstance() fastest backend}, whichever is faster for its input
+     * <p>The first call calibrates the backends, which takes a fraction of a second.
+     * If the {@code accelerated_java.profile} system property names a file, the profile is saved there and reused by later runs.</p>
+     *
+     * @return the calibrated factory, or the JDK's if there's no faster backend
+     * @see DispatchingCompressorFactory
+     */
+    public static CompressorFactory getCalibratedInstance() {
+        return DispatchingCompressorFactory.getCalibratedInstance();
+    }
+
+    /**
+     * Explain why {@link #getInstance()} couldn't use the backends that are faster than the one it chose
+     *
+     * @return the reasons for each unusable backend, keyed by the name of the backend in order of preference
+     */
+    public static Map<String, String> getFallbackReasons() {
+        return CompressionEngineFactory.getFallbackReasons();
+    }
+}
@@ -0,0 +1,376 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.util.Arrays;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+import net.techcable.accelerated_java.utils.XXHash64;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Replaces repeated regions of a stream with back-references before compressing it, so repeats far beyond zlib's 32 KiB window are still found.
+ * <p>The input is split into chunks where a rolling gear hash of the last bytes matches a mask,
+ * so a boundary depends only on the content around it, and an inserted or removed byte only changes the chunks next to it.
+ * Each chunk is looked up by its xxHash in a fixed-size index of earlier chunks,
+ * and if an earlier chunk has the same bytes it's replaced by a reference to it. Consecutive references to consecutive chunks are merged,
+ * so a repeated megabyte-sized region costs a few bytes.</p>
+ * <p>The references and the remaining literal chunks form a small container format, which is compressed by a normal compressor.
+ * A {@link DedupDecompressor} with at least the same window size reverses it.
+ * Both sides keep only the last window of the stream and a few chunks of buffers, so the memory used doesn't depend on the size of the input.</p>
+ */
+public final class DedupCompressor implements AutoCloseable {
+    /* default */ static final int FORMAT_VERSION = 1;
+    /* default */ static final int HEADER_SIZE = 2;
+    /* default */ static final int LITERAL = 0, REFERENCE = 1;
+    /* default */ static final int MIN_WINDOW_SIZE = 64 * 1024, MAX_WINDOW_SIZE = 1 << 30;
+    /**
+     * The longest reference that adjacent matches are merged into, which keeps its length well within a positive varint
+     */
+    /* default */ static final int MAX_REFERENCE_LENGTH = 1 << 30;
+    /**
+     * Random values for each byte, which the gear hash adds up while shifting out old bytes
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // A fixed seed, so the same input always chunks the same way
+        long state = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < GEAR.length; i++) {
+            // SplitMix64
+            long z = state += 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final Compressor compressor;
+    /**
+     * The last window of the input, indexed by stream position modulo its size
+     */
+    private final byte[] history;
+    private final int minChunkSize, maxChunkSize;
+    /**
+     * The top bits of the gear hash which must be zero at a chunk boundary, since the low bits only depend on the last few bytes
+     */
+    private final long boundaryMask;
+    /**
+     * The index of chunk hashes to the positions of the chunks, in pairs of slots where a new chunk replaces the older one
+     */
+    private final long[] indexHashes, indexPositions;
+    /**
+     * The container records that haven't been compressed yet
+     */
+    private final ByteBuf pending;
+    /**
+     * The number of bytes of input, the start of the current chunk, and how far the chunk has been scanned for a boundary
+     */
+    private long written, chunkStart, scanned;
+    private long gearHash;
+    /**
+     * The reference that's still being extended, or a length of zero if there isn't one
+     */
+    private int referenceDistance, referenceLength;
+    /**
+     * The longest merged reference, which tests lower so they don't need gigabytes of input
+     */
+    /* default */ int maxReferenceLength = MAX_REFERENCE_LENGTH;
+    private boolean finished, closed;
+    /**
+     * The number of bytes of input that were replaced by references
+     */
+    @Getter
+    private long bytesDeduplicated;
+
+    private DedupCompressor(Builder builder) {
+        this.history = new byte[builder.windowSize];
+        this.minChunkSize = builder.chunkSize / 4;
+        this.maxChunkSize = builder.chunkSize * 8;
+        int bits = Integer.numberOfTrailingZeros(builder.chunkSize);
+        this.boundaryMask = -1L << (64 - bits);
+        int indexSize = Integer.highestOneBit(Math.max(builder.windowSize / minChunkSize, 64));
+        this.indexHashes = new long[indexSize];
+        this.indexPositions = new long[indexSize];
+        Arrays.fill(indexPositions, -1);
+        this.compressor = builder.factory.createCompressor(builder.options);
+        try {
+            this.pending = builder.allocator.directBuffer(maxChunkSize + 32);
+        } catch (RuntimeException e) {
+            compressor.close();
+            throw e;
+        }
+        pending.writeByte(FORMAT_VERSION);
+        pending.writeByte(Integer.numberOfTrailingZeros(builder.windowSize));
+    }
+
+    /**
+     * Deduplicate and compress as much of the input as possible into the output buffer
+     * <p>The output grows as needed, up to its maximum capacity.
+     * If it's full, the input that has been consumed is kept until the next call.
+     * A chunk can't end until its boundary has been seen, so the end of the input is only written once it's flushed.</p>
+     *
+     * @param in    the input
+     * @param out   the output buffer
+     * @param flush how to flush the output, where {@link FlushMode#FINISH} ends the stream
+     * @return {@link Status#NEEDS_INPUT} if all the input was used, {@link Status#OK} if it was flushed,
+     * {@link Status#FINISHED} if the stream was finished, or {@link Status#INSUFFICIENT_OUTPUT} if the output is full
+     * @throws NullPointerException  if any arguments are null
+     * @throws IllegalStateException if the stream is finished, or the compressor is closed
+     */
+    public Status compress(ByteBuf in, ByteBuf out, FlushMode flush) {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output buffer");
+        checkNotNull(flush, "Null flush mode");
+        checkState(!closed, "Compressor is closed");
+        checkState(!finished, "Stream is finished");
+        if (!drain(out)) return Status.INSUFFICIENT_OUTPUT;
+        while (true) {
+            if (!scan(out)) return Status.INSUFFICIENT_OUTPUT;
+            if (!in.isReadable()) break;
+            // Unchunked input is always less than two chunks, so this never overwrites it
+            int index = (int) (written & (history.length - 1));
+            int length = Math.min(Math.min(in.readableBytes(), history.length - index), maxChunkSize);
+            in.readBytes(history, index, length);
+            written += length;
+        }
+        if (flush == FlushMode.NONE) return Status.NEEDS_INPUT;
+        if (written > chunkStart) {
+            writeChunk(chunkStart, (int) (written - chunkStart));
+            chunkStart = scanned = written;
+            gearHash = 0;
+        }
+        closeReference();
+        Status status = compressor.compress(pending, out, flush);
+        pending.discardReadBytes();
+        if (status == Status.FINISHED) finished = true;
+        return status;
+    }
+
+    /**
+     * Split the input that has been read into chunks, writing each complete one
+     *
+     * @return if all the input was scanned, or false if the output is full
+     */
+    private boolean scan(ByteBuf out) {
+        final int mask = history.length - 1;
+        while (scanned < written) {
+            long hash = gearHash;
+            long position = scanned;
+            final long limit = Math.min(written, chunkStart + maxChunkSize);
+            boolean boundary = false;
+            while (position < limit) {
+                hash = (hash << 1) + GEAR[history[(int) (position++ & mask)] & 0xFF];
+                if ((hash & boundaryMask) == 0 && position - chunkStart >= minChunkSize) {
+                    boundary = true;
+                    break;
+                }
+            }
+            scanned = position;
+            gearHash = hash;
+            if (!boundary && position - chunkStart < maxChunkSize) break;
+            writeChunk(chunkStart, (int) (position - chunkStart));
+            chunkStart = position;
+            gearHash = 0;
+            if (!drain(out)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write a chunk as a reference to an earlier copy, or as a literal if there isn't one
+     */
+    private void writeChunk(long start, int length) {
+        final int mask = history.length - 1;
+        int index = (int) (start & mask);
+        long hash = index + length <= history.length ? XXHash64.hash(history, index, length, 0)
+                : hashWrapped(index, length);
+        // Each hash can go in either slot of a pair, so a collision evicts the older chunk instead of whichever came last
+        final int pair = (int) hash & (indexHashes.length - 2);
+        int slot = indexHashes[pair + 1] == hash ? pair + 1 : pair;
+        long candidate = indexPositions[slot];
+        boolean found = candidate >= 0 && indexHashes[slot] == hash
+                // The earlier chunk must still be in the window, and the decompressor's window as well
+                && candidate >= written - history.length && matches(candidate, start, length);
+        if (indexHashes[slot] != hash) slot = indexPositions[pair] <= indexPositions[pair + 1] ? pair : pair + 1;
+        indexHashes[slot] = hash;
+        indexPositions[slot] = start;
+        if (found) {
+            int distance = (int) (start - candidate);
+            bytesDeduplicated += length;
+            if (referenceLength > 0 && distance == referenceDistance && referenceLength <= maxReferenceLength - length) {
+                referenceLength += length;
+                return;
+            }
+            closeReference();
+            referenceDistance = distance;
+            referenceLength = length;
+        } else {
+            closeReference();
+            pending.writeByte(LITERAL);
+            writeVarInt(pending, length);
+            int first = Math.min(length, history.length - index);
+            pending.writeBytes(history, index, first);
+            pending.writeBytes(history, 0, length - first);
+        }
+    }
+
+    private long hashWrapped(int index, int length) {
+        byte[] chunk = new byte[length];
+        int first = history.length - index;
+        System.arraycopy(history, index, chunk, 0, first);
+        System.arraycopy(history, 0, chunk, first, length - first);
+        return XXHash64.hash(chunk, 0, length, 0);
+    }
+
+    private boolean matches(long candidate, long start, int length) {
+        final int mask = history.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (history[(int) ((candidate + i) & mask)] != history[(int) ((start + i) & mask)]) return false;
+        }
+        return true;
+    }
+
+    private void closeReference() {
+        if (referenceLength == 0) return;
+        pending.writeByte(REFERENCE);
+        writeVarInt(pending, referenceDistance);
+        writeVarInt(pending, referenceLength);
+        referenceLength = 0;
+    }
+
+    /* default */ static void writeVarInt(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    /**
+     * Compress the pending records
+     *
+     * @return if they were all compressed, or false if the output is full
+     */
+    private boolean drain(ByteBuf out) {
+        if (pending.isReadable()) compressor.compress(pending, out, FlushMode.NONE);
+        boolean drained = !pending.isReadable();
+        pending.discardReadBytes();
+        return drained;
+    }
+
+    /**
+     * Start a new stream, forgetting the earlier input
+     *
+     * @throws IllegalStateException if the compressor is closed
+     */
+    public void reset() {
+        checkState(!closed, "Compressor is closed");
+        compressor.reset();
+        pending.clear();
+        pending.writeByte(FORMAT_VERSION);
+        pending.writeByte(Integer.numberOfTrailingZeros(history.length));
+        Arrays.fill(indexPositions, -1);
+        written = chunkStart = scanned = gearHash = 0;
+        referenceLength = 0;
+        bytesDeduplicated = 0;
+        finished = false;
+    }
+
+    /**
+     * Release the pending buffer and close the compressor
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        pending.release();
+        compressor.close();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private CompressorFactory factory;
+        private CompressorOptions options = CompressorOptions.DEFAULT;
+        private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        private int windowSize = 16 * 1024 * 1024;
+        private int chunkSize = 8 * 1024;
+
+        private Builder() {}
+
+        /**
+         * Set the factory to create the compressor with, which defaults to {@link CompressorFactory#getInstance() the fastest backend}
+         *
+         * @param factory the factory
+         * @return this builder
+         */
+        public Builder factory(CompressorFactory factory) {
+            this.factory = checkNotNull(factory, "Null factory");
+            return this;
+        }
+
+        /**
+         * Set the options to compress the container with, including its wrapper and level
+         *
+         * @param options the options
+         * @return this builder
+         */
+        public Builder options(CompressorOptions options) {
+            this.options = checkNotNull(options, "Null options");
+            return this;
+        }
+
+        /**
+         * Set the allocator for the pending records, which defaults to {@link ByteBufAllocator#DEFAULT}
+         *
+         * @param allocator the allocator
+         * @return this builder
+         */
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = checkNotNull(allocator, "Null allocator");
+            return this;
+        }
+
+        /**
+         * Set how far back repeats are found, which defaults to 16 MiB
+         * <p>The decompressor needs a window at least this large, and both sides keep this much of the stream in memory.</p>
+         *
+         * @param bytes the window size in bytes, a power of two between 64 KiB and 1 GiB
+         * @return this builder
+         */
+        public Builder windowSize(int bytes) {
+            checkArgument(bytes >= MIN_WINDOW_SIZE && bytes <= MAX_WINDOW_SIZE && Integer.bitCount(bytes) == 1,
+                    "Window size %s isn't a power of two between %s and %s", bytes, MIN_WINDOW_SIZE, MAX_WINDOW_SIZE);
+            this.windowSize = bytes;
+            return this;
+        }
+
+        /**
+         * Set the average chunk size, which defaults to 8 KiB
+         * <p>Chunks are between a quarter and eight times this size.
+         * Smaller chunks find shorter repeats, but cost more to look up and reference.</p>
+         *
+         * @param bytes the average chunk size in bytes, a power of two between 256 bytes and 64 KiB
+         * @return this builder
+         */
+        public Builder chunkSize(int bytes) {
+            checkArgument(bytes >= 256 && bytes <= 64 * 1024 && Integer.bitCount(bytes) == 1,
+                    "Chunk size %s isn't a power of two between 256 and 65536", bytes);
+            this.chunkSize = bytes;
+            return this;
+        }
+
+        public DedupCompressor build() {
+            if (factory == null) factory = CompressorFactory.getInstance();
+            checkState(chunkSize * 16 <= windowSize, "Chunk size %s is too large for a window of %s", chunkSize, windowSize);
+            return new DedupCompressor(this);
+        }
+    }
+}
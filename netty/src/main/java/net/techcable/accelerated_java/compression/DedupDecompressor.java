@@ -0,0 +1,293 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Reverses a {@link DedupCompressor}, decompressing its container and resolving the back-references against the output.
+ * <p>The container is decompressed a little at a time into a small buffer,
+ * and only the last window of the output is kept for references, so the memory used doesn't depend on the size of the stream.
+ * The window must be at least as large as the compressor's, which is recorded at the start of the stream.</p>
+ * <p>A small container can expand into far more output than deflate allows,
+ * so the {@link DecompressionLimits} of the options are enforced on the output as well as on the container.</p>
+ */
+public final class DedupDecompressor implements AutoCloseable {
+    /**
+     * The most a single step writes, so the output grows gradually
+     */
+    private static final int MAX_STEP = 64 * 1024;
+    private final Compressor decompressor;
+    private final DecompressionLimits limits;
+    /**
+     * The last window of the output, indexed by stream position modulo its size
+     */
+    private final byte[] history;
+    /**
+     * The decompressed container, which hasn't been parsed yet
+     */
+    private final ByteBuf container;
+    /**
+     * The record that's being copied to the output, where a distance of zero means a literal
+     */
+    private int copyDistance, copyRemaining;
+    private boolean headerRead, containerFinished, closed;
+    /**
+     * The number of compressed bytes consumed
+     */
+    @Getter
+    private long bytesRead;
+    /**
+     * The number of bytes written to the output
+     */
+    @Getter
+    private long bytesWritten;
+
+    private DedupDecompressor(Builder builder) {
+        this.history = new byte[builder.windowSize];
+        this.limits = builder.options.getLimits();
+        this.decompressor = builder.factory.createDecompressor(builder.options);
+        try {
+            this.container = builder.allocator.directBuffer(MAX_STEP, MAX_STEP);
+        } catch (RuntimeException e) {
+            decompressor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Decompress as much of the input as possible into the output buffer
+     * <p>The output grows as needed, up to its maximum capacity.
+     * If it's full, the rest of the stream is kept until the next call.</p>
+     *
+     * @param in  the compressed input
+     * @param out the output buffer
+     * @return {@link Status#NEEDS_INPUT} if all the input was used, {@link Status#FINISHED} if the stream ended,
+     * or {@link Status#INSUFFICIENT_OUTPUT} if the output is full
+     * @throws NullPointerException        if any arguments are null
+     * @throws IllegalStateException       if the decompressor is closed
+     * @throws InvalidDataException        if the input is invalid or truncated
+     * @throws DecompressionLimitException if the input exceeded the {@link DecompressionLimits}
+     */
+    public Status decompress(ByteBuf in, ByteBuf out) throws InvalidDataException {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output buffer");
+        checkState(!closed, "Decompressor is closed");
+        while (true) {
+            if (copyRemaining > 0) {
+                int room = Math.min(out.maxWritableBytes(), MAX_STEP);
+                if (room == 0) return Status.INSUFFICIENT_OUTPUT;
+                if (copyDistance == 0 && !container.isReadable()) {
+                    if (!fill(in)) return Status.NEEDS_INPUT;
+                    continue;
+                }
+                copy(out, room);
+                limits.check(bytesRead, bytesWritten);
+            } else if (!readRecord()) {
+                if (containerFinished) {
+                    if (container.isReadable() || !headerRead) throw new InvalidDataException("Invalid input data: truncated");
+                    return Status.FINISHED;
+                }
+                if (!fill(in)) return Status.NEEDS_INPUT;
+            }
+        }
+    }
+
+    /**
+     * Decompress more of the container
+     *
+     * @return if there's more to parse, or false if more input is needed
+     * @throws InvalidDataException if the container ended in the middle of a record
+     */
+    private boolean fill(ByteBuf in) throws InvalidDataException {
+        if (containerFinished) throw new InvalidDataException("Invalid input data: truncated");
+        container.discardReadBytes();
+        int start = in.readerIndex(), available = container.readableBytes();
+        Status status = decompressor.decompress(in, container);
+        bytesRead += in.readerIndex() - start;
+        if (status == Status.FINISHED) {
+            containerFinished = true;
+            return true;
+        }
+        return container.readableBytes() > available;
+    }
+
+    /**
+     * Parse the next record, if all of it has been decompressed
+     *
+     * @return if a record was parsed
+     */
+    private boolean readRecord() throws InvalidDataException {
+        if (!headerRead) {
+            if (container.readableBytes() < DedupCompressor.HEADER_SIZE) return false;
+            int version = container.readUnsignedByte(), windowBits = container.readUnsignedByte();
+            if (version != DedupCompressor.FORMAT_VERSION) throw new InvalidDataException("Invalid input data: unknown version " + version);
+            if (windowBits > 30 || 1 << windowBits > history.length) {
+                throw new InvalidDataException("Invalid input data: window of 2^" + windowBits + " bytes is larger than " + history.length);
+            }
+            headerRead = true;
+            return true;
+        }
+        final int start = container.readerIndex();
+        if (!container.isReadable()) return false;
+        int type = container.readUnsignedByte();
+        int distance = 0;
+        if (type == DedupCompressor.REFERENCE) {
+            distance = readVarInt();
+            if (distance == 0) {
+                container.readerIndex(start);
+                return false;
+            }
+            if (distance < 0 || distance > history.length || distance > bytesWritten) {
+                throw new InvalidDataException("Invalid input data: reference distance " + distance + " is too far back");
+            }
+        } else if (type != DedupCompressor.LITERAL) {
+            throw new InvalidDataException("Invalid input data: unknown record type " + type);
+        }
+        int length = readVarInt();
+        if (length == 0) {
+            container.readerIndex(start);
+            return false;
+        }
+        if (length < 0) throw new InvalidDataException("Invalid input data: record length is too large");
+        copyDistance = distance;
+        copyRemaining = length;
+        return true;
+    }
+
+    /**
+     * Read a positive variable-length integer
+     *
+     * @return the integer, zero if it hasn't all been decompressed, or -1 if it's too large
+     */
+    private int readVarInt() throws InvalidDataException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!container.isReadable()) return 0;
+            int b = container.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value == 0) throw new InvalidDataException("Invalid input data: zero length");
+                return shift == 28 && b > 7 ? -1 : value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy part of the current record to the output and the window
+     */
+    private void copy(ByteBuf out, int room) {
+        final int mask = history.length - 1;
+        int index = (int) (bytesWritten & mask);
+        int length = Math.min(Math.min(copyRemaining, room), history.length - index);
+        if (copyDistance == 0) {
+            length = Math.min(length, container.readableBytes());
+            container.readBytes(history, index, length);
+        } else {
+            // Copying no more than the distance at a time makes overlapping references repeat the bytes before them
+            int source = (int) ((bytesWritten - copyDistance) & mask);
+            length = Math.min(Math.min(length, copyDistance), history.length - source);
+            System.arraycopy(history, source, history, index, length);
+        }
+        out.writeBytes(history, index, length);
+        bytesWritten += length;
+        copyRemaining -= length;
+    }
+
+    /**
+     * Start decompressing a new stream
+     *
+     * @throws IllegalStateException if the decompressor is closed
+     */
+    public void reset() {
+        checkState(!closed, "Decompressor is closed");
+        decompressor.reset();
+        container.clear();
+        copyRemaining = 0;
+        headerRead = containerFinished = false;
+        bytesRead = bytesWritten = 0;
+    }
+
+    /**
+     * Release the container buffer and close the decompressor
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        container.release();
+        decompressor.close();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private CompressorFactory factory;
+        private CompressorOptions options = CompressorOptions.DEFAULT;
+        private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        private int windowSize = 16 * 1024 * 1024;
+
+        private Builder() {}
+
+        /**
+         * Set the factory to create the decompressor with, which defaults to {@link CompressorFactory#getInstance() the fastest backend}
+         *
+         * @param factory the factory
+         * @return this builder
+         */
+        public Builder factory(CompressorFactory factory) {
+            this.factory = checkNotNull(factory, "Null factory");
+            return this;
+        }
+
+        /**
+         * Set the options to decompress the container with, including its wrapper and the limits on the output
+         *
+         * @param options the options
+         * @return this builder
+         */
+        public Builder options(CompressorOptions options) {
+            this.options = checkNotNull(options, "Null options");
+            return this;
+        }
+
+        /**
+         * Set the allocator for the container buffer, which defaults to {@link ByteBufAllocator#DEFAULT}
+         *
+         * @param allocator the allocator
+         * @return this builder
+         */
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = checkNotNull(allocator, "Null allocator");
+            return this;
+        }
+
+        /**
+         * Set the largest window a stream can use, which defaults to 16 MiB
+         * <p>This much of the output is kept in memory, and streams compressed with a larger window are rejected.</p>
+         *
+         * @param bytes the window size in bytes, a power of two between 64 KiB and 1 GiB
+         * @return this builder
+         */
+        public Builder windowSize(int bytes) {
+            checkArgument(bytes >= DedupCompressor.MIN_WINDOW_SIZE && bytes <= DedupCompressor.MAX_WINDOW_SIZE && Integer.bitCount(bytes) == 1,
+                    "Window size %s isn't a power of two between %s and %s", bytes, DedupCompressor.MIN_WINDOW_SIZE, DedupCompressor.MAX_WINDOW_SIZE);
+            this.windowSize = bytes;
+            return this;
+        }
+
+        public DedupDecompressor build() {
+            if (factory == null) factory = CompressorFactory.getInstance();
+            return new DedupDecompressor(this);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+import net.techcable.accelerated_java.utils.NativeLibrary;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * The input sizes above which the accelerated backend is faster than the JDK's, for each operation and kind of buffer.
+ * <p>Profiles are measured by {@link #calibrate(CompressorFactory)}, which times whole streams on both backends,
+ * since a stream's backend is chosen once and includes the cost of creating it.
+ * A profile can be saved and loaded again on later runs, and is ignored if it was measured for a different backend or JVM.</p>
+ */
+@EqualsAndHashCode
+public final class DispatchProfile {
+    /**
+     * The input sizes that are measured
+     */
+    private static final int[] CALIBRATION_SIZES = {64, 256, 1024, 4096, 16 * 1024, 64 * 1024};
+    /**
+     * How long to time each case, after warming it up for the same amount of time
+     */
+    private static final long CALIBRATION_NANOS = 2_000_000;
+    private static final BufferKind[] BUFFER_KINDS = BufferKind.values();
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    /**
+     * Identifies the backend and JVM the profile was measured on
+     */
+    @Getter
+    private final String key;
+    /**
+     * The minimum input size that uses the accelerated backend, indexed by operation then buffer kind
+     */
+    private final long[] thresholds;
+    /**
+     * The average time of each measured case, keyed by {@code operation.kind.size.backend}
+     */
+    @Getter
+    private final ImmutableMap<String, Long> measurements;
+
+    private DispatchProfile(String key, long[] thresholds, ImmutableMap<String, Long> measurements) {
+        assert thresholds.length == OPERATIONS.length * BUFFER_KINDS.length : "Invalid thresholds " + Arrays.toString(thresholds);
+        this.key = checkNotNull(key, "Null key");
+        this.thresholds = thresholds;
+        this.measurements = measurements;
+    }
+
+    /**
+     * Get the minimum input size that's routed to the accelerated backend
+     *
+     * @param operation the operation
+     * @param kind      the kind of input buffer
+     * @return the threshold in bytes, which is {@link Long#MAX_VALUE} if the JDK is always faster
+     */
+    public long getThreshold(Operation operation, BufferKind kind) {
+        return thresholds[operation.ordinal() * BUFFER_KINDS.length + kind.ordinal()];
+    }
+
+    /**
+     * Get all the thresholds, keyed by {@code operation.kind}
+     *
+     * @return the thresholds
+     */
+    public ImmutableMap<String, Long> getThresholds() {
+        ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        for (Operation operation : OPERATIONS) {
+            for (BufferKind kind : BUFFER_KINDS) {
+                builder.put(name(operation) + "." + name(kind), getThreshold(operation, kind));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Measure which backend is faster for each operation, kind of buffer and size
+     * <p>This takes a fraction of a second, and should only be done once at startup.</p>
+     *
+     * @param accelerated the backend to compare to the JDK's
+     * @return the measured profile
+     */
+    public static DispatchProfile calibrate(CompressorFactory accelerated) {
+        checkNotNull(accelerated, "Null accelerated factory");
+        Random random = new Random(42);
+        long[] thresholds = new long[OPERATIONS.length * BUFFER_KINDS.length];
+        ImmutableMap.Builder<String, Long> measurements = ImmutableMap.builder();
+        for (Operation operation : OPERATIONS) {
+            for (BufferKind kind : BUFFER_KINDS) {
+                long threshold = Long.MAX_VALUE;
+                // NOTE: Go from largest to smallest, so the threshold is the smallest size where every larger one is faster
+                for (int i = CALIBRATION_SIZES.length - 1; i >= 0; i--) {
+                    int size = CALIBRATION_SIZES[i];
+                    byte[] data = createSample(random, size);
+                    byte[] compressed = compress(CompressorFactory.JDK, data);
+                    String prefix = name(operation) + "." + name(kind) + "." + size + ".";
+                    long jdkNanos = measure(CompressorFactory.JDK, operation, kind, data, compressed);
+                    long acceleratedNanos = measure(accelerated, operation, kind, data, compressed);
+                    measurements.put(prefix + "jdk", jdkNanos);
+                    measurements.put(prefix + "accelerated", acceleratedNanos);
+                    if (acceleratedNanos > jdkNanos) break;
+                    // NOTE: Decompressors are routed by their compressed input, and the accelerated backend is faster for all smaller inputs we measured
+                    threshold = i == 0 ? 0 : operation == Operation.COMPRESS ? data.length : compressed.length;
+                }
+                thresholds[operation.ordinal() * BUFFER_KINDS.length + kind.ordinal()] = threshold;
+            }
+        }
+        return new DispatchProfile(createKey(accelerated), thresholds, measurements.build());
+    }
+
+    /**
+     * Load a saved profile for the given backend, or calibrate and save a new one if it's missing or out of date
+     *
+     * @param accelerated the backend to compare to the JDK's
+     * @param file        the file the profile is saved to
+     * @return the profile
+     * @throws IOException if the profile couldn't be read or saved
+     */
+    public static DispatchProfile loadOrCalibrate(CompressorFactory accelerated, File file) throws IOException {
+        checkNotNull(accelerated, "Null accelerated factory");
+        checkNotNull(file, "Null file");
+        if (file.exists()) {
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+            DispatchProfile profile = fromProperties(properties);
+            if (profile != null && profile.key.equals(createKey(accelerated))) return profile;
+        }
+        DispatchProfile profile = calibrate(accelerated);
+        profile.save(file);
+        return profile;
+    }
+
+    /**
+     * Save this profile, replacing the file atomically so concurrent readers never see a partial profile
+     *
+     * @param file the file to save to
+     * @throws IOException if the file couldn't be written
+     */
+    public void save(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("key", key);
+        getThresholds().forEach((name, threshold) -> properties.setProperty("threshold." + name, Long.toString(threshold)));
+        measurements.forEach((name, nanos) -> properties.setProperty("nanos." + name, Long.toString(nanos)));
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) Files.createDirectories(directory.toPath());
+        File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (OutputStream out = new FileOutputStream(temporary)) {
+                properties.store(out, "AcceleratedJava dispatch profile");
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Read a saved profile
+     *
+     * @return the profile, or null if it's incomplete
+     */
+    private static DispatchProfile fromProperties(Properties properties) {
+        String key = properties.getProperty("key");
+        if (key == null) return null;
+        long[] thresholds = new long[OPERATIONS.length * BUFFER_KINDS.length];
+        for (Operation operation : OPERATIONS) {
+            for (BufferKind kind : BUFFER_KINDS) {
+                String threshold = properties.getProperty("threshold." + name(operation) + "." + name(kind));
+                if (threshold == null) return null;
+                try {
+                    thresholds[operation.ordinal() * BUFFER_KINDS.length + kind.ordinal()] = Long.parseLong(threshold);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        Map<String, Long> measurements = new TreeMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith("nanos.")) {
+                try {
+                    measurements.put(name.substring("nanos.".length()), Long.parseLong(properties.getProperty(name)));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return new DispatchProfile(key, thresholds, ImmutableMap.copyOf(measurements));
+    }
+
+    /**
+     * Create a profile with the given thresholds, instead of measuring them
+     *
+     * @param accelerated the backend the profile is for
+     * @param thresholds  the minimum input size that uses the accelerated backend, keyed by {@code operation.kind}
+     * @return the profile
+     * @throws IllegalArgumentException if a threshold is missing or negative
+     */
+    public static DispatchProfile of(CompressorFactory accelerated, Map<String, Long> thresholds) {
+        checkNotNull(accelerated, "Null accelerated factory");
+        checkNotNull(thresholds, "Null thresholds");
+        long[] result = new long[OPERATIONS.length * BUFFER_KINDS.length];
+        for (Operation operation : OPERATIONS) {
+            for (BufferKind kind : BUFFER_KINDS) {
+                String name = name(operation) + "." + name(kind);
+                Long threshold = thresholds.get(name);
+                checkArgument(threshold != null, "Missing threshold for %s", name);
+                checkArgument(threshold >= 0, "Negative threshold %s for %s", threshold, name);
+                result[operation.ordinal() * BUFFER_KINDS.length + kind.ordinal()] = threshold;
+            }
+        }
+        return new DispatchProfile(createKey(accelerated), result, ImmutableMap.of());
+    }
+
+    private static String createKey(CompressorFactory accelerated) {
+        // NOTE: Adapted factories are identified by the engines they adapt, since the adapter is the same for every backend
+        Object backend = accelerated instanceof ByteBufCompressorFactory ? ((ByteBufCompressorFactory) accelerated).getEngines() : accelerated;
+        return backend.getClass().getName() + "/" + System.getProperty("java.vm.name") + " " + System.getProperty("java.version") + "/" + NativeLibrary.getPlatform();
+    }
+
+    private static long measure(CompressorFactory factory, Operation operation, BufferKind kind, byte[] data, byte[] compressed) {
+        byte[] input = operation == Operation.COMPRESS ? data : compressed;
+        ByteBuf in = allocate(kind, input);
+        ByteBuf out = kind == BufferKind.HEAP ? Unpooled.buffer(data.length * 2) : Unpooled.directBuffer(data.length * 2);
+        try {
+            run(factory, operation, in, out, CALIBRATION_NANOS); // Warmup
+            return run(factory, operation, in, out, CALIBRATION_NANOS);
+        } finally {
+            in.release();
+            out.release();
+        }
+    }
+
+    /**
+     * Repeatedly run whole streams for about the given amount of time
+     *
+     * @return the average time of each stream
+     */
+    private static long run(CompressorFactory factory, Operation operation, ByteBuf in, ByteBuf out, long duration) {
+        long start = System.nanoTime();
+        long elapsed;
+        int iterations = 0;
+        do {
+            Compressor compressor = operation == Operation.COMPRESS ? factory.createCompressor() : factory.createDecompressor();
+            try {
+                in.readerIndex(0);
+                out.clear();
+                if (operation == Operation.COMPRESS) {
+                    compressor.compress(in, out, true);
+                } else {
+                    compressor.decompress(in, out);
+                }
+            } catch (InvalidDataException e) {
+                throw new AssertionError("Unable to decompress calibration data", e);
+            } finally {
+                compressor.close();
+            }
+            iterations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < duration);
+        return elapsed / iterations;
+    }
+
+    private static ByteBuf allocate(BufferKind kind, byte[] data) {
+        switch (kind) {
+            case HEAP:
+                return Unpooled.buffer(data.length).writeBytes(data);
+            case DIRECT:
+                return Unpooled.directBuffer(data.length).writeBytes(data);
+            case COMPOSITE:
+                int half = data.length / 2;
+                CompositeByteBuf composite = Unpooled.compositeBuffer();
+                composite.addComponent(Unpooled.buffer(half).writeBytes(data, 0, half));
+                composite.addComponent(Unpooled.buffer(data.length - half).writeBytes(data, half, data.length - half));
+                return composite.writerIndex(data.length);
+            default:
+                throw new AssertionError(kind);
+        }
+    }
+
+    /**
+     * Create data that compresses about as well as typical text
+     */
+    private static byte[] createSample(Random random, int size) {
+        byte[] data = new byte[size];
+        int i = 0;
+        while (i < size) {
+            byte value = (byte) ('a' + random.nextInt(26));
+            for (int run = Math.min(size - i, 1 + random.nextInt(4)); run > 0; run--) {
+                data[i++] = value;
+            }
+        }
+        return data;
+    }
+
+    private static byte[] compress(CompressorFactory factory, byte[] data) {
+        Compressor compressor = factory.createCompressor();
+        ByteBuf out = Unpooled.buffer(data.length * 2);
+        try {
+            compressor.compress(Unpooled.wrappedBuffer(data), out, true);
+            byte[] result = new byte[out.readableBytes()];
+            out.readBytes(result);
+            return result;
+        } finally {
+            out.release();
+            compressor.close();
+        }
+    }
+
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return "DispatchProfile(" + getThresholds() + ")";
+    }
+}
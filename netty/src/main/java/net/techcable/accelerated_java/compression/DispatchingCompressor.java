@@ -0,0 +1,149 @@
+package net.techcable.accelerated_java.compression;
+
+import java.util.Optional;
+
+import io.netty.buffer.ByteBuf;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A compressor that creates its stream from a {@link DispatchingCompressorFactory} once it's given its first input.
+ * <p>Until then, changes to the level and strategy are kept in the options the stream is created with.</p>
+ */
+/* default */ class DispatchingCompressor implements Compressor {
+    private final DispatchingCompressorFactory factory;
+    private final Operation operation;
+    private CompressorOptions options;
+    /**
+     * The stream, or null if it hasn't been created yet
+     */
+    private Compressor handle;
+    private boolean closed;
+
+    /* default */ DispatchingCompressor(DispatchingCompressorFactory factory, CompressorOptions options, Operation operation) {
+        this.factory = checkNotNull(factory, "Null factory");
+        this.options = checkNotNull(options, "Null options");
+        this.operation = checkNotNull(operation, "Null operation");
+    }
+
+    private Compressor getHandle(BufferKind kind, int length) {
+        Compressor handle = this.handle;
+        if (handle == null) {
+            getState().requireState(operation == Operation.COMPRESS ? State.COMPRESSING : State.DECOMPRESSING);
+            handle = factory.createStream(operation, options, kind, length);
+            this.handle = handle;
+        }
+        return handle;
+    }
+
+    private Compressor getHandle(ByteBuf in) {
+        checkNotNull(in, "Null input buffer");
+        return getHandle(ByteBufCompressor.kindOf(in), in.readableBytes());
+    }
+
+    @Override
+    public synchronized Status compress(ByteBuf in, ByteBuf out, FlushMode flush) {
+        return getHandle(in).compress(in, out, flush);
+    }
+
+    @Override
+    public synchronized Status decompress(ByteBuf in, ByteBuf out) throws InvalidDataException {
+        return getHandle(in).decompress(in, out);
+    }
+
+    @Override
+    public synchronized Status compressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength, FlushMode flush) {
+        return getHandle(BufferKind.of(inArray), inLength).compressMemory(inArray, inOffset, inLength, outArray, outOffset, outLength, flush);
+    }
+
+    @Override
+    public synchronized Status decompressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength) throws InvalidDataException {
+        return getHandle(BufferKind.of(inArray), inLength).decompressMemory(inArray, inOffset, inLength, outArray, outOffset, outLength);
+    }
+
+    @Override
+    public synchronized int getBytesRead() {
+        return handle != null ? handle.getBytesRead() : 0;
+    }
+
+    @Override
+    public synchronized int getBytesWritten() {
+        return handle != null ? handle.getBytesWritten() : 0;
+    }
+
+    @Override
+    public synchronized int getLevel() {
+        if (handle != null) return handle.getLevel();
+        getState().requireStateNot(State.DECOMPRESSING, "Decompressing doesn't have a level!");
+        return options.getLevel();
+    }
+
+    @Override
+    public synchronized void setLevel(int level) {
+        if (handle != null) {
+            handle.setLevel(level);
+        } else {
+            getState().requireState(State.COMPRESSING);
+            options = options.toBuilder().level(level).build();
+        }
+    }
+
+    @Override
+    public synchronized CompressionStrategy getStrategy() {
+        if (handle != null) return handle.getStrategy();
+        getState().requireStateNot(State.DECOMPRESSING, "Decompressing doesn't have a strategy!");
+        return options.getStrategy();
+    }
+
+    @Override
+    public synchronized void setStrategy(CompressionStrategy strategy) {
+        if (handle != null) {
+            handle.setStrategy(strategy);
+        } else {
+            checkNotNull(strategy, "Null strategy");
+            getState().requireState(State.COMPRESSING);
+            options = options.toBuilder().strategy(strategy).build();
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        if (handle != null) {
+            handle.reset();
+        } else {
+            getState().requireStateNot(State.CLOSED, "Stream is closed");
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        getState().requireStateNot(State.CLOSED, "Stream is already closed");
+        if (handle != null) handle.close();
+        closed = true;
+    }
+
+    @Override
+    public synchronized State getState() {
+        if (handle != null) {
+            return handle.getState();
+        } else if (closed) {
+            return State.CLOSED;
+        } else {
+            return operation == Operation.COMPRESS ? State.COMPRESSING : State.DECOMPRESSING;
+        }
+    }
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.ZLIB;
+    }
+
+    @Override
+    public synchronized Optional<CompressorStatistics> getStatistics() {
+        return handle != null ? handle.getStatistics() : Optional.empty();
+    }
+}
@@ -0,0 +1,131 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Routes each stream to the JDK's backend or an accelerated one, depending on which is faster for its input.
+ * <p>A stream can't move between backends once it's started, so its backend is chosen by the first buffer it's given,
+ * using the kind of buffer and its size in the {@link DispatchProfile}.
+ * Small inputs usually go to the JDK, since the accelerated backends have a higher fixed cost per stream and per call.
+ * Streams that need options the JDK doesn't support always use the accelerated backend.</p>
+ * <p>If the factory has metrics, the profile's thresholds and every routing decision are recorded in them.</p>
+ */
+@Getter
+public final class DispatchingCompressorFactory implements CompressorFactory {
+    private static CompressorFactory calibratedInstance;
+
+    private final CompressorFactory jdk;
+    private final CompressorFactory accelerated;
+    private final DispatchProfile profile;
+    @Getter(AccessLevel.NONE)
+    private final CompressionMetrics metrics;
+
+    private DispatchingCompressorFactory(CompressorFactory jdk, CompressorFactory accelerated, DispatchProfile profile, CompressionMetrics metrics) {
+        this.jdk = checkNotNull(jdk, "Null JDK factory");
+        this.accelerated = checkNotNull(accelerated, "Null accelerated factory");
+        this.profile = checkNotNull(profile, "Null profile");
+        this.metrics = metrics;
+        if (metrics != null) metrics.recordRoutingThresholds(profile.getThresholds());
+    }
+
+    /**
+     * Create a factory that routes streams between the JDK and the given backend
+     *
+     * @param accelerated the accelerated backend
+     * @param profile     the profile to route with
+     * @return the factory
+     */
+    public static DispatchingCompressorFactory create(CompressorFactory accelerated, DispatchProfile profile) {
+        return new DispatchingCompressorFactory(CompressorFactory.JDK, accelerated, profile, null);
+    }
+
+    /* default */ static synchronized CompressorFactory getCalibratedInstance() {
+        if (calibratedInstance == null) {
+            CompressorFactory accelerated = CompressorFactory.getInstance();
+            if (accelerated == CompressorFactory.JDK) {
+                calibratedInstance = accelerated;
+            } else {
+                String profileFile = System.getProperty("accelerated_java.profile");
+                DispatchProfile profile = null;
+                if (profileFile != null) {
+                    try {
+                        profile = DispatchProfile.loadOrCalibrate(accelerated, new File(profileFile));
+                    } catch (IOException ignored) {
+                        // NOTE: An unusable profile file shouldn't stop us from calibrating
+                    }
+                }
+                if (profile == null) profile = DispatchProfile.calibrate(accelerated);
+                calibratedInstance = create(accelerated, profile);
+            }
+        }
+        return calibratedInstance;
+    }
+
+    @Override
+    public Compressor createDecompressor(CompressorOptions options) {
+        checkNotNull(options, "Null options");
+        return new DispatchingCompressor(this, options, Operation.DECOMPRESS);
+    }
+
+    @Override
+    public Compressor createCompressor(CompressorOptions options) {
+        checkNotNull(options, "Null options");
+        return new DispatchingCompressor(this, options, Operation.COMPRESS);
+    }
+
+    /**
+     * Create the stream for a dispatching compressor, once it's been given its first input
+     *
+     * @param operation the stream's operation
+     * @param options   the stream's options
+     * @param kind      the kind of memory the first input is in
+     * @param length    the length of the first input
+     * @return the stream
+     */
+    /* default */ Compressor createStream(Operation operation, CompressorOptions options, BufferKind kind, int length) {
+        boolean useAccelerated = length >= profile.getThreshold(operation, kind)
+                || operation == Operation.COMPRESS && !isJdkSupported(options);
+        if (metrics != null) metrics.recordRoute(operation, kind, useAccelerated);
+        CompressorFactory factory = useAccelerated ? accelerated : jdk;
+        return operation == Operation.COMPRESS ? factory.createCompressor(options) : factory.createDecompressor(options);
+    }
+
+    private static boolean isJdkSupported(CompressorOptions options) {
+        return options.getWindowBits() == CompressorOptions.MAX_WINDOW_BITS
+                && options.getStrategy() != CompressionStrategy.RLE
+                && options.getStrategy() != CompressionStrategy.FIXED;
+    }
+
+    /**
+     * Create a whole-input decompressor from the accelerated backend, since it doesn't have the overhead that short streams are routed away from
+     */
+    @Override
+    public Optional<WholeInputDecompressor> createWholeInputDecompressor(CompressorOptions options) {
+        return accelerated.createWholeInputDecompressor(options);
+    }
+
+    @Override
+    public CompressionType getType() {
+        return CompressionType.ZLIB;
+    }
+
+    @Override
+    public CompressorFactory withMetrics(CompressionMetrics metrics) {
+        checkNotNull(metrics, "Null metrics");
+        return new DispatchingCompressorFactory(jdk.withMetrics(metrics), accelerated.withMetrics(metrics), profile, metrics);
+    }
+
+    @Override
+    public Optional<CompressionMetrics> getMetrics() {
+        return Optional.ofNullable(metrics);
+    }
+}
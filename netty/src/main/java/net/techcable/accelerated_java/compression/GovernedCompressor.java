@@ -0,0 +1,110 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.util.Optional;
+
+import io.netty.buffer.ByteBuf;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+
+/**
+ * A compressor that follows the level of an {@link AdaptiveLevelGovernor}.
+ */
+@RequiredArgsConstructor
+/* default */ class GovernedCompressor implements Compressor {
+    private final AdaptiveLevelGovernor governor;
+    private final Compressor handle;
+
+    private void followGovernor() {
+        int level = governor.getLevel();
+        if (handle.getLevel() != level && handle.getState() == State.COMPRESSING) {
+            handle.setLevel(level);
+        }
+    }
+
+    @Override
+    public Status compress(ByteBuf in, ByteBuf out, FlushMode flush) {
+        followGovernor();
+        int oldReaderIndex = in.readerIndex();
+        long startNanos = System.nanoTime();
+        Status status = handle.compress(in, out, flush);
+        governor.observe(in.readerIndex() - oldReaderIndex, System.nanoTime() - startNanos);
+        return status;
+    }
+
+    @Override
+    public Status compressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength, FlushMode flush) {
+        followGovernor();
+        long startNanos = System.nanoTime();
+        Status status = handle.compressMemory(inArray, inOffset, inLength, outArray, outOffset, outLength, flush);
+        governor.observe(handle.getBytesRead(), System.nanoTime() - startNanos);
+        return status;
+    }
+
+    @Override
+    public Status decompress(ByteBuf in, ByteBuf out) throws InvalidDataException {
+        return handle.decompress(in, out);
+    }
+
+    @Override
+    public Status decompressMemory(byte[] inArray, long inOffset, int inLength, byte[] outArray, long outOffset, int outLength) throws InvalidDataException {
+        return handle.decompressMemory(inArray, inOffset, inLength, outArray, outOffset, outLength);
+    }
+
+    @Override
+    public int getBytesRead() {
+        return handle.getBytesRead();
+    }
+
+    @Override
+    public int getBytesWritten() {
+        return handle.getBytesWritten();
+    }
+
+    @Override
+    public int getLevel() {
+        return handle.getLevel();
+    }
+
+    @Override
+    public void setLevel(int level) {
+        handle.setLevel(level);
+    }
+
+    @Override
+    public CompressionStrategy getStrategy() {
+        return handle.getStrategy();
+    }
+
+    @Override
+    public void setStrategy(CompressionStrategy strategy) {
+        handle.setStrategy(strategy);
+    }
+
+    @Override
+    public void reset() {
+        handle.reset();
+    }
+
+    @Override
+    public void close() {
+        handle.close();
+    }
+
+    @Override
+    public State getState() {
+        return handle.getState();
+    }
+
+    @Override
+    public CompressionType getType() {
+        return handle.getType();
+    }
+
+    @Override
+    public Optional<CompressorStatistics> getStatistics() {
+        return handle.getStatistics();
+    }
+}
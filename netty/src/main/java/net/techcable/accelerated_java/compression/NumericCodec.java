@@ -0,0 +1,205 @@
+package net.techcable.accelerated_java.compression;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+import net.techcable.accelerated_java.jni.Native;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Compresses arrays of fixed-width numbers, passing them through a {@link NumericFilter} before compressing them.
+ * <p>The output is the filter's header followed by the compressed stream of the filtered data,
+ * so decompressing restores the original data without being told the filter.
+ * Filters run natively on direct buffers when the JNI library is loaded, and on arrays otherwise.</p>
+ * <p>A codec reuses its streams for every payload. It's thread-safe; its calls are serialized.</p>
+ */
+public final class NumericCodec implements AutoCloseable {
+    private final Compressor compressor, decompressor;
+    private final ByteBufAllocator allocator;
+    private boolean closed;
+
+    private NumericCodec(Builder builder) {
+        this.allocator = builder.allocator;
+        this.compressor = builder.factory.createCompressor(builder.options);
+        try {
+            this.decompressor = builder.factory.createDecompressor(builder.options);
+        } catch (RuntimeException e) {
+            compressor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Filter and compress the readable bytes of the input
+     *
+     * @param in     the numbers to compress
+     * @param filter the filter to apply before compressing
+     * @return the filter's header and the compressed stream, which the caller must release
+     * @throws NullPointerException  if any arguments are null
+     * @throws IllegalStateException if the codec is closed
+     */
+    public synchronized ByteBuf compress(ByteBuf in, NumericFilter filter) {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(filter, "Null filter");
+        checkState(!closed, "Codec is closed");
+        final int length = in.readableBytes();
+        ByteBuf filtered = allocateScratch(length, in.hasArray());
+        ByteBuf out = allocator.directBuffer(NumericFilter.HEADER_SIZE + Math.max(64, length / 2));
+        try {
+            filter(filter, in, filtered, length, false);
+            in.skipBytes(length);
+            out.writeShort(filter.getHeader());
+            compressor.reset();
+            Status status = compressor.compress(filtered, out, FlushMode.FINISH);
+            checkState(status == Status.FINISHED, "Compression didn't finish: %s", status);
+            ByteBuf result = out;
+            out = null;
+            return result;
+        } finally {
+            filtered.release();
+            if (out != null) out.release();
+        }
+    }
+
+    /**
+     * Decompress a payload from {@link #compress(ByteBuf, NumericFilter)}, and restore the numbers
+     * <p>The input's reader index is moved past the payload.</p>
+     *
+     * @param in the filter's header and the compressed stream
+     * @return the original numbers, which the caller must release
+     * @throws NullPointerException        if the input is null
+     * @throws IllegalStateException       if the codec is closed
+     * @throws InvalidDataException        if the input is invalid or truncated
+     * @throws DecompressionLimitException if the input exceeded the codec's {@link DecompressionLimits}
+     */
+    public synchronized ByteBuf decompress(ByteBuf in) throws InvalidDataException {
+        checkNotNull(in, "Null input buffer");
+        checkState(!closed, "Codec is closed");
+        if (in.readableBytes() < NumericFilter.HEADER_SIZE) throw new InvalidDataException("Invalid input data: truncated");
+        NumericFilter filter = NumericFilter.fromHeader(in.getUnsignedShort(in.readerIndex()));
+        in.skipBytes(NumericFilter.HEADER_SIZE);
+        final boolean heap = !Native.LIBRARY.isLoaded();
+        ByteBuf filtered = allocateScratch(Math.max(64, in.readableBytes() * 2), heap);
+        ByteBuf out = null;
+        try {
+            decompressor.reset();
+            Status status;
+            do {
+                status = decompressor.decompress(in, filtered);
+            } while (status == Status.OUTPUT_LIMIT_REACHED);
+            if (status != Status.FINISHED) throw new InvalidDataException("Invalid input data: truncated");
+            final int length = filtered.readableBytes();
+            out = heap ? allocator.heapBuffer(length) : allocator.directBuffer(length);
+            filter(filter, filtered, out, length, true);
+            ByteBuf result = out;
+            out = null;
+            return result;
+        } finally {
+            filtered.release();
+            if (out != null) out.release();
+        }
+    }
+
+    /**
+     * Allocate a buffer to filter into, of the kind the filter can work on in place
+     */
+    private ByteBuf allocateScratch(int capacity, boolean heap) {
+        return heap || !Native.LIBRARY.isLoaded() ? allocator.heapBuffer(capacity) : allocator.directBuffer(capacity);
+    }
+
+    /**
+     * Filter or restore the readable bytes of one buffer into the writable bytes of another, without moving the source's reader index
+     */
+    private static void filter(NumericFilter filter, ByteBuf src, ByteBuf dst, int length, boolean invert) {
+        dst.ensureWritable(length);
+        final int srcIndex = src.readerIndex(), dstIndex = dst.writerIndex();
+        if (src.hasArray() && dst.hasArray()) {
+            if (invert) {
+                filter.invert(src.array(), src.arrayOffset() + srcIndex, dst.array(), dst.arrayOffset() + dstIndex, length);
+            } else {
+                filter.apply(src.array(), src.arrayOffset() + srcIndex, dst.array(), dst.arrayOffset() + dstIndex, length);
+            }
+        } else if (Native.LIBRARY.isLoaded() && !src.hasArray() && !dst.hasArray() && ByteBufCompressor.isContiguous(src) && ByteBufCompressor.isContiguous(dst)) {
+            long srcAddress = ByteBufCompressor.offset(src, srcIndex, length), dstAddress = ByteBufCompressor.offset(dst, dstIndex, length);
+            if (invert) {
+                filter.invertMemory(srcAddress, dstAddress, length);
+            } else {
+                filter.applyMemory(srcAddress, dstAddress, length);
+            }
+        } else {
+            byte[] source = ByteBufUtil.getBytes(src, srcIndex, length, false), result = new byte[length];
+            if (invert) {
+                filter.invert(source, 0, result, 0, length);
+            } else {
+                filter.apply(source, 0, result, 0, length);
+            }
+            dst.setBytes(dstIndex, result);
+        }
+        dst.writerIndex(dstIndex + length);
+    }
+
+    /**
+     * Close the codec's streams
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        compressor.close();
+        decompressor.close();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private CompressorFactory factory;
+        private CompressorOptions options = CompressorOptions.DEFAULT;
+        private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+
+        private Builder() {}
+
+        /**
+         * Set the factory to create the streams with, which defaults to {@link CompressorFactory#getInstance() the fastest backend}
+         *
+         * @param factory the factory
+         * @return this builder
+         */
+        public Builder factory(CompressorFactory factory) {
+            this.factory = checkNotNull(factory, "Null factory");
+            return this;
+        }
+
+        /**
+         * Set the options for both compressing and decompressing, including the level and the decompression limits
+         *
+         * @param options the options
+         * @return this builder
+         */
+        public Builder options(CompressorOptions options) {
+            this.options = checkNotNull(options, "Null options");
+            return this;
+        }
+
+        /**
+         * Set the allocator for the output and the filtered data, which defaults to {@link ByteBufAllocator#DEFAULT}
+         *
+         * @param allocator the allocator
+         * @return this builder
+         */
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = checkNotNull(allocator, "Null allocator");
+            return this;
+        }
+
+        public NumericCodec build() {
+            if (factory == null) factory = CompressorFactory.getInstance();
+            return new NumericCodec(this);
+        }
+    }
+}
@@ -0,0 +1,580 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.netty.buffer.ByteBuf;
+
+import net.techcable.accelerated_java.InvalidDataException;
+
+import static com.google.common.base.Preconditions.*;
+import static net.techcable.accelerated_java.compression.SpeculativeInflater.MARKER_BASE;
+import static net.techcable.accelerated_java.compression.SpeculativeInflater.WINDOW_SIZE;
+
+/**
+ * Decompresses a whole gzip, zlib or raw deflate stream with several threads, which a single {@link Compressor} can only decompress in order.
+ * <p>The compressed data is split into chunks, and each worker guesses where the first block of its chunk starts by looking for a valid block header.
+ * The workers decode their chunks in parallel without the window before them, so references into the window are decoded as markers.
+ * The chunks are then joined in order: each guess is checked against where the chunk before it ended,
+ * and the markers are replaced with the window once the chunk before it has been written.
+ * A chunk that was guessed wrong, or that no block could be found in, is decoded again in order, which is slower but always correct.</p>
+ * <p>The output is checked against the checksum and length in the trailer, although raw deflate data doesn't have one.
+ * Only a single stream is decompressed, so gzip files with several members and zlib streams with a preset dictionary are rejected.</p>
+ * <p>Up to twice as many chunks as workers are decoded ahead of the output, and each holds its output until it's written.
+ * The output they hold is bounded by {@link Builder#maxBufferedOutput(long)}, which defaults to 256 MiB for each call,
+ * and a single chunk can't hold more than {@value #MAX_CHUNK_RATIO} times its compressed size.
+ * Output with markers takes two bytes for each byte, so the bound counts the memory the chunks use rather than their length.
+ * Chunks that would go over either bound are decoded again in order instead, writing their output as it's decoded,
+ * so the worst case is the bound plus the compressed data each worker has read.</p>
+ */
+public final class ParallelDecompressor implements AutoCloseable {
+    /* default */ static final int MIN_CHUNK_SIZE = 64 * 1024;
+    /* default */ static final int MAX_CHUNK_RATIO = 64;
+    private final ZLibWrapper wrapper;
+    private final DecompressionLimits limits;
+    private final int chunkSize, aheadChunks;
+    /**
+     * The number of compressed bytes an inflater reads at a time, which is a little more than a chunk so most chunks only read once
+     */
+    private final int readSize;
+    private final long maxChunkOutput, maxBufferedOutput;
+    private final ExecutorService executor;
+    private final AtomicLong parallelChunks = new AtomicLong(), sequentialChunks = new AtomicLong();
+
+    private ParallelDecompressor(Builder builder) {
+        this.wrapper = builder.wrapper;
+        this.limits = builder.limits;
+        this.chunkSize = builder.chunkSize;
+        this.aheadChunks = builder.workers * 2;
+        this.readSize = chunkSize + MIN_CHUNK_SIZE;
+        this.maxChunkOutput = Math.min((long) chunkSize * MAX_CHUNK_RATIO, limits.getMaxOutput());
+        this.maxBufferedOutput = builder.maxBufferedOutput;
+        this.executor = Executors.newFixedThreadPool(builder.workers, builder.threadFactory);
+    }
+
+    /**
+     * Decompress the readable bytes of a buffer, which have to be a single stream
+     *
+     * @param in  the compressed stream, which is consumed
+     * @param out the channel to write the output to
+     * @return the number of bytes written
+     * @throws NullPointerException        if any arguments are null
+     * @throws IllegalStateException       if the decompressor is closed
+     * @throws InvalidDataException        if the input is invalid or truncated, or doesn't match its trailer
+     * @throws DecompressionLimitException if the output exceeded the {@link DecompressionLimits}
+     * @throws IOException                 if the output couldn't be written
+     */
+    public long decompress(ByteBuf in, WritableByteChannel out) throws InvalidDataException, IOException {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output channel");
+        final int start = in.readerIndex(), length = in.readableBytes();
+        long written = decompress((position, dst, offset, count) -> in.getBytes(start + (int) position, dst, offset, count), length, out);
+        in.skipBytes(length);
+        return written;
+    }
+
+    /**
+     * Decompress a whole file, which has to be a single stream
+     * <p>The file is read at absolute positions, so its position isn't used or changed.</p>
+     *
+     * @param in  the compressed file
+     * @param out the channel to write the output to
+     * @return the number of bytes written
+     * @throws NullPointerException        if any arguments are null
+     * @throws IllegalStateException       if the decompressor is closed
+     * @throws InvalidDataException        if the input is invalid or truncated, or doesn't match its trailer
+     * @throws DecompressionLimitException if the output exceeded the {@link DecompressionLimits}
+     * @throws IOException                 if the file couldn't be read, or the output couldn't be written
+     */
+    public long decompress(FileChannel in, WritableByteChannel out) throws InvalidDataException, IOException {
+        checkNotNull(in, "Null input channel");
+        checkNotNull(out, "Null output channel");
+        return decompress((position, dst, offset, count) -> {
+            ByteBuffer buffer = ByteBuffer.wrap(dst, offset, count);
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer, position + buffer.position() - offset) < 0) throw new EOFException("File was truncated while reading it");
+            }
+        }, in.size(), out);
+    }
+
+    private long decompress(SpeculativeInflater.Source source, long size, WritableByteChannel out) throws InvalidDataException, IOException {
+        checkState(!executor.isShutdown(), "Decompressor is closed");
+        Stream stream = new Stream(source, size, out);
+        Deque<Future<Chunk>> pending = new ArrayDeque<>();
+        try {
+            long expected = stream.dataStart * 8, submitted = 0;
+            boolean finished = false;
+            for (long index = 0; index < stream.chunkCount && !finished; index++) {
+                for (; submitted < stream.chunkCount && submitted <= index + aheadChunks; submitted++) {
+                    final long chunkIndex = submitted;
+                    pending.add(executor.submit(() -> decodeChunk(stream, chunkIndex)));
+                }
+                Chunk chunk = await(pending.remove());
+                try {
+                    long stop = stream.chunkBit(index + 1);
+                    if (expected >= stop) {
+                        // The chunks before ran past this one
+                        continue;
+                    }
+                    if (chunk != null && expected >= chunk.start && expected <= chunk.startEnd) {
+                        stream.write(chunk);
+                        expected = chunk.end;
+                        finished = chunk.finished;
+                        parallelChunks.incrementAndGet();
+                    } else {
+                        SpeculativeInflater inflater = new SpeculativeInflater(source, stream.dataEnd, readSize);
+                        long inputEnd = Math.min(stop, stream.dataEnd * 8) >>> 3;
+                        expected = inflater.decode(expected, stop, stream.window, stream.windowLength, (symbols, offset, length) -> stream.write(symbols, offset, length, inputEnd));
+                        finished = inflater.isFinished();
+                        sequentialChunks.incrementAndGet();
+                    }
+                } finally {
+                    if (chunk != null) chunk.release();
+                }
+            }
+            if (!finished) throw new InvalidDataException("Invalid input data: truncated");
+            long end = (expected + 7) >>> 3;
+            if (end != stream.dataEnd) {
+                throw new InvalidDataException("Invalid input data: " + (stream.dataEnd - end) + " bytes after the end of the stream"
+                        + (wrapper == ZLibWrapper.GZIP ? ", which may be another gzip member" : ""));
+            }
+            stream.checkTrailer();
+            return stream.bytesWritten;
+        } finally {
+            for (Future<Chunk> future : pending) future.cancel(true);
+        }
+    }
+
+    /**
+     * Decode a chunk from the first block that could be found in it
+     *
+     * @return the chunk, or null if it has to be decoded again in order
+     */
+    private Chunk decodeChunk(Stream stream, long index) {
+        long from = stream.chunkBit(index), stop = stream.chunkBit(index + 1);
+        SpeculativeInflater inflater = new SpeculativeInflater(stream.source, stream.dataEnd, readSize);
+        try {
+            if (index == 0) {
+                Chunk chunk = new Chunk(stream, from, from);
+                try {
+                    chunk.end = inflater.decode(from, stop, new byte[WINDOW_SIZE], 0, chunk);
+                } catch (InvalidDataException e) {
+                    chunk.release();
+                    throw e;
+                }
+                chunk.finished = inflater.isFinished();
+                return chunk;
+            }
+            long to = Math.min(stop, stream.dataEnd * 8);
+            for (long bit = from; (bit = inflater.findCandidate(bit, to)) >= 0; bit++) {
+                Chunk chunk = new Chunk(stream, bit, inflater.getCandidateEnd());
+                try {
+                    chunk.end = inflater.decode(bit, stop, null, 0, chunk);
+                    chunk.finished = inflater.isFinished();
+                    return chunk;
+                } catch (DecompressionLimitException e) {
+                    chunk.release();
+                    return null;
+                } catch (InvalidDataException e) {
+                    // It wasn't really a block
+                    chunk.release();
+                }
+            }
+        } catch (InvalidDataException | IOException e) {
+            // Decoding the chunk in order reports the error
+        }
+        return null;
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a chunk");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new AssertionError("Unexpected exception decoding a chunk", cause);
+        }
+    }
+
+    /**
+     * Get the number of chunks that were decoded in parallel
+     *
+     * @return the number of chunks
+     */
+    public long getParallelChunks() {
+        return parallelChunks.get();
+    }
+
+    /**
+     * Get the number of chunks that had to be decoded again in order, since their first block was guessed wrong or couldn't be found
+     *
+     * @return the number of chunks
+     */
+    public long getSequentialChunks() {
+        return sequentialChunks.get();
+    }
+
+    /**
+     * Stop the workers
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The state of a stream that's being decompressed, which is only used by the thread joining its chunks.
+     */
+    private final class Stream {
+        private final SpeculativeInflater.Source source;
+        private final WritableByteChannel out;
+        /**
+         * The positions of the deflate data in the source
+         */
+        private final long dataStart, dataEnd;
+        private final long chunkCount;
+        private final Checksum checksum;
+        /**
+         * The last window of the output, with the last byte at the end
+         */
+        private final byte[] window = new byte[WINDOW_SIZE];
+        private int windowLength;
+        private long bytesWritten;
+        private byte[] scratch;
+        /**
+         * The memory used by the output of the chunks that have been decoded but not written yet
+         */
+        private final AtomicLong bufferedOutput = new AtomicLong();
+
+        private Stream(SpeculativeInflater.Source source, long size, WritableByteChannel out) throws InvalidDataException, IOException {
+            this.source = source;
+            this.out = out;
+            switch (wrapper) {
+                case GZIP:
+                    this.dataStart = readGzipHeader(size);
+                    this.dataEnd = size - 8;
+                    this.checksum = new CRC32();
+                    break;
+                case ZLIB:
+                    this.dataStart = readZLibHeader(size);
+                    this.dataEnd = size - 4;
+                    this.checksum = new Adler32();
+                    break;
+                case NONE:
+                    this.dataStart = 0;
+                    this.dataEnd = size;
+                    this.checksum = null;
+                    break;
+                default:
+                    throw new AssertionError(wrapper);
+            }
+            if (dataEnd <= dataStart) throw new InvalidDataException("Invalid input data: truncated");
+            this.chunkCount = (dataEnd - dataStart + chunkSize - 1) / chunkSize;
+        }
+
+        /**
+         * Get the position a chunk starts at in bits, or {@link Long#MAX_VALUE} past the last chunk
+         */
+        private long chunkBit(long index) {
+            return index < chunkCount ? (dataStart + index * chunkSize) * 8 : Long.MAX_VALUE;
+        }
+
+        private long readGzipHeader(long size) throws InvalidDataException, IOException {
+            byte[] header = read(0, 10, size);
+            if (header[0] != (byte) 0x1F || header[1] != (byte) 0x8B) throw new InvalidDataException("Invalid input data: not a gzip stream");
+            if (header[2] != 8) throw new InvalidDataException("Invalid input data: unknown compression method " + header[2]);
+            int flags = header[3] & 0xFF;
+            if ((flags & 0xE0) != 0) throw new InvalidDataException("Invalid input data: reserved gzip flags are set");
+            long position = 10;
+            if ((flags & 4) != 0) {
+                byte[] extra = read(position, 2, size);
+                position += 2 + ((extra[0] & 0xFF) | (extra[1] & 0xFF) << 8);
+            }
+            // The file name and comment
+            for (int flag = 8; flag <= 16; flag <<= 1) {
+                if ((flags & flag) == 0) continue;
+                while (read(position++, 1, size)[0] != 0) {
+                    // Skip to the terminating zero
+                }
+            }
+            if ((flags & 2) != 0) {
+                // The low 16 bits of the CRC-32 of the header before it
+                CRC32 crc = new CRC32();
+                crc.update(read(0, (int) position, size));
+                byte[] expected = read(position, 2, size);
+                if ((crc.getValue() & 0xFFFF) != ((expected[0] & 0xFF) | (expected[1] & 0xFF) << 8)) {
+                    throw new InvalidDataException("Invalid input data: header crc mismatch");
+                }
+                position += 2;
+            }
+            return position;
+        }
+
+        private long readZLibHeader(long size) throws InvalidDataException, IOException {
+            byte[] header = read(0, 2, size);
+            int method = header[0] & 0xFF, flags = header[1] & 0xFF;
+            if ((method & 15) != 8 || method >>> 4 > 7 || (method << 8 | flags) % 31 != 0) throw new InvalidDataException("Invalid input data: not a zlib stream");
+            if ((flags & 0x20) != 0) throw new InvalidDataException("Invalid input data: preset dictionaries aren't supported");
+            return 2;
+        }
+
+        private byte[] read(long position, int length, long size) throws InvalidDataException, IOException {
+            if (position + length > size) throw new InvalidDataException("Invalid input data: truncated");
+            byte[] bytes = new byte[length];
+            source.read(position, bytes, 0, length);
+            return bytes;
+        }
+
+        private void checkTrailer() throws InvalidDataException, IOException {
+            if (wrapper == ZLibWrapper.GZIP) {
+                ByteBuffer trailer = ByteBuffer.wrap(read(dataEnd, 8, dataEnd + 8)).order(ByteOrder.LITTLE_ENDIAN);
+                if (trailer.getInt() != (int) checksum.getValue()) throw new InvalidDataException("Invalid input data: incorrect data check");
+                if (trailer.getInt() != (int) bytesWritten) throw new InvalidDataException("Invalid input data: incorrect length check");
+            } else if (wrapper == ZLibWrapper.ZLIB) {
+                if (ByteBuffer.wrap(read(dataEnd, 4, dataEnd + 4)).getInt() != (int) checksum.getValue()) {
+                    throw new InvalidDataException("Invalid input data: incorrect data check");
+                }
+            }
+        }
+
+        /**
+         * Write a chunk that was decoded in parallel, replacing its markers with the window before it
+         */
+        private void write(Chunk chunk) throws InvalidDataException, IOException {
+            byte[] previous = null;
+            int missing = 0;
+            for (Segment segment : chunk.segments) {
+                byte[] bytes = segment.bytes;
+                if (bytes == null) {
+                    if (previous == null) {
+                        previous = window.clone();
+                        missing = WINDOW_SIZE - windowLength;
+                    }
+                    char[] symbols = segment.symbols;
+                    bytes = new byte[symbols.length];
+                    for (int i = 0; i < symbols.length; i++) {
+                        int symbol = symbols[i];
+                        if (symbol >= MARKER_BASE) {
+                            symbol -= MARKER_BASE;
+                            if (symbol < missing) throw new InvalidDataException("Invalid input data: distance too far back");
+                            symbol = previous[symbol];
+                        }
+                        bytes[i] = (byte) symbol;
+                    }
+                }
+                write(bytes, 0, bytes.length, chunk.end >>> 3);
+            }
+        }
+
+        /**
+         * Write output that was decoded in order, which doesn't have any markers
+         */
+        private void write(char[] symbols, int offset, int length, long inputEnd) throws InvalidDataException, IOException {
+            if (scratch == null || scratch.length < length) scratch = new byte[Math.max(length, 64 * 1024)];
+            for (int i = 0; i < length; i++) {
+                scratch[i] = (byte) symbols[offset + i];
+            }
+            write(scratch, 0, length, inputEnd);
+        }
+
+        private void write(byte[] bytes, int offset, int length, long inputEnd) throws InvalidDataException, IOException {
+            limits.check(inputEnd, bytesWritten + length);
+            if (checksum != null) checksum.update(bytes, offset, length);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) out.write(buffer);
+            bytesWritten += length;
+            if (length >= WINDOW_SIZE) {
+                System.arraycopy(bytes, offset + length - WINDOW_SIZE, window, 0, WINDOW_SIZE);
+            } else {
+                System.arraycopy(window, length, window, 0, WINDOW_SIZE - length);
+                System.arraycopy(bytes, offset, window, WINDOW_SIZE - length, length);
+            }
+            windowLength = (int) Math.min(WINDOW_SIZE, windowLength + (long) length);
+        }
+    }
+
+    /**
+     * The output of a chunk that was decoded in parallel.
+     */
+    private final class Chunk implements SpeculativeInflater.Sink {
+        /**
+         * The range of positions in bits that the chunk could have started at
+         */
+        private final long start, startEnd;
+        /**
+         * The position in bits that the chunk ended at
+         */
+        private long end;
+        private boolean finished;
+        private final List<Segment> segments = new ArrayList<>();
+        private final Stream stream;
+        private long size;
+        /**
+         * The memory the segments use, which is counted in the stream's buffered output
+         */
+        private long memory;
+
+        private Chunk(Stream stream, long start, long startEnd) {
+            this.stream = stream;
+            this.start = start;
+            this.startEnd = startEnd;
+        }
+
+        @Override
+        public void write(char[] symbols, int offset, int length) throws InvalidDataException {
+            size += length;
+            if (size > maxChunkOutput) throw new DecompressionLimitException("Chunk is too large to hold its output", DecompressionLimitException.Limit.TOTAL_OUTPUT);
+            byte[] bytes = new byte[length];
+            int seen = 0;
+            for (int i = 0; i < length; i++) {
+                char symbol = symbols[offset + i];
+                seen |= symbol;
+                bytes[i] = (byte) symbol;
+            }
+            int used = seen < MARKER_BASE ? length : length * 2;
+            memory += used;
+            if (stream.bufferedOutput.addAndGet(used) > maxBufferedOutput) {
+                throw new DecompressionLimitException("Too much output is buffered ahead of the output", DecompressionLimitException.Limit.TOTAL_OUTPUT);
+            }
+            segments.add(seen < MARKER_BASE ? new Segment(bytes, null) : new Segment(null, Arrays.copyOfRange(symbols, offset, offset + length)));
+        }
+
+        /**
+         * Drop the chunk's output, so it no longer counts against the buffered output
+         */
+        private void release() {
+            stream.bufferedOutput.addAndGet(-memory);
+            memory = 0;
+            segments.clear();
+        }
+    }
+
+    /**
+     * Part of the output of a chunk, which is either bytes or symbols with markers
+     */
+    private static final class Segment {
+        private final byte[] bytes;
+        private final char[] symbols;
+
+        private Segment(byte[] bytes, char[] symbols) {
+            this.bytes = bytes;
+            this.symbols = symbols;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private ZLibWrapper wrapper = ZLibWrapper.GZIP;
+        private DecompressionLimits limits = DecompressionLimits.NONE;
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int chunkSize = 4 * 1024 * 1024;
+        private long maxBufferedOutput = 256 * 1024 * 1024;
+        private ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("parallel-decompressor-%d").build();
+
+        private Builder() {}
+
+        /**
+         * Set the wrapper around the deflate data, which defaults to {@link ZLibWrapper#GZIP gzip}
+         *
+         * @param wrapper the wrapper
+         * @return this builder
+         */
+        public Builder wrapper(ZLibWrapper wrapper) {
+            this.wrapper = checkNotNull(wrapper, "Null wrapper");
+            return this;
+        }
+
+        /**
+         * Set the limits on the output, which defaults to {@link DecompressionLimits#NONE no limits}
+         * <p>The limit on the output of each call doesn't apply, since each call decompresses a whole stream.</p>
+         *
+         * @param limits the limits
+         * @return this builder
+         */
+        public Builder limits(DecompressionLimits limits) {
+            this.limits = checkNotNull(limits, "Null limits");
+            return this;
+        }
+
+        /**
+         * Set the number of workers, which defaults to the number of processors
+         *
+         * @param workers the number of workers
+         * @return this builder
+         */
+        public Builder workers(int workers) {
+            checkArgument(workers > 0, "Non-positive workers %s", workers);
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Set the amount of compressed data in each chunk, which defaults to 4 MiB
+         * <p>Smaller chunks use less memory, but a larger part of each chunk is spent finding its first block and resolving its markers.</p>
+         *
+         * @param bytes the chunk size in bytes
+         * @return this builder
+         */
+        public Builder chunkSize(int bytes) {
+            checkArgument(bytes >= MIN_CHUNK_SIZE, "Chunk size %s is less than %s", bytes, MIN_CHUNK_SIZE);
+            this.chunkSize = bytes;
+            return this;
+        }
+
+        /**
+         * Set the factory for the workers' threads, which defaults to daemon threads
+         *
+         * @param threadFactory the thread factory
+         * @return this builder
+         */
+        public Builder threadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = checkNotNull(threadFactory, "Null thread factory");
+            return this;
+        }
+
+        /**
+         * Set the most memory the output of the chunks decoded ahead of the output can use in each call, which defaults to 256 MiB
+         * <p>Chunks that would go over it are decoded again in order, so a smaller bound uses less memory but decodes less in parallel.</p>
+         *
+         * @param bytes the bound in bytes
+         * @return this builder
+         */
+        public Builder maxBufferedOutput(long bytes) {
+            checkArgument(bytes > 0, "Non-positive bound %s", bytes);
+            this.maxBufferedOutput = bytes;
+            return this;
+        }
+
+        public ParallelDecompressor build() {
+            return new ParallelDecompressor(this);
+        }
+    }
+}
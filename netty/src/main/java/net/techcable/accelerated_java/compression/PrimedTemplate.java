@@ -0,0 +1,223 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.util.Arrays;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Primes a compressor and a decompressor once with a prefix that's common to many messages, and hands out forks that carry on from it.
+ * <p>On backends that can {@link Compressor#copy() copy} their streams, the forks are copies of the primed streams,
+ * which costs a copy of zlib's state instead of compressing the prefix again.
+ * The JDK backend can't, so its raw deflate forks are new streams with the end of the prefix as their preset dictionary, which carry on the same way.
+ * Its other forks have to process the prefix again.</p>
+ * <p>The compressed prefix is the same for every message, so it doesn't need to be sent if the other side has a template with the same prefix and options.
+ * A forked decompressor decompresses exactly what a forked compressor wrote, back into just the message.
+ * Otherwise, the whole stream is the {@link #getPrimedOutput() primed output} followed by what the fork wrote.</p>
+ */
+public final class PrimedTemplate implements AutoCloseable {
+    private final CompressorFactory factory;
+    private final CompressorOptions options;
+    /**
+     * The options for forks that start from a dictionary, or null if forks are copied or replay the prefix
+     */
+    private final CompressorOptions dictionaryOptions;
+    /**
+     * The primed streams, or null if the backend can't copy them
+     */
+    private final Compressor compressor, decompressor;
+    private final byte[] prefix;
+    private final ByteBuf primedOutput;
+    /**
+     * If forks are copies of the primed streams
+     */
+    @Getter
+    private final boolean copying;
+    private boolean closed;
+
+    private PrimedTemplate(Builder builder) {
+        this.factory = builder.factory;
+        this.options = builder.options;
+        this.prefix = builder.prefix;
+        this.primedOutput = Unpooled.buffer(prefix.length / 2 + 64);
+        Compressor compressor = factory.createCompressor(options), decompressor = null;
+        boolean copying = false;
+        try {
+            Status status = compressor.compress(Unpooled.wrappedBuffer(prefix), primedOutput, FlushMode.SYNC);
+            checkState(status == Status.OK, "Unexpected status priming the compressor: %s", status);
+            decompressor = factory.createDecompressor(options);
+            replay(decompressor);
+            compressor.copy().close();
+            copying = true;
+        } catch (UnsupportedOperationException e) {
+            // Forks have to be emulated
+        } catch (InvalidDataException e) {
+            throw new AssertionError("The compressor wrote invalid data", e);
+        } finally {
+            if (!copying) {
+                compressor.close();
+                if (decompressor != null) decompressor.close();
+            }
+        }
+        this.copying = copying;
+        this.compressor = copying ? compressor : null;
+        this.decompressor = copying ? decompressor : null;
+        this.dictionaryOptions = !copying && options.getWrapper() == ZLibWrapper.NONE ? createDictionaryOptions(options, prefix) : null;
+    }
+
+    /**
+     * Create options with the last window of the prefix as their dictionary, after whatever dictionary the options already had
+     */
+    private static CompressorOptions createDictionaryOptions(CompressorOptions options, byte[] prefix) {
+        byte[] dictionary = options.getDictionary().orElse(new byte[0]);
+        byte[] combined = Arrays.copyOf(dictionary, dictionary.length + prefix.length);
+        System.arraycopy(prefix, 0, combined, dictionary.length, prefix.length);
+        int windowSize = 1 << options.getWindowBits();
+        byte[] window = Arrays.copyOfRange(combined, Math.max(0, combined.length - windowSize), combined.length);
+        return options.toBuilder().dictionary(window).build();
+    }
+
+    /**
+     * Get the compressed prefix, which every fork of the compressor carries on from
+     *
+     * @return a read-only view of the primed output
+     */
+    public ByteBuf getPrimedOutput() {
+        return Unpooled.unmodifiableBuffer(primedOutput.duplicate());
+    }
+
+    /**
+     * Get a compressor that has already compressed the prefix
+     * <p>The caller owns the fork, and has to close it.</p>
+     *
+     * @return the fork
+     * @throws IllegalStateException if the template is closed
+     */
+    public synchronized Compressor forkCompressor() {
+        checkState(!closed, "Template is closed");
+        if (copying) return compressor.copy();
+        if (dictionaryOptions != null) return factory.createCompressor(dictionaryOptions);
+        Compressor fork = factory.createCompressor(options);
+        ByteBuf replayed = Unpooled.buffer(primedOutput.readableBytes() + 64);
+        try {
+            fork.compress(Unpooled.wrappedBuffer(prefix), replayed, FlushMode.SYNC);
+            checkState(ByteBufUtil.equals(primedOutput, replayed), "The prefix compressed differently the second time");
+            return fork;
+        } catch (RuntimeException e) {
+            fork.close();
+            throw e;
+        } finally {
+            replayed.release();
+        }
+    }
+
+    /**
+     * Get a decompressor that has already decompressed the primed output
+     * <p>The caller owns the fork, and has to close it.</p>
+     *
+     * @return the fork
+     * @throws IllegalStateException if the template is closed
+     */
+    public synchronized Compressor forkDecompressor() {
+        checkState(!closed, "Template is closed");
+        if (copying) return decompressor.copy();
+        if (dictionaryOptions != null) return factory.createDecompressor(dictionaryOptions);
+        Compressor fork = factory.createDecompressor(options);
+        try {
+            replay(fork);
+            return fork;
+        } catch (InvalidDataException e) {
+            fork.close();
+            throw new AssertionError("The compressor wrote invalid data", e);
+        } catch (RuntimeException e) {
+            fork.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Decompress the primed output, discarding the prefix
+     */
+    private void replay(Compressor decompressor) throws InvalidDataException {
+        ByteBuf discarded = Unpooled.buffer(prefix.length);
+        try {
+            Status status = decompressor.decompress(primedOutput.duplicate(), discarded);
+            checkState(status == Status.NEEDS_INPUT && discarded.readableBytes() == prefix.length, "Unexpected status replaying the prefix: %s", status);
+        } finally {
+            discarded.release();
+        }
+    }
+
+    /**
+     * Close the primed streams, leaving the forks open
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (compressor != null) compressor.close();
+        if (decompressor != null) decompressor.close();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private CompressorFactory factory;
+        private CompressorOptions options = CompressorOptions.DEFAULT;
+        private byte[] prefix;
+
+        private Builder() {}
+
+        /**
+         * Set the factory to create the streams with, which defaults to {@link CompressorFactory#getInstance() the fastest backend}
+         *
+         * @param factory the factory
+         * @return this builder
+         */
+        public Builder factory(CompressorFactory factory) {
+            this.factory = checkNotNull(factory, "Null factory");
+            return this;
+        }
+
+        /**
+         * Set the options for both compressing and decompressing, which the other side has to agree on
+         *
+         * @param options the options
+         * @return this builder
+         */
+        public Builder options(CompressorOptions options) {
+            this.options = checkNotNull(options, "Null options");
+            return this;
+        }
+
+        /**
+         * Set the prefix the streams are primed with, which is required
+         *
+         * @param prefix the prefix, which is copied
+         * @return this builder
+         * @throws IllegalArgumentException if the prefix is empty
+         */
+        public Builder prefix(byte[] prefix) {
+            checkNotNull(prefix, "Null prefix");
+            checkArgument(prefix.length > 0, "Empty prefix");
+            this.prefix = prefix.clone();
+            return this;
+        }
+
+        public PrimedTemplate build() {
+            checkState(prefix != null, "Missing prefix");
+            if (factory == null) factory = CompressorFactory.getInstance();
+            return new PrimedTemplate(this);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Decompresses a stream and compresses it again, in another format or at another level, without holding the whole stream in memory.
+ * <p>The input is decompressed a window at a time into a small direct buffer, which is compressed straight away and then reused,
+ * so the memory used doesn't depend on the size of the input.
+ * Gzip input can be several members one after the other, which are joined into a single output stream.</p>
+ * <p>The output goes either to the caller's buffers, through a single compressor,
+ * or to a {@link CompressionPipeline}, which compresses independent chunks on its workers in parallel.
+ * Decompression is much faster than compression at high levels, so this parallelizes the slow side,
+ * even though the members of the input can't be found without decompressing them.</p>
+ */
+public final class Recompressor implements AutoCloseable {
+    private final Compressor decompressor;
+    /**
+     * The compressor, or null if the output goes to a pipeline
+     */
+    private final Compressor compressor;
+    /**
+     * The pipeline, or null if the output goes to the caller's buffers
+     */
+    private final CompressionPipeline pipeline;
+    private final ByteBuf window;
+    private final boolean multipleMembers;
+    private boolean sourceFinished, closed;
+    @Getter
+    private long bytesRead, bytesDecompressed;
+    /**
+     * The number of input streams or gzip members that have been decompressed
+     */
+    @Getter
+    private int members;
+
+    private Recompressor(Builder builder) {
+        this.pipeline = builder.pipeline;
+        this.multipleMembers = builder.source.getWrapper() == ZLibWrapper.GZIP;
+        this.decompressor = builder.factory.createDecompressor(builder.source);
+        Compressor compressor = null;
+        try {
+            if (pipeline == null) compressor = builder.factory.createCompressor(builder.target);
+            this.window = builder.allocator.directBuffer(builder.windowSize, builder.windowSize);
+        } catch (RuntimeException e) {
+            decompressor.close();
+            if (compressor != null) compressor.close();
+            throw e;
+        }
+        this.compressor = compressor;
+    }
+
+    /**
+     * Recompress as much of the input as possible into the output buffer
+     * <p>The output grows as needed, up to its maximum capacity.
+     * If it's full, decompressed data that hasn't been compressed yet is kept until the next call.</p>
+     *
+     * @param in  the compressed input
+     * @param out the output buffer
+     * @return {@link Status#NEEDS_INPUT} if all the input was used, {@link Status#FINISHED} if the input stream ended,
+     * or {@link Status#INSUFFICIENT_OUTPUT} if the output is full
+     * @throws NullPointerException        if any arguments are null
+     * @throws IllegalStateException       if the recompressor writes to a pipeline, or is closed
+     * @throws InvalidDataException        if the input is invalid
+     * @throws DecompressionLimitException if the input exceeded the source's {@link DecompressionLimits}
+     */
+    public Status recompress(ByteBuf in, ByteBuf out) throws InvalidDataException {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output buffer");
+        checkState(compressor != null, "Recompressor writes to a pipeline");
+        return recompress0(in, out);
+    }
+
+    /**
+     * Recompress all of the input into the pipeline
+     *
+     * @param in the compressed input
+     * @return {@link Status#NEEDS_INPUT} if the input stream hasn't ended, or {@link Status#FINISHED} if it has
+     * @throws NullPointerException        if the input is null
+     * @throws IllegalStateException       if the recompressor doesn't write to a pipeline, or is closed
+     * @throws InvalidDataException        if the input is invalid
+     * @throws DecompressionLimitException if the input exceeded the source's {@link DecompressionLimits}
+     * @throws IOException                 if the pipeline failed
+     */
+    public Status recompress(ByteBuf in) throws InvalidDataException, IOException {
+        checkNotNull(in, "Null input buffer");
+        checkState(pipeline != null, "Recompressor doesn't write to a pipeline");
+        try {
+            return recompress0(in, null);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Status recompress0(ByteBuf in, ByteBuf out) throws InvalidDataException {
+        checkState(!closed, "Recompressor is closed");
+        if (!drainWindow(out)) return Status.INSUFFICIENT_OUTPUT;
+        while (decompressWindow(in)) {
+            if (!drainWindow(out)) return Status.INSUFFICIENT_OUTPUT;
+        }
+        return sourceFinished ? Status.FINISHED : Status.NEEDS_INPUT;
+    }
+
+    /**
+     * Decompress the next window of the input
+     *
+     * @return if there might be more to decompress, or false if more input is needed
+     */
+    private boolean decompressWindow(ByteBuf in) throws InvalidDataException {
+        if (sourceFinished) {
+            // Another gzip member may follow
+            if (!multipleMembers || !in.isReadable()) return false;
+            decompressor.reset();
+            sourceFinished = false;
+        }
+        window.clear();
+        int start = in.readerIndex();
+        Status status = decompressor.decompress(in, window);
+        bytesRead += in.readerIndex() - start;
+        bytesDecompressed += window.readableBytes();
+        if (status == Status.FINISHED) {
+            sourceFinished = true;
+            members++;
+        }
+        return status != Status.NEEDS_INPUT || window.isReadable();
+    }
+
+    /**
+     * Compress the rest of the window
+     *
+     * @param out the output buffer, or null to write to the pipeline
+     * @return if the window is empty, or false if the output is full
+     */
+    private boolean drainWindow(ByteBuf out) {
+        if (!window.isReadable()) return true;
+        if (out == null) {
+            try {
+                pipeline.write(window);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            compressor.compress(window, out, FlushMode.NONE);
+        }
+        return !window.isReadable();
+    }
+
+    /**
+     * Finish the output stream, once the input stream has ended
+     *
+     * @param out the output buffer
+     * @return {@link Status#FINISHED}, or {@link Status#INSUFFICIENT_OUTPUT} if the output is full
+     * @throws NullPointerException  if the output is null
+     * @throws IllegalStateException if the recompressor writes to a pipeline, or is closed
+     * @throws InvalidDataException  if the input stream hasn't ended, since it's truncated
+     */
+    public Status finish(ByteBuf out) throws InvalidDataException {
+        checkNotNull(out, "Null output buffer");
+        checkState(compressor != null, "Recompressor writes to a pipeline");
+        checkState(!closed, "Recompressor is closed");
+        if (!sourceFinished) throw new InvalidDataException("Invalid input data: truncated");
+        if (!drainWindow(out)) return Status.INSUFFICIENT_OUTPUT;
+        return compressor.compress(Unpooled.EMPTY_BUFFER, out, FlushMode.FINISH);
+    }
+
+    /**
+     * Finish the output stream and close the pipeline, once the input stream has ended
+     *
+     * @throws IllegalStateException if the recompressor doesn't write to a pipeline, or is closed
+     * @throws InvalidDataException  if the input stream hasn't ended, since it's truncated
+     * @throws IOException           if the pipeline failed
+     */
+    public void finish() throws InvalidDataException, IOException {
+        checkState(pipeline != null, "Recompressor doesn't write to a pipeline");
+        checkState(!closed, "Recompressor is closed");
+        if (!sourceFinished) throw new InvalidDataException("Invalid input data: truncated");
+        pipeline.write(window);
+        pipeline.close();
+    }
+
+    /**
+     * Release the window and close the streams, and the pipeline if there is one
+     *
+     * @throws IOException if the pipeline failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        window.release();
+        decompressor.close();
+        if (compressor != null) compressor.close();
+        if (pipeline != null) pipeline.close();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private CompressorFactory factory;
+        private CompressorOptions source = CompressorOptions.DEFAULT, target = CompressorOptions.DEFAULT;
+        private CompressionPipeline pipeline;
+        private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        private int windowSize = 64 * 1024;
+
+        private Builder() {}
+
+        /**
+         * Set the factory to create the streams with, which defaults to {@link CompressorFactory#getInstance() the fastest backend}
+         *
+         * @param factory the factory
+         * @return this builder
+         */
+        public Builder factory(CompressorFactory factory) {
+            this.factory = checkNotNull(factory, "Null factory");
+            return this;
+        }
+
+        /**
+         * Set the options to decompress the input with, including its wrapper and limits
+         *
+         * @param source the input's options
+         * @return this builder
+         */
+        public Builder source(CompressorOptions source) {
+            this.source = checkNotNull(source, "Null source options");
+            return this;
+        }
+
+        /**
+         * Set the options to compress the output with, including its wrapper and level
+         *
+         * @param target the output's options
+         * @return this builder
+         */
+        public Builder target(CompressorOptions target) {
+            this.target = checkNotNull(target, "Null target options");
+            return this;
+        }
+
+        /**
+         * Write the output to a pipeline instead of the caller's buffers, which is closed along with the recompressor
+         * <p>The pipeline's options are used instead of the {@link #target(CompressorOptions) target options}.</p>
+         *
+         * @param pipeline the pipeline
+         * @return this builder
+         */
+        public Builder pipeline(CompressionPipeline pipeline) {
+            this.pipeline = checkNotNull(pipeline, "Null pipeline");
+            return this;
+        }
+
+        /**
+         * Set the allocator for the window, which defaults to {@link ByteBufAllocator#DEFAULT}
+         *
+         * @param allocator the allocator
+         * @return this builder
+         */
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = checkNotNull(allocator, "Null allocator");
+            return this;
+        }
+
+        /**
+         * Set the size of the window the input is decompressed into, which defaults to 64 KiB
+         *
+         * @param bytes the window size in bytes
+         * @return this builder
+         */
+        public Builder windowSize(int bytes) {
+            checkArgument(bytes >= CompressorOptions.MIN_CHUNK_SIZE, "Window size %s is less than %s", bytes, CompressorOptions.MIN_CHUNK_SIZE);
+            this.windowSize = bytes;
+            return this;
+        }
+
+        public Recompressor build() {
+            if (factory == null) factory = CompressorFactory.getInstance();
+            return new Recompressor(this);
+        }
+    }
+}
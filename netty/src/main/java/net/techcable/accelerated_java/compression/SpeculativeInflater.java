@@ -0,0 +1,557 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import net.techcable.accelerated_java.InvalidDataException;
+
+/**
+ * A deflate decoder that can start at any block boundary of a stream, even without the window before it.
+ * <p>The output is written as 16-bit symbols, where a symbol below 256 is a byte,
+ * and one from {@link #MARKER_BASE} up is a marker for the byte at that index of the unknown window.
+ * References into the window copy its markers, so once the window is known every marker can be replaced.
+ * Decoding with a known window never writes markers.</p>
+ * <p>Zlib can't do this, since it has to start at the beginning of a stream and always needs the whole window.</p>
+ */
+/* default */ final class SpeculativeInflater {
+    /* default */ static final int WINDOW_SIZE = 32 * 1024;
+    /* default */ static final int MARKER_BASE = 256;
+    /**
+     * The number of symbols written to the sink at a time
+     */
+    private static final int SEGMENT_SIZE = 512 * 1024;
+    /**
+     * The zero bytes after the compressed data, so the bit buffer can always load eight bytes at once
+     */
+    private static final int PADDING = 16;
+    private static final int MAX_MATCH = 258;
+    private static final int MAX_BITS = 15;
+    private static final int PRIMARY_BITS = 10;
+    private static final int PRIMARY_MASK = (1 << PRIMARY_BITS) - 1;
+    /**
+     * The sizes of the tables, which have room for a secondary table of the longest codes for each symbol
+     */
+    private static final int LITERAL_TABLE_SIZE = (1 << PRIMARY_BITS) + (288 << (MAX_BITS - PRIMARY_BITS));
+    private static final int DISTANCE_TABLE_SIZE = (1 << PRIMARY_BITS) + (32 << (MAX_BITS - PRIMARY_BITS));
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258
+    };
+    private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+    };
+    private static final int[] DISTANCE_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769,
+            1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577
+    };
+    private static final int[] DISTANCE_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+    };
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+    private static final int[] FIXED_LITERALS = new int[LITERAL_TABLE_SIZE], FIXED_DISTANCES = new int[DISTANCE_TABLE_SIZE];
+
+    static {
+        int[] lengths = new int[288 + 32], counts = new int[MAX_BITS + 1], codes = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        Arrays.fill(lengths, 288, 320, 5);
+        if (!buildTable(lengths, 0, 288, FIXED_LITERALS, false, counts, codes) || !buildTable(lengths, 288, 32, FIXED_DISTANCES, false, counts, codes)) {
+            throw new AssertionError("Invalid fixed codes");
+        }
+    }
+
+    private final Source source;
+    /**
+     * The position just past the compressed data in the source
+     */
+    private final long dataEnd;
+    /**
+     * The number of compressed bytes read from the source at a time
+     */
+    private final int readSize;
+    private byte[] in = new byte[0];
+    private ByteBuffer inView = ByteBuffer.wrap(in);
+    /**
+     * The position of the input array in the source, and the number of bytes read into it
+     */
+    private long inStart;
+    private int inLength;
+    /**
+     * The next byte of the input array to load into the bit buffer
+     */
+    private int inPos;
+    private long bitBuffer;
+    private int bitCount;
+
+    /**
+     * The window followed by the output that hasn't been written to the sink
+     */
+    private final char[] out = new char[WINDOW_SIZE + SEGMENT_SIZE + MAX_MATCH];
+    private int pos;
+    /**
+     * The first index of the output array that references may reach
+     */
+    private int floor;
+    private Sink sink;
+    private final int[] lengths = new int[288 + 32], counts = new int[MAX_BITS + 1], codes = new int[288];
+    private final int[] literalTable = new int[LITERAL_TABLE_SIZE], distanceTable = new int[DISTANCE_TABLE_SIZE], codeLengthTable = new int[1 << PRIMARY_BITS];
+    /**
+     * If the last call to {@link #decode(long, long, byte[], int, Sink)} decoded the final block
+     */
+    @Getter
+    private boolean finished;
+    /**
+     * The last position equivalent to the block {@link #findCandidate(long, long)} found,
+     * which is further on only for stored blocks, since any of the zero padding bits before them could have ended the previous block
+     */
+    @Getter
+    private long candidateEnd;
+
+    /* default */ SpeculativeInflater(Source source, long dataEnd, int readSize) {
+        this.source = source;
+        this.dataEnd = dataEnd;
+        this.readSize = readSize;
+    }
+
+    /**
+     * Decode blocks from a boundary until the stream ends,
+     * or until a block {@link #findCandidate(long, long) that could start a chunk} starts at or after a position
+     *
+     * @param startBit     the position of the first block in bits
+     * @param stopBit      the position to stop after, or {@link Long#MAX_VALUE} to decode the whole stream
+     * @param window       the {@value #WINDOW_SIZE} bytes before the first block, or null if they're unknown
+     * @param windowLength the number of bytes at the end of the window that are part of the stream, which references may reach
+     * @param sink         the sink for the output
+     * @return the position it stopped at in bits
+     * @throws InvalidDataException if the data is invalid or truncated, or the sink stopped
+     * @throws IOException          if the source couldn't be read
+     */
+    /* default */ long decode(long startBit, long stopBit, byte[] window, int windowLength, Sink sink) throws InvalidDataException, IOException {
+        this.sink = sink;
+        finished = false;
+        if (window == null) {
+            for (int i = 0; i < WINDOW_SIZE; i++) out[i] = (char) (MARKER_BASE + i);
+            floor = 0;
+        } else {
+            for (int i = 0; i < WINDOW_SIZE; i++) out[i] = (char) (window[i] & 0xFF);
+            floor = WINDOW_SIZE - windowLength;
+        }
+        pos = WINDOW_SIZE;
+        try {
+            seek(startBit);
+            while (true) {
+                refill();
+                if (position() >= stopBit && atCandidate()) break;
+                int header = bits(3);
+                switch (header >>> 1) {
+                    case 0:
+                        inflateStored();
+                        break;
+                    case 1:
+                        inflateHuffman(FIXED_LITERALS, FIXED_DISTANCES);
+                        break;
+                    case 2:
+                        if (!readDynamicTables()) throw new InvalidDataException("Invalid input data: invalid dynamic block header");
+                        inflateHuffman(literalTable, distanceTable);
+                        break;
+                    default:
+                        throw new InvalidDataException("Invalid input data: invalid block type");
+                }
+                if ((header & 1) != 0) {
+                    finished = true;
+                    break;
+                }
+            }
+        } catch (TruncatedException e) {
+            throw new InvalidDataException(e.getMessage());
+        }
+        long end = position();
+        if (end > dataEnd * 8) throw new InvalidDataException("Invalid input data: truncated");
+        flush();
+        this.sink = null;
+        return end;
+    }
+
+    /**
+     * Find the first position in a range that starts a dynamic or stored block, which isn't the final block
+     * <p>Dynamic blocks have to have a valid header, with complete codes that can end the block,
+     * and stored blocks have to have zero padding and a length that matches its complement.
+     * Fixed blocks are too hard to tell apart from other data.</p>
+     *
+     * @param fromBit the first position to look at
+     * @param toBit   the position to stop looking at
+     * @return the position of the block, or -1 if there isn't one
+     * @throws IOException if the source couldn't be read
+     */
+    /* default */ long findCandidate(long fromBit, long toBit) throws IOException {
+        for (long bit = fromBit; bit < toBit; bit++) {
+            long peeked = peek(bit);
+            int header = (int) peeked & 7;
+            if (header == 4) {
+                if (((peeked >>> 3) & 31) > 29 || ((peeked >>> 8) & 31) > 29) continue;
+                seek(bit + 3);
+                try {
+                    if (readDynamicTables()) {
+                        candidateEnd = bit;
+                        return bit;
+                    }
+                } catch (TruncatedException e) {
+                    // Too close to the end to be a block
+                }
+            } else if (header == 0) {
+                int padding = (int) (-(bit + 3) & 7);
+                if (((peeked >>> 3) & ((1 << padding) - 1)) != 0) continue;
+                long length = peek(bit + 3 + padding);
+                if ((length & 0xFFFF) != (~length >>> 16 & 0xFFFF)) continue;
+                candidateEnd = bit + padding;
+                return bit;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check if the next block could start a chunk, which is how {@link #findCandidate(long, long)} finds the next chunk
+     */
+    private boolean atCandidate() {
+        int header = (int) bitBuffer & 7;
+        if (header == 4) return true;
+        if (header != 0) return false;
+        int padding = (bitCount - 3) & 7;
+        if (((bitBuffer >>> 3) & ((1 << padding) - 1)) != 0) return false;
+        long length = bitBuffer >>> (3 + padding);
+        return (length & 0xFFFF) == (~length >>> 16 & 0xFFFF);
+    }
+
+    private void inflateHuffman(int[] literals, int[] distances) throws InvalidDataException, IOException {
+        final char[] out = this.out;
+        int pos = this.pos;
+        while (true) {
+            if (pos > out.length - MAX_MATCH) {
+                this.pos = pos;
+                flush();
+                pos = this.pos;
+            }
+            // A length and a distance take at most 48 bits
+            if (bitCount < 48) refill();
+            int entry = literals[(int) bitBuffer & PRIMARY_MASK];
+            if (entry < 0) entry = literals[((entry >>> 4) & 0xFFFFF) + ((int) (bitBuffer >>> PRIMARY_BITS) & ((1 << (entry & 15)) - 1))];
+            int length = entry & 15;
+            if (length == 0) throw new InvalidDataException("Invalid input data: invalid literal/length code");
+            bitBuffer >>>= length;
+            bitCount -= length;
+            int symbol = entry >>> 4;
+            if (symbol < 256) {
+                out[pos++] = (char) symbol;
+                continue;
+            } else if (symbol == 256) {
+                break;
+            }
+            symbol -= 257;
+            if (symbol >= 29) throw new InvalidDataException("Invalid input data: invalid literal/length code");
+            int matchLength = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+            entry = distances[(int) bitBuffer & PRIMARY_MASK];
+            if (entry < 0) entry = distances[((entry >>> 4) & 0xFFFFF) + ((int) (bitBuffer >>> PRIMARY_BITS) & ((1 << (entry & 15)) - 1))];
+            length = entry & 15;
+            symbol = entry >>> 4;
+            if (length == 0 || symbol >= 30) throw new InvalidDataException("Invalid input data: invalid distance code");
+            bitBuffer >>>= length;
+            bitCount -= length;
+            int from = pos - DISTANCE_BASE[symbol] - bits(DISTANCE_EXTRA[symbol]);
+            if (from < floor) throw new InvalidDataException("Invalid input data: distance too far back");
+            // Copying forwards one symbol at a time makes overlapping references repeat the symbols before them
+            for (int end = pos + matchLength; pos < end; pos++, from++) {
+                out[pos] = out[from];
+            }
+        }
+        this.pos = pos;
+    }
+
+    private void inflateStored() throws InvalidDataException, IOException {
+        bits(bitCount & 7);
+        refill();
+        int length = bits(16);
+        if (length != (~bits(16) & 0xFFFF)) throw new InvalidDataException("Invalid input data: invalid stored block length");
+        // Give back the whole bytes left in the bit buffer and copy straight from the input
+        inPos -= bitCount >>> 3;
+        if (inPos < 0) {
+            // Some of those bytes were read before the input was last reloaded
+            load(inStart + inPos);
+            inPos = 0;
+        }
+        bitBuffer = 0;
+        bitCount = 0;
+        while (length > 0) {
+            if (pos > out.length - MAX_MATCH) flush();
+            if (inPos >= inLength) {
+                if (inStart + inLength >= dataEnd) throw new InvalidDataException("Invalid input data: truncated");
+                load(inStart + inPos);
+                inPos = 0;
+            }
+            int count = Math.min(Math.min(length, out.length - pos), inLength - inPos);
+            for (int i = 0; i < count; i++) {
+                out[pos + i] = (char) (in[inPos + i] & 0xFF);
+            }
+            pos += count;
+            inPos += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Read the code lengths of a dynamic block and build its tables
+     *
+     * @return false if the header is invalid
+     */
+    private boolean readDynamicTables() throws IOException {
+        refill();
+        int literalCount = bits(5) + 257, distanceCount = bits(5) + 1, codeLengthCount = bits(4) + 4;
+        if (literalCount > 286 || distanceCount > 30) return false;
+        Arrays.fill(lengths, 0, 19, 0);
+        for (int i = 0; i < codeLengthCount; i++) {
+            if (bitCount < 3) refill();
+            lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        if (!buildTable(lengths, 0, 19, codeLengthTable, false, counts, codes)) return false;
+        int total = literalCount + distanceCount;
+        for (int i = 0; i < total; ) {
+            // A code length code and its extra bits take at most 14 bits
+            if (bitCount < 14) refill();
+            int entry = codeLengthTable[(int) bitBuffer & PRIMARY_MASK];
+            int length = entry & 15;
+            if (length == 0) return false;
+            bitBuffer >>>= length;
+            bitCount -= length;
+            int symbol = entry >>> 4;
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+            int value = 0, repeat;
+            if (symbol == 16) {
+                if (i == 0) return false;
+                value = lengths[i - 1];
+                repeat = 3 + bits(2);
+            } else if (symbol == 17) {
+                repeat = 3 + bits(3);
+            } else {
+                repeat = 11 + bits(7);
+            }
+            if (i + repeat > total) return false;
+            Arrays.fill(lengths, i, i + repeat, value);
+            i += repeat;
+        }
+        return lengths[256] != 0
+                && buildTable(lengths, 0, literalCount, literalTable, true, counts, codes)
+                && buildTable(lengths, literalCount, distanceCount, distanceTable, true, counts, codes);
+    }
+
+    /**
+     * Build a table to decode canonical Huffman codes, which are read starting from their lowest bit
+     * <p>The primary table is indexed by the next {@value #PRIMARY_BITS} bits, and its entries are a symbol shifted left by four and the length of its code.
+     * Entries for longer codes are negative, and link to a secondary table by its offset shifted left by four and the number of bits that index it.
+     * Entries that aren't part of any code are zero.</p>
+     *
+     * @param allowSingle if a code with no symbols or a single symbol is allowed, which is the only incomplete code deflate allows
+     * @return false if the lengths are over-subscribed or incomplete
+     */
+    private static boolean buildTable(int[] lengths, int offset, int count, int[] table, boolean allowSingle, int[] counts, int[] codes) {
+        Arrays.fill(counts, 0);
+        int maxLength = 0;
+        for (int i = 0; i < count; i++) {
+            int length = lengths[offset + i];
+            counts[length]++;
+            maxLength = Math.max(maxLength, length);
+        }
+        int left = 1;
+        for (int length = 1; length <= MAX_BITS; length++) {
+            left = (left << 1) - counts[length];
+            if (left < 0) return false;
+        }
+        if (left > 0 && !(allowSingle && maxLength <= 1)) return false;
+        // The first code of each length, as in RFC 1951
+        int code = 0;
+        counts[0] = 0;
+        int[] next = new int[MAX_BITS + 1];
+        for (int length = 1; length <= MAX_BITS; length++) {
+            code = (code + counts[length - 1]) << 1;
+            next[length] = code;
+        }
+        Arrays.fill(table, 0, 1 << PRIMARY_BITS, 0);
+        int[] secondaryLengths = null;
+        for (int i = 0; i < count; i++) {
+            int length = lengths[offset + i];
+            if (length == 0) continue;
+            int reversed = Integer.reverse(next[length]++) >>> (32 - length);
+            codes[i] = reversed;
+            if (length <= PRIMARY_BITS) {
+                for (int index = reversed; index < 1 << PRIMARY_BITS; index += 1 << length) {
+                    table[index] = i << 4 | length;
+                }
+            } else {
+                if (secondaryLengths == null) secondaryLengths = new int[1 << PRIMARY_BITS];
+                int prefix = reversed & PRIMARY_MASK;
+                secondaryLengths[prefix] = Math.max(secondaryLengths[prefix], length - PRIMARY_BITS);
+            }
+        }
+        if (secondaryLengths == null) return true;
+        int end = 1 << PRIMARY_BITS;
+        for (int prefix = 0; prefix < 1 << PRIMARY_BITS; prefix++) {
+            int bits = secondaryLengths[prefix];
+            if (bits == 0) continue;
+            table[prefix] = Integer.MIN_VALUE | end << 4 | bits;
+            end += 1 << bits;
+        }
+        for (int i = 0; i < count; i++) {
+            int length = lengths[offset + i];
+            if (length <= PRIMARY_BITS) continue;
+            int link = table[codes[i] & PRIMARY_MASK];
+            int start = (link >>> 4) & 0xFFFFF, bits = link & 15;
+            for (int index = codes[i] >>> PRIMARY_BITS; index < 1 << bits; index += 1 << (length - PRIMARY_BITS)) {
+                table[start + index] = i << 4 | length;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the output to the sink, keeping the last window of it for references
+     */
+    private void flush() throws InvalidDataException, IOException {
+        int length = pos - WINDOW_SIZE;
+        if (length == 0) return;
+        sink.write(out, WINDOW_SIZE, length);
+        System.arraycopy(out, length, out, 0, WINDOW_SIZE);
+        floor = Math.max(0, floor - length);
+        pos = WINDOW_SIZE;
+    }
+
+    /**
+     * Get the position of the next bit to decode
+     */
+    private long position() {
+        return (inStart + inPos) * 8 - bitCount;
+    }
+
+    private void seek(long bit) throws IOException {
+        long index = bit >>> 3;
+        if (!isBuffered(index)) load(index);
+        inPos = (int) (index - inStart);
+        bitBuffer = 0;
+        bitCount = 0;
+        refill();
+        bits((int) bit & 7);
+    }
+
+    /**
+     * Get at least the next 57 bits at a position, without moving the bit buffer
+     */
+    private long peek(long bit) throws IOException {
+        long index = bit >>> 3;
+        if (!isBuffered(index)) {
+            long position = position();
+            load(index);
+            long value = inView.getLong(0) >>> (bit & 7);
+            seek(position);
+            return value;
+        }
+        return inView.getLong((int) (index - inStart)) >>> (bit & 7);
+    }
+
+    /**
+     * Check if the input array has the eight bytes from a position, or the padding in their place at the end of the data
+     */
+    private boolean isBuffered(long index) {
+        long end = inStart + inLength;
+        return index >= inStart && (index + 8 <= end || end >= dataEnd && index <= end + PADDING - 8);
+    }
+
+    /**
+     * Fill the bit buffer with at least 56 bits
+     */
+    private void refill() throws IOException {
+        if (inPos + 8 > inLength) {
+            if (inStart + inLength < dataEnd) {
+                load(inStart + inPos);
+                inPos = 0;
+            } else if (inPos > inLength + PADDING - 8) {
+                // Everything that's left is padding, so the stream must be truncated
+                throw new TruncatedException();
+            }
+        }
+        bitBuffer |= inView.getLong(inPos) << bitCount;
+        inPos += (63 - bitCount) >>> 3;
+        bitCount |= 56;
+    }
+
+    private int bits(int count) {
+        int value = (int) bitBuffer & ((1 << count) - 1);
+        bitBuffer >>>= count;
+        bitCount -= count;
+        return value;
+    }
+
+    /**
+     * Read the input from a position in the source, followed by zero padding
+     */
+    private void load(long start) throws IOException {
+        int length = (int) Math.min(readSize, Math.max(0, dataEnd - start));
+        if (in.length < length + PADDING) {
+            in = new byte[length + PADDING];
+            inView = ByteBuffer.wrap(in).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        source.read(start, in, 0, length);
+        Arrays.fill(in, length, length + PADDING, (byte) 0);
+        inStart = start;
+        inLength = length;
+    }
+
+    /**
+     * Thrown when the bit buffer has to load more than the padding after the end of the data,
+     * which can happen in the middle of a table so it's unchecked.
+     */
+    /* default */ static final class TruncatedException extends RuntimeException {
+        private TruncatedException() {
+            super("Invalid input data: truncated", null, false, false);
+        }
+    }
+
+    /**
+     * The compressed data, which may be read by several threads at once.
+     */
+    @FunctionalInterface
+    /* default */ interface Source {
+        /**
+         * Read compressed bytes
+         *
+         * @param position the position to read at
+         * @param dst      the array to read into
+         * @param offset   the offset in the array
+         * @param length   the number of bytes to read, which are all available
+         * @throws IOException if the bytes couldn't be read
+         */
+        public void read(long position, byte[] dst, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Receives the output of an inflater as it's decoded.
+     */
+    @FunctionalInterface
+    /* default */ interface Sink {
+        /**
+         * Accept some output, which is only valid until this returns
+         *
+         * @param symbols the array of bytes and markers
+         * @param offset  the offset of the output in the array
+         * @param length  the number of symbols
+         * @throws InvalidDataException if decoding should stop, which is rethrown
+         * @throws IOException          if the output couldn't be written, which is rethrown
+         */
+        public void write(char[] symbols, int offset, int length) throws InvalidDataException, IOException;
+    }
+}
@@ -0,0 +1,88 @@
+package net.techcable.accelerated_java.compression;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A bounded lock-free queue between exactly one producer thread and one consumer thread.
+ * <p>Each side only writes its own index, and caches the other side's index until the ring looks full or empty,
+ * so most calls don't touch memory the other thread is writing.</p>
+ *
+ * @param <E> the type of the elements
+ */
+/* default */ final class SpscRing<E> {
+    private final AtomicReferenceArray<E> elements;
+    private final int mask;
+    /**
+     * The index of the next element to poll, which only the consumer writes
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The index of the next element to offer, which only the producer writes
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * The producer's last view of the head
+     */
+    private long cachedHead;
+    /**
+     * The consumer's last view of the tail
+     */
+    private long cachedTail;
+
+    /**
+     * Create a ring with room for at least the given number of elements
+     *
+     * @param capacity the minimum capacity, which is rounded up to a power of two
+     */
+    /* default */ SpscRing(int capacity) {
+        checkArgument(capacity > 0 && capacity <= 1 << 30, "Invalid capacity %s", capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Add an element, if there's room, from the producer thread
+     *
+     * @param element the element
+     * @return if the element was added
+     */
+    /* default */ boolean offer(E element) {
+        checkNotNull(element, "Null element");
+        final long tail = this.tail.get();
+        if (tail - cachedHead > mask) {
+            cachedHead = head.get();
+            if (tail - cachedHead > mask) return false;
+        }
+        elements.lazySet((int) tail & mask, element);
+        // NOTE: The ordered write publishes the element before the new tail
+        this.tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Remove the oldest element, if there is one, from the consumer thread
+     *
+     * @return the element, or null if the ring is empty
+     */
+    /* default */ E poll() {
+        final long head = this.head.get();
+        if (head >= cachedTail) {
+            cachedTail = tail.get();
+            if (head >= cachedTail) return null;
+        }
+        int index = (int) head & mask;
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        this.head.lazySet(head + 1);
+        return element;
+    }
+
+    /* default */ int capacity() {
+        return mask + 1;
+    }
+}
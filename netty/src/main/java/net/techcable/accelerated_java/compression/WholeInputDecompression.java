@@ -0,0 +1,128 @@
+package net.techcable.accelerated_java.compression;
+
+import lombok.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Implements {@link CompressorFactory#decompressWhole(ByteBuf, CompositeByteBuf, int, CompressorOptions)} and its single buffer variant.
+ * <p>Whole-input decompressors only work with native memory, so heap input is copied into a direct buffer first.</p>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+/* default */ final class WholeInputDecompression {
+    /* default */ static void decompress(CompressorFactory factory, ByteBuf in, CompositeByteBuf out, int chunkSize, CompressorOptions options) throws InvalidDataException {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output buffer");
+        checkNotNull(options, "Null options");
+        checkArgument(chunkSize > 0, "Non-positive chunk size %s", chunkSize);
+        Optional<WholeInputDecompressor> whole = factory.createWholeInputDecompressor(options);
+        if (!whole.isPresent()) {
+            Compressor decompressor = factory.createDecompressor(options);
+            try {
+                Status status;
+                do {
+                    status = decompressor.decompress(in, out, chunkSize);
+                } while (status == Status.OUTPUT_LIMIT_REACHED);
+                if (status != Status.FINISHED) throw new InvalidDataException("Invalid input data: truncated");
+            } finally {
+                decompressor.close();
+            }
+            return;
+        }
+        WholeInputDecompressor decompressor = whole.get();
+        ByteBuf input = directInput(in, out.alloc());
+        Deque<ByteBuf> chunks = new ArrayDeque<>();
+        try {
+            ByteBuf first = out.alloc().directBuffer(chunkSize, chunkSize);
+            chunks.add(first);
+            decompressor.decompress(address(input, input.readerIndex(), input.readableBytes()), input.readableBytes(), address(first, 0, chunkSize), chunkSize, length -> {
+                ByteBuf chunk = out.alloc().directBuffer(length, length);
+                chunks.add(chunk);
+                return address(chunk, 0, length);
+            });
+            long remaining = decompressor.getBytesWritten();
+            while (remaining > 0) {
+                ByteBuf chunk = chunks.removeFirst();
+                int filled = (int) Math.min(remaining, chunkSize);
+                out.addComponent(chunk.writerIndex(filled));
+                out.writerIndex(out.writerIndex() + filled);
+                remaining -= filled;
+            }
+            in.skipBytes(decompressor.getBytesRead());
+        } finally {
+            // Release the chunks the composite buffer doesn't own
+            for (ByteBuf chunk : chunks) {
+                chunk.release();
+            }
+            if (input != in) input.release();
+            decompressor.close();
+        }
+    }
+
+    /* default */ static Status decompress(CompressorFactory factory, ByteBuf in, ByteBuf out, CompressorOptions options) throws InvalidDataException {
+        checkNotNull(in, "Null input buffer");
+        checkNotNull(out, "Null output buffer");
+        checkNotNull(options, "Null options");
+        Optional<WholeInputDecompressor> whole = out.isDirect() && ByteBufCompressor.isContiguous(out) && out.isWritable()
+                ? factory.createWholeInputDecompressor(options)
+                : Optional.empty();
+        if (!whole.isPresent()) {
+            // Decompress into a slice that can't grow, and a duplicate of the input that's only consumed once it's finished
+            ByteBuf input = in.duplicate();
+            ByteBuf output = out.slice(out.writerIndex(), out.writableBytes()).clear();
+            Compressor decompressor = factory.createDecompressor(options);
+            Status status;
+            try {
+                do {
+                    status = decompressor.decompress(input, output);
+                } while (status == Status.OUTPUT_LIMIT_REACHED);
+            } finally {
+                decompressor.close();
+            }
+            if (status == Status.NEEDS_INPUT) throw new InvalidDataException("Invalid input data: truncated");
+            if (status == Status.FINISHED) {
+                in.readerIndex(input.readerIndex());
+                out.writerIndex(out.writerIndex() + output.writerIndex());
+            }
+            return status;
+        }
+        WholeInputDecompressor decompressor = whole.get();
+        ByteBuf input = directInput(in, out.alloc());
+        try {
+            Status status = decompressor.decompress(address(input, input.readerIndex(), input.readableBytes()), input.readableBytes(), address(out, out.writerIndex(), out.writableBytes()), out.writableBytes(), null);
+            if (status == Status.FINISHED) {
+                in.skipBytes(decompressor.getBytesRead());
+                out.writerIndex(out.writerIndex() + (int) decompressor.getBytesWritten());
+            }
+            return status;
+        } finally {
+            if (input != in) input.release();
+            decompressor.close();
+        }
+    }
+
+    /**
+     * Get the input as a direct buffer, copying it if it isn't one
+     */
+    private static ByteBuf directInput(ByteBuf in, ByteBufAllocator alloc) {
+        if (in.isDirect() && ByteBufCompressor.isContiguous(in)) return in;
+        ByteBuf copy = alloc.directBuffer(in.readableBytes());
+        copy.writeBytes(in, in.readerIndex(), in.readableBytes());
+        return copy;
+    }
+
+    private static long address(ByteBuf buf, int index, int length) {
+        return ByteBufCompressor.offset(buf, index, length);
+    }
+}
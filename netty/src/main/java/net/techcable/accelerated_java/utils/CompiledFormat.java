@@ -0,0 +1,339 @@
+package net.techcable.accelerated_java.utils;
+
+import lombok.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * A {@link SimpleFormatter} format string that has already been parsed into literal text and argument slots.
+ * <p>Formatting only has to convert the arguments to strings and copy them and the literals into a result of the exact size,
+ * so a compiled format should be kept for format strings that are used repeatedly.</p>
+ * <p>The {@code formatTo} methods write directly to the caller's output without creating an intermediate string,
+ * and insert arguments that are already {@link CharSequence}s or boxed primitives without converting them to strings.
+ * Formatting to a {@link ByteBuf} encodes the output as UTF-8, and the literals are encoded ahead of time.</p>
+ * <p>Compiled formats are immutable, and can be shared between threads.</p>
+ *
+ * @see SimpleFormatter#compile(String)
+ */
+@EqualsAndHashCode(of = "format")
+public final class CompiledFormat {
+    private static final int[] NO_SLOTS = new int[0];
+    private static final byte[] MIN_LONG_DIGITS = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The original format string
+     */
+    @Getter
+    private final String format;
+    /**
+     * The unescaped literal text before each slot, and after the last slot, so there's always one more literal than slots
+     */
+    private final String[] literals;
+    /**
+     * The literals encoded as UTF-8
+     */
+    private final byte[][] encodedLiterals;
+    /**
+     * The index of the argument to insert in each slot
+     */
+    private final int[] slots;
+    /**
+     * The total length of the literals
+     */
+    private final int literalLength;
+    /**
+     * The number of arguments needed to fill the slots
+     */
+    @Getter
+    private final int requiredArguments;
+
+    private CompiledFormat(String format, String[] literals, int[] slots) {
+        assert literals.length == slots.length + 1 : "Expected " + (slots.length + 1) + " literals, but got " + literals.length;
+        this.format = format;
+        this.literals = literals;
+        this.encodedLiterals = new byte[literals.length][];
+        for (int i = 0; i < literals.length; i++) {
+            encodedLiterals[i] = literals[i].getBytes(StandardCharsets.UTF_8);
+        }
+        this.slots = slots;
+        int literalLength = 0;
+        for (String literal : literals) {
+            literalLength += literal.length();
+        }
+        this.literalLength = literalLength;
+        int requiredArguments = 0;
+        for (int slot : slots) {
+            requiredArguments = Math.max(requiredArguments, slot + 1);
+        }
+        this.requiredArguments = requiredArguments;
+    }
+
+    /**
+     * Parse the given format string
+     *
+     * @param format the format string
+     * @return the compiled format
+     * @throws NullPointerException     if the format string is null
+     * @throws IllegalArgumentException if the format string isn't valid
+     */
+    /* default */ static CompiledFormat compile(String format) {
+        Preconditions.checkNotNull(format, "Null format string");
+        List<String> literals = new ArrayList<>();
+        int[] slots = NO_SLOTS;
+        int numSlots = 0;
+        int nextArg = 0;
+        StringBuilder literal = new StringBuilder(format.length());
+        final int formatLength = format.length();
+        for (int i = 0; i < formatLength; i++) {
+            char c = format.charAt(i);
+            switch (c) {
+                case '{':
+                    if (i + 1 == formatLength) throw new IllegalArgumentException("Unescaped bracket at end of string!");
+                    int argumentIndex;
+                    c = format.charAt(++i);
+                    if (c == '}') {
+                        argumentIndex = nextArg++;
+                    } else if (c >= '0' && c <= '9') {
+                        int value = 0;
+                        do {
+                            value = value * 10 + (c - '0');
+                            if (value > Short.MAX_VALUE) throw new IllegalArgumentException("Argument index too large at " + i);
+                            if (i + 1 == formatLength) throw new IllegalArgumentException("Unterminated argument index at end of string!");
+                        } while ((c = format.charAt(++i)) >= '0' && c <= '9');
+                        if (c != '}') throw new IllegalArgumentException("Invalid character: " + c + " at " + i);
+                        argumentIndex = value;
+                    } else {
+                        throw new IllegalArgumentException("Invalid character: " + c + " at " + i);
+                    }
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    if (numSlots == slots.length) {
+                        slots = Arrays.copyOf(slots, Math.max(4, numSlots * 2));
+                    }
+                    slots[numSlots++] = argumentIndex;
+                    break;
+                case '\\':
+                    if (i + 1 == formatLength) throw new IllegalArgumentException("Unescaped backslash at end of string!");
+                    c = format.charAt(++i); // Treat next char normally, and skip any special processing it has
+                    // Fall through to default handler
+                default:
+                    literal.append(c);
+            }
+        }
+        literals.add(literal.toString());
+        return new CompiledFormat(format, literals.toArray(new String[literals.size()]), Arrays.copyOf(slots, numSlots));
+    }
+
+    /**
+     * Insert the specified arguments into this format
+     * <p>The arguments will be converted to strings using {@link Object#toString()}.
+     * Null arguments are allowed, and are converted to the "null" string.
+     * Unused arguments are ignored, and aren't converted.</p>
+     *
+     * @param args the arguments to insert
+     * @return the formatted string
+     * @throws NullPointerException      if the argument array is null, or if an argument's string is null
+     * @throws IndexOutOfBoundsException if there aren't enough arguments
+     */
+    public String format(Object... args) {
+        Preconditions.checkNotNull(args, "Null argument array");
+        checkArgumentCount(args.length);
+        String[] argsAsStrings = new String[requiredArguments];
+        for (int slot : slots) {
+            if (argsAsStrings[slot] == null) {
+                argsAsStrings[slot] = toString(args[slot], slot);
+            }
+        }
+        return format0(argsAsStrings);
+    }
+
+    /**
+     * Insert the specified argument strings into this format
+     * <p>Calling {@link #format(Object...)} will produce the same result.</p>
+     *
+     * @param args the arguments to insert
+     * @return the formatted string
+     * @throws NullPointerException      if the argument array is null, or if any of the used argument strings are null
+     * @throws IndexOutOfBoundsException if there aren't enough arguments
+     */
+    public String format(String... args) {
+        Preconditions.checkNotNull(args, "Null argument array");
+        checkArgumentCount(args.length);
+        for (int slot : slots) {
+            if (args[slot] == null) throw new NullPointerException("Null argument at index " + slot);
+        }
+        return format0(args);
+    }
+
+    /**
+     * Insert the specified arguments into this format, appending the result to the given builder
+     * <p>The arguments are converted the same way as {@link #format(Object...)}.</p>
+     *
+     * @param out  the builder to append to
+     * @param args the arguments to insert
+     * @return the builder
+     * @throws NullPointerException      if the builder or argument array is null, or if an argument's string is null
+     * @throws IndexOutOfBoundsException if there aren't enough arguments
+     */
+    public StringBuilder formatTo(StringBuilder out, Object... args) {
+        Preconditions.checkNotNull(out, "Null output");
+        Preconditions.checkNotNull(args, "Null argument array");
+        checkArgumentCount(args.length);
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            int slot = slots[i];
+            Object arg = args[slot];
+            if (arg instanceof CharSequence) {
+                out.append((CharSequence) arg);
+            } else if (arg instanceof Integer) {
+                out.append((int) (Integer) arg);
+            } else if (arg instanceof Long) {
+                out.append((long) (Long) arg);
+            } else {
+                out.append(toString(arg, slot));
+            }
+        }
+        return out.append(literals[slots.length]);
+    }
+
+    /**
+     * Insert the specified arguments into this format, appending the result to the given output
+     * <p>The arguments are converted the same way as {@link #format(Object...)}.
+     * If the output throws an exception, some of the result may have already been appended.</p>
+     *
+     * @param out  the output to append to
+     * @param args the arguments to insert
+     * @param <A>  the type of output
+     * @return the output
+     * @throws IOException               if the output throws an exception
+     * @throws NullPointerException      if the output or argument array is null, or if an argument's string is null
+     * @throws IndexOutOfBoundsException if there aren't enough arguments
+     */
+    public <A extends Appendable> A formatTo(A out, Object... args) throws IOException {
+        Preconditions.checkNotNull(out, "Null output");
+        Preconditions.checkNotNull(args, "Null argument array");
+        if (out instanceof StringBuilder) {
+            formatTo((StringBuilder) out, args);
+            return out;
+        }
+        checkArgumentCount(args.length);
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            int slot = slots[i];
+            Object arg = args[slot];
+            out.append(arg instanceof CharSequence ? (CharSequence) arg : toString(arg, slot));
+        }
+        out.append(literals[slots.length]);
+        return out;
+    }
+
+    /**
+     * Insert the specified arguments into this format, writing the result to the given buffer as UTF-8
+     * <p>The arguments are converted the same way as {@link #format(Object...)}.</p>
+     *
+     * @param out  the buffer to write to
+     * @param args the arguments to insert
+     * @return the buffer
+     * @throws NullPointerException      if the buffer or argument array is null, or if an argument's string is null
+     * @throws IndexOutOfBoundsException if there aren't enough arguments, or if the buffer can't grow to fit the result
+     */
+    public ByteBuf formatTo(ByteBuf out, Object... args) {
+        Preconditions.checkNotNull(out, "Null output");
+        Preconditions.checkNotNull(args, "Null argument array");
+        checkArgumentCount(args.length);
+        for (int i = 0; i < slots.length; i++) {
+            out.writeBytes(encodedLiterals[i]);
+            int slot = slots[i];
+            Object arg = args[slot];
+            if (arg instanceof Integer || arg instanceof Long) {
+                writeDecimal(out, ((Number) arg).longValue());
+            } else {
+                ByteBufUtil.writeUtf8(out, arg instanceof CharSequence ? (CharSequence) arg : toString(arg, slot));
+            }
+        }
+        return out.writeBytes(encodedLiterals[slots.length]);
+    }
+
+    /**
+     * Create a message that inserts the specified arguments into this format when it's converted to a string
+     *
+     * @param args the arguments to insert, which are only converted to strings if the message is
+     * @return the lazy message
+     * @throws NullPointerException if the argument array is null
+     */
+    public LazyMessage lazy(Object... args) {
+        return new LazyMessage(this, null, args);
+    }
+
+    private static void writeDecimal(ByteBuf out, long value) {
+        if (value == Long.MIN_VALUE) {
+            // NOTE: This can't be negated
+            out.writeBytes(MIN_LONG_DIGITS);
+            return;
+        }
+        if (value < 0) {
+            out.writeByte('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        do {
+            out.writeByte((int) ('0' + value / divisor));
+            value %= divisor;
+            divisor /= 10;
+        } while (divisor > 0);
+    }
+
+    private static String toString(Object arg, int index) {
+        String asString = String.valueOf(arg);
+        if (asString == null) throw new NullPointerException("Argument at index " + index + " returned null from toString()");
+        return asString;
+    }
+
+    private void checkArgumentCount(int count) {
+        if (count < requiredArguments) {
+            if (count == 0) {
+                throw new IllegalArgumentException("Format string has arguments, but no args are found: " + format);
+            }
+            throw new IndexOutOfBoundsException("Format string needs " + requiredArguments + " arguments, but only " + count + " were given: " + format);
+        }
+    }
+
+    private String format0(String[] args) {
+        if (slots.length == 0) return literals[0];
+        int size = literalLength;
+        for (int slot : slots) {
+            size += args[slot].length();
+        }
+        char[] result = new char[size];
+        int resultSize = 0;
+        for (int i = 0; i < slots.length; i++) {
+            String literal = literals[i];
+            literal.getChars(0, literal.length(), result, resultSize);
+            resultSize += literal.length();
+            String arg = args[slots[i]];
+            arg.getChars(0, arg.length(), result, resultSize);
+            resultSize += arg.length();
+        }
+        String last = literals[slots.length];
+        last.getChars(0, last.length(), result, resultSize);
+        assert resultSize + last.length() == size : "Formatted " + (resultSize + last.length()) + " chars, but expected " + size;
+        return new String(result);
+    }
+
+    @Override
+    public String toString() {
+        return format;
+    }
+}
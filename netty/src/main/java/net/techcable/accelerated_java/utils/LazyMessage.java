@@ -0,0 +1,100 @@
+package net.techcable.accelerated_java.utils;
+
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A message that's only formatted when it's converted to a string.
+ * <p>Creating a lazy message only captures the format and arguments, so passing one to a disabled log statement
+ * costs an allocation instead of a formatted string. Once formatted, the string is remembered.</p>
+ * <p>The arguments are captured by reference, so changing them before the message is formatted changes the message.</p>
+ *
+ * @see SimpleFormatter#lazy(String, Object...)
+ */
+public final class LazyMessage {
+    /**
+     * The compiled format, or null if it hasn't been looked up yet
+     */
+    private CompiledFormat compiled;
+    /**
+     * The format string, if the format hasn't been compiled yet
+     */
+    private final String format;
+    private final Object[] args;
+    private String message;
+
+    /* default */ LazyMessage(CompiledFormat compiled, String format, Object[] args) {
+        assert compiled != null || format != null : "Null format";
+        this.compiled = compiled;
+        this.format = format;
+        this.args = Preconditions.checkNotNull(args, "Null argument array");
+    }
+
+    private CompiledFormat getCompiled() {
+        CompiledFormat compiled = this.compiled;
+        if (compiled == null) {
+            compiled = SimpleFormatter.compileCached(format);
+            this.compiled = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Append this message to the given builder, without creating the string if it hasn't been formatted yet
+     *
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public StringBuilder formatTo(StringBuilder out) {
+        String message = this.message;
+        return message != null ? out.append(message) : getCompiled().formatTo(out, args);
+    }
+
+    /**
+     * Append this message to the given output, without creating the string if it hasn't been formatted yet
+     *
+     * @param out the output to append to
+     * @param <A> the type of output
+     * @return the output
+     * @throws IOException if the output throws an exception
+     */
+    public <A extends Appendable> A formatTo(A out) throws IOException {
+        String message = this.message;
+        if (message != null) {
+            out.append(message);
+            return out;
+        }
+        return getCompiled().formatTo(out, args);
+    }
+
+    /**
+     * Write this message to the given buffer as UTF-8, without creating the string if it hasn't been formatted yet
+     *
+     * @param out the buffer to write to
+     * @return the buffer
+     */
+    public ByteBuf formatTo(ByteBuf out) {
+        return getCompiled().formatTo(out, args);
+    }
+
+    /**
+     * Format the message, if it hasn't been already
+     *
+     * @return the formatted message
+     * @throws IllegalArgumentException  if the format string isn't valid
+     * @throws IndexOutOfBoundsException if there aren't enough arguments
+     */
+    @Override
+    public String toString() {
+        String message = this.message;
+        if (message == null) {
+            // NOTE: Strings are immutable, so racing threads at worst format the message twice
+            message = getCompiled().format(args);
+            this.message = message;
+        }
+        return message;
+    }
+}
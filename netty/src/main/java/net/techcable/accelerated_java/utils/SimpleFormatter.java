@@ -0,0 +1,216 @@
+package net.techcable.accelerated_java.utils;/*
+* The MIT License
+* Copyright (c) 2016 Techcable
+*
+* Permission is hereby granted, free of charge, to any person obtaining a copy
+* of this software and associated documentation files (the "Software"), to deal
+* in the Software without restriction, including without limitation the rights
+* to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the Software is
+* furnished to do so, subject to the following conditions:
+*
+* The above copyright notice and this permission notice shall be included in
+* all copies or substantial portions of the Software.
+*
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+* IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+* FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+* AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+* LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+* OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+* THE SOFTWARE.
+*/
+
+import lombok.*;
+
+import java.io.IOException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Formats messages using a subset of {@link java.text.MessageFormat}.
+ * <p>MessageFormat takes a set of objects, and inserts their string representation into the format string at the appropriate places.</p>
+ * <p>Any unused arguments are ignored, but insufficient arguments will trigger an error.</p>
+ * <p>
+ * <h3>Format Strings</h3>
+ * <p>Format strings can specify to insert the next argument by using '{}'.
+ * This will replace the brackets with the next argument.</p>
+ * <p>Format strings can specify to insert an argument with a certain index by using '{index}', where 'index' is the index of the argument.
+ * This will <i>not</i> consume the next argument, and therefore has no effect on '{}'</p>
+ * <p>Format strings can insert a literal bracket, by escaping it with the '\' character (like '\{'.
+ * Escape characters must also be prefixed, <i>or else they are ignored</i></p>
+ * <p>
+ * <h3>Compiled Formats</h3>
+ * <p>Format strings are parsed into a {@link CompiledFormat} the first time they're used,
+ * and a bounded number of them are cached so later calls only have to copy the literals and arguments.
+ * Format strings that are built dynamically can push the common ones out of the cache,
+ * so hot paths should {@link #compile(String) compile} their format strings once and keep them.</p>
+ * <p>
+ * <h3>Output</h3>
+ * <p>Besides creating strings, messages can be formatted directly into a {@link StringBuilder}, an {@link Appendable}, or a {@link ByteBuf} as UTF-8.
+ * Messages that may never be used, like log messages below the logger's level, can be created {@link #lazy(String, Object...) lazily}.</p>
+ *
+ * @author Techcable
+ */
+@NoArgsConstructor(access = AccessLevel.NONE)
+public class SimpleFormatter {
+    /**
+     * The maximum number of format strings to keep compiled
+     */
+    private static final int CACHE_SIZE = 1024;
+    private static final Cache<String, CompiledFormat> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .build();
+
+    /**
+     * Parse the given format string, so it can be formatted repeatedly without parsing it again
+     * <p>Unlike the format methods, this doesn't use the cache of compiled formats,
+     * since the caller is expected to keep the result.</p>
+     *
+     * @param format the format string
+     * @return the compiled format
+     * @throws NullPointerException     if the format string is null
+     * @throws IllegalArgumentException if the format string isn't valid
+     */
+    public static CompiledFormat compile(String format) {
+        return CompiledFormat.compile(format);
+    }
+
+    /**
+     * Get the compiled format for the given format string, compiling and caching it if it isn't already cached
+     */
+    /* default */ static CompiledFormat compileCached(String format) {
+        CompiledFormat compiled = CACHE.getIfPresent(format);
+        if (compiled == null) {
+            // NOTE: Two threads may compile the same format at once, but that's cheaper than locking and they're equal anyways
+            compiled = CompiledFormat.compile(format);
+            CACHE.put(format, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Insert no arguments into the given format string
+     * <p>Since there are no arguments, all this does is validate the format string and remove its escapes.</p>
+     *
+     * @param format the format string
+     * @return the formatted string
+     * @throws NullPointerException     if the format string is null
+     * @throws IllegalArgumentException if the format string isn't valid, or has any arguments
+     */
+    public static String format(String format) {
+        Preconditions.checkNotNull(format, "Null format string");
+        return compileCached(format).format(Arrays2.EMPTY_STRING_ARRAY);
+    }
+
+    /**
+     * Insert the specified arguments into the given format string
+     * <p>The arguments will be converted to strings using {@link Object#toString()}.
+     * Null arguments are allowed, and are converted to the "null" string.</p>
+     * <p>This is equivalent to calling {@link #format(String, String...)} with the objects converted to strings.</p>
+     *
+     * @param format the format string
+     * @param args   the arguments to insert
+     * @return the formatted string
+     * @throws NullPointerException      if the format string is null
+     * @throws NullPointerException      if the argument array is null
+     * @throws IllegalArgumentException  if the format string isn't valid
+     * @throws IndexOutOfBoundsException if one of the indexes isn't valid
+     */
+    public static String format(String format, Object... args) {
+        Preconditions.checkNotNull(format, "Null format string");
+        Preconditions.checkNotNull(args, "Null argument array");
+        return compileCached(format).format(args);
+    }
+
+    /**
+     * Insert the specified argument strings into the given format string
+     * <p>Calling {@link #format(String, Object...)} will produce the same result.</p>
+     *
+     * @param format the format string
+     * @param args   the arguments to insert
+     * @return the formatted string
+     * @throws NullPointerException      if the format string is null
+     * @throws NullPointerException      if the argument array is null
+     * @throws NullPointerException      if any of the argument strings are null
+     * @throws IllegalArgumentException  if the format string isn't valid
+     * @throws IndexOutOfBoundsException if one of the indexes isn't valid
+     */
+    public static String format(String format, String... args) {
+        Preconditions.checkNotNull(format, "Null format");
+        Preconditions.checkNotNull(args, "Null argument array");
+        return compileCached(format).format(args);
+    }
+
+    /**
+     * Insert the specified arguments into the given format string, appending the result to the given builder
+     *
+     * @param out    the builder to append to
+     * @param format the format string
+     * @param args   the arguments to insert
+     * @return the builder
+     * @throws NullPointerException      if any arguments are null
+     * @throws IllegalArgumentException  if the format string isn't valid
+     * @throws IndexOutOfBoundsException if one of the indexes isn't valid
+     * @see CompiledFormat#formatTo(StringBuilder, Object...)
+     */
+    public static StringBuilder formatTo(StringBuilder out, String format, Object... args) {
+        Preconditions.checkNotNull(format, "Null format string");
+        return compileCached(format).formatTo(out, args);
+    }
+
+    /**
+     * Insert the specified arguments into the given format string, appending the result to the given output
+     *
+     * @param out    the output to append to
+     * @param format the format string
+     * @param args   the arguments to insert
+     * @param <A>    the type of output
+     * @return the output
+     * @throws IOException               if the output throws an exception
+     * @throws NullPointerException      if any arguments are null
+     * @throws IllegalArgumentException  if the format string isn't valid
+     * @throws IndexOutOfBoundsException if one of the indexes isn't valid
+     * @see CompiledFormat#formatTo(Appendable, Object...)
+     */
+    public static <A extends Appendable> A formatTo(A out, String format, Object... args) throws IOException {
+        Preconditions.checkNotNull(format, "Null format string");
+        return compileCached(format).formatTo(out, args);
+    }
+
+    /**
+     * Insert the specified arguments into the given format string, writing the result to the given buffer as UTF-8
+     *
+     * @param out    the buffer to write to
+     * @param format the format string
+     * @param args   the arguments to insert
+     * @return the buffer
+     * @throws NullPointerException      if any arguments are null
+     * @throws IllegalArgumentException  if the format string isn't valid
+     * @throws IndexOutOfBoundsException if one of the indexes isn't valid, or if the buffer can't grow to fit the result
+     * @see CompiledFormat#formatTo(ByteBuf, Object...)
+     */
+    public static ByteBuf formatTo(ByteBuf out, String format, Object... args) {
+        Preconditions.checkNotNull(format, "Null format string");
+        return compileCached(format).formatTo(out, args);
+    }
+
+    /**
+     * Create a message that inserts the specified arguments into the given format string when it's converted to a string
+     * <p>The format string isn't parsed until the message is formatted,
+     * so an invalid format string only throws an exception then.</p>
+     *
+     * @param format the format string
+     * @param args   the arguments to insert
+     * @return the lazy message
+     * @throws NullPointerException if the format string or argument array is null
+     */
+    public static LazyMessage lazy(String format, Object... args) {
+        Preconditions.checkNotNull(format, "Null format string");
+        return new LazyMessage(null, format, args);
+    }
+}
@@ -0,0 +1,278 @@
+package net.techcable.accelerated_java.websocket;
+
+import lombok.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.Compressor;
+import net.techcable.accelerated_java.compression.CompressorFactory;
+import net.techcable.accelerated_java.compression.CompressorOptions;
+import net.techcable.accelerated_java.compression.DecompressionLimitException;
+import net.techcable.accelerated_java.compression.DecompressionLimits;
+import net.techcable.accelerated_java.compression.ZLibWrapper;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Compresses and decompresses the messages of a single WebSocket connection with the permessage-deflate extension.
+ * <p>Each message is compressed with a sync flush, and the {@code 00 00 ff ff} tail the flush ends with is removed in place.
+ * Decompressing feeds the tail to the decompressor after the message, without copying the message to append it.
+ * When a side doesn't take over its context, its stream is reset after each message instead of being recreated,
+ * or released entirely if the engine is configured to {@link Builder#releaseIdleStreams(boolean) release idle streams}.
+ * Streams are only created once they're first needed, so a connection that never sends doesn't pay for a compressor.</p>
+ * <p>Like the compressors it uses, an engine must be {@link #close() closed} to free its native memory.</p>
+ */
+@Getter
+public final class PerMessageDeflateEngine {
+    /**
+     * The tail of a sync flush, which is removed from each compressed message
+     */
+    private static final ByteBuf TAIL = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(new byte[]{0, 0, (byte) 0xFF, (byte) 0xFF}));
+    /**
+     * An empty stored block without its length, which is how an empty message is sent once the tail is removed
+     */
+    private static final byte EMPTY_BLOCK = 0;
+
+    private final PerMessageDeflateParameters parameters;
+    private final Role role;
+    @Getter(AccessLevel.NONE)
+    private final CompressorFactory factory;
+    private final CompressorOptions compressorOptions, decompressorOptions;
+    /**
+     * The maximum size of a decompressed message
+     */
+    private final long maxMessageSize;
+    /**
+     * If streams are closed after each message, instead of being reset, when their side doesn't take over the context
+     */
+    private final boolean releaseIdleStreams;
+    @Getter(AccessLevel.NONE)
+    private Compressor compressor, decompressor;
+    @Getter(AccessLevel.NONE)
+    private boolean closed;
+
+    private PerMessageDeflateEngine(Builder builder) {
+        this.parameters = builder.parameters;
+        this.role = builder.role;
+        this.factory = builder.factory;
+        this.maxMessageSize = builder.maxMessageSize;
+        this.releaseIdleStreams = builder.releaseIdleStreams;
+        int outgoingWindowBits = role == Role.SERVER ? parameters.getServerMaxWindowBits() : parameters.getClientMaxWindowBits();
+        int incomingWindowBits = role == Role.SERVER ? parameters.getClientMaxWindowBits() : parameters.getServerMaxWindowBits();
+        checkArgument(outgoingWindowBits >= PerMessageDeflateParameters.MIN_COMPRESS_WINDOW_BITS, "Can't compress with %s window bits", outgoingWindowBits);
+        this.compressorOptions = CompressorOptions.builder()
+                .level(builder.level)
+                .memLevel(builder.memLevel)
+                .windowBits(outgoingWindowBits)
+                .wrapper(ZLibWrapper.NONE)
+                .build();
+        DecompressionLimits limits = maxMessageSize == DecompressionLimits.UNLIMITED ? DecompressionLimits.NONE : DecompressionLimits.builder()
+                // NOTE: One more than the maximum, so we can tell when the message is too large
+                .maxOutputPerCall(maxMessageSize + 1)
+                .build();
+        this.decompressorOptions = CompressorOptions.builder()
+                .windowBits(incomingWindowBits)
+                .wrapper(ZLibWrapper.NONE)
+                .limits(limits)
+                .build();
+    }
+
+    /**
+     * If this side resets its compressor after each message
+     *
+     * @return if this side doesn't take over its context
+     */
+    public boolean isOutgoingNoContextTakeover() {
+        return role == Role.SERVER ? parameters.isServerNoContextTakeover() : parameters.isClientNoContextTakeover();
+    }
+
+    /**
+     * If the peer resets its compressor after each message, so this side can reset its decompressor
+     *
+     * @return if the peer doesn't take over its context
+     */
+    public boolean isIncomingNoContextTakeover() {
+        return role == Role.SERVER ? parameters.isClientNoContextTakeover() : parameters.isServerNoContextTakeover();
+    }
+
+    /**
+     * Compress a whole message, appending the payload to the output buffer
+     *
+     * @param message the message to compress, which is fully consumed
+     * @param out     the buffer to write the payload to, which must be able to grow to fit it
+     * @throws IllegalStateException     if the engine is closed
+     * @throws IndexOutOfBoundsException if the output buffer couldn't grow to fit the payload, which leaves the compressor unusable
+     * @throws NullPointerException      if any arguments are null
+     */
+    public synchronized void compress(ByteBuf message, ByteBuf out) {
+        checkNotNull(message, "Null message");
+        checkNotNull(out, "Null output buffer");
+        checkState(!closed, "Engine is closed");
+        if (compressor == null) compressor = factory.createCompressor(compressorOptions);
+        int start = out.writerIndex();
+        if (compressor.compress(message, out) == Compressor.Status.INSUFFICIENT_OUTPUT) {
+            throw new IndexOutOfBoundsException("Output buffer can't fit the compressed message");
+        }
+        int length = out.writerIndex() - start;
+        if (length == 0) {
+            // NOTE: zlib doesn't repeat a flush with no new input, so we send the empty message ourselves
+            out.writeByte(EMPTY_BLOCK);
+        } else {
+            int tailIndex = out.writerIndex() - TAIL.readableBytes();
+            if (length < TAIL.readableBytes() || !TAIL.equals(out.slice(tailIndex, TAIL.readableBytes()))) {
+                throw new AssertionError("Compressed message didn't end with a sync flush");
+            }
+            out.writerIndex(tailIndex);
+        }
+        if (isOutgoingNoContextTakeover()) {
+            compressor = finishMessage(compressor);
+        }
+    }
+
+    /**
+     * Decompress the payload of a whole message, appending the message to the output buffer
+     * <p>If the message is larger than the {@link #getMaxMessageSize() maximum size},
+     * this throws a {@link DecompressionLimitException} and the connection should be closed with status 1009.
+     * The decompressor writes at most twice the maximum size before that's detected.</p>
+     *
+     * @param payload the compressed payload, which is fully consumed
+     * @param out     the buffer to write the message to, which must be able to grow to fit it
+     * @throws IllegalStateException       if the engine is closed
+     * @throws IndexOutOfBoundsException   if the output buffer couldn't grow to fit the message
+     * @throws InvalidDataException        if the payload is invalid
+     * @throws DecompressionLimitException if the message is larger than the maximum size
+     * @throws NullPointerException        if any arguments are null
+     */
+    public synchronized void decompress(ByteBuf payload, ByteBuf out) throws InvalidDataException {
+        checkNotNull(payload, "Null payload");
+        checkNotNull(out, "Null output buffer");
+        checkState(!closed, "Engine is closed");
+        if (decompressor == null) decompressor = factory.createDecompressor(decompressorOptions);
+        int start = out.writerIndex();
+        Compressor.Status status = decompressor.decompress(payload, out);
+        if (status == Compressor.Status.NEEDS_INPUT) {
+            status = decompressor.decompress(TAIL.duplicate(), out);
+        }
+        switch (status) {
+            case NEEDS_INPUT:
+            case FINISHED:
+                break;
+            case OUTPUT_LIMIT_REACHED:
+                break; // Always exceeds the maximum message size
+            case INSUFFICIENT_OUTPUT:
+                throw new IndexOutOfBoundsException("Output buffer can't fit the decompressed message");
+            default:
+                throw new AssertionError(status);
+        }
+        if (out.writerIndex() - start > maxMessageSize) {
+            throw new DecompressionLimitException("Message was larger than the maximum of " + maxMessageSize + " bytes", DecompressionLimitException.Limit.MESSAGE_SIZE);
+        }
+        // NOTE: A final block ends the stream, so the next message starts a new one
+        if (isIncomingNoContextTakeover() || status == Compressor.Status.FINISHED) {
+            decompressor = finishMessage(decompressor);
+        }
+    }
+
+    private Compressor finishMessage(Compressor stream) {
+        if (releaseIdleStreams) {
+            stream.close();
+            return null;
+        } else {
+            stream.reset();
+            return stream;
+        }
+    }
+
+    /**
+     * Estimate the native memory currently used by this connection's streams
+     * <p>Streams that haven't been created yet, or have been released, don't use any memory.</p>
+     *
+     * @return the estimated memory usage in bytes
+     * @see CompressorOptions#estimateMemoryUsage(boolean)
+     */
+    public synchronized long estimateMemoryUsage() {
+        long usage = 0;
+        if (compressor != null) usage += compressorOptions.estimateMemoryUsage(true);
+        if (decompressor != null) usage += decompressorOptions.estimateMemoryUsage(false);
+        return usage;
+    }
+
+    /**
+     * Close this engine and free its streams
+     */
+    public synchronized void close() {
+        checkState(!closed, "Engine is already closed");
+        closed = true;
+        if (compressor != null) compressor.close();
+        if (decompressor != null) decompressor.close();
+        compressor = null;
+        decompressor = null;
+    }
+
+    public static Builder builder(PerMessageDeflateParameters parameters, Role role) {
+        return new Builder(parameters, role);
+    }
+
+    public enum Role {
+        SERVER,
+        CLIENT;
+    }
+
+    public static final class Builder {
+        private final PerMessageDeflateParameters parameters;
+        private final Role role;
+        private CompressorFactory factory;
+        private int level = CompressorFactory.DEFAULT_COMPRESSION;
+        private int memLevel = CompressorOptions.DEFAULT_MEM_LEVEL;
+        private long maxMessageSize = DecompressionLimits.UNLIMITED;
+        private boolean releaseIdleStreams = false;
+
+        private Builder(PerMessageDeflateParameters parameters, Role role) {
+            this.parameters = checkNotNull(parameters, "Null parameters");
+            this.role = checkNotNull(role, "Null role");
+        }
+
+        /**
+         * Use the given factory to create the streams, which must support raw deflate with the negotiated window bits
+         * <p>Defaults to {@link CompressorFactory#getInstance() the fastest backend}.</p>
+         */
+        public Builder factory(CompressorFactory factory) {
+            this.factory = checkNotNull(factory, "Null factory");
+            return this;
+        }
+
+        public Builder level(int level) {
+            checkArgument(level == CompressorFactory.DEFAULT_COMPRESSION || level >= 0 && level <= CompressorFactory.BEST_COMPRESSION, "Invalid level %s", level);
+            this.level = level;
+            return this;
+        }
+
+        public Builder memLevel(int memLevel) {
+            checkArgument(memLevel >= 1 && memLevel <= CompressorOptions.MAX_MEM_LEVEL, "Invalid memory level %s", memLevel);
+            this.memLevel = memLevel;
+            return this;
+        }
+
+        public Builder maxMessageSize(long maxMessageSize) {
+            checkArgument(maxMessageSize >= 0, "Negative maximum message size %s", maxMessageSize);
+            this.maxMessageSize = maxMessageSize;
+            return this;
+        }
+
+        /**
+         * Close streams after each message, instead of resetting them, when their side doesn't take over the context
+         * <p>This saves the memory of idle connections, at the cost of creating a new stream for every message.</p>
+         */
+        public Builder releaseIdleStreams(boolean releaseIdleStreams) {
+            this.releaseIdleStreams = releaseIdleStreams;
+            return this;
+        }
+
+        public PerMessageDeflateEngine build() {
+            if (factory == null) factory = CompressorFactory.getInstance();
+            return new PerMessageDeflateEngine(this);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package net.techcable.accelerated_java.websocket;
+
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import net.techcable.accelerated_java.compression.CompressorOptions;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * The negotiated parameters of the WebSocket permessage-deflate extension, as specified by RFC 7692.
+ * <p>Without context takeover, each message is compressed independently so the stream can be reset between messages,
+ * trading compression ratio for the memory and CPU of keeping the sliding window.
+ * The window bits limit the size of the sliding window, and so the memory used by both sides.</p>
+ * <p>Zlib can't compress raw deflate data with an 8 bit window, so {@link #negotiate(String, PerMessageDeflateParameters)}
+ * declines offers that would require the server to do so.</p>
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public final class PerMessageDeflateParameters {
+    public static final String EXTENSION_NAME = "permessage-deflate";
+    public static final PerMessageDeflateParameters DEFAULT = builder().build();
+    /**
+     * The smallest window that zlib can compress raw deflate data with
+     */
+    public static final int MIN_COMPRESS_WINDOW_BITS = 9;
+
+    /**
+     * If the server resets its compressor after each message
+     */
+    private final boolean serverNoContextTakeover;
+    /**
+     * If the client resets its compressor after each message
+     */
+    private final boolean clientNoContextTakeover;
+    /**
+     * The base two logarithm of the window size the server compresses with
+     */
+    private final int serverMaxWindowBits;
+    /**
+     * The base two logarithm of the window size the client compresses with
+     */
+    private final int clientMaxWindowBits;
+
+    private PerMessageDeflateParameters(Builder builder) {
+        this.serverNoContextTakeover = builder.serverNoContextTakeover;
+        this.clientNoContextTakeover = builder.clientNoContextTakeover;
+        this.serverMaxWindowBits = builder.serverMaxWindowBits;
+        this.clientMaxWindowBits = builder.clientMaxWindowBits;
+    }
+
+    /**
+     * Format these parameters as an extension in a {@code Sec-WebSocket-Extensions} header, omitting the defaults
+     *
+     * @return the extension
+     */
+    public String toHeaderValue() {
+        StringBuilder builder = new StringBuilder(EXTENSION_NAME);
+        if (serverNoContextTakeover) builder.append("; server_no_context_takeover");
+        if (clientNoContextTakeover) builder.append("; client_no_context_takeover");
+        if (serverMaxWindowBits != CompressorOptions.MAX_WINDOW_BITS) builder.append("; server_max_window_bits=").append(serverMaxWindowBits);
+        if (clientMaxWindowBits != CompressorOptions.MAX_WINDOW_BITS) builder.append("; client_max_window_bits=").append(clientMaxWindowBits);
+        return builder.toString();
+    }
+
+    /**
+     * Parse the parameters the server accepted, from its {@code Sec-WebSocket-Extensions} header
+     * <p>The client must fail the connection if this throws, or if the server accepted parameters it can't use.</p>
+     *
+     * @param header the header
+     * @return the parameters, or empty if the server didn't accept the extension
+     * @throws IllegalArgumentException if the extension's parameters are invalid
+     */
+    public static Optional<PerMessageDeflateParameters> parseResponse(String header) {
+        checkNotNull(header, "Null header");
+        for (String extension : splitQuoted(header, ',')) {
+            Map<String, String> parameters = parseExtension(extension);
+            if (parameters != null) {
+                return Optional.of(fromParameters(parameters, false));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Choose the parameters a server accepts from the client's offers in its {@code Sec-WebSocket-Extensions} header
+     * <p>The first acceptable offer is used, with the server's preferences applied on top of it:
+     * the server can disable context takeover for either side, and can shrink either window,
+     * but can only limit the client's window if the client offered {@code client_max_window_bits}.
+     * Offers that are invalid, or that would require compressing with an 8 bit window, are declined.</p>
+     *
+     * @param header    the client's header
+     * @param preferred the server's preferred parameters
+     * @return the accepted parameters to respond with, or empty if every offer was declined
+     */
+    public static Optional<PerMessageDeflateParameters> negotiate(String header, PerMessageDeflateParameters preferred) {
+        checkNotNull(header, "Null header");
+        checkNotNull(preferred, "Null preferences");
+        for (String extension : splitQuoted(header, ',')) {
+            final Map<String, String> parameters;
+            final PerMessageDeflateParameters offer;
+            try {
+                parameters = parseExtension(extension);
+                if (parameters == null) continue;
+                offer = fromParameters(parameters, true);
+            } catch (IllegalArgumentException e) {
+                continue; // Decline the invalid offer
+            }
+            int serverMaxWindowBits = Math.min(offer.serverMaxWindowBits, preferred.serverMaxWindowBits);
+            if (serverMaxWindowBits < MIN_COMPRESS_WINDOW_BITS) continue;
+            int clientMaxWindowBits = parameters.containsKey("client_max_window_bits")
+                    ? Math.min(offer.clientMaxWindowBits, preferred.clientMaxWindowBits)
+                    : CompressorOptions.MAX_WINDOW_BITS;
+            return Optional.of(builder()
+                    .serverNoContextTakeover(offer.serverNoContextTakeover || preferred.serverNoContextTakeover)
+                    .clientNoContextTakeover(offer.clientNoContextTakeover || preferred.clientNoContextTakeover)
+                    .serverMaxWindowBits(serverMaxWindowBits)
+                    .clientMaxWindowBits(clientMaxWindowBits)
+                    .build());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Parse the parameters of a single extension
+     *
+     * @return the parameters, mapped to their unquoted values or null if they don't have one, or null if it isn't permessage-deflate
+     * @throws IllegalArgumentException if a parameter is repeated
+     */
+    private static Map<String, String> parseExtension(String extension) {
+        List<String> elements = splitQuoted(extension, ';');
+        if (!elements.get(0).equalsIgnoreCase(EXTENSION_NAME)) return null;
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (String element : elements.subList(1, elements.size())) {
+            int equals = element.indexOf('=');
+            String name = (equals < 0 ? element : element.substring(0, equals).trim()).toLowerCase(Locale.ROOT);
+            String value = equals < 0 ? null : unquote(element.substring(equals + 1).trim());
+            checkArgument(!parameters.containsKey(name), "Repeated parameter %s", name);
+            parameters.put(name, value);
+        }
+        return parameters;
+    }
+
+    private static PerMessageDeflateParameters fromParameters(Map<String, String> parameters, boolean offer) {
+        Builder builder = builder();
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            String value = entry.getValue();
+            switch (entry.getKey()) {
+                case "server_no_context_takeover":
+                    checkArgument(value == null, "Unexpected value for server_no_context_takeover: %s", value);
+                    builder.serverNoContextTakeover(true);
+                    break;
+                case "client_no_context_takeover":
+                    checkArgument(value == null, "Unexpected value for client_no_context_takeover: %s", value);
+                    builder.clientNoContextTakeover(true);
+                    break;
+                case "server_max_window_bits":
+                    builder.serverMaxWindowBits(parseWindowBits(value));
+                    break;
+                case "client_max_window_bits":
+                    // NOTE: Clients can offer this without a value, to say they support limiting their window
+                    if (value != null || !offer) builder.clientMaxWindowBits(parseWindowBits(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown parameter " + entry.getKey());
+            }
+        }
+        return builder.build();
+    }
+
+    private static int parseWindowBits(String value) {
+        checkArgument(value != null && value.matches("[1-9][0-9]?"), "Invalid window bits %s", value);
+        return Integer.parseInt(value);
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * Split the string on the separator, ignoring separators in quoted strings and trimming each element
+     */
+    private static List<String> splitQuoted(String s, char separator) {
+        List<String> elements = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                elements.add(s.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        elements.add(s.substring(start).trim());
+        return elements;
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .serverNoContextTakeover(serverNoContextTakeover)
+                .clientNoContextTakeover(clientNoContextTakeover)
+                .serverMaxWindowBits(serverMaxWindowBits)
+                .clientMaxWindowBits(clientMaxWindowBits);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private boolean serverNoContextTakeover = false;
+        private boolean clientNoContextTakeover = false;
+        private int serverMaxWindowBits = CompressorOptions.MAX_WINDOW_BITS;
+        private int clientMaxWindowBits = CompressorOptions.MAX_WINDOW_BITS;
+
+        private Builder() {}
+
+        public Builder serverNoContextTakeover(boolean serverNoContextTakeover) {
+            this.serverNoContextTakeover = serverNoContextTakeover;
+            return this;
+        }
+
+        public Builder clientNoContextTakeover(boolean clientNoContextTakeover) {
+            this.clientNoContextTakeover = clientNoContextTakeover;
+            return this;
+        }
+
+        public Builder serverMaxWindowBits(int serverMaxWindowBits) {
+            checkArgument(serverMaxWindowBits >= CompressorOptions.MIN_WINDOW_BITS && serverMaxWindowBits <= CompressorOptions.MAX_WINDOW_BITS, "Invalid server window bits %s", serverMaxWindowBits);
+            this.serverMaxWindowBits = serverMaxWindowBits;
+            return this;
+        }
+
+        public Builder clientMaxWindowBits(int clientMaxWindowBits) {
+            checkArgument(clientMaxWindowBits >= CompressorOptions.MIN_WINDOW_BITS && clientMaxWindowBits <= CompressorOptions.MAX_WINDOW_BITS, "Invalid client window bits %s", clientMaxWindowBits);
+            this.clientMaxWindowBits = clientMaxWindowBits;
+            return this;
+        }
+
+        public PerMessageDeflateParameters build() {
+            return new PerMessageDeflateParameters(this);
+        }
+    }
+}
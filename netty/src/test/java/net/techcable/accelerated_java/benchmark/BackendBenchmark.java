@@ -0,0 +1,119 @@
+package net.techcable.accelerated_java.benchmark;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.Compressor;
+import net.techcable.accelerated_java.compression.CompressorFactory;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the overhead of each backend's calls into zlib, which matters most for small messages.
+ * <p>The foreign backend needs Java 22, and should be run with {@code -jvmArgsAppend --enable-native-access=ALL-UNNAMED}.
+ * The native backend needs the JNI library in the {@code natives} directory.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BackendBenchmark {
+    @Param({"jdk", "native", "foreign"})
+    public String backend;
+    @Param({"256", "4096", "65536"})
+    public int size;
+
+    private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private CompressorFactory factory;
+    private Compressor compressor;
+    private ByteBuf data, compressed, out;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // NOTE: Each backend runs in its own fork, so we can choose it before the factory is first looked up
+        switch (backend) {
+            case "jdk":
+                factory = CompressorFactory.JDK;
+                break;
+            case "native":
+                Native.LIBRARY.load(new File("natives"));
+                factory = CompressorFactory.getInstance();
+                break;
+            case "foreign":
+                System.setProperty("accelerated_java.foreign", "true");
+                factory = CompressorFactory.getInstance();
+                Preconditions.checkState(factory != CompressorFactory.JDK && !Native.LIBRARY.isLoaded(), "Foreign backend unavailable");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown backend " + backend);
+        }
+        Random random = new Random(42);
+        data = allocator.directBuffer(size);
+        while (data.isWritable()) {
+            // Runs of random bytes, which compress about 10x
+            byte value = (byte) random.nextInt(256);
+            for (int i = Math.min(data.writableBytes(), 10); i > 0; i--) {
+                data.writeByte(value);
+            }
+        }
+        compressed = allocator.directBuffer(size * 2);
+        Compressor oneShot = factory.createCompressor();
+        try {
+            oneShot.compress(data.duplicate(), compressed, true);
+        } finally {
+            oneShot.close();
+        }
+        out = allocator.directBuffer(size * 2);
+        compressor = factory.createCompressor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compressor.close();
+        data.release();
+        compressed.release();
+        out.release();
+    }
+
+    @Benchmark
+    public int compressFlush() {
+        out.clear();
+        compressor.compress(data.duplicate(), out);
+        return out.readableBytes();
+    }
+
+    @Benchmark
+    public int decompressOneShot() throws InvalidDataException {
+        Compressor decompressor = factory.createDecompressor();
+        try {
+            out.clear();
+            decompressor.decompress(compressed.duplicate(), out);
+            return out.readableBytes();
+        } finally {
+            decompressor.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package net.techcable.accelerated_java.benchmark;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.Compressor;
+import net.techcable.accelerated_java.compression.CompressorFactory;
+import net.techcable.accelerated_java.compression.CompressorOptions;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares decompressing output of unknown size into a single growing buffer against a chain of pooled chunks,
+ * and streaming into the chain against decompressing the whole input at once.
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main ChunkedOutputBenchmark -prof gc}
+ * to see the difference in allocation as well as time.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChunkedOutputBenchmark {
+    @Param({"jdk", "native"})
+    public String backend;
+    @Param({"65536", "4194304"})
+    public int size;
+    @Param({"65536"})
+    public int chunkSize;
+
+    private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private CompressorFactory factory;
+    private ByteBuf compressed;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (backend.equals("native")) {
+            Native.LIBRARY.load(new File("natives"));
+            factory = CompressorFactory.getInstance();
+        } else {
+            factory = CompressorFactory.JDK;
+        }
+        Random random = new Random(42);
+        ByteBuf in = allocator.directBuffer(size);
+        byte[] run = new byte[64];
+        while (in.isWritable()) {
+            // Short runs of random bytes, which compress about 10x
+            random.nextBytes(run);
+            int length = Math.min(in.writableBytes(), 640);
+            for (int i = 0; i < length; i++) {
+                in.writeByte(run[i % 64]);
+            }
+        }
+        compressed = allocator.directBuffer();
+        Compressor compressor = factory.createCompressor();
+        try {
+            compressor.compress(in, compressed, true);
+        } finally {
+            compressor.close();
+            in.release();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compressed.release();
+    }
+
+    @Benchmark
+    public int growingBuffer() throws InvalidDataException {
+        Compressor decompressor = factory.createDecompressor();
+        ByteBuf out = allocator.directBuffer(256);
+        try {
+            decompressor.decompress(compressed.duplicate(), out);
+            return out.readableBytes();
+        } finally {
+            out.release();
+            decompressor.close();
+        }
+    }
+
+    @Benchmark
+    public int chunkChain() throws InvalidDataException {
+        Compressor decompressor = factory.createDecompressor();
+        CompositeByteBuf out = allocator.compositeDirectBuffer(Integer.MAX_VALUE);
+        try {
+            decompressor.decompress(compressed.duplicate(), out, chunkSize);
+            return out.readableBytes();
+        } finally {
+            out.release();
+            decompressor.close();
+        }
+    }
+
+    @Benchmark
+    public int wholeInput() throws InvalidDataException {
+        CompositeByteBuf out = allocator.compositeDirectBuffer(Integer.MAX_VALUE);
+        try {
+            factory.decompressWhole(compressed.duplicate(), out, chunkSize, CompressorOptions.DEFAULT);
+            return out.readableBytes();
+        } finally {
+            out.release();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package net.techcable.accelerated_java.benchmark;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import net.techcable.accelerated_java.compression.CompressorFactory;
+import net.techcable.accelerated_java.compression.NumericCodec;
+import net.techcable.accelerated_java.compression.NumericFilter;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares compressing numeric data with and without a {@link NumericFilter}.
+ * <p>The compressed sizes are printed during setup, since the ratio matters as much as the time.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NumericFilterBenchmark {
+    private static final int COUNT = 128 * 1024;
+    private static final NumericFilter UNFILTERED = NumericFilter.of(NumericFilter.Transform.NONE, NumericFilter.Shuffle.NONE, 8, ByteOrder.BIG_ENDIAN);
+
+    @Param({"timestamps", "doubles"})
+    public String data;
+
+    private NumericCodec codec;
+    private NumericFilter filter;
+    private ByteBuf input;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (new File("natives").exists()) Native.LIBRARY.load(new File("natives"));
+        codec = NumericCodec.builder().factory(CompressorFactory.getInstance()).allocator(PooledByteBufAllocator.DEFAULT).build();
+        input = PooledByteBufAllocator.DEFAULT.directBuffer(COUNT * 8);
+        Random random = new Random(42);
+        long time = 1_500_000_000_000L;
+        double value = 100;
+        for (int i = 0; i < COUNT; i++) {
+            if (data.equals("timestamps")) {
+                time += 1000 + (random.nextInt(8) == 0 ? random.nextInt(5) : 0);
+                input.writeLong(time);
+            } else {
+                value += random.nextInt(3) - 1;
+                input.writeDouble(value / 4);
+            }
+        }
+        filter = data.equals("timestamps") ? NumericFilter.TIMESTAMPS : NumericFilter.DOUBLES;
+        ByteBuf plain = codec.compress(input.duplicate(), UNFILTERED), filtered = codec.compress(input.duplicate(), filter);
+        System.out.printf("%n%s: %d bytes, %d unfiltered, %d filtered%n", data, COUNT * 8, plain.readableBytes(), filtered.readableBytes());
+        plain.release();
+        filtered.release();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        input.release();
+        codec.close();
+    }
+
+    @Benchmark
+    public ByteBuf unfiltered() {
+        ByteBuf compressed = codec.compress(input.duplicate(), UNFILTERED);
+        compressed.release();
+        return compressed;
+    }
+
+    @Benchmark
+    public ByteBuf filtered() {
+        ByteBuf compressed = codec.compress(input.duplicate(), filter);
+        compressed.release();
+        return compressed;
+    }
+}
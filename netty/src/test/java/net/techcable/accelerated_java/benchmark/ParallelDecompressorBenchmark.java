@@ -0,0 +1,123 @@
+package net.techcable.accelerated_java.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine.Status;
+import net.techcable.accelerated_java.compression.Compressor;
+import net.techcable.accelerated_java.compression.CompressorFactory;
+import net.techcable.accelerated_java.compression.CompressorOptions;
+import net.techcable.accelerated_java.compression.ParallelDecompressor;
+import net.techcable.accelerated_java.compression.ZLibWrapper;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares decompressing a large gzip file in order with a {@link Compressor} and in parallel with a {@link ParallelDecompressor}.
+ * <p>The output is discarded, so only the decompression is measured.
+ * The parallel decompressor only scales with the number of workers up to the number of processors.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelDecompressorBenchmark {
+    private static final int SIZE = 64 * 1024 * 1024;
+    private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    };
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    private ByteBuf compressed, out;
+    private Compressor decompressor;
+    private ParallelDecompressor parallel;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if (new File("natives").exists()) Native.LIBRARY.load(new File("natives"));
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(SIZE);
+        while (builder.length() < SIZE) {
+            builder.append("2026-10-19T12:").append(random.nextInt(60)).append(" INFO [worker-").append(random.nextInt(16))
+                    .append("] GET /api/items/").append(random.nextInt(100000)).append(" took=").append(random.nextInt(500)).append("ms\n");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        compressed = Unpooled.directBuffer().writeBytes(bytes.toByteArray());
+        out = Unpooled.directBuffer(1024 * 1024);
+        decompressor = CompressorFactory.getInstance().createDecompressor(CompressorOptions.builder().wrapper(ZLibWrapper.GZIP).build());
+        parallel = ParallelDecompressor.builder().workers(workers).build();
+        System.out.printf("%n%d byte log compressed to %d bytes with %d processors%n", SIZE, compressed.readableBytes(), Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%d chunks decoded in parallel, %d in order%n", parallel.getParallelChunks(), parallel.getSequentialChunks());
+        compressed.release();
+        out.release();
+        decompressor.close();
+        parallel.close();
+    }
+
+    @Benchmark
+    public long sequential() throws InvalidDataException {
+        decompressor.reset();
+        ByteBuf in = compressed.duplicate();
+        long total = 0;
+        Status status;
+        do {
+            out.clear();
+            status = decompressor.decompress(in, out);
+            total += out.readableBytes();
+        } while (status != Status.FINISHED);
+        return total;
+    }
+
+    @Benchmark
+    public long parallel() throws InvalidDataException, IOException {
+        return parallel.decompress(compressed.duplicate(), DISCARD);
+    }
+}
@@ -0,0 +1,117 @@
+package net.techcable.accelerated_java.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import net.techcable.accelerated_java.compression.CompressionPipeline;
+import net.techcable.accelerated_java.compression.Compressor;
+import net.techcable.accelerated_java.compression.CompressorFactory;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares producing, compressing and writing a file on one thread against a {@link CompressionPipeline}.
+ * <p>The producer does some work for every write, so there's something for the other stages to overlap with.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final int SIZE = 16 * 1024 * 1024, WRITE_SIZE = 4096;
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private CompressorFactory factory;
+    private Path file;
+    private FileChannel channel;
+    private ByteBuf write;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if (new File("natives").exists()) Native.LIBRARY.load(new File("natives"));
+        factory = CompressorFactory.getInstance();
+        file = Files.createTempFile("pipeline", ".z");
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        write = allocator.directBuffer(WRITE_SIZE);
+        random = new Random(42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        write.release();
+        channel.close();
+        Files.delete(file);
+    }
+
+    private ByteBuf produce() {
+        // Records with a few random fields, which compress about 3x
+        write.clear();
+        while (write.writableBytes() >= 16) {
+            write.writeInt(random.nextInt(1000)).writeInt(0x7B226964).writeLong(random.nextInt(16));
+        }
+        return write;
+    }
+
+    @Benchmark
+    public long sequential() throws IOException {
+        channel.truncate(0).position(0);
+        ByteBuf out = allocator.directBuffer(WRITE_SIZE);
+        Compressor compressor = factory.createCompressor();
+        try {
+            for (int written = 0; written < SIZE; written += WRITE_SIZE) {
+                compressor.compress(produce(), out, written + WRITE_SIZE >= SIZE);
+                while (out.isReadable()) {
+                    out.readBytes(channel, out.readableBytes());
+                }
+                out.clear();
+            }
+        } finally {
+            compressor.close();
+            out.release();
+        }
+        return channel.position();
+    }
+
+    @Benchmark
+    public long pipelined() throws IOException {
+        channel.truncate(0).position(0);
+        CompressionPipeline pipeline = CompressionPipeline.builder().channel(channel).factory(factory).workers(workers).build();
+        try {
+            for (int written = 0; written < SIZE; written += WRITE_SIZE) {
+                pipeline.write(produce());
+            }
+        } finally {
+            pipeline.close();
+        }
+        return channel.position();
+    }
+}
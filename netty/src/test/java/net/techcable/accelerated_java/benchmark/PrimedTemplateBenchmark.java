@@ -0,0 +1,141 @@
+package net.techcable.accelerated_java.benchmark;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.Compressor;
+import net.techcable.accelerated_java.compression.CompressorFactory;
+import net.techcable.accelerated_java.compression.CompressorOptions;
+import net.techcable.accelerated_java.compression.PrimedTemplate;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares ways of compressing messages that share a long header:
+ * compressing the header again after a reset, using it as a preset dictionary, and forking a {@link PrimedTemplate}.
+ * <p>The compressed sizes are printed during setup. The reset stream has to include the header,
+ * while the other two only write the message.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PrimedTemplateBenchmark {
+    private byte[] header;
+    private ByteBuf message, withHeader, out, decompressed;
+    private Compressor compressor, decompressor, dictionaryCompressor, dictionaryDecompressor;
+    private PrimedTemplate template;
+    private ByteBuf resetCompressed, dictionaryCompressed, forkCompressed;
+
+    @Setup(Level.Trial)
+    public void setup() throws InvalidDataException {
+        if (new File("natives").exists()) Native.LIBRARY.load(new File("natives"));
+        CompressorFactory factory = CompressorFactory.getInstance();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) builder.append("X-Header-").append(i).append(": ").append(i * 31 % 97).append("\r\n");
+        header = builder.toString().getBytes(StandardCharsets.UTF_8);
+        message = Unpooled.directBuffer().writeBytes("X-Header-7: 12\r\n\r\n{\"id\": 42, \"status\": \"ok\"}".getBytes(StandardCharsets.UTF_8));
+        withHeader = Unpooled.directBuffer().writeBytes(header).writeBytes(message.duplicate());
+        out = Unpooled.directBuffer(header.length);
+        decompressed = Unpooled.directBuffer(header.length * 2);
+        CompressorOptions dictionary = CompressorOptions.builder().dictionary(header).build();
+        compressor = factory.createCompressor();
+        decompressor = factory.createDecompressor();
+        dictionaryCompressor = factory.createCompressor(dictionary);
+        dictionaryDecompressor = factory.createDecompressor(dictionary);
+        template = PrimedTemplate.builder().factory(factory).prefix(header).build();
+        resetCompressed = reset().copy();
+        dictionaryCompressed = dictionary().copy();
+        forkCompressed = fork().copy();
+        System.out.printf("%n%s: %d byte header and %d byte message: %d bytes after a reset, %d with a dictionary, %d forked%n",
+                template.isCopying() ? "Copying" : "Emulated", header.length, message.readableBytes(),
+                resetCompressed.readableBytes(), dictionaryCompressed.readableBytes(), forkCompressed.readableBytes());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        compressor.close();
+        decompressor.close();
+        dictionaryCompressor.close();
+        dictionaryDecompressor.close();
+        template.close();
+        for (ByteBuf buf : new ByteBuf[] {message, withHeader, out, decompressed, resetCompressed, dictionaryCompressed, forkCompressed}) {
+            buf.release();
+        }
+    }
+
+    @Benchmark
+    public ByteBuf reset() {
+        compressor.reset();
+        out.clear();
+        compressor.compress(withHeader.duplicate(), out, true);
+        return out;
+    }
+
+    @Benchmark
+    public ByteBuf dictionary() {
+        dictionaryCompressor.reset();
+        out.clear();
+        dictionaryCompressor.compress(message.duplicate(), out, true);
+        return out;
+    }
+
+    @Benchmark
+    public ByteBuf fork() {
+        Compressor fork = template.forkCompressor();
+        try {
+            out.clear();
+            fork.compress(message.duplicate(), out, true);
+            return out;
+        } finally {
+            fork.close();
+        }
+    }
+
+    @Benchmark
+    public ByteBuf resetDecompress() throws InvalidDataException {
+        decompressor.reset();
+        decompressed.clear();
+        decompressor.decompress(resetCompressed.duplicate(), decompressed);
+        return decompressed;
+    }
+
+    @Benchmark
+    public ByteBuf dictionaryDecompress() throws InvalidDataException {
+        dictionaryDecompressor.reset();
+        decompressed.clear();
+        dictionaryDecompressor.decompress(dictionaryCompressed.duplicate(), decompressed);
+        return decompressed;
+    }
+
+    @Benchmark
+    public ByteBuf forkDecompress() throws InvalidDataException {
+        Compressor fork = template.forkDecompressor();
+        try {
+            decompressed.clear();
+            fork.decompress(forkCompressed.duplicate(), decompressed);
+            return decompressed;
+        } finally {
+            fork.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package net.techcable.accelerated_java.benchmark;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressionEngine;
+import net.techcable.accelerated_java.compression.CompressionEngineFactory;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of calls that are starved of input, like a stream decompressing packets as they arrive,
+ * where most calls run out of input and some can't make any progress at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StarvedStreamBenchmark {
+    @Param({"jdk", "native"})
+    public String backend;
+    @Param({"16", "256"})
+    public int sliceSize;
+
+    private CompressionEngine decompressor;
+    private ByteBuffer compressed, out;
+    private final ByteBuffer empty = ByteBuffer.allocateDirect(0);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CompressionEngineFactory factory;
+        if (backend.equals("native")) {
+            Native.LIBRARY.load(new File("natives"));
+            factory = CompressionEngineFactory.getInstance();
+        } else {
+            factory = CompressionEngineFactory.JDK;
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 64 * 1024; i++) {
+            text.append("{\"id\":").append(i).append(",\"type\":\"update\",\"position\":[").append(i % 7).append(",64,").append(i % 13).append("]}\n");
+        }
+        ByteBuffer in = ByteBuffer.allocateDirect(text.length());
+        in.put(text.toString().getBytes(StandardCharsets.UTF_8)).flip();
+        compressed = ByteBuffer.allocateDirect(in.capacity());
+        out = ByteBuffer.allocateDirect(in.capacity());
+        CompressionEngine compressor = factory.createCompressor();
+        try {
+            compressor.compress(in, compressed, true);
+            compressed.flip();
+        } finally {
+            compressor.close();
+        }
+        decompressor = factory.createDecompressor();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        decompressor.close();
+    }
+
+    /**
+     * Decompress the stream a slice at a time, so every call runs out of input
+     */
+    @Benchmark
+    public int trickle() throws InvalidDataException {
+        decompressor.reset();
+        out.clear();
+        ByteBuffer in = compressed.duplicate();
+        int end = in.limit();
+        CompressionEngine.Status status;
+        do {
+            in.limit(Math.min(in.position() + sliceSize, end));
+            status = decompressor.decompress(in, out);
+        } while (status == CompressionEngine.Status.NEEDS_INPUT && in.position() < end);
+        return out.position();
+    }
+
+    /**
+     * Call the decompressor without any input, which can't make progress
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public CompressionEngine.Status noProgress() throws InvalidDataException {
+        out.clear();
+        return decompressor.decompress(empty.duplicate(), out);
+    }
+}
@@ -0,0 +1,872 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.io.ByteStreams;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+import net.techcable.accelerated_java.compression.metrics.CompressorStatistics;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+import net.techcable.accelerated_java.compression.metrics.SizeBucket;
+
+import org.junit.Assert;
+
+import static net.techcable.accelerated_java.utils.SimpleFormatter.*;
+
+public abstract class AbstractCompressorTest {
+    private static final Random RANDOM = new Random();
+
+    protected void testRandomHeapBufferCompression(CompressorFactory factory) throws InvalidDataException {
+        testCompression(factory, Allocator.HEAP, true);
+    }
+
+    protected void testRepeatingHeapBufferCompression(CompressorFactory factory) throws InvalidDataException {
+        testCompression(factory, Allocator.HEAP, false);
+    }
+
+    protected void testRandomDirectBufferCompression(CompressorFactory factory) throws InvalidDataException {
+        testCompression(factory, Allocator.DIRECT, true);
+    }
+
+    protected void testRepeatingDirectBufferCompression(CompressorFactory factory) throws InvalidDataException {
+        testCompression(factory, Allocator.DIRECT, false);
+    }
+
+    protected void testInsufficientOutputHeapBuffer(CompressorFactory factory) {
+        testInsufficientOutput(factory, Allocator.HEAP);
+    }
+
+    protected void testInsufficientOutputDirectBuffer(CompressorFactory factory) {
+        testInsufficientOutput(factory, Allocator.DIRECT);
+    }
+
+    private void testInsufficientOutput(CompressorFactory factory, Allocator allocator) {
+        ByteBuf in = allocator.allocate(2048);
+        ByteBuf out = allocator.allocate(15, 15);
+        Compressor compressor = factory.createCompressor();
+        try {
+            fillRandom(in);
+            Compressor.Status status = compressor.compress(in, out, true);
+            Assert.assertEquals("Somehow managed to compress 2048 random bytes into 15 output!", Compressor.Status.INSUFFICIENT_OUTPUT, status);
+        } finally {
+            in.release();
+            out.release();
+            compressor.close();
+        }
+    }
+
+    protected void testCompressionEqual(CompressorFactory factory, boolean random) {
+        Compressor heapCompressor = factory.createCompressor();
+        Compressor directCompressor = factory.createCompressor();
+        ByteBuf heapIn = Unpooled.buffer(2048);
+        ByteBuf heapOut = Unpooled.buffer(2048);
+        ByteBuf directIn = Unpooled.directBuffer(2048);
+        ByteBuf directOut = Unpooled.directBuffer(2048);
+        try {
+            if (random) {
+                fillRandom(heapIn);
+            } else {
+                fillRepeating(heapIn);
+            }
+            heapIn.getBytes(0, directIn);
+            Compressor.Status heapStatus = heapCompressor.compress(heapIn, heapOut, true);
+            Compressor.Status directStatus = directCompressor.compress(directIn, directOut, true);
+            Assert.assertEquals("Heap buffer compression not finished!", Compressor.Status.FINISHED, heapStatus);
+            Assert.assertEquals("Direct buffer compression not finished!", Compressor.Status.FINISHED, directStatus);
+            Assert.assertEquals(format("Compressed {} bytes in heap but compressed {} for direct.", heapOut.readableBytes(), directOut.readableBytes()), heapOut.readableBytes(), heapOut.readableBytes());
+            for (int index = 0; index < heapIn.writerIndex(); index++) {
+                int heap = heapOut.getByte(index);
+                int direct = directOut.getByte(index);
+                Assert.assertEquals(format("Got from heap buffer {} at index {}, but got {} from direct", heap, index, direct), heap, direct);
+            }
+        } finally {
+            heapIn.release();
+            heapOut.release();
+            directIn.release();
+            directOut.release();
+            heapCompressor.close();
+            directCompressor.close();
+        }
+    }
+
+    protected void testMetrics(CompressorFactory factory) throws InvalidDataException {
+        CompressionMetrics metrics = CompressionMetrics.create("test");
+        factory = factory.withMetrics(metrics);
+        Assert.assertSame(metrics, factory.getMetrics().get());
+        Compressor compressor = factory.createCompressor();
+        Compressor decompressor = factory.createDecompressor();
+        ByteBuf in = Allocator.HEAP.allocate(2048);
+        ByteBuf out = Allocator.DIRECT.allocate(2048);
+        ByteBuf newData = Allocator.HEAP.allocate(2048);
+        try {
+            fillRepeating(in);
+            Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(in, out, true));
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(out, newData));
+            CompressorStatistics statistics = compressor.getStatistics().get();
+            Assert.assertEquals(1, statistics.getCalls());
+            Assert.assertEquals(2048, statistics.getBytesIn());
+            Assert.assertEquals(out.writerIndex(), statistics.getBytesOut());
+            Assert.assertTrue("No native calls recorded", statistics.getJniCalls() > 0);
+            if (compressor.prefersBuffers()) {
+                // The JDK backend writes to direct buffers in place on Java 11 and later
+                Assert.assertEquals(0, statistics.getBounceCopyBytes());
+            } else {
+                Assert.assertTrue("No bounce copies recorded", statistics.getBounceCopyBytes() > 0);
+            }
+            Assert.assertEquals(2048, metrics.getCompressBytesIn());
+            Assert.assertEquals(out.writerIndex(), metrics.getDecompressBytesIn());
+            Assert.assertEquals(2048, metrics.getDecompressBytesOut());
+            Assert.assertEquals(2, metrics.getStreamsCreated());
+            Assert.assertEquals(1, metrics.getLatency(Operation.COMPRESS, SizeBucket.SMALL).getCount());
+            Assert.assertEquals(1, metrics.getLatency(Operation.DECOMPRESS, SizeBucket.SMALL).getCount());
+        } finally {
+            in.release();
+            out.release();
+            newData.release();
+            compressor.close();
+            decompressor.close();
+        }
+        Assert.assertEquals(2, metrics.getStreamsClosed());
+    }
+
+    protected void testLevelChange(CompressorFactory factory) throws InvalidDataException {
+        Compressor compressor = factory.createCompressor(CompressorFactory.BEST_SPEED);
+        Compressor decompressor = factory.createDecompressor();
+        ByteBuf in = Allocator.HEAP.allocate(4096);
+        ByteBuf out = Allocator.DIRECT.allocate(4096);
+        ByteBuf newData = Allocator.HEAP.allocate(4096);
+        try {
+            fillRepeating(in);
+            ByteBuf firstHalf = in.readSlice(2048);
+            Assert.assertEquals(Compressor.Status.OK, compressor.compress(firstHalf, out));
+            compressor.setLevel(CompressorFactory.BEST_COMPRESSION);
+            compressor.setStrategy(CompressionStrategy.HUFFMAN_ONLY);
+            Assert.assertEquals(CompressorFactory.BEST_COMPRESSION, compressor.getLevel());
+            Assert.assertEquals(CompressionStrategy.HUFFMAN_ONLY, compressor.getStrategy());
+            Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(in, out, true));
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(out, newData));
+            in.readerIndex(0);
+            Assert.assertEquals(in, newData);
+        } finally {
+            in.release();
+            out.release();
+            newData.release();
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testGovernor(CompressorFactory factory) {
+        AtomicInteger queueDepth = new AtomicInteger(100);
+        AdaptiveLevelGovernor governor = AdaptiveLevelGovernor.builder()
+                .levels(3, 6)
+                .evaluationInterval(1, TimeUnit.NANOSECONDS)
+                .hysteresis(2)
+                .queueDepth(queueDepth::get, 50, 10)
+                .build();
+        Compressor compressor = governor.wrap(factory.createCompressor());
+        ByteBuf in = Allocator.HEAP.allocate(64);
+        ByteBuf out = Allocator.HEAP.allocate(64);
+        try {
+            Assert.assertEquals(6, governor.getLevel());
+            for (int i = 0; i < 10; i++) {
+                in.clear().writeZero(64);
+                compressor.compress(in, out.clear());
+            }
+            Assert.assertEquals(3, governor.getLevel());
+            Assert.assertEquals(3, compressor.getLevel());
+            Assert.assertEquals(3, governor.getLevelDecreases());
+            queueDepth.set(0);
+            for (int i = 0; i < 4; i++) {
+                in.clear().writeZero(64);
+                compressor.compress(in, out.clear());
+            }
+            Assert.assertEquals(5, governor.getLevel());
+        } finally {
+            in.release();
+            out.release();
+            compressor.close();
+        }
+    }
+
+    protected void testChunkedOutput(CompressorFactory factory) throws InvalidDataException {
+        Compressor compressor = factory.createCompressor();
+        Compressor decompressor = factory.createDecompressor();
+        ByteBuf in = Allocator.HEAP.allocate(256 * 1024);
+        CompositeByteBuf out = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        CompositeByteBuf newData = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        try {
+            fillRepeating(in);
+            Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(in, out, true, 4096));
+            Assert.assertTrue("Compressed into a single chunk", out.numComponents() > 1);
+            for (int i = 0; i < out.numComponents() - 1; i++) {
+                Assert.assertEquals("Chunk wasn't filled", 4096, out.internalComponent(i).readableBytes());
+            }
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(out, newData, 8192));
+            Assert.assertEquals(256 * 1024 / 8192, newData.numComponents());
+            in.readerIndex(0);
+            Assert.assertEquals(in, newData);
+            // Many small calls fill the last chunk before starting another, so more than 16 chunks never need to be consolidated
+            CompositeByteBuf pieces = Unpooled.compositeBuffer(128);
+            try {
+                decompressor.reset();
+                out.readerIndex(0);
+                while (out.isReadable()) {
+                    decompressor.decompress(out.readSlice(Math.min(16, out.readableBytes())), pieces, 4096);
+                }
+                Assert.assertEquals(256 * 1024 / 4096, pieces.numComponents());
+                for (int i = 0; i < pieces.numComponents(); i++) {
+                    Assert.assertEquals("Chunk wasn't filled", 4096, pieces.internalComponent(i).readableBytes());
+                }
+                Assert.assertEquals(in, pieces);
+            } finally {
+                pieces.release();
+            }
+        } finally {
+            in.release();
+            out.release();
+            newData.release();
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testReset(CompressorFactory factory) throws InvalidDataException {
+        Compressor compressor = factory.createCompressor();
+        Compressor decompressor = factory.createDecompressor();
+        ByteBuf in = Allocator.HEAP.allocate(2048);
+        ByteBuf first = Allocator.DIRECT.allocate(2048);
+        ByteBuf second = Allocator.DIRECT.allocate(2048);
+        ByteBuf newData = Allocator.HEAP.allocate(2048);
+        try {
+            fillRepeating(in);
+            Assert.assertEquals(Compressor.Status.OK, compressor.compress(in.duplicate(), first));
+            compressor.reset();
+            Assert.assertEquals(Compressor.State.COMPRESSING, compressor.getState());
+            Assert.assertEquals(Compressor.Status.OK, compressor.compress(in.duplicate(), second));
+            Assert.assertEquals("Reset compressor remembered the first message", first, second);
+            Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(Unpooled.EMPTY_BUFFER, second, true));
+            compressor.reset();
+            Assert.assertEquals(Compressor.State.COMPRESSING, compressor.getState());
+            Assert.assertEquals(Compressor.Status.NEEDS_INPUT, decompressor.decompress(first, newData));
+            Assert.assertEquals(in, newData);
+            decompressor.reset();
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(second, newData.clear()));
+            Assert.assertEquals(in, newData);
+            decompressor.reset();
+            Assert.assertEquals(Compressor.State.DECOMPRESSING, decompressor.getState());
+        } finally {
+            in.release();
+            first.release();
+            second.release();
+            newData.release();
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testDispatch(CompressorFactory accelerated) throws InvalidDataException {
+        Map<String, Long> thresholds = new HashMap<>();
+        for (Operation operation : Operation.values()) {
+            for (BufferKind kind : BufferKind.values()) {
+                thresholds.put(operation.name().toLowerCase(Locale.ROOT) + "." + kind.name().toLowerCase(Locale.ROOT), 4096L);
+            }
+        }
+        thresholds.put("compress.direct", 0L);
+        thresholds.put("decompress.heap", Long.MAX_VALUE);
+        CompressionMetrics metrics = CompressionMetrics.create("test");
+        CompressorFactory factory = DispatchingCompressorFactory.create(accelerated, DispatchProfile.of(accelerated, thresholds)).withMetrics(metrics);
+        Assert.assertEquals(4096L, (long) metrics.getRoutingThresholds().get("compress.heap"));
+        Compressor heapCompressor = factory.createCompressor(CompressorFactory.BEST_SPEED);
+        Compressor directCompressor = factory.createCompressor(CompressorFactory.BEST_SPEED);
+        Compressor decompressor = factory.createDecompressor();
+        ByteBuf heapIn = Allocator.HEAP.allocate(2048);
+        ByteBuf directIn = Allocator.DIRECT.allocate(2048);
+        ByteBuf heapOut = Allocator.HEAP.allocate(2048);
+        ByteBuf directOut = Allocator.HEAP.allocate(2048);
+        ByteBuf newData = Allocator.HEAP.allocate(2048);
+        try {
+            Assert.assertEquals(CompressorFactory.BEST_SPEED, heapCompressor.getLevel());
+            heapCompressor.setLevel(CompressorFactory.BEST_COMPRESSION);
+            fillRepeating(heapIn);
+            fillRepeating(directIn);
+            Assert.assertEquals(Compressor.Status.FINISHED, heapCompressor.compress(heapIn.duplicate(), heapOut, true));
+            Assert.assertEquals(CompressorFactory.BEST_COMPRESSION, heapCompressor.getLevel());
+            Assert.assertEquals(Compressor.Status.FINISHED, directCompressor.compress(directIn.duplicate(), directOut, true));
+            Assert.assertEquals(1, metrics.getRoutes(Operation.COMPRESS, BufferKind.HEAP, false));
+            Assert.assertEquals(1, metrics.getRoutes(Operation.COMPRESS, BufferKind.DIRECT, true));
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(directOut, newData));
+            Assert.assertEquals(directIn, newData);
+            Assert.assertEquals(1, metrics.getRoutes(Operation.DECOMPRESS, BufferKind.HEAP, false));
+            decompressor.reset();
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(heapOut, newData.clear()));
+            Assert.assertEquals(heapIn, newData);
+        } finally {
+            heapIn.release();
+            directIn.release();
+            heapOut.release();
+            directOut.release();
+            newData.release();
+            heapCompressor.close();
+            directCompressor.close();
+            decompressor.close();
+        }
+        Assert.assertEquals(Compressor.State.CLOSED, heapCompressor.getState());
+    }
+
+    protected void testDecompressionLimits(CompressorFactory factory) throws InvalidDataException {
+        testDecompressionLimits(factory, Allocator.HEAP);
+        testDecompressionLimits(factory, Allocator.DIRECT);
+    }
+
+    private void testDecompressionLimits(CompressorFactory factory, Allocator allocator) throws InvalidDataException {
+        int size = 1024 * 1024;
+        ByteBuf bomb = allocator.allocate(1024);
+        Compressor compressor = factory.createCompressor();
+        try {
+            ByteBuf in = allocator.allocate(size);
+            try {
+                in.writeZero(size);
+                Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(in, bomb, true));
+            } finally {
+                in.release();
+            }
+            testLimitExceeded(factory, bomb.duplicate(), allocator, DecompressionLimits.builder().maxOutput(100_000).build(), DecompressionLimitException.Limit.TOTAL_OUTPUT, 100_001);
+            testLimitExceeded(factory, bomb.duplicate(), allocator, DecompressionLimits.builder().maxExpansionRatio(10, 0).build(), DecompressionLimitException.Limit.EXPANSION_RATIO, bomb.readableBytes() * 10 + 1);
+            Compressor decompressor = factory.createDecompressor(CompressorOptions.builder().limits(DecompressionLimits.builder().maxOutputPerCall(10_000).build()).build());
+            ByteBuf out = allocator.allocate(1024);
+            try {
+                Compressor.Status status;
+                do {
+                    int oldWriterIndex = out.writerIndex();
+                    status = decompressor.decompress(bomb, out);
+                    Assert.assertTrue(format("Decompressed {} bytes in one call", out.writerIndex() - oldWriterIndex), out.writerIndex() - oldWriterIndex <= 10_000);
+                } while (status == Compressor.Status.OUTPUT_LIMIT_REACHED);
+                Assert.assertEquals(Compressor.Status.FINISHED, status);
+                Assert.assertEquals(size, out.readableBytes());
+            } finally {
+                out.release();
+                decompressor.close();
+            }
+        } finally {
+            bomb.release();
+            compressor.close();
+        }
+    }
+
+    private void testLimitExceeded(CompressorFactory factory, ByteBuf in, Allocator allocator, DecompressionLimits limits, DecompressionLimitException.Limit expectedLimit, int maxWritten) throws InvalidDataException {
+        Compressor decompressor = factory.createDecompressor(CompressorOptions.builder().limits(limits).build());
+        ByteBuf out = allocator.allocate(1024);
+        try {
+            decompressor.decompress(in, out);
+            Assert.fail("Didn't exceed " + expectedLimit);
+        } catch (DecompressionLimitException e) {
+            Assert.assertEquals(expectedLimit, e.getLimit());
+            Assert.assertTrue(format("Wrote {} bytes past the limit of {}", out.writerIndex(), maxWritten), out.writerIndex() <= maxWritten);
+        } finally {
+            out.release();
+            decompressor.close();
+        }
+    }
+
+    protected void testWholeInput(CompressorFactory factory) throws InvalidDataException {
+        for (ZLibWrapper wrapper : ZLibWrapper.values()) {
+            if (wrapper == ZLibWrapper.GZIP && !supportsGzip(factory)) continue;
+            testWholeInput(factory, CompressorOptions.builder().wrapper(wrapper).build());
+        }
+    }
+
+    private void testWholeInput(CompressorFactory factory, CompressorOptions options) throws InvalidDataException {
+        int size = 256 * 1024;
+        Compressor compressor = factory.createCompressor(options);
+        ByteBuf in = Allocator.HEAP.allocate(size);
+        ByteBuf compressed = Allocator.DIRECT.allocate(size);
+        CompositeByteBuf chunks = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        ByteBuf small = Allocator.DIRECT.allocate(1024, 1024);
+        ByteBuf exact = Allocator.DIRECT.allocate(size, size);
+        ByteBuf heapInput = null;
+        try {
+            fillRepeating(in);
+            Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(in, compressed, true));
+            in.readerIndex(0);
+            int compressedLength = compressed.readableBytes();
+            ByteBuf input = compressed.duplicate();
+            factory.decompressWhole(input, chunks, 8192, options);
+            Assert.assertFalse(input.isReadable());
+            Assert.assertEquals(size / 8192, chunks.numComponents());
+            Assert.assertEquals(in, chunks);
+            // When the output doesn't fit nothing is consumed or written, so it can be tried again with more room
+            input = compressed.duplicate();
+            Assert.assertEquals(Compressor.Status.INSUFFICIENT_OUTPUT, factory.decompressWhole(input, small, options));
+            Assert.assertEquals(compressedLength, input.readableBytes());
+            Assert.assertEquals(0, small.writerIndex());
+            heapInput = Unpooled.copiedBuffer(compressed);
+            Assert.assertEquals(Compressor.Status.FINISHED, factory.decompressWhole(heapInput, exact, options));
+            Assert.assertFalse(heapInput.isReadable());
+            Assert.assertEquals(in, exact);
+            try {
+                factory.decompressWhole(compressed.slice(0, compressedLength - 1), Unpooled.compositeBuffer(Integer.MAX_VALUE), 8192, options);
+                Assert.fail("Decompressed truncated input");
+            } catch (InvalidDataException e) {
+                // Expected
+            }
+        } finally {
+            in.release();
+            compressed.release();
+            chunks.release();
+            small.release();
+            exact.release();
+            if (heapInput != null) heapInput.release();
+            compressor.close();
+        }
+    }
+
+    protected void testFlushModes(CompressorFactory factory) throws InvalidDataException {
+        byte[][] messages = new byte[200][];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = ("{\"id\":" + i + ",\"type\":\"update\",\"position\":[" + i % 7 + ",64," + i % 13 + "]}").getBytes(StandardCharsets.UTF_8);
+        }
+        ByteBuf syncEach = compressMessages(factory, messages, FlushMode.SYNC, FlushMode.SYNC);
+        ByteBuf flushedOnce = compressMessages(factory, messages, FlushMode.NONE, FlushMode.SYNC);
+        ByteBuf fullFlush = compressMessages(factory, messages, FlushMode.NONE, FlushMode.FULL);
+        ByteBuf partialFlush = compressMessages(factory, messages, FlushMode.NONE, FlushMode.PARTIAL);
+        try {
+            Assert.assertTrue(format("{} bytes without flushing, {} with", flushedOnce.readableBytes(), syncEach.readableBytes()), flushedOnce.readableBytes() * 2 < syncEach.readableBytes());
+        } finally {
+            syncEach.release();
+            flushedOnce.release();
+            fullFlush.release();
+            partialFlush.release();
+        }
+    }
+
+    /**
+     * Compress the messages with one flush mode, and then flush the last of them with another,
+     * checking that everything written so far can be decompressed.
+     */
+    private static ByteBuf compressMessages(CompressorFactory factory, byte[][] messages, FlushMode eachFlush, FlushMode lastFlush) throws InvalidDataException {
+        Compressor compressor = factory.createCompressor();
+        Compressor decompressor = factory.createDecompressor();
+        ByteBuf expected = Unpooled.buffer();
+        ByteBuf compressed = Unpooled.directBuffer();
+        ByteBuf decompressed = Unpooled.buffer();
+        try {
+            for (int i = 0; i < messages.length; i++) {
+                expected.writeBytes(messages[i]);
+                FlushMode flush = i == messages.length - 1 ? lastFlush : eachFlush;
+                Assert.assertEquals(Compressor.Status.OK, compressor.compress(Unpooled.wrappedBuffer(messages[i]), compressed, flush));
+                if (flush != FlushMode.NONE) {
+                    decompressor.decompress(compressed.duplicate(), decompressed.clear());
+                    decompressor.reset();
+                    Assert.assertEquals(expected, decompressed);
+                }
+            }
+            Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(Unpooled.EMPTY_BUFFER, compressed, FlushMode.FINISH));
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(compressed.duplicate(), decompressed.clear()));
+            Assert.assertEquals(expected, decompressed);
+            return compressed.retain();
+        } finally {
+            expected.release();
+            compressed.release();
+            decompressed.release();
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testAutoFlush(CompressorFactory factory) throws InvalidDataException, InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        BlockingQueue<ByteBuf> flushed = new LinkedBlockingQueue<>();
+        ByteBuf expected = Unpooled.buffer();
+        CompositeByteBuf compressed = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        ByteBuf decompressed = Unpooled.buffer();
+        Compressor decompressor = factory.createDecompressor();
+        try (AutoFlushCompressor compressor = AutoFlushCompressor.builder()
+                .compressor(factory.createCompressor())
+                .sink(flushed::add)
+                .scheduler(scheduler)
+                .flushThreshold(1024)
+                .maxDelay(50, TimeUnit.MILLISECONDS)
+                .build()) {
+            // Small writes wait for the threshold, which is flushed right away
+            ByteBuf message = Allocator.HEAP.allocate(100);
+            fillRepeating(message);
+            while (compressor.getThresholdFlushes() == 0) {
+                Assert.assertTrue(flushed.isEmpty());
+                expected.writeBytes(message, 0, message.readableBytes());
+                compressor.write(message.duplicate());
+            }
+            Assert.assertEquals(0, compressor.getUnflushedBytes());
+            ByteBuf output = flushed.remove();
+            compressed.addComponent(output);
+            compressed.writerIndex(compressed.writerIndex() + output.readableBytes());
+            // The next write waits for the delay
+            expected.writeBytes(message, 0, 10);
+            compressor.write(message.slice(0, 10));
+            output = flushed.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull("Delayed flush never happened", output);
+            Assert.assertEquals(1, compressor.getDelayedFlushes());
+            compressed.addComponent(output);
+            compressed.writerIndex(compressed.writerIndex() + output.readableBytes());
+            Assert.assertEquals(Compressor.Status.NEEDS_INPUT, decompressor.decompress(compressed.duplicate(), decompressed));
+            Assert.assertEquals(expected, decompressed);
+            message.release();
+        } finally {
+            scheduler.shutdownNow();
+        }
+        try {
+            // Closing finishes the stream
+            ByteBuf output = flushed.remove();
+            compressed.addComponent(output);
+            compressed.writerIndex(compressed.writerIndex() + output.readableBytes());
+            decompressor.reset();
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(compressed, decompressed.clear()));
+            Assert.assertEquals(expected, decompressed);
+        } finally {
+            expected.release();
+            compressed.release();
+            decompressed.release();
+            decompressor.close();
+        }
+    }
+
+    protected void testOptions(CompressorFactory factory, CompressorOptions options) throws InvalidDataException {
+        testCompression(factory.createCompressor(options), factory.createDecompressor(options), Allocator.HEAP, false);
+        testCompression(factory.createCompressor(options), factory.createDecompressor(options), Allocator.DIRECT, true);
+    }
+
+    private void testCompression(CompressorFactory factory, Allocator allocator, boolean random) throws InvalidDataException {
+        testCompression(factory.createCompressor(), factory.createDecompressor(), allocator, random);
+    }
+
+    private void testCompression(Compressor compressor, Compressor decompressor, Allocator allocator, boolean random) throws InvalidDataException {
+        ByteBuf in = allocator.allocate(2048);
+        ByteBuf out = allocator.allocate(2048);
+        ByteBuf newData = null;
+        try {
+            if (random) {
+                fillRandom(in);
+            } else {
+                fillRepeating(in);
+            }
+            Compressor.Status status = compressor.compress(in, out, true);
+            Assert.assertEquals("Compression not finished!", Compressor.Status.FINISHED, status);
+            newData = allocator.allocate(2048);
+            status = decompressor.decompress(out, newData);
+            Assert.assertEquals("Decompression not finished!", Compressor.Status.FINISHED, status);
+            in.readerIndex(0);
+            Assert.assertEquals(format("Decompressed {} bytes but had {} originally.", newData.readableBytes(), in.readableBytes()), in.readableBytes(), newData.readableBytes());
+            for (int index = 0; index < in.writerIndex(); index++) {
+                int expected = in.getByte(index);
+                int actual = newData.getByte(index);
+                Assert.assertEquals(format("Got {} at index {}, but expected {}", expected, index, actual), expected, actual);
+            }
+        } finally {
+            in.release();
+            out.release();
+            if (newData != null) newData.release();
+            compressor.close();
+            decompressor.close();
+        }
+    }
+
+    protected void testRecompress(CompressorFactory factory) throws InvalidDataException, IOException {
+        ByteBuf data = Unpooled.buffer(256 * 1024);
+        fillRepeating(data);
+        CompressorOptions fastest = CompressorOptions.builder().level(CompressorFactory.BEST_SPEED).build();
+        CompressorOptions raw = CompressorOptions.builder().level(CompressorFactory.BEST_COMPRESSION).wrapper(ZLibWrapper.NONE).build();
+        ByteBuf input = compressWith(factory, fastest, data);
+        // An output that's too small for each call, so the window has to wait for room
+        ByteBuf output = Unpooled.buffer();
+        ByteBuf small = Unpooled.buffer(256, 256);
+        try (Recompressor recompressor = Recompressor.builder().factory(factory).source(fastest).target(raw).windowSize(4096).build()) {
+            Compressor.Status status;
+            do {
+                status = recompressor.recompress(input.readSlice(Math.min(1000, input.readableBytes())), small);
+                output.writeBytes(small);
+                small.clear();
+            } while (status != Compressor.Status.FINISHED);
+            while (recompressor.finish(small) != Compressor.Status.FINISHED) {
+                output.writeBytes(small);
+                small.clear();
+            }
+            output.writeBytes(small);
+            Assert.assertEquals(1, recompressor.getMembers());
+            Assert.assertEquals(data.readableBytes(), recompressor.getBytesDecompressed());
+        }
+        Assert.assertEquals(data, decompressWith(factory, raw, output));
+        // Truncated input can't be finished
+        input.readerIndex(0);
+        try (Recompressor recompressor = Recompressor.builder().factory(factory).source(fastest).target(raw).build()) {
+            Assert.assertEquals(Compressor.Status.NEEDS_INPUT, recompressor.recompress(input.slice(0, input.readableBytes() / 2), Unpooled.buffer()));
+            recompressor.finish(Unpooled.buffer());
+            Assert.fail("Finished truncated input");
+        } catch (InvalidDataException e) {
+            // Expected
+        }
+        if (!supportsGzip(factory)) return;
+        // Several gzip members from the JDK become one zlib stream
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        for (int i = 0; i < 2; i++) {
+            try (GZIPOutputStream out = new GZIPOutputStream(members)) {
+                data.getBytes(i * data.readableBytes() / 2, out, data.readableBytes() / 2);
+            }
+        }
+        CompressorOptions gzip = CompressorOptions.builder().wrapper(ZLibWrapper.GZIP).build();
+        ByteBuf zlib = Unpooled.buffer();
+        try (Recompressor recompressor = Recompressor.builder().factory(factory).source(gzip).target(CompressorOptions.DEFAULT).build()) {
+            Assert.assertEquals(Compressor.Status.FINISHED, recompressor.recompress(Unpooled.wrappedBuffer(members.toByteArray()), zlib));
+            Assert.assertEquals(Compressor.Status.FINISHED, recompressor.finish(zlib));
+            Assert.assertEquals(2, recompressor.getMembers());
+        }
+        Assert.assertEquals(data, decompressWith(factory, CompressorOptions.DEFAULT, zlib));
+        // And back to gzip, compressed by a pipeline's workers
+        Path file = Files.createTempFile("recompressed", ".gz");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            CompressionPipeline pipeline = CompressionPipeline.builder().channel(channel).factory(factory).options(gzip).workers(2).chunkSize(16 * 1024).build();
+            try (Recompressor recompressor = Recompressor.builder().factory(factory).pipeline(pipeline).build()) {
+                Assert.assertEquals(Compressor.Status.FINISHED, recompressor.recompress(zlib));
+                recompressor.finish();
+            }
+            try (GZIPInputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+                Assert.assertEquals(data, Unpooled.wrappedBuffer(ByteStreams.toByteArray(in)));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    protected void testDedup(CompressorFactory factory) throws InvalidDataException {
+        // A megabyte that repeats after another half megabyte, shifted by a few inserted bytes
+        ByteBuf region = Unpooled.buffer(1024 * 1024), other = Unpooled.buffer(512 * 1024);
+        fillRandom(region);
+        fillRandom(other);
+        ByteBuf data = Unpooled.buffer();
+        data.writeBytes(region.duplicate()).writeBytes(other).writeBytes(new byte[] {1, 2, 3}).writeBytes(region);
+        ByteBuf compressed = Unpooled.buffer();
+        // Outputs that are too small for each call, so the records have to wait for room
+        ByteBuf small = Unpooled.buffer(256, 256);
+        try (DedupCompressor compressor = DedupCompressor.builder().factory(factory).windowSize(4 * 1024 * 1024).build()) {
+            ByteBuf in = data.duplicate();
+            Compressor.Status status;
+            do {
+                ByteBuf slice = in.readSlice(Math.min(10_000, in.readableBytes()));
+                FlushMode flush = in.isReadable() ? FlushMode.NONE : FlushMode.FINISH;
+                do {
+                    status = compressor.compress(slice, small, flush);
+                    compressed.writeBytes(small);
+                    small.clear();
+                } while (status == Compressor.Status.INSUFFICIENT_OUTPUT);
+            } while (status != Compressor.Status.FINISHED);
+            Assert.assertTrue("Deduplicated " + compressor.getBytesDeduplicated() + " bytes", compressor.getBytesDeduplicated() > 900 * 1000);
+        }
+        Assert.assertTrue("Compressed to " + compressed.readableBytes() + " bytes", compressed.readableBytes() < data.readableBytes() - 900 * 1000);
+        ByteBuf restored = Unpooled.buffer();
+        try (DedupDecompressor decompressor = DedupDecompressor.builder().factory(factory).windowSize(4 * 1024 * 1024).build()) {
+            ByteBuf in = compressed.duplicate();
+            Compressor.Status status;
+            do {
+                ByteBuf slice = in.readSlice(Math.min(1000, in.readableBytes()));
+                do {
+                    status = decompressor.decompress(slice, small);
+                    restored.writeBytes(small);
+                    small.clear();
+                } while (status == Compressor.Status.INSUFFICIENT_OUTPUT);
+            } while (status != Compressor.Status.FINISHED);
+            Assert.assertEquals(compressed.readableBytes(), decompressor.getBytesRead());
+        }
+        Assert.assertEquals(data, restored);
+        // The decompressor's window has to be as large as the compressor's
+        try (DedupDecompressor decompressor = DedupDecompressor.builder().factory(factory).windowSize(1024 * 1024).build()) {
+            decompressor.decompress(compressed.duplicate(), Unpooled.buffer());
+            Assert.fail("Decompressed with a smaller window");
+        } catch (InvalidDataException e) {
+            // Expected
+        }
+        // The references count towards the limits
+        CompressorOptions limited = CompressorOptions.builder().limits(DecompressionLimits.builder().maxExpansionRatio(1.2, 0).build()).build();
+        try (DedupDecompressor decompressor = DedupDecompressor.builder().factory(factory).options(limited).windowSize(4 * 1024 * 1024).build()) {
+            decompressor.decompress(compressed.duplicate(), Unpooled.buffer());
+            Assert.fail("Exceeded the limits");
+        } catch (DecompressionLimitException e) {
+            Assert.assertEquals(DecompressionLimitException.Limit.EXPANSION_RATIO, e.getLimit());
+        }
+        // Long runs of matches are split into several references instead of overflowing the length
+        ByteBuf repeated = Unpooled.buffer(2 * 1024 * 1024), block = Unpooled.buffer(256 * 1024);
+        fillRandom(block);
+        while (repeated.isWritable()) repeated.writeBytes(block.duplicate());
+        compressed = Unpooled.buffer();
+        try (DedupCompressor compressor = DedupCompressor.builder().factory(factory).windowSize(1024 * 1024).build()) {
+            compressor.maxReferenceLength = 64 * 1024;
+            while (compressor.compress(repeated.duplicate(), compressed, FlushMode.FINISH) == Compressor.Status.INSUFFICIENT_OUTPUT) {
+                compressed.ensureWritable(64 * 1024);
+            }
+        }
+        ByteBuf container = decompressWith(factory, CompressorOptions.DEFAULT, compressed);
+        container.skipBytes(DedupCompressor.HEADER_SIZE);
+        int references = 0;
+        while (container.isReadable()) {
+            int type = container.readUnsignedByte();
+            if (type == DedupCompressor.REFERENCE) readVarInt(container);
+            int length = readVarInt(container);
+            if (type == DedupCompressor.REFERENCE) {
+                Assert.assertTrue("Reference of " + length + " bytes", length <= 64 * 1024);
+                references++;
+            } else {
+                container.skipBytes(length);
+            }
+        }
+        Assert.assertTrue("Only " + references + " references", references > 20);
+        restored = Unpooled.buffer();
+        try (DedupDecompressor decompressor = DedupDecompressor.builder().factory(factory).windowSize(1024 * 1024).build()) {
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(compressed, restored));
+        }
+        Assert.assertEquals(repeated, restored);
+    }
+
+    private static int readVarInt(ByteBuf buf) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = buf.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    protected void testTemplate(CompressorFactory factory, boolean copying) throws InvalidDataException {
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < 200; i++) header.append("X-Header-").append(i).append(": ").append(i * 31 % 97).append("\r\n");
+        byte[] prefix = header.toString().getBytes(StandardCharsets.UTF_8);
+        for (ZLibWrapper wrapper : new ZLibWrapper[] {ZLibWrapper.ZLIB, ZLibWrapper.NONE}) {
+            CompressorOptions options = CompressorOptions.builder().wrapper(wrapper).build();
+            try (PrimedTemplate template = PrimedTemplate.builder().factory(factory).options(options).prefix(prefix).build()) {
+                Assert.assertEquals(copying, template.isCopying());
+                for (int i = 0; i < 3; i++) {
+                    ByteBuf message = Unpooled.copiedBuffer("X-Header-" + i + ": message " + i + "\r\n\r\nbody", StandardCharsets.UTF_8);
+                    ByteBuf compressed = Unpooled.buffer();
+                    Compressor compressor = template.forkCompressor(), decompressor = template.forkDecompressor();
+                    try {
+                        Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(message.duplicate(), compressed, true));
+                        // The message refers back to the prefix, so it's smaller than on its own
+                        Assert.assertTrue(compressed.readableBytes() < message.readableBytes());
+                        ByteBuf restored = Unpooled.buffer();
+                        Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(compressed.duplicate(), restored));
+                        Assert.assertEquals(message, restored);
+                    } finally {
+                        compressor.close();
+                        decompressor.close();
+                    }
+                    // A plain stream sees the primed output followed by the fork's
+                    ByteBuf whole = Unpooled.wrappedBuffer(template.getPrimedOutput(), compressed);
+                    Assert.assertEquals(Unpooled.wrappedBuffer(Unpooled.wrappedBuffer(prefix), message), decompressWith(factory, options, whole));
+                }
+            }
+        }
+        if (!copying) return;
+        // A copy made part way through carries on independently of the original
+        ByteBuf data = Unpooled.buffer(64 * 1024);
+        fillRepeating(data);
+        Compressor compressor = factory.createCompressor();
+        try {
+            ByteBuf first = Unpooled.buffer(), second = Unpooled.buffer();
+            compressor.compress(data.slice(0, 32 * 1024), first, FlushMode.NONE);
+            Compressor copy = compressor.copy();
+            try {
+                second.writeBytes(first, first.readerIndex(), first.readableBytes());
+                Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(data.slice(32 * 1024, 32 * 1024), first, true));
+                Assert.assertEquals(Compressor.Status.FINISHED, copy.compress(data.slice(32 * 1024, 32 * 1024), second, true));
+            } finally {
+                copy.close();
+            }
+            Assert.assertEquals(first, second);
+            Assert.assertEquals(data, decompressWith(factory, CompressorOptions.DEFAULT, second));
+        } finally {
+            compressor.close();
+        }
+    }
+
+    private static ByteBuf compressWith(CompressorFactory factory, CompressorOptions options, ByteBuf data) {
+        Compressor compressor = factory.createCompressor(options);
+        try {
+            ByteBuf out = Unpooled.buffer();
+            Assert.assertEquals(Compressor.Status.FINISHED, compressor.compress(data.duplicate(), out, true));
+            return out;
+        } finally {
+            compressor.close();
+        }
+    }
+
+    private static ByteBuf decompressWith(CompressorFactory factory, CompressorOptions options, ByteBuf compressed) throws InvalidDataException {
+        Compressor decompressor = factory.createDecompressor(options);
+        try {
+            ByteBuf out = Unpooled.buffer();
+            Assert.assertEquals(Compressor.Status.FINISHED, decompressor.decompress(compressed.duplicate(), out));
+            return out;
+        } finally {
+            decompressor.close();
+        }
+    }
+
+    /* default */ static boolean supportsGzip(CompressorFactory factory) {
+        try {
+            factory.createCompressor(CompressorOptions.builder().wrapper(ZLibWrapper.GZIP).build()).close();
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static void fillRepeating(ByteBuf buf) {
+        while (buf.isWritable()) {
+            byte val = (byte) RANDOM.nextInt(256);
+            int length = Math.min(128, buf.writableBytes());
+            for (int i = 0; i < length; i++) {
+                buf.writeByte(val);
+            }
+        }
+    }
+
+    private static void fillRandom(ByteBuf buf) {
+        while (buf.isWritable()) {
+            byte val = (byte) RANDOM.nextInt(256);
+            buf.writeByte(val);
+        }
+    }
+
+    @FunctionalInterface
+    private static interface Allocator {
+        public static final Allocator HEAP = Unpooled::buffer;
+        public static final Allocator DIRECT = Unpooled::directBuffer;
+
+        public ByteBuf allocate(int capacity, int maxCapacity);
+
+        public default ByteBuf allocate(int capacity) {
+            return allocate(capacity, Integer.MAX_VALUE);
+        }
+    }
+}
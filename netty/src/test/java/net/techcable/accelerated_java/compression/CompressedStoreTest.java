@@ -0,0 +1,167 @@
+package net.techcable.accelerated_java.compression;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressedStoreTest {
+    private static final Random RANDOM = new Random();
+
+    @Test
+    public void testRoundTrip() {
+        try (CompressedStore store = CompressedStore.builder().factory(CompressionEngineFactory.JDK).budget(1024 * 1024).slabSize(64 * 1024).initialCapacity(4).build()) {
+            // Enough values to grow the index a few times, some longer than a block
+            for (int key = 0; key < 200; key++) {
+                Assert.assertTrue(store.put(key, Unpooled.wrappedBuffer(createValue(key))));
+            }
+            Assert.assertEquals(200, store.getSize());
+            for (int key = 0; key < 200; key++) {
+                byte[] expected = createValue(key);
+                ByteBuf heap = Unpooled.buffer(1);
+                ByteBuf direct = Unpooled.directBuffer(1);
+                CompositeByteBuf composite = Unpooled.compositeBuffer();
+                composite.addComponents(Unpooled.buffer(8).writeZero(8), Unpooled.directBuffer(8).writeZero(8));
+                composite.writerIndex(8);
+                for (ByteBuf out : new ByteBuf[] {heap, direct, composite}) {
+                    int start = out.writerIndex();
+                    Assert.assertTrue(store.get(key, out));
+                    Assert.assertEquals(expected.length, out.writerIndex() - start);
+                    byte[] actual = new byte[expected.length];
+                    out.getBytes(start, actual);
+                    Assert.assertArrayEquals(expected, actual);
+                    out.release();
+                }
+            }
+            Assert.assertFalse(store.get(1000, Unpooled.buffer()));
+            Assert.assertEquals(600.0 / 601, store.getHitRate(), 0.0001);
+            Assert.assertTrue("Compression ratio " + store.getCompressionRatio(), store.getCompressionRatio() > 2);
+        }
+    }
+
+    @Test
+    public void testRemoveAndReplace() {
+        try (CompressedStore store = CompressedStore.builder().factory(CompressionEngineFactory.JDK).budget(1024 * 1024).slabSize(64 * 1024).build()) {
+            for (int key = 0; key < 100; key++) {
+                store.put(key, Unpooled.wrappedBuffer(createValue(key)));
+            }
+            // Remove every other key, which shifts back the entries that collided with them
+            for (int key = 0; key < 100; key += 2) {
+                Assert.assertTrue(store.remove(key));
+            }
+            Assert.assertFalse(store.remove(0));
+            for (int key = 0; key < 100; key++) {
+                Assert.assertEquals(key % 2 != 0, store.contains(key));
+            }
+            byte[] replacement = "replaced".getBytes(StandardCharsets.UTF_8);
+            store.put(1, Unpooled.wrappedBuffer(replacement));
+            ByteBuf out = Unpooled.buffer();
+            Assert.assertTrue(store.get(1, out));
+            Assert.assertEquals("replaced", out.toString(StandardCharsets.UTF_8));
+            Assert.assertEquals(50, store.getSize());
+            long usedBytes = store.getUsedBytes();
+            for (int key = 1; key < 100; key += 2) {
+                store.remove(key);
+            }
+            Assert.assertEquals(0, store.getSize());
+            Assert.assertTrue(usedBytes > 0);
+            Assert.assertEquals(0, store.getUsedBytes());
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        int budget = 64 * 1024;
+        try (CompressedStore store = CompressedStore.builder().factory(CompressionEngineFactory.JDK).budget(budget).slabSize(16 * 1024).initialCapacity(16).build()) {
+            byte[] value = new byte[4096];
+            int key = 0;
+            while (store.getEvictions() == 0) {
+                RANDOM.nextBytes(value);
+                Assert.assertTrue(store.put(key++, Unpooled.wrappedBuffer(value)));
+            }
+            Assert.assertTrue(store.getUsedBytes() <= budget);
+            // A recently read value survives the next eviction
+            long touched = key - 2;
+            Assert.assertTrue(store.get(touched, Unpooled.buffer()));
+            RANDOM.nextBytes(value);
+            Assert.assertTrue(store.put(key, Unpooled.wrappedBuffer(value)));
+            Assert.assertTrue(store.contains(touched));
+            Assert.assertTrue(store.contains(key));
+            Assert.assertTrue(store.getMemoryUsage() < budget + 4096);
+            // A value bigger than the budget can't be stored
+            byte[] huge = new byte[budget * 2];
+            RANDOM.nextBytes(huge);
+            Assert.assertFalse(store.put(-1, Unpooled.wrappedBuffer(huge)));
+            Assert.assertFalse(store.contains(-1));
+        }
+    }
+
+    @Test
+    public void testFailedReplace() {
+        int budget = 64 * 1024;
+        try (CompressedStore store = CompressedStore.builder().factory(CompressionEngineFactory.JDK).budget(budget).slabSize(16 * 1024).build()) {
+            for (int key = 0; key < 10; key++) {
+                Assert.assertTrue(store.put(key, Unpooled.wrappedBuffer(createValue(key))));
+            }
+            long usedBytes = store.getUsedBytes();
+            // Everything else is evicted trying to make room, but the old value is kept
+            byte[] huge = new byte[budget * 2];
+            RANDOM.nextBytes(huge);
+            Assert.assertFalse(store.put(5, Unpooled.wrappedBuffer(huge)));
+            Assert.assertEquals(1, store.getSize());
+            ByteBuf out = Unpooled.buffer();
+            Assert.assertTrue(store.get(5, out));
+            Assert.assertArrayEquals(createValue(5), ByteBufUtil.getBytes(out));
+            Assert.assertTrue(store.getUsedBytes() < usedBytes);
+            // The blocks of the failed value were freed, so the rest of the budget can still be used
+            byte[] large = new byte[budget / 2];
+            RANDOM.nextBytes(large);
+            Assert.assertTrue(store.put(5, Unpooled.wrappedBuffer(large)));
+            out.clear();
+            Assert.assertTrue(store.get(5, out));
+            Assert.assertArrayEquals(large, ByteBufUtil.getBytes(out));
+            Assert.assertEquals(1, store.getSize());
+        }
+    }
+
+    @Test
+    public void testDictionary() {
+        byte[] dictionary = "{\"type\":\"player\",\"name\":\"\",\"world\":\"overworld\",\"health\":20,\"inventory\":[]}".getBytes(StandardCharsets.UTF_8);
+        double withoutDictionary, withDictionary;
+        try (CompressedStore store = CompressedStore.builder().factory(CompressionEngineFactory.JDK).budget(1024 * 1024).build()) {
+            withoutDictionary = fillWithRecords(store);
+        }
+        try (CompressedStore store = CompressedStore.builder().factory(CompressionEngineFactory.JDK).budget(1024 * 1024).dictionary(dictionary).build()) {
+            withDictionary = fillWithRecords(store);
+            ByteBuf out = Unpooled.buffer();
+            Assert.assertTrue(store.get(7, out));
+            Assert.assertEquals(createRecord(7), out.toString(StandardCharsets.UTF_8));
+        }
+        Assert.assertTrue("Ratio " + withDictionary + " with a dictionary and " + withoutDictionary + " without", withDictionary > withoutDictionary);
+    }
+
+    private static double fillWithRecords(CompressedStore store) {
+        for (int key = 0; key < 100; key++) {
+            store.put(key, Unpooled.copiedBuffer(createRecord(key), StandardCharsets.UTF_8));
+        }
+        return store.getCompressionRatio();
+    }
+
+    private static String createRecord(int key) {
+        return "{\"type\":\"player\",\"name\":\"player" + key + "\",\"world\":\"overworld\",\"health\":" + key % 20 + ",\"inventory\":[]}";
+    }
+
+    private static byte[] createValue(int key) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < key * 10; i++) {
+            builder.append("value ").append(key).append(' ');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,181 @@
+package net.techcable.accelerated_java.compression;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.compression.metrics.CompressionMetrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressionCacheTest {
+    private static final Random RANDOM = new Random();
+
+    @Test
+    public void testHitsAndMisses() {
+        CompressionCache cache = CompressionCache.builder().factory(CompressorFactory.JDK).budget(1024 * 1024).build();
+        ByteBuf payload = Unpooled.copiedBuffer(createPayload(), StandardCharsets.UTF_8);
+        ByteBuf fresh = compressFresh(payload, CompressorOptions.DEFAULT);
+        ByteBuf first = cache.compress(payload, CompressorOptions.DEFAULT);
+        // The same bytes in a direct buffer are the same payload
+        ByteBuf direct = Unpooled.directBuffer(payload.readableBytes()).writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+        ByteBuf second = cache.compress(direct, CompressorOptions.DEFAULT);
+        Assert.assertEquals(0, payload.readerIndex());
+        Assert.assertTrue(ByteBufUtil.equals(fresh, first));
+        Assert.assertTrue(ByteBufUtil.equals(fresh, second));
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(payload.readableBytes(), cache.getBytesSaved());
+        Assert.assertEquals(0.5, cache.getHitRate(), 0.0001);
+        // Reading one copy doesn't move the other
+        first.skipBytes(first.readableBytes());
+        Assert.assertTrue(ByteBufUtil.equals(fresh, second));
+        // Other options are another entry
+        CompressorOptions fastest = CompressorOptions.builder().level(1).build();
+        ByteBuf other = cache.compress(payload, fastest);
+        Assert.assertTrue(ByteBufUtil.equals(compressFresh(payload, fastest), other));
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(2, cache.getMisses());
+        first.release();
+        second.release();
+        other.release();
+        ByteBuf cached = cache.compress(payload, CompressorOptions.DEFAULT);
+        Assert.assertEquals(2, cached.refCnt());
+        cache.clear();
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(0, cache.getCachedBytes());
+        // Still readable until the caller's done with it
+        Assert.assertTrue(ByteBufUtil.equals(fresh, cached));
+        Assert.assertTrue(cached.release());
+    }
+
+    @Test
+    public void testEviction() {
+        int budget = 64 * 1024;
+        CompressionCache cache = CompressionCache.builder().factory(CompressorFactory.JDK).budget(budget).maxEntrySize(budget / 4).build();
+        List<ByteBuf> evicted = new ArrayList<>();
+        byte[] value = new byte[4096];
+        while (cache.getEvictions() == 0) {
+            RANDOM.nextBytes(value);
+            ByteBuf compressed = cache.compress(Unpooled.wrappedBuffer(value), CompressorOptions.DEFAULT);
+            compressed.release();
+            evicted.add(compressed);
+        }
+        Assert.assertTrue(cache.getCachedBytes() <= budget);
+        long released = evicted.stream().filter(buf -> buf.refCnt() == 0).count();
+        Assert.assertEquals(cache.getEvictions(), released);
+        // Payloads bigger than the maximum entry size aren't cached
+        byte[] huge = new byte[budget];
+        RANDOM.nextBytes(huge);
+        long size = cache.getSize();
+        cache.compress(Unpooled.wrappedBuffer(huge), CompressorOptions.DEFAULT).release();
+        Assert.assertEquals(1, cache.getBypasses());
+        Assert.assertEquals(size, cache.getSize());
+        cache.clear();
+    }
+
+    @Test
+    public void testConcurrentMisses() throws Exception {
+        CompressionMetrics metrics = CompressionMetrics.create("test");
+        CompressorFactory counting = CompressorFactory.JDK.withMetrics(metrics);
+        CompressionCache cache = CompressionCache.builder().factory(counting).budget(1024 * 1024).build();
+        byte[] payload = createPayload().getBytes(StandardCharsets.UTF_8);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<ByteBuf>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.compress(Unpooled.wrappedBuffer(payload), CompressorOptions.DEFAULT);
+                }));
+            }
+            start.countDown();
+            ByteBuf expected = compressFresh(Unpooled.wrappedBuffer(payload), CompressorOptions.DEFAULT);
+            for (Future<ByteBuf> result : results) {
+                ByteBuf compressed = result.get();
+                Assert.assertTrue(ByteBufUtil.equals(expected, compressed));
+                compressed.release();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, metrics.getStreamsCreated());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(threads - 1, cache.getHits());
+        cache.clear();
+    }
+
+    @Test
+    public void testConcurrentEvictions() throws Exception {
+        // Pooled buffers are recycled as soon as they're evicted, so a late retain would hand out another payload's memory
+        int budget = 64 * 1024;
+        CompressionCache cache = CompressionCache.builder().factory(CompressorFactory.JDK).allocator(new PooledByteBufAllocator(true)).budget(budget).maxEntrySize(budget / 4).build();
+        byte[][] payloads = new byte[32][];
+        ByteBuf[] expected = new ByteBuf[payloads.length];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = new byte[4096];
+            RANDOM.nextBytes(payloads[i]);
+            expected[i] = compressFresh(Unpooled.wrappedBuffer(payloads[i]), CompressorOptions.DEFAULT);
+        }
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                results.add(executor.submit(() -> {
+                    Random random = new Random();
+                    for (int i = 0; i < 2000; i++) {
+                        int index = random.nextInt(payloads.length);
+                        ByteBuf compressed = cache.compress(Unpooled.wrappedBuffer(payloads[index]), CompressorOptions.DEFAULT);
+                        try {
+                            Assert.assertTrue(ByteBufUtil.equals(expected[index], compressed));
+                        } finally {
+                            compressed.release();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(cache.getEvictions() > 0);
+        cache.clear();
+        Assert.assertEquals(0, cache.getCachedBytes());
+    }
+
+    private static ByteBuf compressFresh(ByteBuf in, CompressorOptions options) {
+        ByteBuf out = Unpooled.buffer();
+        Compressor compressor = CompressorFactory.JDK.createCompressor(options);
+        try {
+            compressor.compress(in.duplicate(), out, true);
+        } finally {
+            compressor.close();
+        }
+        return out;
+    }
+
+    private static String createPayload() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            builder.append("{\"id\":").append(i % 17).append(",\"type\":\"update\"}\n");
+        }
+        return builder.toString();
+    }
+}
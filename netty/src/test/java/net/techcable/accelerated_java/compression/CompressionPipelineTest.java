@@ -0,0 +1,151 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import com.google.common.io.ByteStreams;
+
+import io.netty.buffer.Unpooled;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressionPipelineTest {
+    private static final Random RANDOM = new Random();
+
+    @Test
+    public void testRoundTrip() throws IOException, DataFormatException {
+        byte[] data = createData(1024 * 1024 + 123);
+        for (int workers : new int[] {1, 3}) {
+            for (ZLibWrapper wrapper : ZLibWrapper.values()) {
+                CompressorOptions options = CompressorOptions.builder().wrapper(wrapper).build();
+                Path file = Files.createTempFile("pipeline", ".z");
+                try {
+                    CompressionPipeline pipeline;
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        pipeline = CompressionPipeline.builder().channel(channel).factory(CompressorFactory.JDK).options(options)
+                                .workers(workers).chunkSize(64 * 1024).queueCapacity(2).build();
+                        // Writes that don't line up with the chunks
+                        for (int offset = 0; offset < data.length; offset += 10000) {
+                            pipeline.write(Unpooled.wrappedBuffer(data, offset, Math.min(10000, data.length - offset)));
+                        }
+                        pipeline.close();
+                    }
+                    byte[] compressed = Files.readAllBytes(file);
+                    String message = workers + " workers with a " + wrapper + " wrapper";
+                    byte[] decompressed = wrapper == ZLibWrapper.GZIP ? gunzip(compressed) : inflate(compressed, wrapper == ZLibWrapper.NONE, data.length);
+                    Assert.assertArrayEquals(message, data, decompressed);
+                    Assert.assertEquals(data.length, pipeline.getBytesIn());
+                    int wrapperLength = wrapper == ZLibWrapper.ZLIB ? 6 : wrapper == ZLibWrapper.GZIP ? 18 : 0;
+                    Assert.assertEquals(compressed.length, pipeline.getBytesOut() + wrapperLength);
+                    Assert.assertEquals(17, pipeline.getProducer().getChunks());
+                    Assert.assertEquals(17, pipeline.getWriter().getChunks());
+                    Assert.assertEquals(17, pipeline.getWorkers().stream().mapToLong(CompressionPipeline.Stage::getChunks).sum());
+                    Assert.assertNotNull(pipeline.getBottleneck());
+                } finally {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriterFailure() throws IOException {
+        Path file = Files.createTempFile("pipeline", ".z");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            CompressionPipeline pipeline = CompressionPipeline.builder().channel(channel).factory(CompressorFactory.JDK).workers(2).chunkSize(1024).queueCapacity(1).build();
+            byte[] data = createData(1024);
+            try {
+                // Eventually the failed writer holds back the producer, which reports the failure
+                for (int i = 0; i < 1000; i++) {
+                    pipeline.write(Unpooled.wrappedBuffer(data));
+                }
+                pipeline.close();
+                Assert.fail("Writing to a read-only channel succeeded");
+            } catch (IOException e) {
+                Assert.assertTrue(e.getCause() instanceof NonWritableChannelException);
+            }
+            try {
+                pipeline.close();
+                Assert.fail("Closing a failed pipeline succeeded");
+            } catch (IOException expected) {
+                // The pipeline is closed even though it failed
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testZLibFormat() {
+        byte[] first = createData(1000), second = createData(70000);
+        Adler32 checksum = new Adler32();
+        checksum.update(first);
+        int firstChecksum = (int) checksum.getValue();
+        checksum.reset();
+        checksum.update(second);
+        int secondChecksum = (int) checksum.getValue();
+        checksum.reset();
+        checksum.update(first);
+        checksum.update(second);
+        Assert.assertEquals((int) checksum.getValue(), CompressionPipeline.combineAdler32(firstChecksum, secondChecksum, second.length));
+        // The headers match the JDK's zlib
+        for (int level = -1; level <= 9; level++) {
+            Deflater deflater = new Deflater(level);
+            deflater.setInput(new byte[0]);
+            deflater.finish();
+            byte[] out = new byte[16];
+            deflater.deflate(out);
+            deflater.end();
+            byte[] header = CompressionPipeline.createZLibHeader(CompressorOptions.builder().level(level).build());
+            Assert.assertArrayEquals("Level " + level, Arrays.copyOf(out, 2), header);
+        }
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, boolean raw, int length) throws DataFormatException {
+        Inflater inflater = new Inflater(raw);
+        try {
+            inflater.setInput(compressed);
+            byte[] result = new byte[length];
+            int read = 0;
+            while (!inflater.finished()) {
+                int count = inflater.inflate(result, read, result.length - read);
+                Assert.assertFalse("Truncated stream", count == 0 && inflater.needsInput());
+                read += count;
+            }
+            Assert.assertEquals(length, read);
+            Assert.assertEquals(0, inflater.getRemaining());
+            return result;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] createData(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("{\"id\":").append(RANDOM.nextInt(1000)).append(",\"type\":\"update\"}\n");
+        }
+        return builder.substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+}
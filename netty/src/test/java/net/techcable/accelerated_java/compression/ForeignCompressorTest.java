@@ -0,0 +1,137 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.IOException;
+
+import net.techcable.accelerated_java.InvalidDataException;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ForeignCompressorTest extends AbstractCompressorTest {
+    private static CompressorFactory factory;
+
+    @BeforeClass
+    public static void checkAvailable() {
+        // NOTE: The foreign backend only exists on Java 22 and later, where the java22 profile enables it
+        Assume.assumeTrue(Boolean.getBoolean("accelerated_java.foreign"));
+        Assert.assertNotNull(ForeignBackend.getFailure(), ForeignBackend.FACTORY);
+        factory = CompressorFactory.of(ForeignBackend.FACTORY);
+    }
+
+    @Test
+    public void testRandomHeapBufferCompression() throws InvalidDataException {
+        super.testRandomHeapBufferCompression(factory);
+    }
+
+    @Test
+    public void testRandomDirectBufferCompression() throws InvalidDataException {
+        super.testRandomDirectBufferCompression(factory);
+    }
+
+    @Test
+    public void testRepeatingHeapBufferCompression() throws InvalidDataException {
+        super.testRepeatingHeapBufferCompression(factory);
+    }
+
+    @Test
+    public void testRepeatingDirectBufferCompression() throws InvalidDataException {
+        super.testRepeatingDirectBufferCompression(factory);
+    }
+
+    @Test
+    public void testInsufficientOutputDirectBuffer() {
+        super.testInsufficientOutputDirectBuffer(factory);
+    }
+
+    @Test
+    public void testInsufficientOutputHeapBuffer() {
+        super.testInsufficientOutputHeapBuffer(factory);
+    }
+
+    @Test
+    public void testRandomCompressionEquals() {
+        super.testCompressionEqual(factory, true);
+    }
+
+    @Test
+    public void testRepeatingCompressionEquals() {
+        super.testCompressionEqual(factory, false);
+    }
+
+    @Test
+    public void testMetrics() throws InvalidDataException {
+        super.testMetrics(factory);
+    }
+
+    @Test
+    public void testLowMemoryOptions() throws InvalidDataException {
+        super.testOptions(factory, CompressorOptions.builder()
+                .strategy(CompressionStrategy.RLE)
+                .windowBits(9)
+                .memLevel(1)
+                .chunkSize(128)
+                .build());
+    }
+
+    @Test
+    public void testLevelChange() throws InvalidDataException {
+        super.testLevelChange(factory);
+    }
+
+    @Test
+    public void testGovernor() {
+        super.testGovernor(factory);
+    }
+
+    @Test
+    public void testDecompressionLimits() throws InvalidDataException {
+        super.testDecompressionLimits(factory);
+    }
+
+    @Test
+    public void testChunkedOutput() throws InvalidDataException {
+        super.testChunkedOutput(factory);
+    }
+
+    @Test
+    public void testReset() throws InvalidDataException {
+        super.testReset(factory);
+    }
+
+    @Test
+    public void testDispatch() throws InvalidDataException {
+        super.testDispatch(factory);
+    }
+
+    @Test
+    public void testWholeInput() throws InvalidDataException {
+        super.testWholeInput(factory);
+    }
+
+    @Test
+    public void testFlushModes() throws InvalidDataException {
+        super.testFlushModes(factory);
+    }
+
+    @Test
+    public void testAutoFlush() throws InvalidDataException, InterruptedException {
+        super.testAutoFlush(factory);
+    }
+
+    @Test
+    public void testRecompress() throws InvalidDataException, IOException {
+        super.testRecompress(factory);
+    }
+
+    @Test
+    public void testDedup() throws InvalidDataException {
+        super.testDedup(factory);
+    }
+
+    @Test
+    public void testTemplate() throws InvalidDataException {
+        super.testTemplate(factory, true);
+    }
+}
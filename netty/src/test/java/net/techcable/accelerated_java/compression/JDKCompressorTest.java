@@ -0,0 +1,123 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.IOException;
+
+import net.techcable.accelerated_java.InvalidDataException;
+
+import org.junit.Test;
+
+public class JDKCompressorTest extends AbstractCompressorTest {
+    @Test
+    public void testRandomHeapBufferCompression() throws InvalidDataException {
+        super.testRandomHeapBufferCompression(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testRandomDirectBufferCompression() throws InvalidDataException {
+        super.testRandomDirectBufferCompression(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testRepeatingHeapBufferCompression() throws InvalidDataException {
+        super.testRepeatingHeapBufferCompression(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testRepeatingDirectBufferCompression() throws InvalidDataException {
+        super.testRepeatingDirectBufferCompression(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testInsufficientOutputDirectBuffer() {
+        super.testInsufficientOutputDirectBuffer(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testInsufficientOutputHeapBuffer() {
+        super.testInsufficientOutputHeapBuffer(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testRandomCompressionEquals() {
+        super.testCompressionEqual(CompressorFactory.JDK, true);
+    }
+
+    @Test
+    public void testRepeatingCompressionEquals() {
+        super.testCompressionEqual(CompressorFactory.JDK, false);
+    }
+
+    @Test
+    public void testMetrics() throws InvalidDataException {
+        super.testMetrics(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testFilteredOptions() throws InvalidDataException {
+        super.testOptions(CompressorFactory.JDK, CompressorOptions.builder()
+                .level(CompressorFactory.BEST_SPEED)
+                .strategy(CompressionStrategy.FILTERED)
+                .chunkSize(128)
+                .build());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnsupportedStrategy() {
+        CompressorFactory.JDK.createCompressor(CompressorOptions.builder().strategy(CompressionStrategy.RLE).build());
+    }
+
+    @Test
+    public void testLevelChange() throws InvalidDataException {
+        super.testLevelChange(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testGovernor() {
+        super.testGovernor(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testDecompressionLimits() throws InvalidDataException {
+        super.testDecompressionLimits(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testChunkedOutput() throws InvalidDataException {
+        super.testChunkedOutput(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testReset() throws InvalidDataException {
+        super.testReset(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testWholeInput() throws InvalidDataException {
+        super.testWholeInput(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testFlushModes() throws InvalidDataException {
+        super.testFlushModes(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testAutoFlush() throws InvalidDataException, InterruptedException {
+        super.testAutoFlush(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testRecompress() throws InvalidDataException, IOException {
+        super.testRecompress(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testDedup() throws InvalidDataException {
+        super.testDedup(CompressorFactory.JDK);
+    }
+
+    @Test
+    public void testTemplate() throws InvalidDataException {
+        super.testTemplate(CompressorFactory.JDK, false);
+    }
+}
@@ -0,0 +1,148 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.junit.Assume;
+import org.junit.AssumptionViolatedException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class NativeCompressorTest extends AbstractCompressorTest {
+    private static final CompressorFactory FACTORY = CompressorFactory.of(ZLibNativeEngine.FACTORY);
+
+    @BeforeClass
+    public static void loadNative() {
+        File nativesDirectory = new File("natives");
+        if (!nativesDirectory.exists()) {
+            System.err.println("Natives directory doesn't exist");
+            throw new AssumptionViolatedException("Natives directory doesn't exist");
+        }
+        try {
+            Native.LIBRARY.load(nativesDirectory);
+        } catch (Throwable t) {
+            System.err.println("(Non-Fatal) Unable to load native library");
+            t.printStackTrace();
+        }
+        Assume.assumeTrue(Native.LIBRARY.isLoaded());
+    }
+
+    @Test
+    public void testRandomHeapBufferCompression() throws InvalidDataException {
+        super.testRandomHeapBufferCompression(FACTORY);
+    }
+
+    @Test
+    public void testRandomDirectBufferCompression() throws InvalidDataException {
+        super.testRandomDirectBufferCompression(FACTORY);
+    }
+
+    @Test
+    public void testRepeatingHeapBufferCompression() throws InvalidDataException {
+        super.testRepeatingHeapBufferCompression(FACTORY);
+    }
+
+    @Test
+    public void testRepeatingDirectBufferCompression() throws InvalidDataException {
+        super.testRepeatingDirectBufferCompression(FACTORY);
+    }
+
+    @Test
+    public void testInsufficientOutputDirectBuffer() {
+        super.testInsufficientOutputDirectBuffer(FACTORY);
+    }
+
+    @Test
+    public void testInsufficientOutputHeapBuffer() {
+        super.testInsufficientOutputHeapBuffer(FACTORY);
+    }
+
+    @Test
+    public void testRandomCompressionEquals() {
+        super.testCompressionEqual(FACTORY, true);
+    }
+
+    @Test
+    public void testRepeatingCompressionEquals() {
+        super.testCompressionEqual(FACTORY, false);
+    }
+
+    @Test
+    public void testMetrics() throws InvalidDataException {
+        super.testMetrics(FACTORY);
+    }
+
+    @Test
+    public void testLowMemoryOptions() throws InvalidDataException {
+        super.testOptions(FACTORY, CompressorOptions.builder()
+                .strategy(CompressionStrategy.RLE)
+                .windowBits(9)
+                .memLevel(1)
+                .chunkSize(128)
+                .build());
+    }
+
+    @Test
+    public void testLevelChange() throws InvalidDataException {
+        super.testLevelChange(FACTORY);
+    }
+
+    @Test
+    public void testGovernor() {
+        super.testGovernor(FACTORY);
+    }
+
+    @Test
+    public void testDecompressionLimits() throws InvalidDataException {
+        super.testDecompressionLimits(FACTORY);
+    }
+
+    @Test
+    public void testChunkedOutput() throws InvalidDataException {
+        super.testChunkedOutput(FACTORY);
+    }
+
+    @Test
+    public void testReset() throws InvalidDataException {
+        super.testReset(FACTORY);
+    }
+
+    @Test
+    public void testDispatch() throws InvalidDataException {
+        super.testDispatch(FACTORY);
+    }
+
+    @Test
+    public void testWholeInput() throws InvalidDataException {
+        super.testWholeInput(FACTORY);
+    }
+
+    @Test
+    public void testFlushModes() throws InvalidDataException {
+        super.testFlushModes(FACTORY);
+    }
+
+    @Test
+    public void testAutoFlush() throws InvalidDataException, InterruptedException {
+        super.testAutoFlush(FACTORY);
+    }
+
+    @Test
+    public void testRecompress() throws InvalidDataException, IOException {
+        super.testRecompress(FACTORY);
+    }
+
+    @Test
+    public void testDedup() throws InvalidDataException {
+        super.testDedup(FACTORY);
+    }
+
+    @Test
+    public void testTemplate() throws InvalidDataException {
+        super.testTemplate(FACTORY, true);
+    }
+}
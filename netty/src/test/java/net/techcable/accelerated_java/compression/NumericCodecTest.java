@@ -0,0 +1,114 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.jni.Native;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class NumericCodecTest {
+    private static final int COUNT = 16 * 1024;
+    private static final NumericFilter UNFILTERED = NumericFilter.of(NumericFilter.Transform.NONE, NumericFilter.Shuffle.NONE, 8, ByteOrder.BIG_ENDIAN);
+
+    @BeforeClass
+    public static void loadNative() {
+        // Filters run natively on direct buffers if the library is available, and on arrays either way
+        File nativesDirectory = new File("natives");
+        if (!nativesDirectory.exists()) return;
+        try {
+            Native.LIBRARY.load(nativesDirectory);
+        } catch (Throwable t) {
+            System.err.println("(Non-Fatal) Unable to load native library");
+            t.printStackTrace();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws InvalidDataException {
+        Random random = new Random(47);
+        try (NumericCodec codec = NumericCodec.builder().factory(CompressorFactory.JDK).build()) {
+            for (NumericFilter filter : new NumericFilter[] {NumericFilter.LONGS, NumericFilter.TIMESTAMPS, NumericFilter.DOUBLES, UNFILTERED}) {
+                for (boolean direct : new boolean[] {false, true}) {
+                    ByteBuf data = direct ? Unpooled.directBuffer() : Unpooled.buffer();
+                    for (int i = 0; i < COUNT; i++) data.writeDouble(random.nextGaussian());
+                    // A partial element is copied unchanged
+                    data.writeByte(42);
+                    ByteBuf original = data.copy();
+                    ByteBuf compressed = codec.compress(data, filter);
+                    Assert.assertFalse(data.isReadable());
+                    Assert.assertEquals(filter.getHeader(), compressed.getUnsignedShort(0));
+                    ByteBuf restored = codec.decompress(compressed);
+                    Assert.assertFalse(compressed.isReadable());
+                    Assert.assertTrue(filter + (direct ? " of a direct buffer" : ""), ByteBufUtil.equals(original, restored));
+                    data.release();
+                    original.release();
+                    compressed.release();
+                    restored.release();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testImprovesRatio() throws InvalidDataException {
+        ByteBuf timestamps = Unpooled.directBuffer(COUNT * 8), doubles = Unpooled.directBuffer(COUNT * 8);
+        Random random = new Random(42);
+        long time = System.currentTimeMillis();
+        double value = 100;
+        for (int i = 0; i < COUNT; i++) {
+            // Mostly evenly spaced, with some jitter
+            time += 1000 + (random.nextInt(8) == 0 ? random.nextInt(5) : 0);
+            timestamps.writeLong(time);
+            // A slowly drifting measurement at a fixed precision
+            value += random.nextInt(3) - 1;
+            doubles.writeDouble(value / 4);
+        }
+        try (NumericCodec codec = NumericCodec.builder().factory(CompressorFactory.JDK).build()) {
+            assertSmaller(codec, timestamps, NumericFilter.TIMESTAMPS, 4);
+            assertSmaller(codec, doubles, NumericFilter.DOUBLES, 1.5);
+        } finally {
+            timestamps.release();
+            doubles.release();
+        }
+    }
+
+    private static void assertSmaller(NumericCodec codec, ByteBuf data, NumericFilter filter, double factor) {
+        ByteBuf plain = codec.compress(data.duplicate(), UNFILTERED), filtered = codec.compress(data.duplicate(), filter);
+        try {
+            Assert.assertTrue(filter + " compressed to " + filtered.readableBytes() + " bytes instead of " + plain.readableBytes(),
+                    filtered.readableBytes() * factor < plain.readableBytes());
+        } finally {
+            plain.release();
+            filtered.release();
+        }
+    }
+
+    @Test
+    public void testInvalidInput() {
+        try (NumericCodec codec = NumericCodec.builder().factory(CompressorFactory.JDK).build()) {
+            ByteBuf compressed = codec.compress(Unpooled.wrappedBuffer(new byte[1024]), NumericFilter.LONGS);
+            assertInvalid(codec, compressed.slice(0, 1));
+            assertInvalid(codec, compressed.slice(0, compressed.readableBytes() - 4));
+            compressed.setByte(0, 0xFF);
+            assertInvalid(codec, compressed);
+            compressed.release();
+        }
+    }
+
+    private static void assertInvalid(NumericCodec codec, ByteBuf in) {
+        try {
+            codec.decompress(in).release();
+            Assert.fail("Decompressed invalid input");
+        } catch (InvalidDataException expected) {
+        }
+    }
+}
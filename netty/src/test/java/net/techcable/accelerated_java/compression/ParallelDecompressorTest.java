@@ -0,0 +1,195 @@
+package net.techcable.accelerated_java.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelDecompressorTest {
+    private static final Random RANDOM = new Random();
+
+    @Test
+    public void testRoundTrip() throws IOException, InvalidDataException {
+        byte[] data = createData(4 * 1024 * 1024 + 123);
+        try (ParallelDecompressor decompressor = ParallelDecompressor.builder().workers(3).chunkSize(64 * 1024).build()) {
+            Assert.assertArrayEquals(data, decompress(decompressor, gzip(data)));
+            Assert.assertTrue("Only " + decompressor.getParallelChunks() + " chunks were decoded in parallel", decompressor.getParallelChunks() > 5);
+            Assert.assertTrue(decompressor.getParallelChunks() > decompressor.getSequentialChunks() * 4);
+        }
+        // Every chunk expands past the bound on buffered output, so they're all decoded in order
+        try (ParallelDecompressor decompressor = ParallelDecompressor.builder().workers(3).chunkSize(64 * 1024).maxBufferedOutput(64 * 1024).build()) {
+            Assert.assertArrayEquals(data, decompress(decompressor, gzip(data)));
+            Assert.assertEquals(0, decompressor.getParallelChunks());
+            Assert.assertTrue(decompressor.getSequentialChunks() > 5);
+        }
+        for (ZLibWrapper wrapper : new ZLibWrapper[] {ZLibWrapper.ZLIB, ZLibWrapper.NONE}) {
+            try (ParallelDecompressor decompressor = ParallelDecompressor.builder().wrapper(wrapper).workers(2).chunkSize(64 * 1024).build()) {
+                Assert.assertArrayEquals(wrapper.toString(), data, decompress(decompressor, deflate(data, Deflater.DEFAULT_COMPRESSION, wrapper == ZLibWrapper.NONE, 0)));
+            }
+        }
+    }
+
+    @Test
+    public void testBlockTypes() throws IOException, InvalidDataException {
+        // Stored blocks, fixed blocks, empty blocks from flushes, and random data that can't be compressed
+        byte[] data = createData(1024 * 1024);
+        byte[] random = new byte[512 * 1024];
+        RANDOM.nextBytes(random);
+        System.arraycopy(random, 0, data, 300 * 1024, random.length);
+        try (ParallelDecompressor decompressor = ParallelDecompressor.builder().wrapper(ZLibWrapper.ZLIB).workers(2).chunkSize(64 * 1024).build()) {
+            for (int level : new int[] {0, 1, 9}) {
+                Assert.assertArrayEquals("Level " + level, data, decompress(decompressor, deflate(data, level, false, 0)));
+                Assert.assertArrayEquals("Level " + level + " flushed", data, decompress(decompressor, deflate(data, level, false, 1000)));
+            }
+            byte[] small = createData(100);
+            Assert.assertArrayEquals(small, decompress(decompressor, deflate(small, 6, false, 0)));
+            Assert.assertArrayEquals(new byte[0], decompress(decompressor, deflate(new byte[0], 6, false, 0)));
+        }
+    }
+
+    @Test
+    public void testStoredBlockAlignment() throws IOException, InvalidDataException {
+        // Stored blocks at every alignment, so some start right after the input is reloaded
+        byte[] data = createData(256 * 1024);
+        try (ParallelDecompressor decompressor = ParallelDecompressor.builder().wrapper(ZLibWrapper.NONE).workers(2).chunkSize(64 * 1024).build()) {
+            for (int interval = 1000; interval < 1064; interval++) {
+                Assert.assertArrayEquals("Flushed every " + interval, data, decompress(decompressor, deflate(data, 0, true, interval)));
+            }
+        }
+    }
+
+    @Test
+    public void testFile() throws IOException, InvalidDataException {
+        byte[] data = createData(2 * 1024 * 1024);
+        Path file = Files.createTempFile("parallel", ".gz");
+        try (ParallelDecompressor decompressor = ParallelDecompressor.builder().workers(2).chunkSize(64 * 1024).build()) {
+            Files.write(file, gzip(data));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                Assert.assertEquals(data.length, decompressor.decompress(channel, Channels.newChannel(out)));
+            }
+            Assert.assertArrayEquals(data, out.toByteArray());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testInvalid() throws IOException, InvalidDataException {
+        byte[] data = createData(1024 * 1024), compressed = gzip(data);
+        try (ParallelDecompressor decompressor = ParallelDecompressor.builder().workers(2).chunkSize(64 * 1024).build()) {
+            byte[] corrupt = compressed.clone();
+            corrupt[corrupt.length - 6] ^= 1;
+            assertInvalid(decompressor, corrupt, "incorrect data check");
+            corrupt = compressed.clone();
+            corrupt[corrupt.length - 3] ^= 1;
+            assertInvalid(decompressor, corrupt, "incorrect length check");
+            assertInvalid(decompressor, Arrays.copyOf(compressed, compressed.length - 1000), null);
+            byte[] members = Arrays.copyOf(compressed, compressed.length * 2);
+            System.arraycopy(compressed, 0, members, compressed.length, compressed.length);
+            assertInvalid(decompressor, members, "another gzip member");
+            // A corrupt block in the middle
+            corrupt = compressed.clone();
+            for (int i = 0; i < 16; i++) corrupt[compressed.length / 2 + i] ^= 0x55;
+            assertInvalid(decompressor, corrupt, null);
+        }
+        // A header with a name and a checksum of its own
+        byte[] header = {0x1F, (byte) 0x8B, 8, 8 | 2, 0, 0, 0, 0, 0, (byte) 0xFF, 'a', '.', 'l', 'o', 'g', 0};
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(header);
+        byte[] checked = Arrays.copyOf(header, header.length + 2 + compressed.length - 10);
+        checked[header.length] = (byte) headerCrc.getValue();
+        checked[header.length + 1] = (byte) (headerCrc.getValue() >>> 8);
+        System.arraycopy(compressed, 10, checked, header.length + 2, compressed.length - 10);
+        try (ParallelDecompressor decompressor = ParallelDecompressor.builder().workers(2).chunkSize(64 * 1024).build()) {
+            Assert.assertArrayEquals(data, decompress(decompressor, checked));
+            checked[header.length + 1] ^= 1;
+            assertInvalid(decompressor, checked, "header crc mismatch");
+        }
+        DecompressionLimits limits = DecompressionLimits.builder().maxOutput(data.length / 2).build();
+        try (ParallelDecompressor decompressor = ParallelDecompressor.builder().limits(limits).workers(2).chunkSize(64 * 1024).build()) {
+            try {
+                decompress(decompressor, compressed);
+                Assert.fail("Exceeded the maximum output");
+            } catch (DecompressionLimitException e) {
+                Assert.assertEquals(DecompressionLimitException.Limit.TOTAL_OUTPUT, e.getLimit());
+            }
+        }
+    }
+
+    private static void assertInvalid(ParallelDecompressor decompressor, byte[] compressed, String message) throws IOException {
+        try {
+            decompress(decompressor, compressed);
+            Assert.fail("Decompressed invalid data");
+        } catch (InvalidDataException e) {
+            if (message != null) Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static byte[] decompress(ParallelDecompressor decompressor, byte[] compressed) throws IOException, InvalidDataException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = decompressor.decompress(Unpooled.wrappedBuffer(compressed), Channels.newChannel(out));
+        Assert.assertEquals(out.size(), written);
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Compress with the JDK, flushing after every so many bytes if the interval isn't zero
+     */
+    private static byte[] deflate(byte[] data, int level, boolean raw, int flushInterval) {
+        Deflater deflater = new Deflater(level, raw);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int step = flushInterval == 0 ? data.length : flushInterval;
+            for (int offset = 0; offset < data.length; offset += step) {
+                deflater.setInput(data, offset, Math.min(step, data.length - offset));
+                int count;
+                while ((count = deflater.deflate(buffer, 0, buffer.length, flushInterval == 0 ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH)) > 0 || !deflater.needsInput()) {
+                    out.write(buffer, 0, count);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] createData(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("2026-10-19T12:").append(RANDOM.nextInt(60)).append(':').append(RANDOM.nextInt(60))
+                    .append(" INFO [worker-").append(RANDOM.nextInt(16)).append("] GET /api/items/").append(RANDOM.nextInt(100000))
+                    .append(" status=").append(RANDOM.nextInt(10) == 0 ? 404 : 200).append(" took=").append(RANDOM.nextInt(500)).append("ms\n");
+        }
+        return builder.substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+}
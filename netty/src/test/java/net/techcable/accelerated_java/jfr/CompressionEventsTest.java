@@ -0,0 +1,61 @@
+package net.techcable.accelerated_java.jfr;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.compression.Compressor;
+import net.techcable.accelerated_java.compression.CompressorFactory;
+import net.techcable.accelerated_java.compression.metrics.Operation;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class CompressionEventsTest {
+    @Test
+    public void testCompressEvent() throws IOException {
+        Assume.assumeTrue("JFR isn't available", CompressionEvents.isAvailable());
+        // Without a recording, nothing is allocated for each operation
+        Assert.assertNull(CompressionEvents.beginOperation(Operation.COMPRESS));
+        File output = File.createTempFile("compression", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("net.techcable.accelerated_java.Compress").withThreshold(Duration.ZERO);
+            recording.start();
+            Assert.assertNotNull(CompressionEvents.beginOperation(Operation.COMPRESS));
+            Compressor compressor = CompressorFactory.JDK.createCompressor(5);
+            ByteBuf in = Unpooled.buffer(1024);
+            ByteBuf out = Unpooled.directBuffer(1024);
+            try {
+                in.writeZero(1024);
+                compressor.compress(in, out, true);
+            } finally {
+                in.release();
+                out.release();
+                compressor.close();
+            }
+            recording.stop();
+            recording.dump(output.toPath());
+            List<RecordedEvent> events = RecordingFile.readAllEvents(output.toPath()).stream()
+                    .filter((event) -> event.getEventType().getName().equals("net.techcable.accelerated_java.Compress"))
+                    .collect(Collectors.toList());
+            Assert.assertEquals(1, events.size());
+            RecordedEvent event = events.get(0);
+            Assert.assertEquals("jdk", event.getString("backend"));
+            Assert.assertEquals(5, event.getInt("level"));
+            Assert.assertEquals(1024, event.getLong("bytesIn"));
+            Assert.assertEquals("HEAP", event.getString("inputKind"));
+            Assert.assertEquals("DIRECT", event.getString("outputKind"));
+        } finally {
+            output.delete();
+        }
+    }
+}
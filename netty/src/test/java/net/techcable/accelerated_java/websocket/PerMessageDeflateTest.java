@@ -0,0 +1,148 @@
+package net.techcable.accelerated_java.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import net.techcable.accelerated_java.InvalidDataException;
+import net.techcable.accelerated_java.compression.CompressorFactory;
+import net.techcable.accelerated_java.compression.DecompressionLimitException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PerMessageDeflateTest {
+    private static final byte[] HELLO = "Hello".getBytes(StandardCharsets.US_ASCII);
+    // The examples from RFC 7692 section 7.2.3
+    private static final byte[] COMPRESSED_HELLO = bytes(0xf2, 0x48, 0xcd, 0xc9, 0xc9, 0x07, 0x00);
+    private static final byte[] COMPRESSED_HELLO_AGAIN = bytes(0xf2, 0x00, 0x11, 0x00, 0x00);
+
+    @Test
+    public void testNegotiation() {
+        PerMessageDeflateParameters preferred = PerMessageDeflateParameters.builder()
+                .clientNoContextTakeover(true)
+                .clientMaxWindowBits(12)
+                .build();
+        Optional<PerMessageDeflateParameters> accepted = PerMessageDeflateParameters.negotiate(
+                "x-webkit-deflate-frame, permessage-deflate; server_max_window_bits=8, permessage-deflate; server_no_context_takeover; client_max_window_bits, permessage-deflate",
+                preferred
+        );
+        Assert.assertEquals(Optional.of(PerMessageDeflateParameters.builder()
+                .serverNoContextTakeover(true)
+                .clientNoContextTakeover(true)
+                .clientMaxWindowBits(12)
+                .build()), accepted);
+        Assert.assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover; client_max_window_bits=12", accepted.get().toHeaderValue());
+        // The client didn't offer client_max_window_bits, so the server can't limit it
+        Assert.assertEquals(15, PerMessageDeflateParameters.negotiate("permessage-deflate; server_max_window_bits=\"10\"", preferred).get().getClientMaxWindowBits());
+        Assert.assertEquals(10, PerMessageDeflateParameters.negotiate("permessage-deflate; server_max_window_bits=\"10\"", preferred).get().getServerMaxWindowBits());
+        Assert.assertFalse(PerMessageDeflateParameters.negotiate("permessage-deflate; server_no_context_takeover; server_no_context_takeover, permessage-deflate; unknown", preferred).isPresent());
+        Assert.assertEquals(accepted, PerMessageDeflateParameters.parseResponse(accepted.get().toHeaderValue()));
+        Assert.assertFalse(PerMessageDeflateParameters.parseResponse("x-webkit-deflate-frame").isPresent());
+    }
+
+    @Test
+    public void testContextTakeover() throws InvalidDataException {
+        PerMessageDeflateEngine server = PerMessageDeflateEngine.builder(PerMessageDeflateParameters.DEFAULT, PerMessageDeflateEngine.Role.SERVER)
+                .factory(CompressorFactory.JDK)
+                .build();
+        PerMessageDeflateEngine client = PerMessageDeflateEngine.builder(PerMessageDeflateParameters.DEFAULT, PerMessageDeflateEngine.Role.CLIENT)
+                .factory(CompressorFactory.JDK)
+                .build();
+        try {
+            Assert.assertEquals(0, server.estimateMemoryUsage());
+            assertCompresses(server, client, HELLO, COMPRESSED_HELLO);
+            assertCompresses(server, client, HELLO, COMPRESSED_HELLO_AGAIN);
+            assertCompresses(server, client, new byte[0], bytes(0x00));
+            // NOTE: The empty message changes how zlib encodes the next one, but it still refers back to the previous message
+            assertCompresses(server, client, HELLO, null);
+            Assert.assertTrue(server.estimateMemoryUsage() > 0);
+        } finally {
+            server.close();
+            client.close();
+        }
+    }
+
+    @Test
+    public void testNoContextTakeover() throws InvalidDataException {
+        PerMessageDeflateParameters parameters = PerMessageDeflateParameters.builder()
+                .serverNoContextTakeover(true)
+                .build();
+        PerMessageDeflateEngine server = PerMessageDeflateEngine.builder(parameters, PerMessageDeflateEngine.Role.SERVER)
+                .factory(CompressorFactory.JDK)
+                .releaseIdleStreams(true)
+                .build();
+        PerMessageDeflateEngine client = PerMessageDeflateEngine.builder(parameters, PerMessageDeflateEngine.Role.CLIENT)
+                .factory(CompressorFactory.JDK)
+                .build();
+        try {
+            assertCompresses(server, client, HELLO, COMPRESSED_HELLO);
+            Assert.assertEquals("Released compressor is still using memory", 0, server.estimateMemoryUsage());
+            assertCompresses(server, client, HELLO, COMPRESSED_HELLO);
+            assertCompresses(server, client, new byte[0], bytes(0x00));
+            assertCompresses(server, client, HELLO, COMPRESSED_HELLO);
+        } finally {
+            server.close();
+            client.close();
+        }
+    }
+
+    @Test
+    public void testMaxMessageSize() throws InvalidDataException {
+        PerMessageDeflateEngine server = PerMessageDeflateEngine.builder(PerMessageDeflateParameters.DEFAULT, PerMessageDeflateEngine.Role.SERVER)
+                .factory(CompressorFactory.JDK)
+                .build();
+        PerMessageDeflateEngine client = PerMessageDeflateEngine.builder(PerMessageDeflateParameters.DEFAULT, PerMessageDeflateEngine.Role.CLIENT)
+                .factory(CompressorFactory.JDK)
+                .maxMessageSize(1000)
+                .build();
+        ByteBuf payload = Unpooled.buffer();
+        ByteBuf out = Unpooled.buffer();
+        try {
+            server.compress(Unpooled.buffer().writeZero(1000), payload);
+            client.decompress(payload, out);
+            Assert.assertEquals(1000, out.readableBytes());
+            server.compress(Unpooled.buffer().writeZero(100_000), payload.clear());
+            try {
+                client.decompress(payload, out.clear());
+                Assert.fail("Decompressed a message larger than the maximum");
+            } catch (DecompressionLimitException e) {
+                Assert.assertEquals(DecompressionLimitException.Limit.MESSAGE_SIZE, e.getLimit());
+                Assert.assertTrue(out.readableBytes() <= 2002);
+            }
+        } finally {
+            payload.release();
+            out.release();
+            server.close();
+            client.close();
+        }
+    }
+
+    private static void assertCompresses(PerMessageDeflateEngine sender, PerMessageDeflateEngine receiver, byte[] message, byte[] expected) throws InvalidDataException {
+        ByteBuf payload = Unpooled.buffer();
+        ByteBuf out = Unpooled.buffer();
+        try {
+            sender.compress(Unpooled.wrappedBuffer(message), payload);
+            if (expected != null) {
+                Assert.assertEquals(Unpooled.wrappedBuffer(expected), payload);
+            } else {
+                Assert.assertTrue("Compressed message without the context", payload.readableBytes() < COMPRESSED_HELLO.length);
+            }
+            receiver.decompress(payload, out);
+            Assert.assertEquals(Unpooled.wrappedBuffer(message), out);
+        } finally {
+            payload.release();
+            out.release();
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+}